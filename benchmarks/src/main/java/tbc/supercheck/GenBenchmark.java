@@ -0,0 +1,117 @@
+package tbc.supercheck;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the cost of each of Gen's generators. Run with the GC profiler to
+ * see allocation per generated value:
+ * 
+ * <pre>java -jar target/benchmarks.jar GenBenchmark -prof gc</pre>
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GenBenchmark {
+    
+    private static final WeightedChoice CHOICE = 
+        new WeightedChoice(0.05f, 0.05f, 0.05f, 0.05f, 0.05f, 0.75f);
+    
+    private Gen gen;
+    
+    @Setup
+    public void setUp() {
+        gen = new Gen();
+        gen.setSeed(42);
+    }
+    
+    @Benchmark
+    public boolean arbBoolean() {
+        return gen.arbBoolean();
+    }
+    
+    @Benchmark
+    public byte arbByte() {
+        return gen.arbByte();
+    }
+    
+    @Benchmark
+    public short arbShort() {
+        return gen.arbShort();
+    }
+    
+    @Benchmark
+    public char arbChar() {
+        return gen.arbChar();
+    }
+    
+    @Benchmark
+    public int arbInt() {
+        return gen.arbInt();
+    }
+    
+    @Benchmark
+    public long arbLong() {
+        return gen.arbLong();
+    }
+    
+    @Benchmark
+    public float arbFloat() {
+        return gen.arbFloat();
+    }
+    
+    @Benchmark
+    public double arbDouble() {
+        return gen.arbDouble();
+    }
+    
+    @Benchmark
+    public int selectFloats() {
+        return gen.select(0.05f, 0.05f, 0.05f, 0.05f, 0.05f, 0.75f);
+    }
+    
+    @Benchmark
+    public int selectWeightedChoice() {
+        return gen.select(CHOICE);
+    }
+    
+    @Benchmark
+    public String arbString() {
+        return gen.arbString();
+    }
+    
+    @Benchmark
+    public Object arbArray() {
+        return gen.arbArray(Shapes.Point.class);
+    }
+    
+    @Benchmark
+    public int[] arbIntArray() {
+        return gen.arbIntArray();
+    }
+    
+    @Benchmark
+    public Object createArbitraryForNested() {
+        return gen.createArbitraryFor(Shapes.Polygon.class);
+    }
+    
+    @Benchmark
+    public Object createArbitraryForEnum() {
+        return gen.createArbitraryFor(Shapes.Colour.class);
+    }
+}
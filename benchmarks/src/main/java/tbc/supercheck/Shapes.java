@@ -0,0 +1,61 @@
+package tbc.supercheck;
+
+/**
+ * User types with arbitrary() methods, nested as they are in real suites, for
+ * the benchmarks to generate.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+public class Shapes {
+    
+    public enum Colour {
+        RED, GREEN, BLUE
+    }
+    
+    public static class Point {
+        private final int x, y;
+        
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+        
+        public static Point arbitrary(Gen gen) {
+            return new Point(gen.arbInt(), gen.arbInt());
+        }
+        
+        public int getX() {
+            return x;
+        }
+        
+        public int getY() {
+            return y;
+        }
+    }
+    
+    public static class Polygon {
+        private final Point[] points;
+        private final Colour colour;
+        
+        public Polygon(Point[] points, Colour colour) {
+            this.points = points;
+            this.colour = colour;
+        }
+        
+        public static Polygon arbitrary(Gen gen) {
+            return new Polygon(gen.arbArray(Point.class), 
+                               gen.oneOf(Colour.values()));
+        }
+        
+        public int size() {
+            return points.length;
+        }
+        
+        public Colour getColour() {
+            return colour;
+        }
+    }
+    
+    private Shapes() {
+    }
+}
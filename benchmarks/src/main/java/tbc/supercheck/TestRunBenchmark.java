@@ -0,0 +1,77 @@
+package tbc.supercheck;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the overhead TestRun adds to each try, by running properties that
+ * do next to nothing. Scores are per try. Run with the GC profiler to see 
+ * allocation per try:
+ * 
+ * <pre>java -jar target/benchmarks.jar TestRunBenchmark -prof gc</pre>
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TestRunBenchmark {
+    
+    private static final int TRIES = 10000;
+    
+    @Param({ "false", "true" })
+    public boolean reflective;
+    
+    private Method primitiveProp;
+    private Method objectProp;
+    private long seed;
+    
+    public static boolean prop_trivial(int x, long y) {
+        return true;
+    }
+    
+    public static boolean prop_trivialObject(Shapes.Point p) {
+        return true;
+    }
+    
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        primitiveProp = TestRunBenchmark.class.getMethod("prop_trivial", 
+                                                         int.class, long.class);
+        objectProp = TestRunBenchmark.class.getMethod("prop_trivialObject", 
+                                                      Shapes.Point.class);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(TRIES)
+    public Recording runOnPrimitives() {
+        /* with no listeners, only the tries are measured */
+        TestRun run = new TestRun().setListeners().setReflective(reflective);
+        run.runOn(primitiveProp, TRIES, seed++);
+        return run.getRecording();
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(TRIES)
+    public Recording runOnObjects() {
+        TestRun run = new TestRun().setListeners().setReflective(reflective);
+        run.runOn(objectProp, TRIES, seed++);
+        return run.getRecording();
+    }
+}
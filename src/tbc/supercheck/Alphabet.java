@@ -0,0 +1,141 @@
+package tbc.supercheck;
+
+/**
+ * An Alphabet is the set of characters that {@link Gen#arbString(Alphabet)}
+ * draws from. Alphabets for ASCII, latin-1, the basic multilingual plane and 
+ * the whole of Unicode are provided, and others may be made from the 
+ * characters of a string:
+ * 
+ * <pre>private static final Alphabet HEX = Alphabet.of("0123456789abcdef");
+ * 
+ * public static HexId arbitrary(Gen gen) {
+ *     return new HexId(gen.arbString(HEX, 8, 8));
+ * }</pre>
+ * 
+ * Every character of an alphabet is equally likely. Alphabets whose size is a
+ * power of two take several characters from each random word; others take 
+ * two. Surrogate code units are never drawn alone: the {@link #UNICODE} 
+ * alphabet answers supplementary characters as surrogate pairs. An Alphabet 
+ * is immutable.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+public final class Alphabet {
+    
+    private static final int SURROGATES_START = 0xD800;
+    private static final int SURROGATES_COUNT = 0x800;
+    
+    /** The characters 0 to 127. */
+    public static final Alphabet ASCII = new Alphabet(null, 0x80, false, false);
+    
+    /** The characters 0 to 255, as {@link Gen#arbString()} uses. */
+    public static final Alphabet LATIN_1 = new Alphabet(null, 0x100, false, false);
+    
+    /** Every character of the basic multilingual plane except surrogates. */
+    public static final Alphabet BMP = 
+        new Alphabet(null, 0x10000 - SURROGATES_COUNT, true, false);
+    
+    /** Every Unicode code point except surrogates. */
+    public static final Alphabet UNICODE = 
+        new Alphabet(null, Character.MAX_CODE_POINT + 1 - SURROGATES_COUNT, true, true);
+    
+    /* Code points by index, or null if index i is code point i, skipping 
+     * the surrogates if skipSurrogates */
+    private final int[] table;
+    private final int size;
+    private final boolean skipSurrogates;
+    private final boolean supplementary;
+    
+    /* For power of two sizes, the bits in each character's index. Else 0. */
+    private final int bits;
+    
+    private Alphabet(int[] table, int size, boolean skipSurrogates, 
+                     boolean supplementary) {
+        this.table = table;
+        this.size = size;
+        this.skipSurrogates = skipSurrogates;
+        this.supplementary = supplementary;
+        this.bits = Integer.bitCount(size) == 1 ? Integer.numberOfTrailingZeros(size) : 0;
+    }
+    
+    /**
+     * Answers an alphabet of the distinct code points in chars. Each code point
+     * is equally likely, however many times it appears in chars.
+     * 
+     * @throws IllegalArgumentException if chars is empty
+     */
+    public static Alphabet of(String chars) {
+        int[] codePoints = chars.codePoints().distinct().toArray();
+        if (codePoints.length == 0) {
+            throw new IllegalArgumentException("An alphabet needs characters.");
+        }
+        boolean supplementary = false;
+        for (int cp : codePoints) {
+            supplementary |= Character.isSupplementaryCodePoint(cp);
+        }
+        return new Alphabet(codePoints, codePoints.length, false, supplementary);
+    }
+    
+    /** Answers the number of code points in this alphabet. */
+    public int size() {
+        return size;
+    }
+    
+    /** 
+     * Answers the most chars one code point of this alphabet takes: 2 if the
+     * alphabet has supplementary characters, otherwise 1.
+     */
+    int maxCharsPerCodePoint() {
+        return supplementary ? 2 : 1;
+    }
+    
+    /**
+     * Writes count arbitrary code points of this alphabet to buf, which must
+     * have room for count * {@link #maxCharsPerCodePoint()} chars.
+     * 
+     * @return the number of chars written
+     */
+    int fill(char[] buf, int count, RandomSource random) {
+        int at = 0;
+        if (bits != 0 && bits <= 32) {
+            int perWord = 64 / bits;
+            long mask = (1L << bits) - 1;
+            for (int cIdx=0; cIdx<count; ) {
+                long word = random.nextLong();
+                for (int w=0; w<perWord && cIdx<count; w++, cIdx++, word>>>=bits) {
+                    at = put(buf, at, (int) (word & mask));
+                }
+            }
+        } else {
+            for (int cIdx=0; cIdx<count; cIdx++) {
+                long word = random.nextLong();
+                at = put(buf, at, index((int) word));
+                if (++cIdx < count) {
+                    at = put(buf, at, index((int) (word >>> 32)));
+                }
+            }
+        }
+        return at;
+    }
+    
+    /** Scales 32 random bits to an index, with negligible bias. */
+    private int index(int bits32) {
+        return (int) (((bits32 & 0xFFFFFFFFL) * size) >>> 32);
+    }
+    
+    private int put(char[] buf, int at, int index) {
+        int cp;
+        if (table != null) {
+            cp = table[index];
+        } else {
+            cp = skipSurrogates && index >= SURROGATES_START 
+                ? index + SURROGATES_COUNT : index;
+        }
+        
+        if (cp < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            buf[at] = (char) cp;
+            return at + 1;
+        }
+        return at + Character.toChars(cp, buf, at);
+    }
+}
@@ -0,0 +1,240 @@
+package tbc.supercheck;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * An Arbitrary makes arbitrary instances of a type with a Gen. Where an
+ * arbitrary() method is the one way of making its class, an Arbitrary is a
+ * value: it can be kept in a field, built from other Arbitraries with the
+ * combinators here, and bound to the parameters of a property with
+ * {@link From}. Gen has Arbitraries of the primitive types, such as
+ * {@link Gen#INTS}, and {@link #of(Class)} answers one for any class with an
+ * arbitrary() method. For example:
+ *
+ * <pre>public static final Arbitrary&lt;Point2D&gt; POINTS =
+ *     Gen.FLOATS.zip(Gen.FLOATS, new BiFunction&lt;Float, Float, Point2D&gt;() {
+ *         public Point2D apply(Float x, Float y) {
+ *             return new Point2D(x, y);
+ *         }
+ *     });
+ *
+ * public static final Arbitrary&lt;List&lt;Point2D&gt;&gt; PATHS = POINTS.listOf();</pre>
+ *
+ * Composed Arbitraries call one another directly, so the JIT can inline
+ * them as it would the equivalent code written by hand. An Arbitrary must not
+ * keep state between values; all of its randomness comes from the Gen.
+ *
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+public abstract class Arbitrary<T> implements GeneratorRegistry.Generator {
+    
+    /** The values a filter rejects in a row before it gives up. */
+    public static final int MAX_FILTER_TRIES = 1000;
+    
+    /** Answers an arbitrary value, made with gen. */
+    public abstract T generate(Gen gen) throws TestException;
+    
+    /** Answers an Arbitrary of this Arbitrary's values passed through f. */
+    public <R> Arbitrary<R> map(final Function<? super T, ? extends R> f) {
+        final Arbitrary<T> from = this;
+        return new Arbitrary<R>() {
+            public R generate(Gen gen) {
+                return f.apply(from.generate(gen));
+            }
+        };
+    }
+    
+    /**
+     * Answers an Arbitrary of the values of the Arbitrary f makes from each of
+     * this Arbitrary's values, for values that depend on others:
+     *
+     * <pre>Gen.intsBetween(1, 8).flatMap(new Function&lt;Integer, Arbitrary&lt;Matrix&gt;&gt;() {
+     *     public Arbitrary&lt;Matrix&gt; apply(Integer size) {
+     *         return Matrix.square(size);
+     *     }
+     * });</pre>
+     */
+    public <R> Arbitrary<R> flatMap(
+            final Function<? super T, ? extends Arbitrary<? extends R>> f) {
+        final Arbitrary<T> from = this;
+        return new Arbitrary<R>() {
+            public R generate(Gen gen) {
+                return f.apply(from.generate(gen)).generate(gen);
+            }
+        };
+    }
+    
+    /**
+     * Answers an Arbitrary of this Arbitrary's values that satisfy condition.
+     * Values are made until one does, so the condition should reject few.
+     *
+     * @throws TestException, when a value is made, if MAX_FILTER_TRIES
+     *         values in a row were rejected
+     */
+    public Arbitrary<T> filter(final Predicate<? super T> condition) {
+        final Arbitrary<T> from = this;
+        return new Arbitrary<T>() {
+            public T generate(Gen gen) {
+                for (int tries=0; tries<MAX_FILTER_TRIES; tries++) {
+                    T value = from.generate(gen);
+                    if (condition.test(value)) {
+                        return value;
+                    }
+                }
+                throw new TestException("A filter rejected " + MAX_FILTER_TRIES
+                                        + " values in a row: " + condition);
+            }
+        };
+    }
+    
+    /**
+     * Answers an Arbitrary of f applied to a value of this Arbitrary and one
+     * of other, made in that order.
+     */
+    public <U, R> Arbitrary<R> zip(final Arbitrary<U> other,
+            final BiFunction<? super T, ? super U, ? extends R> f) {
+        final Arbitrary<T> from = this;
+        return new Arbitrary<R>() {
+            public R generate(Gen gen) {
+                T first = from.generate(gen);
+                return f.apply(first, other.generate(gen));
+            }
+        };
+    }
+    
+    /**
+     * Answers an Arbitrary of lists of this Arbitrary's values, whose lengths
+     * are as those of {@link Gen#arbArray(Class)}: empty with a 10% chance,
+     * otherwise up to the {@link Gen#MAX_ARRAY_LENGTH} parameter, scaled by
+     * the size.
+     */
+    public Arbitrary<List<T>> listOf() {
+        final Arbitrary<T> element = this;
+        return new Arbitrary<List<T>>() {
+            public List<T> generate(Gen gen) {
+                return fill(gen, element, gen.arbArrayLength());
+            }
+        };
+    }
+    
+    /**
+     * Answers an Arbitrary of lists of this Arbitrary's values, whose lengths
+     * are chosen uniformly from minLength to maxLength, inclusive.
+     */
+    public Arbitrary<List<T>> listOf(final int minLength, final int maxLength) {
+        if (minLength < 0 || maxLength < minLength) {
+            throw new IllegalArgumentException("Bad list lengths: " + minLength
+                                               + " to " + maxLength);
+        }
+        final Arbitrary<T> element = this;
+        return new Arbitrary<List<T>>() {
+            public List<T> generate(Gen gen) {
+                return fill(gen, element, gen.choose(minLength, maxLength));
+            }
+        };
+    }
+    
+    /** Answers an Arbitrary that always answers value. */
+    public static <T> Arbitrary<T> constant(final T value) {
+        return new Arbitrary<T>() {
+            public T generate(Gen gen) {
+                return value;
+            }
+        };
+    }
+    
+    /**
+     * Answers the Arbitrary of a class, made by the class's arbitrary()
+     * method, or as Gen makes primitives, enumerations, arrays and strings.
+     * Asking for a class that cannot be made throws a TestException when a
+     * value is made.
+     */
+    public static <T> Arbitrary<T> of(final Class<T> type) {
+        final GeneratorRegistry.Generator generator = GeneratorRegistry.forClass(type);
+        if (generator instanceof Arbitrary) {
+            @SuppressWarnings("unchecked")
+            Arbitrary<T> arbitrary = (Arbitrary<T>) generator;
+            return arbitrary;
+        }
+        return new Arbitrary<T>() {
+            @SuppressWarnings("unchecked")
+            public T generate(Gen gen) {
+                return (T) generator.generate(gen);
+            }
+        };
+    }
+    
+    /** Answers an Arbitrary of the values of one of choices, each equally likely. */
+    @SafeVarargs
+    public static <T> Arbitrary<T> oneOf(final Arbitrary<? extends T>... choices) {
+        if (choices.length == 0) {
+            throw new IllegalArgumentException("No Arbitraries to choose from.");
+        }
+        return new Arbitrary<T>() {
+            public T generate(Gen gen) {
+                return choices[gen.choose(0, choices.length - 1)].generate(gen);
+            }
+        };
+    }
+    
+    /**
+     * Answers an Arbitrary of the values of one of choices, each chosen with
+     * the probability at the same index, as by
+     * {@link Gen#select(WeightedChoice)}. Probabilities will be normalised if
+     * they do not sum to 1.0f.
+     */
+    @SafeVarargs
+    public static <T> Arbitrary<T> frequency(float[] probabilities,
+                                             final Arbitrary<? extends T>... choices) {
+        if (probabilities.length != choices.length) {
+            throw new IllegalArgumentException(probabilities.length + " probabilities for "
+                                               + choices.length + " Arbitraries");
+        }
+        final WeightedChoice choice = new WeightedChoice(probabilities);
+        return new Arbitrary<T>() {
+            public T generate(Gen gen) {
+                return choices[gen.select(choice)].generate(gen);
+            }
+        };
+    }
+    
+    /**
+     * Answers an Arbitrary of recursive values, such as trees, of bounded
+     * depth. step makes the Arbitrary of values one level deeper than those of
+     * the Arbitrary it is given, which it uses for their parts; base makes
+     * values of no depth. step is applied maxDepth times when this is called,
+     * so values are made by direct calls, and can never recurse endlessly, as
+     * an arbitrary() method passing its own class to
+     * {@link Gen#arbArray(Class)} does. For example:
+     *
+     * <pre>Arbitrary.recursive(LEAVES, new Function&lt;Arbitrary&lt;Tree&gt;, Arbitrary&lt;Tree&gt;&gt;() {
+     *     public Arbitrary&lt;Tree&gt; apply(Arbitrary&lt;Tree&gt; subtrees) {
+     *         return Arbitrary.frequency(new float[] { 0.3f, 0.7f }, LEAVES,
+     *                                    subtrees.zip(subtrees, Tree.NODE));
+     *     }
+     * }, 8);</pre>
+     */
+    public static <T> Arbitrary<T> recursive(Arbitrary<T> base,
+            Function<Arbitrary<T>, Arbitrary<T>> step, int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Negative depth: " + maxDepth);
+        }
+        Arbitrary<T> level = base;
+        for (int depth=0; depth<maxDepth; depth++) {
+            level = step.apply(level);
+        }
+        return level;
+    }
+    
+    private static <T> List<T> fill(Gen gen, Arbitrary<T> element, int length) {
+        List<T> list = new ArrayList<T>(length);
+        for (int idx=0; idx<length; idx++) {
+            list.add(element.generate(gen));
+        }
+        return list;
+    }
+}
@@ -0,0 +1,99 @@
+package tbc.supercheck;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A ChannelWriter encodes text into a buffer, and writes the buffer to a 
+ * channel when it fills or is flushed. Reporters write through one, so that
+ * a report costs a channel write per buffer of text rather than per line.
+ * ChannelWriters are not thread safe.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+final class ChannelWriter {
+    
+    private static final int BUFFER_SIZE = 1 << 16;
+    
+    private final WritableByteChannel channel;
+    private final OutputStream stream;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes;
+    
+    ChannelWriter(WritableByteChannel channel, Charset charset) {
+        this(channel, null, charset);
+    }
+    
+    /** A ChannelWriter writing to, and flushing, an OutputStream. */
+    ChannelWriter(OutputStream stream, Charset charset) {
+        this(Channels.newChannel(stream), stream, charset);
+    }
+    
+    private ChannelWriter(WritableByteChannel channel, OutputStream stream, 
+                          Charset charset) {
+        this.channel = channel;
+        this.stream = stream;
+        this.encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        /* files are written from a direct buffer without copying */
+        this.bytes = channel instanceof FileChannel 
+            ? ByteBuffer.allocateDirect(BUFFER_SIZE) 
+            : ByteBuffer.allocate(BUFFER_SIZE);
+    }
+    
+    ChannelWriter write(CharSequence text) throws TestException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, false);
+            if (result.isOverflow()) {
+                drain();
+            } else {
+                break;
+            }
+        }
+        return this;
+    }
+    
+    void flush() throws TestException {
+        drain();
+        if (stream != null) {
+            try {
+                stream.flush();
+            } catch (IOException e) {
+                throw new TestException(e.toString(), e);
+            }
+        }
+    }
+    
+    void close() throws TestException {
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new TestException(e.toString(), e);
+        }
+    }
+    
+    private void drain() throws TestException {
+        bytes.flip();
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } catch (IOException e) {
+            throw new TestException(e.toString(), e);
+        } finally {
+            bytes.clear();
+        }
+    }
+}
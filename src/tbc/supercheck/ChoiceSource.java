@@ -0,0 +1,105 @@
+package tbc.supercheck;
+
+import java.util.Arrays;
+
+/**
+ * A ChoiceSource is the random source of a coverage-guided Gen. It remembers 
+ * every value it hands out during a try, its choices, and can start a try by 
+ * replaying the choices of an earlier, mutated, try before drawing fresh 
+ * values from the source it wraps. Every draw is one 64 bit choice, so a 
+ * small change to the choices makes a small change to the data generated.
+ * It also remembers which choices were drawn whole, by nextLong(), as only
+ * the high 32 bits of the others are used.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+final class ChoiceSource extends RandomSource {
+    
+    /** The most choices of a try remembered. */
+    static final int MAX_CHOICES = 1 << 16;
+    
+    private static final long[] NONE = new long[0];
+    
+    private final RandomSource fresh;
+    
+    private long[] replay = NONE;
+    private long[] choices = new long[64];
+    private long[] wide = new long[1];
+    private int count;
+    
+    ChoiceSource(RandomSource fresh) {
+        this.fresh = fresh;
+    }
+    
+    /** Starts a try, which replays choices and then draws fresh values. */
+    void start(long[] replay) {
+        this.replay = replay;
+        count = 0;
+    }
+    
+    /** Answers the choices of the try so far. */
+    long[] choices() {
+        return Arrays.copyOf(choices, Math.min(count, MAX_CHOICES));
+    }
+    
+    /** 
+     * Answers a bit set, by index, of the choices so far drawn by nextLong().
+     */
+    long[] wideChoices() {
+        int remembered = Math.min(count, MAX_CHOICES);
+        long[] wideChoices = Arrays.copyOf(wide, (remembered + 63) >>> 6);
+        if ((remembered & 63) != 0) {
+            /* bits of earlier, longer, tries */
+            wideChoices[wideChoices.length - 1] &= (1L << remembered) - 1;
+        }
+        return wideChoices;
+    }
+    
+    @Override
+    public Algorithm algorithm() {
+        return fresh.algorithm();
+    }
+    
+    @Override
+    void setSeed(long seed) {
+        fresh.setSeed(seed);
+    }
+    
+    @Override
+    public int nextInt() {
+        return (int) (next(false) >>> 32);
+    }
+    
+    @Override
+    public long nextLong() {
+        return next(true);
+    }
+    
+    @Override
+    public RandomSource split() {
+        throw new UnsupportedOperationException("a guided source can not be split");
+    }
+    
+    @Override
+    public void jump() {
+        throw new UnsupportedOperationException("a guided source can not jump");
+    }
+    
+    private long next(boolean isWide) {
+        long choice = count < replay.length ? replay[count] : fresh.nextLong();
+        if (count < MAX_CHOICES) {
+            if (count == choices.length) {
+                choices = Arrays.copyOf(choices, choices.length * 2);
+                wide = Arrays.copyOf(wide, choices.length >>> 6);
+            }
+            choices[count] = choice;
+            if (isWide) {
+                wide[count >>> 6] |= 1L << count;
+            } else {
+                wide[count >>> 6] &= ~(1L << count);
+            }
+        }
+        count++;
+        return choice;
+    }
+}
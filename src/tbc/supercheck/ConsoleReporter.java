@@ -0,0 +1,195 @@
+package tbc.supercheck;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A ConsoleReporter prints the progress of a test run as SuperCheck always 
+ * has, for example:
+ * 
+ * <pre>Running prop_idempotent 10000 times... success.</pre>
+ * 
+ * Every TestRun reports to the console unless told otherwise with 
+ * {@link TestRun#setListeners(TestListener...)}. When properties run 
+ * concurrently, the report of one property is printed as it happens and those
+ * of the others are held back, so that each property's report is printed 
+ * whole.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+public class ConsoleReporter implements TestListener {
+    
+    private static final String NL = System.getProperty("line.separator");
+    
+    private final ChannelWriter out;
+    
+    /* The execution printing as it happens, or null */
+    private PropertyExecution printing;
+    
+    /* Reports held back, in the order their executions started */
+    private final Map<PropertyExecution, Report> held = new HashMap<PropertyExecution, Report>();
+    private final List<PropertyExecution> heldOrder = new ArrayList<PropertyExecution>();
+    
+    /* Executions that failed for data kept in a corpus */
+    private final Set<PropertyExecution> corpusFailed = new HashSet<PropertyExecution>();
+    
+    /** A ConsoleReporter printing to System.out. */
+    public ConsoleReporter() {
+        this(System.out);
+    }
+    
+    /** A ConsoleReporter printing to out, in the platform's default charset. */
+    public ConsoleReporter(OutputStream out) {
+        this.out = new ChannelWriter(out, Charset.defaultCharset());
+    }
+    
+    public void propertyStarted(PropertyExecution execution) {
+        if (printing == null) {
+            printing = execution;
+        } else {
+            held.put(execution, new Report());
+            heldOrder.add(execution);
+        }
+        
+        String name = execution.getProperty().getName();
+        if (execution.getBudgetNanos() > 0) {
+            print(execution, "Running " + name + " for " 
+                             + (execution.getBudgetNanos() / 1000000) + "ms... ");
+        } else {
+            print(execution, "Running " + name + " " + execution.getTimes() + " times... ");
+        }
+    }
+    
+    public void corpusEntryFailed(PropertyExecution execution, int entry, Object[] params) {
+        corpusFailed.add(execution);
+        print(execution, NL + "! Failed on corpus entry " + entry + " for params: " + NL 
+                         + paramList(params, "\t"));
+    }
+    
+    public void corpusReplayed(PropertyExecution execution, int entries, int failed, 
+                               long nanos) {
+        if (failed == 0) {
+            print(execution, entries + " corpus entries passed; ");
+        }
+    }
+    
+    public void tryPassed(PropertyExecution execution, int tryNumber, Object[] params) {
+        print(execution, NL + "* Passed for params: " + NL + paramList(params, "\t"));
+    }
+    
+    public void tryFailed(PropertyExecution execution, int tryNumber, Object[] params) {
+        print(execution, NL + "! Failed on try " + tryNumber + " for params: " + NL 
+                         + paramList(params, "\t"));
+    }
+    
+    public void tryTimedOut(PropertyExecution execution, int tryNumber, Object[] params,
+                            long nanos, String threadDump) {
+        if (threadDump == null) {
+            print(execution, NL + "! Timed out before try " + tryNumber + NL);
+            return;
+        }
+        print(execution, NL + "! Timed out on try " + tryNumber + " after " 
+                         + (nanos / 1000000) + "ms"
+                         + (params != null 
+                            ? " for params: " + NL + paramList(params, "\t") 
+                            : NL)
+                         + "  Thread dump:" + NL 
+                         + threadDump.replaceAll("(?m)^(?=.)", "\t").replace("\n", NL));
+    }
+    
+    public void tryTooDeep(PropertyExecution execution, int tryNumber, String reason) {
+        print(execution, NL + "! Failed on try " + tryNumber + ": " + reason + NL);
+    }
+    
+    public void trySlow(PropertyExecution execution, int tryNumber, long nanos, 
+                        long medianNanos) {
+        print(execution, "try " + tryNumber + " slow (" + (nanos / 1000000) 
+                         + "ms, median " + (medianNanos / 1000) + "us); ");
+    }
+    
+    public void tryShrunk(PropertyExecution execution, int tryNumber, Object[] shrunk,
+                          int steps, int tries) {
+        print(execution, "  Shrunk try " + tryNumber + " in " + steps + " steps (" 
+                         + tries + " tries) to params: " + NL + paramList(shrunk, "\t"));
+    }
+    
+    public void generatorSaturated(PropertyExecution execution, int tries, int skipped) {
+        print(execution, "generator saturated after " + tries + " tries; ");
+    }
+    
+    public void propertyFinished(PropertyExecution execution, int tries, int skipped,
+                                 int[] failedTries, long nanos) {
+        boolean failed = corpusFailed.remove(execution) || failedTries.length > 0;
+        if (!failed) {
+            String counts = execution.getBudgetNanos() > 0 ? tries + " tries" : "";
+            if (skipped > 0) {
+                counts += (counts.length() > 0 ? ", " : "") + skipped + " duplicates skipped";
+            }
+            print(execution, counts.length() > 0 
+                             ? "success (" + counts + ")." + NL : "success." + NL);
+        } else if (skipped > 0) {
+            print(execution, "  (" + skipped + " duplicate tries skipped)" + NL);
+        }
+        
+        if (execution != printing) {
+            held.get(execution).finished = true;
+            return;
+        }
+        
+        /* Print the held reports that finished meanwhile, then follow the 
+         * earliest that has not */
+        printing = null;
+        while (!heldOrder.isEmpty() && printing == null) {
+            PropertyExecution next = heldOrder.remove(0);
+            Report report = held.remove(next);
+            out.write(report.text);
+            if (!report.finished) {
+                printing = next;
+            }
+        }
+    }
+    
+    /* Replays and playback happen outside any execution, so print at once */
+    public void tryReplayed(PropertyExecution execution, int tryNumber, Object[] params,
+                            boolean held) {
+        out.write("Replaying " + execution.getProperty().getName() + " try " + tryNumber 
+                  + "... " + (held ? "passed" : "failed") + " for params: " + NL 
+                  + paramList(params, "\t"));
+    }
+    
+    public void eventPassedOver(int event, String reason) {
+        out.write(reason + NL);
+    }
+    
+    public void flush() {
+        out.flush();
+    }
+    
+    private void print(PropertyExecution execution, String text) {
+        if (execution == printing) {
+            out.write(text);
+        } else {
+            held.get(execution).text.append(text);
+        }
+    }
+    
+    static String paramList(Object[] params, String prefix) {
+        StringBuilder list = new StringBuilder();
+        for (int i=0; i<params.length; i++) {
+            list.append(prefix).append(i+1).append(". ")
+                .append(TestRun.describe(params[i])).append(NL);
+        }
+        return list.toString();
+    }
+    
+    private static final class Report {
+        private final StringBuilder text = new StringBuilder();
+        private boolean finished;
+    }
+}
@@ -0,0 +1,135 @@
+package tbc.supercheck;
+
+import java.util.Arrays;
+
+/**
+ * Coverage is the map of branch edges taken by code instrumented by the 
+ * {@link CoverageAgent}. Instrumented code calls {@link #hit(int)} at the 
+ * start of each basic block; the pair of the block and the one before it 
+ * names an edge, whose hit count is kept in one byte of a 64KB map, as AFL 
+ * does. Edges are approximate, as pairs can collide in the map.
+ * <p>
+ * The map is shared by all threads, so coverage-guided tries run one at a
+ * time.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+public final class Coverage {
+    
+    static final int MAP_SIZE = 1 << 16;
+    
+    private static final byte[] map = new byte[MAP_SIZE];
+    
+    /* The edges hit since the map was cleared, so that clearing and reading
+     * the map costs only as much as the edges hit */
+    private static final int[] touched = new int[MAP_SIZE];
+    private static int touchedCount;
+    
+    private static int previous;
+    
+    private static volatile boolean installed;
+    
+    private Coverage() {
+    }
+    
+    /**
+     * Records that the block with a location id has been entered. Called by
+     * instrumented code only.
+     */
+    public static void hit(int location) {
+        location &= MAP_SIZE - 1;
+        int edge = location ^ previous;
+        if (map[edge]++ == 0 && touchedCount < MAP_SIZE) {
+            touched[touchedCount++] = edge;
+        }
+        previous = location >>> 1;
+    }
+    
+    /** Answers true if the agent is instrumenting code. */
+    public static boolean isInstalled() {
+        return installed;
+    }
+    
+    static void setInstalled() {
+        installed = true;
+    }
+    
+    /** Clears the map before a try. */
+    static void reset() {
+        if (touchedCount == MAP_SIZE) {
+            Arrays.fill(map, (byte) 0);
+        } else {
+            for (int tIdx=0; tIdx<touchedCount; tIdx++) {
+                map[touched[tIdx]] = 0;
+            }
+        }
+        touchedCount = 0;
+        previous = 0;
+    }
+    
+    /** What {@link #addTo(byte[])} found. */
+    static final int NOTHING_NEW = 0, NEW_COUNT = 1, NEW_EDGE = 2;
+    
+    /** The fewest hits of an edge that count as a loop count, not a branch. */
+    static final int LOOP_HITS = 8;
+    
+    /**
+     * Adds the edges of the map to those seen before, counting an edge as 
+     * new if it has not been seen with as many hits, in powers of two. 
+     * Answers NEW_EDGE if an edge never seen before was hit, NEW_COUNT if 
+     * only an edge seen before was hit fewer than LOOP_HITS times, a number 
+     * of times not seen before, or NOTHING_NEW. Higher counts are still 
+     * added, but are taken to be the lengths of loops over the data, which 
+     * would otherwise make most tries of longer data look new.
+     */
+    static int addTo(byte[] seen) {
+        int added = NOTHING_NEW;
+        for (int tIdx=0; tIdx<touchedCount; tIdx++) {
+            int edge = touched[tIdx];
+            int hits = map[edge] & 0xFF;
+            /* a count that wrapped to 0 still counts as hit */
+            int bucket = hits == 0 ? 128 : bucket(hits);
+            if ((seen[edge] & bucket) == 0) {
+                if (seen[edge] == 0) {
+                    added = NEW_EDGE;
+                } else if (hits != 0 && hits < LOOP_HITS && added == NOTHING_NEW) {
+                    added = NEW_COUNT;
+                }
+                seen[edge] |= bucket;
+            }
+        }
+        return added;
+    }
+    
+    /**
+     * Counts a try of each edge hit in tries, and answers the edge hit that
+     * had been tried least, or -1 if none was hit.
+     */
+    static int countTries(int[] tries) {
+        int rarest = -1;
+        int fewest = Integer.MAX_VALUE;
+        for (int tIdx=0; tIdx<touchedCount; tIdx++) {
+            int edge = touched[tIdx];
+            if (tries[edge] < fewest) {
+                fewest = tries[edge];
+                rarest = edge;
+            }
+            if (tries[edge] < Integer.MAX_VALUE) {
+                tries[edge]++;
+            }
+        }
+        return rarest;
+    }
+    
+    /** Answers one bit for each class of hit count: 1, 2, 3, 4-7, ... 128+. */
+    private static int bucket(int hits) {
+        if (hits <= 2) {
+            return hits;
+        } else if (hits == 3) {
+            return 4;
+        } else {
+            /* 4-7 -> 8, 8-15 -> 16, ... 128-255 -> 128 */
+            return Math.min(Integer.highestOneBit(hits) << 1, 128);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package tbc.supercheck;
+
+import java.io.IOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The CoverageAgent instruments the classes of chosen packages as they are 
+ * loaded, so that the branch edges they take are recorded in 
+ * {@link Coverage}, for {@link TestRun#setGuided(boolean) coverage-guided} 
+ * tests. The SuperCheck jar is the agent. Name the packages to instrument, 
+ * separated by commas, as its argument:
+ * 
+ * <pre>java -javaagent:supercheck.jar=com.acme.protocol,com.acme.codec ...</pre>
+ * 
+ * Subpackages are instrumented too. Classes that can not be instrumented are
+ * loaded as they are.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+public final class CoverageAgent {
+    
+    private CoverageAgent() {
+    }
+    
+    /** Installs the agent when the JVM starts. */
+    public static void premain(String packages, Instrumentation instrumentation) {
+        install(packages, instrumentation);
+    }
+    
+    /** 
+     * Installs the agent in a running JVM. Classes already loaded are not
+     * instrumented.
+     */
+    public static void agentmain(String packages, Instrumentation instrumentation) {
+        install(packages, instrumentation);
+    }
+    
+    private static void install(String packages, Instrumentation instrumentation) {
+        final List<String> prefixes = new ArrayList<String>();
+        if (packages != null) {
+            for (String pkg : packages.split(",")) {
+                if (pkg.trim().length() > 0) {
+                    prefixes.add(pkg.trim().replace('.', '/') + "/");
+                }
+            }
+        }
+        if (prefixes.isEmpty()) {
+            throw new IllegalArgumentException("Name the packages to instrument, e.g. "
+                    + "-javaagent:supercheck.jar=com.acme.protocol");
+        }
+        
+        instrumentation.addTransformer(new ClassFileTransformer() {
+            public byte[] transform(ClassLoader loader, String className, 
+                                    Class<?> redefined, ProtectionDomain domain, 
+                                    byte[] classFile) {
+                if (className == null || className.startsWith("tbc/supercheck/")) {
+                    return null;
+                }
+                for (String prefix : prefixes) {
+                    if (className.startsWith(prefix)) {
+                        try {
+                            return CoverageInstrumenter.instrument(classFile);
+                        } catch (IOException e) {
+                            return null;
+                        } catch (RuntimeException e) {
+                            return null;
+                        }
+                    }
+                }
+                return null;
+            }
+        });
+        Coverage.setInstalled();
+    }
+}
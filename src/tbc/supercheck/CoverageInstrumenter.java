@@ -0,0 +1,569 @@
+package tbc.supercheck;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A CoverageInstrumenter rewrites class files so that every basic block of 
+ * every method starts by calling {@link Coverage#hit(int)} with an id of the
+ * block. A block starts at the start of a method, at the target of any jump, 
+ * switch or exception handler, and after a conditional jump. The probe is
+ * six bytes, <code>sipush id; invokestatic Coverage.hit(I)V</code>, and jumps
+ * to a block land on its probe.
+ * <p>
+ * Inserting probes moves the code after them, so every offset in the code 
+ * attribute is rewritten: jumps, switches, the exception table, stack map 
+ * frames and the line number and local variable tables. Type annotations on 
+ * code are dropped. Methods whose jumps no longer fit their offsets are left
+ * as they were.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+final class CoverageInstrumenter {
+    
+    private static final int PROBE_LENGTH = 6;
+    
+    private static final int SIPUSH = 0x11;
+    private static final int INVOKESTATIC = 0xB8;
+    private static final int TABLESWITCH = 0xAA;
+    private static final int LOOKUPSWITCH = 0xAB;
+    private static final int WIDE = 0xC4;
+    private static final int IINC = 0x84;
+    private static final int GOTO_W = 0xC8;
+    private static final int JSR_W = 0xC9;
+    
+    /* Instruction lengths by opcode; 0 for the variable length switches and wide */
+    private static final byte[] LENGTHS = new byte[256];
+    
+    static {
+        String lengths = 
+            "1111111111111111" + "2323322222111111" + "1111111111111111" + "1111112222211111"  //   0- 63
+          + "1111111111111111" + "1111111111111111" + "1111111111111111" + "1111111111111111"  //  64-127
+          + "1111311111111111" + "1111111113333333" + "3333333332001111" + "1133333335532311"  // 128-191
+          + "3311043355";                                                                      // 192-201
+        for (int op=0; op<lengths.length(); op++) {
+            LENGTHS[op] = (byte) (lengths.charAt(op) - '0');
+        }
+    }
+    
+    private final byte[] classFile;
+    private final DataInputStream in;
+    
+    private int cpCount;
+    private String[] utf8s;
+    private int[] classNames;
+    
+    private int hitRef;
+    private int methodSalt;
+    
+    private CoverageInstrumenter(byte[] classFile) {
+        this.classFile = classFile;
+        this.in = new DataInputStream(new ByteArrayInputStream(classFile));
+    }
+    
+    /**
+     * Answers an instrumented copy of a class file.
+     * 
+     * @throws IOException if the class file is malformed
+     */
+    static byte[] instrument(byte[] classFile) throws IOException {
+        return new CoverageInstrumenter(classFile).instrument();
+    }
+    
+    private byte[] instrument() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(classFile.length * 5 / 4);
+        DataOutputStream out = new DataOutputStream(bytes);
+        
+        out.writeInt(in.readInt());             // magic
+        out.writeInt(in.readInt());             // minor and major version
+        
+        /* copy the constant pool, noting utf8s and classes, then append a 
+         * reference to Coverage.hit(I)V */
+        cpCount = in.readUnsignedShort();
+        if (cpCount + 6 > 0xFFFF) {
+            throw new IOException("constant pool full");
+        }
+        utf8s = new String[cpCount];
+        classNames = new int[cpCount];
+        ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        DataOutputStream poolOut = new DataOutputStream(pool);
+        for (int cpIdx=1; cpIdx<cpCount; cpIdx++) {
+            int tag = in.readUnsignedByte();
+            poolOut.writeByte(tag);
+            switch (tag) {
+            case 1:
+                String s = in.readUTF();
+                utf8s[cpIdx] = s;
+                poolOut.writeUTF(s);
+                break;
+            case 7:
+                classNames[cpIdx] = in.readUnsignedShort();
+                poolOut.writeShort(classNames[cpIdx]);
+                break;
+            case 8: case 16: case 19: case 20:
+                poolOut.writeShort(in.readUnsignedShort());
+                break;
+            case 15:
+                poolOut.writeByte(in.readUnsignedByte());
+                poolOut.writeShort(in.readUnsignedShort());
+                break;
+            case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                poolOut.writeInt(in.readInt());
+                break;
+            case 5: case 6:
+                poolOut.writeLong(in.readLong());
+                cpIdx++;
+                break;
+            default:
+                throw new IOException("unknown constant pool tag " + tag);
+            }
+        }
+        int coverageName = cpCount, coverageClass = cpCount + 1, hitName = cpCount + 2;
+        int hitDesc = cpCount + 3, hitNameAndType = cpCount + 4;
+        hitRef = cpCount + 5;
+        poolOut.writeByte(1);
+        poolOut.writeUTF("tbc/supercheck/Coverage");
+        poolOut.writeByte(7);
+        poolOut.writeShort(coverageName);
+        poolOut.writeByte(1);
+        poolOut.writeUTF("hit");
+        poolOut.writeByte(1);
+        poolOut.writeUTF("(I)V");
+        poolOut.writeByte(12);
+        poolOut.writeShort(hitName);
+        poolOut.writeShort(hitDesc);
+        poolOut.writeByte(10);
+        poolOut.writeShort(coverageClass);
+        poolOut.writeShort(hitNameAndType);
+        out.writeShort(cpCount + 6);
+        pool.writeTo(out);
+        
+        out.writeShort(in.readUnsignedShort());  // access flags
+        int thisClass = in.readUnsignedShort();
+        out.writeShort(thisClass);
+        out.writeShort(in.readUnsignedShort());  // super class
+        String className = utf8s[classNames[thisClass]];
+        
+        int interfaces = in.readUnsignedShort();
+        out.writeShort(interfaces);
+        for (int iIdx=0; iIdx<interfaces; iIdx++) {
+            out.writeShort(in.readUnsignedShort());
+        }
+        
+        copyMembers(out, null);
+        copyMembers(out, className);
+        copyAttributes(out, in.readUnsignedShort());
+        out.flush();
+        return bytes.toByteArray();
+    }
+    
+    /**
+     * Copies the fields, or the methods if className is not null, 
+     * instrumenting the code of methods.
+     */
+    private void copyMembers(DataOutputStream out, String className) throws IOException {
+        int members = in.readUnsignedShort();
+        out.writeShort(members);
+        for (int mIdx=0; mIdx<members; mIdx++) {
+            out.writeShort(in.readUnsignedShort());     // access flags
+            int name = in.readUnsignedShort();
+            int descriptor = in.readUnsignedShort();
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            
+            int attributes = in.readUnsignedShort();
+            out.writeShort(attributes);
+            for (int aIdx=0; aIdx<attributes; aIdx++) {
+                int attrName = in.readUnsignedShort();
+                byte[] info = new byte[in.readInt()];
+                in.readFully(info);
+                if (className != null && "Code".equals(utf8s[attrName])) {
+                    methodSalt = (className + "." + utf8s[name] + utf8s[descriptor]).hashCode();
+                    info = instrumentCode(info);
+                }
+                out.writeShort(attrName);
+                out.writeInt(info.length);
+                out.write(info);
+            }
+        }
+    }
+    
+    private void copyAttributes(DataOutputStream out, int attributes) throws IOException {
+        out.writeShort(attributes);
+        for (int aIdx=0; aIdx<attributes; aIdx++) {
+            out.writeShort(in.readUnsignedShort());
+            byte[] info = new byte[in.readInt()];
+            in.readFully(info);
+            out.writeInt(info.length);
+            out.write(info);
+        }
+    }
+    
+    /**
+     * Answers an instrumented copy of a Code attribute, or the attribute as 
+     * it was if its jumps would no longer fit.
+     */
+    private byte[] instrumentCode(byte[] attribute) throws IOException {
+        try {
+            return new CodeRewriter(attribute).rewrite();
+        } catch (OffsetOverflow e) {
+            return attribute;
+        }
+    }
+    
+    private static final class OffsetOverflow extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+    
+    /** The rewriting of one Code attribute. */
+    private final class CodeRewriter {
+        private final DataInputStream code;
+        private int maxStack;
+        private int maxLocals;
+        private byte[] old;
+        
+        /* For each old offset, and the old length: whether a block starts 
+         * there, where its probe or instruction is now, and where its 
+         * instruction is now */
+        private boolean[] leaders;
+        private int[] blockPos;
+        private int[] instrPos;
+        
+        private CodeRewriter(byte[] attribute) {
+            code = new DataInputStream(new ByteArrayInputStream(attribute));
+        }
+        
+        private byte[] rewrite() throws IOException, OffsetOverflow {
+            maxStack = code.readUnsignedShort();
+            maxLocals = code.readUnsignedShort();
+            old = new byte[code.readInt()];
+            code.readFully(old);
+            
+            int handlers = code.readUnsignedShort();
+            int[] handlerTable = new int[handlers * 4];
+            for (int hIdx=0; hIdx<handlerTable.length; hIdx++) {
+                handlerTable[hIdx] = code.readUnsignedShort();
+            }
+            
+            findLeaders(handlerTable);
+            int newLength = layOut();
+            if (newLength > 0xFFFF) {
+                throw new OffsetOverflow();
+            }
+            
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(old.length * 2 + 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(Math.min(maxStack + 1, 0xFFFF));
+            out.writeShort(maxLocals);
+            out.writeInt(newLength);
+            emitCode(out);
+            
+            out.writeShort(handlers);
+            for (int hIdx=0; hIdx<handlers; hIdx++) {
+                out.writeShort(pos(handlerTable[hIdx * 4]));
+                out.writeShort(pos(handlerTable[hIdx * 4 + 1]));
+                out.writeShort(pos(handlerTable[hIdx * 4 + 2]));
+                out.writeShort(handlerTable[hIdx * 4 + 3]);
+            }
+            
+            rewriteAttributes(out);
+            out.flush();
+            return bytes.toByteArray();
+        }
+        
+        /** Answers where an old offset, as a jump target, now is. */
+        private int pos(int oldOffset) {
+            return blockPos[oldOffset];
+        }
+        
+        private void findLeaders(int[] handlerTable) throws IOException {
+            leaders = new boolean[old.length + 1];
+            leaders[0] = true;
+            for (int hIdx=0; hIdx<handlerTable.length; hIdx+=4) {
+                leaders[handlerTable[hIdx + 2]] = true;
+            }
+            
+            for (int pc=0; pc<old.length; pc+=length(pc)) {
+                int op = old[pc] & 0xFF;
+                if (isShortJump(op)) {
+                    leaders[pc + s2(pc + 1)] = true;
+                    if (op != 0xA7) {
+                        /* conditional jumps and jsr fall through to a block */
+                        leaders[pc + 3] = true;
+                    }
+                } else if (op == GOTO_W || op == JSR_W) {
+                    leaders[pc + s4(pc + 1)] = true;
+                    if (op == JSR_W) {
+                        leaders[pc + 5] = true;
+                    }
+                } else if (op == TABLESWITCH || op == LOOKUPSWITCH) {
+                    for (int target : switchTargets(pc)) {
+                        leaders[pc + target] = true;
+                    }
+                }
+            }
+            /* a block can not start at the end of the code */
+            leaders[old.length] = false;
+        }
+        
+        /** Lays out the new code, answering its length. */
+        private int layOut() throws IOException {
+            blockPos = new int[old.length + 1];
+            instrPos = new int[old.length + 1];
+            int now = 0;
+            for (int pc=0; pc<old.length; pc+=length(pc)) {
+                blockPos[pc] = now;
+                if (leaders[pc]) {
+                    now += PROBE_LENGTH;
+                }
+                instrPos[pc] = now;
+                int op = old[pc] & 0xFF;
+                if (op == TABLESWITCH || op == LOOKUPSWITCH) {
+                    now += length(pc) - padding(pc) + padding(now);
+                } else {
+                    now += length(pc);
+                }
+            }
+            blockPos[old.length] = instrPos[old.length] = now;
+            return now;
+        }
+        
+        private void emitCode(DataOutputStream out) throws IOException, OffsetOverflow {
+            int block = 0;
+            for (int pc=0; pc<old.length; pc+=length(pc)) {
+                if (leaders[pc]) {
+                    int id = (methodSalt * 31 + block++) * 0x9E3779B1;
+                    out.writeByte(SIPUSH);
+                    out.writeShort((id >>> 16) & 0xFFFF);
+                    out.writeByte(INVOKESTATIC);
+                    out.writeShort(hitRef);
+                }
+                
+                int op = old[pc] & 0xFF;
+                int at = instrPos[pc];
+                if (isShortJump(op)) {
+                    int jump = pos(pc + s2(pc + 1)) - at;
+                    if (jump < Short.MIN_VALUE || jump > Short.MAX_VALUE) {
+                        throw new OffsetOverflow();
+                    }
+                    out.writeByte(op);
+                    out.writeShort(jump);
+                } else if (op == GOTO_W || op == JSR_W) {
+                    out.writeByte(op);
+                    out.writeInt(pos(pc + s4(pc + 1)) - at);
+                } else if (op == TABLESWITCH || op == LOOKUPSWITCH) {
+                    out.writeByte(op);
+                    for (int pad=0; pad<padding(at); pad++) {
+                        out.writeByte(0);
+                    }
+                    int p = pc + 1 + padding(pc);
+                    out.writeInt(pos(pc + s4(p)) - at);             // default
+                    if (op == TABLESWITCH) {
+                        int low = s4(p + 4), high = s4(p + 8);
+                        out.writeInt(low);
+                        out.writeInt(high);
+                        for (int cIdx=0; cIdx<=high-low; cIdx++) {
+                            out.writeInt(pos(pc + s4(p + 12 + cIdx * 4)) - at);
+                        }
+                    } else {
+                        int pairs = s4(p + 4);
+                        out.writeInt(pairs);
+                        for (int cIdx=0; cIdx<pairs; cIdx++) {
+                            out.writeInt(s4(p + 8 + cIdx * 8));
+                            out.writeInt(pos(pc + s4(p + 12 + cIdx * 8)) - at);
+                        }
+                    }
+                } else {
+                    out.write(old, pc, length(pc));
+                }
+            }
+        }
+        
+        private void rewriteAttributes(DataOutputStream out) throws IOException {
+            int attributes = code.readUnsignedShort();
+            ByteArrayOutputStream kept = new ByteArrayOutputStream();
+            DataOutputStream keptOut = new DataOutputStream(kept);
+            int keptCount = 0;
+            
+            for (int aIdx=0; aIdx<attributes; aIdx++) {
+                int name = code.readUnsignedShort();
+                byte[] info = new byte[code.readInt()];
+                code.readFully(info);
+                String attrName = utf8s[name];
+                
+                if ("LineNumberTable".equals(attrName)) {
+                    info = rewriteLineNumbers(info);
+                } else if ("LocalVariableTable".equals(attrName)
+                           || "LocalVariableTypeTable".equals(attrName)) {
+                    info = rewriteLocalVariables(info);
+                } else if ("StackMapTable".equals(attrName)) {
+                    info = rewriteStackMap(info);
+                } else {
+                    /* anything else may hold offsets we do not know of */
+                    continue;
+                }
+                keptOut.writeShort(name);
+                keptOut.writeInt(info.length);
+                keptOut.write(info);
+                keptCount++;
+            }
+            out.writeShort(keptCount);
+            kept.writeTo(out);
+        }
+        
+        private byte[] rewriteLineNumbers(byte[] info) throws IOException {
+            DataInputStream table = new DataInputStream(new ByteArrayInputStream(info));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(info.length);
+            DataOutputStream out = new DataOutputStream(bytes);
+            int lines = table.readUnsignedShort();
+            out.writeShort(lines);
+            for (int lIdx=0; lIdx<lines; lIdx++) {
+                out.writeShort(pos(table.readUnsignedShort()));
+                out.writeShort(table.readUnsignedShort());
+            }
+            return bytes.toByteArray();
+        }
+        
+        private byte[] rewriteLocalVariables(byte[] info) throws IOException {
+            DataInputStream table = new DataInputStream(new ByteArrayInputStream(info));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(info.length);
+            DataOutputStream out = new DataOutputStream(bytes);
+            int variables = table.readUnsignedShort();
+            out.writeShort(variables);
+            for (int vIdx=0; vIdx<variables; vIdx++) {
+                int start = table.readUnsignedShort();
+                int end = start + table.readUnsignedShort();
+                out.writeShort(pos(start));
+                out.writeShort(pos(end) - pos(start));
+                out.writeShort(table.readUnsignedShort());     // name
+                out.writeShort(table.readUnsignedShort());     // descriptor
+                out.writeShort(table.readUnsignedShort());     // index
+            }
+            return bytes.toByteArray();
+        }
+        
+        private byte[] rewriteStackMap(byte[] info) throws IOException {
+            DataInputStream table = new DataInputStream(new ByteArrayInputStream(info));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(info.length + 16);
+            DataOutputStream out = new DataOutputStream(bytes);
+            int frames = table.readUnsignedShort();
+            out.writeShort(frames);
+            
+            int oldAt = -1, newAt = -1;
+            for (int fIdx=0; fIdx<frames; fIdx++) {
+                int type = table.readUnsignedByte();
+                int delta = type < 64 ? type 
+                          : type < 128 ? type - 64 
+                          : table.readUnsignedShort();
+                oldAt += delta + 1;
+                int frameAt = pos(oldAt);
+                int newDelta = frameAt - newAt - 1;
+                newAt = frameAt;
+                
+                if (type < 64 || type == 251) {
+                    if (newDelta < 64) {
+                        out.writeByte(newDelta);
+                    } else {
+                        out.writeByte(251);
+                        out.writeShort(newDelta);
+                    }
+                } else if (type < 128 || type == 247) {
+                    if (newDelta < 64) {
+                        out.writeByte(64 + newDelta);
+                    } else {
+                        out.writeByte(247);
+                        out.writeShort(newDelta);
+                    }
+                    copyVerificationType(table, out);
+                } else if (type >= 248 && type <= 250) {
+                    out.writeByte(type);
+                    out.writeShort(newDelta);
+                } else if (type >= 252 && type <= 254) {
+                    out.writeByte(type);
+                    out.writeShort(newDelta);
+                    for (int lIdx=0; lIdx<type-251; lIdx++) {
+                        copyVerificationType(table, out);
+                    }
+                } else if (type == 255) {
+                    out.writeByte(type);
+                    out.writeShort(newDelta);
+                    for (int part=0; part<2; part++) {
+                        int count = table.readUnsignedShort();
+                        out.writeShort(count);
+                        for (int vIdx=0; vIdx<count; vIdx++) {
+                            copyVerificationType(table, out);
+                        }
+                    }
+                } else {
+                    throw new IOException("unknown stack map frame type " + type);
+                }
+            }
+            return bytes.toByteArray();
+        }
+        
+        private void copyVerificationType(DataInputStream table, DataOutputStream out) 
+                                                                 throws IOException {
+            int tag = table.readUnsignedByte();
+            out.writeByte(tag);
+            if (tag == 7) {
+                out.writeShort(table.readUnsignedShort());
+            } else if (tag == 8) {
+                /* uninitialized, made by the new instruction at this offset */
+                out.writeShort(instrPos[table.readUnsignedShort()]);
+            }
+        }
+        
+        private int length(int pc) throws IOException {
+            int op = old[pc] & 0xFF;
+            int length = LENGTHS[op];
+            if (length > 0) {
+                return length;
+            }
+            if (op == WIDE) {
+                return (old[pc + 1] & 0xFF) == IINC ? 6 : 4;
+            }
+            int p = pc + 1 + padding(pc);
+            if (op == TABLESWITCH) {
+                return p - pc + 12 + (s4(p + 8) - s4(p + 4) + 1) * 4;
+            } else if (op == LOOKUPSWITCH) {
+                return p - pc + 8 + s4(p + 4) * 8;
+            }
+            throw new IOException("unknown opcode " + op);
+        }
+        
+        private int[] switchTargets(int pc) {
+            int op = old[pc] & 0xFF;
+            int p = pc + 1 + padding(pc);
+            int cases = op == TABLESWITCH ? s4(p + 8) - s4(p + 4) + 1 : s4(p + 4);
+            int[] targets = new int[cases + 1];
+            targets[0] = s4(p);
+            for (int cIdx=0; cIdx<cases; cIdx++) {
+                targets[cIdx + 1] = op == TABLESWITCH 
+                    ? s4(p + 12 + cIdx * 4) : s4(p + 12 + cIdx * 8);
+            }
+            return targets;
+        }
+        
+        private int s2(int at) {
+            return (short) (((old[at] & 0xFF) << 8) | (old[at + 1] & 0xFF));
+        }
+        
+        private int s4(int at) {
+            return ((old[at] & 0xFF) << 24) | ((old[at + 1] & 0xFF) << 16)
+                 | ((old[at + 2] & 0xFF) << 8) | (old[at + 3] & 0xFF);
+        }
+    }
+    
+    /** Answers the padding after a switch opcode at pc, to a 4 byte boundary. */
+    private static int padding(int pc) {
+        return (4 - (pc + 1) % 4) % 4;
+    }
+    
+    /** if*, goto, jsr, ifnull and ifnonnull. */
+    private static boolean isShortJump(int op) {
+        return (op >= 0x99 && op <= 0xA8) || op == 0xC6 || op == 0xC7;
+    }
+}
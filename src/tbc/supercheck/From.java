@@ -0,0 +1,37 @@
+package tbc.supercheck;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a parameter of a property to an explicit {@link Arbitrary}, rather
+ * than to the arbitrary() method of its class. The value names a public
+ * static field of type Arbitrary, or a public static method taking no
+ * arguments and answering one, of the property's class. For example:
+ *
+ * <pre>public static final Arbitrary&lt;List&lt;Integer&gt;&gt; SMALL_LISTS =
+ *     Gen.intsBetween(0, 100).listOf(0, 20);
+ *
+ * public static boolean prop_sortIdempotent(@From("SMALL_LISTS") List&lt;Integer&gt; xs) {
+ *     ...
+ * }</pre>
+ *
+ * The field or method is read once, when the property is first tried. A
+ * parameter bound to something that is not an Arbitrary fails the property's
+ * first try with a TestException. Data a property fails for is not shrunk 
+ * for a bound parameter, as the shrinker of its class could answer values
+ * the Arbitrary never makes.
+ *
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface From {
+    
+    /** The name of the field or method answering the Arbitrary. */
+    String value();
+}
@@ -1,10 +1,8 @@
 package tbc.supercheck;
 
 import java.lang.reflect.Array;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.Hashtable;
-import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Gen is a provider of arbitrary primitive values, and of methods that ease 
@@ -16,6 +14,12 @@ import java.util.Random;
  *     return gen.oneOf(Alignment.LEFT, Alignment.CENTRE, Alignment.RIGHT);
  * }</pre>
  * 
+ * A Gen is not thread safe: each thread generates with a Gen of its own. 
+ * Outside SuperCheck, {@link #g()} answers the calling thread's own Gen, and 
+ * {@link #split()} answers an independent child of a Gen, to hand to another
+ * thread. A Gen's parameters are an immutable snapshot, taken when they are
+ * set, which its children share.
+ * 
  * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
  */
 public class Gen {
@@ -26,13 +30,152 @@ public class Gen {
 	/** A parameter that determines the maximum length of arbitrary strings. */
 	public static final String PARAM_MAX_STR_LENGTH = "Gen.MAX_STR_LENGTH";
 	
+	/** 
+	 * A parameter that determines the largest size of arbitrary data. Sizes
+	 * grow from 0 to this over each cycle of this many tries plus one.
+	 */
+	public static final String PARAM_MAX_SIZE = "Gen.MAX_SIZE";
+	
+	/** 
+	 * A parameter that determines how deeply arbitrary() methods may make 
+	 * objects through {@link #arbObject(Class)} and {@link #arbArray(Class)}.
+	 */
+	public static final String PARAM_MAX_DEPTH = "Gen.MAX_DEPTH";
+	
 	public static final int MAX_ARRAY_LENGTH_DEFAULT = 10;
 	public static final int MAX_STR_LENGTH_DEFAULT   = 1024;
+	public static final int MAX_SIZE_DEFAULT         = 100;
+	public static final int MAX_DEPTH_DEFAULT        = 16;
+	
+	/** The key of {@link #PARAM_MAX_ARRAY_LENGTH}. */
+	public static final ParamKey<Integer> MAX_ARRAY_LENGTH = 
+	    ParamKey.of(PARAM_MAX_ARRAY_LENGTH, Integer.class, MAX_ARRAY_LENGTH_DEFAULT);
+	
+	/** The key of {@link #PARAM_MAX_STR_LENGTH}. */
+	public static final ParamKey<Integer> MAX_STR_LENGTH = 
+	    ParamKey.of(PARAM_MAX_STR_LENGTH, Integer.class, MAX_STR_LENGTH_DEFAULT);
 	
+	/** The key of {@link #PARAM_MAX_SIZE}. */
+	public static final ParamKey<Integer> MAX_SIZE = 
+	    ParamKey.of(PARAM_MAX_SIZE, Integer.class, MAX_SIZE_DEFAULT);
+	
+	/** The key of {@link #PARAM_MAX_DEPTH}. */
+	public static final ParamKey<Integer> MAX_DEPTH = 
+	    ParamKey.of(PARAM_MAX_DEPTH, Integer.class, MAX_DEPTH_DEFAULT);
+	
+    /** Arbitrary booleans, as made by {@link #arbBoolean()}. */
+    public static final Arbitrary<Boolean> BOOLEANS = new Arbitrary<Boolean>() {
+        public Boolean generate(Gen gen) { return gen.arbBoolean(); }
+    };
+    
+    /** Arbitrary bytes, as made by {@link #arbByte()}. */
+    public static final Arbitrary<Byte> BYTES = new Arbitrary<Byte>() {
+        public Byte generate(Gen gen) { return gen.arbByte(); }
+    };
+    
+    /** Arbitrary shorts, as made by {@link #arbShort()}. */
+    public static final Arbitrary<Short> SHORTS = new Arbitrary<Short>() {
+        public Short generate(Gen gen) { return gen.arbShort(); }
+    };
+    
+    /** Arbitrary ints, as made by {@link #arbInt()}. */
+    public static final Arbitrary<Integer> INTS = new Arbitrary<Integer>() {
+        public Integer generate(Gen gen) { return gen.arbInt(); }
+    };
+    
+    /** Arbitrary longs, as made by {@link #arbLong()}. */
+    public static final Arbitrary<Long> LONGS = new Arbitrary<Long>() {
+        public Long generate(Gen gen) { return gen.arbLong(); }
+    };
+    
+    /** Arbitrary floats, as made by {@link #arbFloat()}. */
+    public static final Arbitrary<Float> FLOATS = new Arbitrary<Float>() {
+        public Float generate(Gen gen) { return gen.arbFloat(); }
+    };
+    
+    /** Arbitrary doubles, as made by {@link #arbDouble()}. */
+    public static final Arbitrary<Double> DOUBLES = new Arbitrary<Double>() {
+        public Double generate(Gen gen) { return gen.arbDouble(); }
+    };
+    
+    /** Arbitrary chars, as made by {@link #arbChar()}. */
+    public static final Arbitrary<Character> CHARS = new Arbitrary<Character>() {
+        public Character generate(Gen gen) { return gen.arbChar(); }
+    };
+    
+    /** Arbitrary strings, as made by {@link #arbString()}. */
+    public static final Arbitrary<String> STRINGS = new Arbitrary<String>() {
+        public String generate(Gen gen) { return gen.arbString(); }
+    };
+    
+    private static final WeightedChoice EDGE_OR_ANY = 
+        new WeightedChoice(0.05f, 0.05f, 0.05f, 0.05f, 0.05f, 0.75f);
+    private static final WeightedChoice NASTY_OR_ANY = 
+        new WeightedChoice(0.05f, 0.05f, 0.05f, 0.05f, 0.05f, 0.05f, 0.7f);
+    private static final WeightedChoice EDGE_FLOAT_OR_ANY = 
+        new WeightedChoice(0.05f, 0.05f, 0.05f, 0.85f);
+    private static final WeightedChoice BOUND_OR_ANY = 
+        new WeightedChoice(0.05f, 0.05f, 0.9f);
+    private static final WeightedChoice WITHIN_BOUNDS = 
+        new WeightedChoice(0.1f, 0.1f, 0.8f);
+    private static final WeightedChoice EMPTY_ARRAY = new WeightedChoice(0.1f, 0.9f);
+    private static final WeightedChoice EMPTY_STR   = new WeightedChoice(0.2f, 0.8f);
+    
+    /* Edge values, and the log of the chance of not choosing one, for bulk 
+     * filled arrays */
+    private static final int[] INT_EDGES = 
+        { 0, Integer.MAX_VALUE, Integer.MIN_VALUE, -1, 1 };
+    private static final long[] LONG_EDGES = 
+        { 0l, Long.MAX_VALUE, Long.MIN_VALUE, -1l, 1l };
+    private static final int[] SHORT_EDGES = 
+        { 0, Short.MAX_VALUE, Short.MIN_VALUE, -1, 1 };
+    private static final int[] BYTE_EDGES = 
+        { 0, Byte.MAX_VALUE, Byte.MIN_VALUE, -1, 1 };
+    private static final double LOG_NOT_EDGE = Math.log(0.75d);
+    private static final float[] FLOAT_EDGES = 
+        { Float.MAX_VALUE, Float.MIN_VALUE, 0.0f };
+    private static final double[] DOUBLE_EDGES = 
+        { Double.MAX_VALUE, Double.MIN_VALUE, 0.0d };
+    private static final double LOG_NOT_FLOAT_EDGE = Math.log(0.85d);
+    
     private long           randomSeed = System.currentTimeMillis();
-    private Random         random = new Random(randomSeed);
-    private ParameterBunch parameterBunch = new ParameterBunch();
-    private static Gen     quickGen = new Gen();
+    private RandomSource   random = RandomSource.DEFAULT_ALGORITHM.create(randomSeed);
+    /* true if random is java.util.Random, whose streams are drawn from as 
+     * they were before WeightedChoice, so old recordings still reproduce */
+    private boolean        legacy;
+    private ParameterBunch.Snapshot params = ParameterBunch.Snapshot.EMPTY;
+    private int            maxArrayLength = MAX_ARRAY_LENGTH_DEFAULT;
+    private int            maxStrLength = MAX_STR_LENGTH_DEFAULT;
+    private int            maxSize = MAX_SIZE_DEFAULT;
+    private int            size = MAX_SIZE_DEFAULT;
+    private int            maxDepth = MAX_DEPTH_DEFAULT;
+    private int            depth;
+    /* false to make data as before sizes: at the maximum size at every 
+     * depth, with no maximum depth */
+    private boolean        sized = true;
+    private char[]         scratch = new char[0];
+    
+    /* Each thread's own Gen for g(), seeded apart from every other thread's */
+    private static final long THREAD_SEED = System.currentTimeMillis();
+    private static final AtomicLong threadCount = new AtomicLong();
+    private static final ThreadLocal<Gen> threadGen = new ThreadLocal<Gen>() {
+        @Override
+        protected Gen initialValue() {
+            return new Gen(deriveSeed(THREAD_SEED, threadCount.getAndIncrement()),
+                           RandomSource.DEFAULT_ALGORITHM, ParameterBunch.Snapshot.EMPTY);
+        }
+    };
+    
+    /** A Gen seeded by the current time, with no parameters set. */
+    public Gen() {
+    }
+    
+    private Gen(long seed, RandomSource.Algorithm algorithm, 
+                ParameterBunch.Snapshot params) {
+        randomSeed = seed;
+        useRandom(algorithm.create(seed));
+        setParams(params);
+    }
 
     /** 
      * Answers a random object, selected from the objects in the possibles 
@@ -57,6 +200,16 @@ public class Gen {
     public <A> A oneOf(float[] probabilities, A... possibles) {
         return possibles[select(probabilities)];
     }
+    
+    /** 
+     * Choose from objects with precompiled probabilities. This is equivalent 
+     * to a call to {@link #select(WeightedChoice)} in the form:
+     * <pre>possibles[select(choice)]</pre>
+     */
+    @SafeVarargs
+    public final <A> A oneOf(WeightedChoice choice, A... possibles) {
+        return possibles[select(choice)];
+    }
 
     /** 
      * Answers a random value from `from` to `to`, inclusive both  sides. Each 
@@ -96,31 +249,45 @@ public class Gen {
      *         return new MyObject(...bunch of random data...);
      * }</pre>
      * 
+     * Where the same probabilities are used again and again, 
+     * {@link #select(WeightedChoice)} is cheaper.
+     * 
      * @return an index of the probabilities array
      */
     public int select(float... probabilities) {
-        probabilities = probabilities.clone(); // avoid modifying input
+        if (legacy) {
+            return WeightedChoice.walk(WeightedChoice.normalise(probabilities), 
+                                       random.nextFloat());
+        }
         
         float sum = 0.0f;
         for (float f : probabilities) {
             sum += f;
         }
         
-        if (sum != 1.0f) {
-            for (int idx = 0; idx < probabilities.length; idx++) {
-                probabilities[idx] = probabilities[idx] / sum;
-            }
-        }
-        
-        float ran = random.nextFloat(), totalThusFar = 0.0f;
+        /* normalise the draw rather than the (caller's) probabilities */
+        float ran = random.nextFloat() * sum, totalThusFar = 0.0f;
         for (int idx=0; idx<probabilities.length; idx++) {
             totalThusFar += probabilities[idx];
             if (ran <= totalThusFar) {
                 return idx;
             }
         }
-        return probabilities.length - 1; // because our normalisation
-                                         // may suffer rounding errors
+        return probabilities.length - 1; // because of rounding errors
+    }
+    
+    /** 
+     * Answers an index selected with the probabilities precompiled into a
+     * WeightedChoice. This takes constant time and does not allocate, except
+     * with the legacy algorithm, which selects as {@link #select(float...)}.
+     * 
+     * @return an index in the range [0, choice.size())
+     */
+    public int select(WeightedChoice choice) {
+        if (legacy) {
+            return choice.selectLegacy(random.nextFloat());
+        }
+        return choice.select(random.nextInt());
     }
     
     /**
@@ -137,7 +304,7 @@ public class Gen {
     public float within(int from, int to) {
         if (from == to) return from;
         
-        switch (select(0.1f, 0.1f, 0.8f)) {
+        switch (select(WITHIN_BOUNDS)) {
         case 0:
             return from;
         case 1:
@@ -147,6 +314,29 @@ public class Gen {
         }
     }
     
+    /**
+     * Answers an Arbitrary of ints chosen uniformly from from to to, 
+     * inclusive, as by {@link #choose(int, int)}.
+     */
+    public static Arbitrary<Integer> intsBetween(final int from, final int to) {
+        if (to < from) {
+            throw new IllegalArgumentException("Empty range: " + from + " to " + to);
+        }
+        return new Arbitrary<Integer>() {
+            public Integer generate(Gen gen) { return gen.choose(from, to); }
+        };
+    }
+    
+    /** 
+     * Answers an Arbitrary of strings of the characters of alphabet, as made
+     * by {@link #arbString(Alphabet)}.
+     */
+    public static Arbitrary<String> strings(final Alphabet alphabet) {
+        return new Arbitrary<String>() {
+            public String generate(Gen gen) { return gen.arbString(alphabet); }
+        };
+    }
+    
     /**
      * Creates an arbitrary array, whose contents are arbitrary objects. There
      * is a 10% chance that a zero-length array will be returned. Otherwise,
@@ -158,25 +348,110 @@ public class Gen {
      *     return new PointSet.fromArray(arbArray(Point2D.class))
      * }</pre>
      * 
-     * Be careful of circular dependency. If an arbitrary() definition in class
-     * A calls this method, passing class A, then infinite recursion will occur.
+     * An arbitrary() definition in class A may call this method, passing 
+     * class A, to make recursive data: the elements are made one level 
+     * deeper, where arrays are shorter, as described at {@link #getSize()}, 
+     * and arrays made at the {@link #MAX_DEPTH} are empty. 
+     * {@link Arbitrary#recursive} also makes recursive values of bounded depth.
      * 
      * @return an arbitrary object array
      */
     @SuppressWarnings("unchecked")
     public <A> A[] arbArray(Class<A> arbitraryT) {
-        switch (select(0.1f, 0.9f)) {
-        case 0:
-            return (A[]) Array.newInstance(arbitraryT, 0);
-        case 1: default:
-        	int maxLength = getParams().getInt(PARAM_MAX_ARRAY_LENGTH,
-        			                           MAX_ARRAY_LENGTH_DEFAULT);
-            A[] ary = (A[]) Array.newInstance(arbitraryT, choose(1, maxLength));
+        A[] ary = (A[]) Array.newInstance(arbitraryT, 
+                                          depth < maxDepth || !sized ? arbArrayLength() : 0);
+        if (ary.length > 0) {
+            GeneratorRegistry.Generator elementGen = 
+                GeneratorRegistry.forClass(arbitraryT);
             for (int idx=0; idx<ary.length; idx++) {
-                ary[idx] = (A) createArbitraryFor(arbitraryT);
+                ary[idx] = (A) elementGen.generate(this);
             }
-            return ary;
         }
+        return ary;
+    }
+    
+    /**
+     * Answers an arbitrary array length: 0 with a 10% chance, otherwise 
+     * between 1 and the maximum array length, scaled by the size, inclusive.
+     */
+    int arbArrayLength() {
+        int maxLength = scale(maxArrayLength);
+        if (maxLength == 0) {
+            return 0;
+        }
+        switch (select(EMPTY_ARRAY)) {
+        case 0:
+            return 0;
+        case 1: default:
+            return choose(1, maxLength);
+        }
+    }
+    
+    /**
+     * Answers an arbitrary instance of arbitraryT, made by its arbitrary() 
+     * method one level deeper than the caller, or as {@link Arbitrary#of} 
+     * makes primitives, enumerations, arrays and strings. An arbitrary() 
+     * method of a recursive class should make its parts with this method,
+     * rather than by calling its arbitrary() method directly, and should 
+     * stop making parts once no depth is left:
+     * 
+     * <pre>public static Tree arbitrary(Gen gen) {
+     *     if (gen.getDepthLeft() == 0 || gen.select(0.4f, 0.6f) == 0) {
+     *         return new Leaf(gen.arbInt());
+     *     }
+     *     return new Node(gen.arbObject(Tree.class), gen.arbObject(Tree.class));
+     * }</pre>
+     * 
+     * @throws TestException if arbitraryT cannot be made, or if making it 
+     *         would go deeper than the {@link #MAX_DEPTH}
+     */
+    @SuppressWarnings("unchecked")
+    public <A> A arbObject(Class<A> arbitraryT) throws TestException {
+        return (A) GeneratorRegistry.forClass(arbitraryT).generate(this);
+    }
+    
+    /**
+     * Answers the size of the data being made, from 0 to the 
+     * {@link #MAX_SIZE}. A test run grows the size over its tries, from 0 
+     * for the first to the maximum, and then begins again, so that early 
+     * tries are small and cheap. Array and string lengths are scaled by the 
+     * size, and arbitrary() methods may scale what they make with 
+     * {@link #scale(int)}. 
+     * <p>
+     * The size is halved for each level that objects are being made below 
+     * the first, so recursive data of any shape stays bounded. Outside a 
+     * test run, and when replaying a recording made before sizes, or with 
+     * the legacy algorithm, the size is the maximum at every depth.
+     */
+    public int getSize() {
+        return depth > 1 && sized ? size >> Math.min(depth - 1, 31) : size;
+    }
+    
+    /**
+     * Answers n scaled by the size, rounded up: 0 at size 0, and n at the
+     * {@link #MAX_SIZE}. For example, an arbitrary() method making a graph 
+     * might give it <code>gen.choose(1, gen.scale(1000))</code> vertices.
+     */
+    public int scale(int n) {
+        return (int) (((long) n * getSize() + maxSize - 1) / maxSize);
+    }
+    
+    /**
+     * Answers the number of objects being made by arbitrary() methods, each
+     * within the last, where the calling arbitrary() method is the 
+     * innermost: 1 for an arbitrary() method making a property's argument.
+     */
+    public int getDepth() {
+        return depth;
+    }
+    
+    /**
+     * Answers how many levels deeper objects may be made, through 
+     * {@link #arbObject(Class)} and {@link #arbArray(Class)}, before the 
+     * {@link #MAX_DEPTH} is reached.
+     */
+    public int getDepthLeft() {
+        return maxDepth - depth;
     }
     
     /**
@@ -186,7 +461,7 @@ public class Gen {
      * @return an arbitrary byte
      */
     public byte arbByte() {
-        switch (select(0.05f, 0.05f, 0.05f, 0.05f, 0.05f, 0.75f)) {
+        switch (select(EDGE_OR_ANY)) {
         case 0:
             return 0;
         case 1:
@@ -209,7 +484,7 @@ public class Gen {
      * @return an arbitrary short
      */
     public short arbShort() {
-        switch (select(0.05f, 0.05f, 0.05f, 0.05f, 0.05f, 0.75f)) {
+        switch (select(EDGE_OR_ANY)) {
         case 0:
             return 0;
         case 1:
@@ -236,7 +511,7 @@ public class Gen {
      * @return an arbitrary int
      */
     public int arbInt() {
-        switch (select(0.05f, 0.05f, 0.05f, 0.05f, 0.05f, 0.75f)) {
+        switch (select(EDGE_OR_ANY)) {
         case 0:
             return 0;
         case 1:
@@ -259,7 +534,7 @@ public class Gen {
      * @return an arbitrary long
      */
     public long arbLong() {
-        switch (select(0.05f, 0.05f, 0.05f, 0.05f, 0.05f, 0.75f)) {
+        switch (select(EDGE_OR_ANY)) {
         case 0:
             return 0l;
         case 1:
@@ -292,7 +567,7 @@ public class Gen {
      * @return an arbitrary float
      */
     public float arbNastyFloat() {
-        switch (select(0.05f, 0.05f, 0.05f, 0.05f, 0.05f, 0.05f, 0.7f)) {
+        switch (select(NASTY_OR_ANY)) {
         case 0:
             return Float.NaN;
         case 1:
@@ -317,7 +592,7 @@ public class Gen {
      * @return an arbitrary float
      */
     public float arbFloat() {
-        switch (select(0.05f, 0.05f, 0.05f, 0.85f)) {
+        switch (select(EDGE_FLOAT_OR_ANY)) {
         case 0:
             return Float.MAX_VALUE;
         case 1:
@@ -335,7 +610,7 @@ public class Gen {
      * @return an arbitrary float
      */
     public float arbFloat(int range) {
-    	switch (select(0.05f, 0.05f, 0.9f)) {
+    	switch (select(BOUND_OR_ANY)) {
     	case 0:
     		return 0.0f;
     	case 1:
@@ -353,7 +628,7 @@ public class Gen {
      * @return an arbitrary double
      */
     public double arbNastyDouble() {
-        switch (select(0.05f, 0.05f, 0.05f, 0.05f, 0.05f, 0.05f, 0.7f)) {
+        switch (select(NASTY_OR_ANY)) {
         case 0:
             return Double.NaN;
         case 1:
@@ -378,7 +653,7 @@ public class Gen {
      * @return an arbitrary double
      */
     public double arbDouble() {
-        switch (select(0.05f, 0.05f, 0.05f, 0.85f)) {
+        switch (select(EDGE_FLOAT_OR_ANY)) {
         case 0:
             return Double.MAX_VALUE;
         case 1:
@@ -401,18 +676,32 @@ public class Gen {
     
     /**
      * Answers an arbitrary string, with an inflated probability of returning
-     * an empty string. Generated strings have a maximum length of 1024 characters.
+     * an empty string. Generated strings have a maximum length of 1024 
+     * characters, scaled by the size.
      * Characters within the string will all be on the latin-1 page.
      * 
      * @return an arbitrary string
      */
     public String arbString() {
-        switch (select(0.2f, 0.8f)) {
+        if (legacy) {
+            return arbLegacyString();
+        }
+        return arbString(Alphabet.LATIN_1);
+    }
+    
+    /** 
+     * Answers a latin-1 string as arbString() did before alphabets, drawing 
+     * each char on its own, for the streams of legacy recordings.
+     */
+    private String arbLegacyString() {
+        int maxLength = scale(maxStrLength);
+        if (maxLength == 0) {
+            return "";
+        }
+        switch (select(EMPTY_STR)) {
         case 0:
             return "";
         case 1: default:
-        	int maxLength = getParams().getInt(PARAM_MAX_STR_LENGTH,
-        			                           MAX_STR_LENGTH_DEFAULT);
             char[] cs = new char[choose(1, maxLength)];
             for (int idx=0; idx<cs.length; idx++) {
                 cs[idx] = (char) random.nextInt(256); // inline of arbChar()
@@ -422,77 +711,503 @@ public class Gen {
     }
     
     /**
-     * Answers a common Gen instance that can be used to call arbitrary() methods
-     * outside the context of SuperCheck.
+     * Answers an arbitrary string of characters from an alphabet, with an 
+     * inflated probability of returning an empty string. Generated strings 
+     * have a maximum length of 1024 code points, or of the 
+     * {@link #MAX_STR_LENGTH} parameter, scaled by the size.
+     * 
+     * @return an arbitrary string
+     */
+    public String arbString(Alphabet alphabet) {
+        int maxLength = scale(maxStrLength);
+        if (maxLength == 0) {
+            return "";
+        }
+        switch (select(EMPTY_STR)) {
+        case 0:
+            return "";
+        case 1: default:
+            return arbString(alphabet, 1, maxLength);
+        }
+    }
+    
+    /**
+     * Answers an arbitrary string of characters from an alphabet, whose length
+     * in code points is chosen uniformly from minLength to maxLength, 
+     * inclusive. Strings of a fixed length may be had by passing the same 
+     * minLength and maxLength:
+     * 
+     * <pre>String document = gen.arbString(Alphabet.ASCII, 4096, 4096);</pre>
+     * 
+     * The characters are generated into a buffer kept by this Gen, so long
+     * strings cost little more than the String itself.
+     * 
+     * @return an arbitrary string
+     */
+    public String arbString(Alphabet alphabet, int minLength, int maxLength) {
+        int length = choose(minLength, maxLength);
+        int room = length * alphabet.maxCharsPerCodePoint();
+        if (scratch.length < room) {
+            scratch = new char[Math.max(room, scratch.length * 2)];
+        }
+        return new String(scratch, 0, alphabet.fill(scratch, length, random));
+    }
+    
+    /**
+     * Answers an arbitrary int array. Its length is chosen as for 
+     * {@link #arbArray(Class)}, and its elements are distributed as if by
+     * {@link #arbInt()}, but the array is filled in bulk: random words are 
+     * split between elements, and edge values are then scattered over the 
+     * array, rather than making a selection for every element.
+     * 
+     * @return an arbitrary int array
+     */
+    public int[] arbIntArray() {
+        return intArray(arbArrayLength());
+    }
+    
+    /**
+     * Answers an arbitrary int array, made as by {@link #arbIntArray()}, 
+     * whose length is chosen uniformly from minLength to maxLength, 
+     * inclusive. Arrays of a fixed length may be had by passing the same 
+     * minLength and maxLength.
+     * 
+     * @return an arbitrary int array
+     */
+    public int[] arbIntArray(int minLength, int maxLength) {
+        return intArray(choose(minLength, maxLength));
+    }
+    
+    private int[] intArray(int length) {
+        int[] ary = new int[length];
+        for (int idx=0; idx<ary.length; idx+=2) {
+            long bits = random.nextLong();
+            ary[idx] = (int) bits;
+            if (idx + 1 < ary.length) {
+                ary[idx + 1] = (int) (bits >>> 32);
+            }
+        }
+        for (long idx=nextEdge(-1); idx<ary.length; idx=nextEdge(idx)) {
+            ary[(int) idx] = INT_EDGES[random.nextInt(INT_EDGES.length)];
+        }
+        return ary;
+    }
+    
+    /**
+     * Answers an arbitrary long array, filled in bulk as by 
+     * {@link #arbIntArray()}, with elements distributed as if by 
+     * {@link #arbLong()}.
+     * 
+     * @return an arbitrary long array
+     */
+    public long[] arbLongArray() {
+        return longArray(arbArrayLength());
+    }
+    
+    /**
+     * Answers an arbitrary long array, made as by {@link #arbLongArray()}, 
+     * with its length chosen as by {@link #arbIntArray(int, int)}.
+     * 
+     * @return an arbitrary long array
+     */
+    public long[] arbLongArray(int minLength, int maxLength) {
+        return longArray(choose(minLength, maxLength));
+    }
+    
+    private long[] longArray(int length) {
+        long[] ary = new long[length];
+        for (int idx=0; idx<ary.length; idx++) {
+            ary[idx] = random.nextLong();
+        }
+        for (long idx=nextEdge(-1); idx<ary.length; idx=nextEdge(idx)) {
+            ary[(int) idx] = LONG_EDGES[random.nextInt(LONG_EDGES.length)];
+        }
+        return ary;
+    }
+    
+    /**
+     * Answers an arbitrary short array, filled in bulk as by 
+     * {@link #arbIntArray()}, with elements distributed as if by 
+     * {@link #arbShort()}.
      * 
-     * @return a common Gen instance
+     * @return an arbitrary short array
+     */
+    public short[] arbShortArray() {
+        return shortArray(arbArrayLength());
+    }
+    
+    /**
+     * Answers an arbitrary short array, made as by {@link #arbShortArray()}, 
+     * with its length chosen as by {@link #arbIntArray(int, int)}.
+     * 
+     * @return an arbitrary short array
+     */
+    public short[] arbShortArray(int minLength, int maxLength) {
+        return shortArray(choose(minLength, maxLength));
+    }
+    
+    private short[] shortArray(int length) {
+        short[] ary = new short[length];
+        for (int idx=0; idx<ary.length; idx+=4) {
+            long bits = random.nextLong();
+            for (int s=idx; s<idx+4 && s<ary.length; s++, bits>>>=16) {
+                ary[s] = (short) bits;
+            }
+        }
+        for (long idx=nextEdge(-1); idx<ary.length; idx=nextEdge(idx)) {
+            ary[(int) idx] = (short) SHORT_EDGES[random.nextInt(SHORT_EDGES.length)];
+        }
+        return ary;
+    }
+    
+    /**
+     * Answers an arbitrary byte array, filled in bulk as by 
+     * {@link #arbIntArray()}, with elements distributed as if by 
+     * {@link #arbByte()}.
+     * 
+     * @return an arbitrary byte array
+     */
+    public byte[] arbByteArray() {
+        return byteArray(arbArrayLength());
+    }
+    
+    /**
+     * Answers an arbitrary byte array, made as by {@link #arbByteArray()}, 
+     * with its length chosen as by {@link #arbIntArray(int, int)}.
+     * 
+     * @return an arbitrary byte array
+     */
+    public byte[] arbByteArray(int minLength, int maxLength) {
+        return byteArray(choose(minLength, maxLength));
+    }
+    
+    private byte[] byteArray(int length) {
+        byte[] ary = new byte[length];
+        for (int idx=0; idx<ary.length; idx+=8) {
+            long bits = random.nextLong();
+            for (int b=idx; b<idx+8 && b<ary.length; b++, bits>>>=8) {
+                ary[b] = (byte) bits;
+            }
+        }
+        for (long idx=nextEdge(-1); idx<ary.length; idx=nextEdge(idx)) {
+            ary[(int) idx] = (byte) BYTE_EDGES[random.nextInt(BYTE_EDGES.length)];
+        }
+        return ary;
+    }
+    
+    /**
+     * Answers an arbitrary boolean array, whose length is chosen as for 
+     * {@link #arbArray(Class)}. Each random word gives 64 elements.
+     * 
+     * @return an arbitrary boolean array
+     */
+    public boolean[] arbBooleanArray() {
+        return booleanArray(arbArrayLength());
+    }
+    
+    /**
+     * Answers an arbitrary boolean array, made as by {@link #arbBooleanArray()}, 
+     * with its length chosen as by {@link #arbIntArray(int, int)}.
+     * 
+     * @return an arbitrary boolean array
+     */
+    public boolean[] arbBooleanArray(int minLength, int maxLength) {
+        return booleanArray(choose(minLength, maxLength));
+    }
+    
+    private boolean[] booleanArray(int length) {
+        boolean[] ary = new boolean[length];
+        for (int idx=0; idx<ary.length; idx+=64) {
+            long bits = random.nextLong();
+            for (int b=idx; b<idx+64 && b<ary.length; b++, bits>>>=1) {
+                ary[b] = (bits & 1) != 0;
+            }
+        }
+        return ary;
+    }
+    
+    /**
+     * Answers an arbitrary char array, whose length is chosen as for 
+     * {@link #arbArray(Class)}, of characters on the latin-1 page. Each
+     * random word gives 8 elements.
+     * 
+     * @return an arbitrary char array
+     */
+    public char[] arbCharArray() {
+        return charArray(arbArrayLength());
+    }
+    
+    /**
+     * Answers an arbitrary char array, made as by {@link #arbCharArray()}, 
+     * with its length chosen as by {@link #arbIntArray(int, int)}.
+     * 
+     * @return an arbitrary char array
+     */
+    public char[] arbCharArray(int minLength, int maxLength) {
+        return charArray(choose(minLength, maxLength));
+    }
+    
+    private char[] charArray(int length) {
+        char[] ary = new char[length];
+        for (int idx=0; idx<ary.length; idx+=8) {
+            long bits = random.nextLong();
+            for (int c=idx; c<idx+8 && c<ary.length; c++, bits>>>=8) {
+                ary[c] = (char) (bits & 0xFF);
+            }
+        }
+        return ary;
+    }
+    
+    /**
+     * Answers an arbitrary float array, filled in bulk as by 
+     * {@link #arbIntArray()}, with elements distributed as if by 
+     * {@link #arbFloat()}. Each element takes its whole and fractional parts
+     * from a single random word.
+     * 
+     * @return an arbitrary float array
+     */
+    public float[] arbFloatArray() {
+        return floatArray(arbArrayLength());
+    }
+    
+    /**
+     * Answers an arbitrary float array, made as by {@link #arbFloatArray()}, 
+     * with its length chosen as by {@link #arbIntArray(int, int)}.
+     * 
+     * @return an arbitrary float array
+     */
+    public float[] arbFloatArray(int minLength, int maxLength) {
+        return floatArray(choose(minLength, maxLength));
+    }
+    
+    private float[] floatArray(int length) {
+        float[] ary = new float[length];
+        for (int idx=0; idx<ary.length; idx++) {
+            long bits = random.nextLong();
+            ary[idx] = (int) (bits >>> 32) + (bits & 0xFFFFFF) * 0x1.0p-24f;
+        }
+        for (long idx=nextFloatEdge(-1); idx<ary.length; idx=nextFloatEdge(idx)) {
+            ary[(int) idx] = FLOAT_EDGES[random.nextInt(FLOAT_EDGES.length)];
+        }
+        return ary;
+    }
+    
+    /**
+     * Answers an arbitrary double array, filled in bulk as by 
+     * {@link #arbFloatArray()}, with elements distributed as if by 
+     * {@link #arbDouble()}.
+     * 
+     * @return an arbitrary double array
+     */
+    public double[] arbDoubleArray() {
+        return doubleArray(arbArrayLength());
+    }
+    
+    /**
+     * Answers an arbitrary double array, made as by {@link #arbDoubleArray()}, 
+     * with its length chosen as by {@link #arbIntArray(int, int)}.
+     * 
+     * @return an arbitrary double array
+     */
+    public double[] arbDoubleArray(int minLength, int maxLength) {
+        return doubleArray(choose(minLength, maxLength));
+    }
+    
+    private double[] doubleArray(int length) {
+        double[] ary = new double[length];
+        for (int idx=0; idx<ary.length; idx++) {
+            long bits = random.nextLong();
+            ary[idx] = (int) (bits >>> 32) + (bits & 0xFFFFFFFFL) * 0x1.0p-32;
+        }
+        for (long idx=nextFloatEdge(-1); idx<ary.length; idx=nextFloatEdge(idx)) {
+            ary[(int) idx] = DOUBLE_EDGES[random.nextInt(DOUBLE_EDGES.length)];
+        }
+        return ary;
+    }
+    
+    /** 
+     * Answers the index of the next element, after idx, to receive an edge 
+     * value. Gaps between edges are geometrically distributed, so that each 
+     * element is an edge with the probability arbInt() gives edge values.
+     */
+    private long nextEdge(long idx) {
+        return idx + 1 + (long) (Math.log(1.0d - random.nextDouble()) / LOG_NOT_EDGE);
+    }
+    
+    /** As {@link #nextEdge(long)}, for the edge values of arbFloat(). */
+    private long nextFloatEdge(long idx) {
+        return idx + 1 + (long) (Math.log(1.0d - random.nextDouble()) / LOG_NOT_FLOAT_EDGE);
+    }
+    
+    /**
+     * Answers the calling thread's own Gen, which can be used to call 
+     * arbitrary() methods outside the context of SuperCheck. Threads never 
+     * share the Gen answered, so any number of threads can generate at once 
+     * without contending, and each thread's Gen is seeded apart from the 
+     * others'.
+     * 
+     * @return the calling thread's Gen
      */
     public static Gen g() {
-    	return quickGen;
+    	return threadGen.get();
+    }
+    
+    /**
+     * Answers a new Gen whose values are independent of this Gen's, to hand to
+     * another thread. The child's seed is drawn from this Gen, so a child is
+     * as reproducible as any other value this Gen answers, and splitting 
+     * advances this Gen by one draw. The child has this Gen's algorithm, size
+     * and depth, and shares its parameters, so what it makes is as large and 
+     * as deep as what this Gen would make in its place. E.g.:
+     * 
+     * <pre>final Gen child = gen.split();
+     * executor.submit(new Callable&lt;Point2D&gt;() {
+     *     public Point2D call() {
+     *         return Point2D.arbitrary(child);
+     *     }
+     * });</pre>
+     */
+    public Gen split() {
+        Gen child = new Gen(random.nextLong(), random.algorithm(), params);
+        child.size = size;
+        child.sized = sized;
+        child.depth = depth;
+        return child;
     }
     
+    /**
+     * Answers a parameter of the arbitrary data made by this Gen, or its 
+     * default if it was not set. This costs little more than reading a 
+     * field, so arbitrary() methods may read their parameters as they need 
+     * them.
+     */
+    public <T> T getParam(ParamKey<T> key) {
+        return params.get(key);
+    }
+    
+    /**
+     * Answers a copy of the parameters of this Gen. Changing the copy does not
+     * change the parameters; use {@link #setParams(ParameterBunch)}.
+     */
     public ParameterBunch getParams() {
-    	return parameterBunch;
+    	return params.toBunch();
     }
     
+    /**
+     * Sets the parameters of the arbitrary data made by this Gen, such as 
+     * {@link #MAX_ARRAY_LENGTH}, to a snapshot of newBunch. Changes to 
+     * newBunch afterwards have no effect.
+     */
     public void setParams(ParameterBunch newBunch) {
-    	parameterBunch = newBunch;
+    	setParams(newBunch.snapshot());
     }
     
-    <T> Object createArbitraryFor(Class<T> arbitraryT) throws TestException {
-        if (arbitraryT.isEnum()) {
-            T[] enumCs = arbitraryT.getEnumConstants();
-            return enumCs[choose(0, enumCs.length - 1)];
-        } else if (arbitraryT.isArray() 
-        		&& arbitraryT.getComponentType().isPrimitive()) {
-            throw new TestException("Generation of primitive arrays is unsupported."
-            		+ " Use an array of primitive wrapper objects instead.");
-        } else if (arbitraryT.isArray() /* && comp not prim */) {
-        	return arbArray(arbitraryT.getComponentType());
-        } else if (arbitraryT.isPrimitive()) {
-            return createPrimitiveFor(arbitraryT);
-        } else if (arbitraryT == String.class) {
-            return arbString();
+    void setParams(ParameterBunch.Snapshot snapshot) {
+        params = snapshot;
+        maxArrayLength = snapshot.get(MAX_ARRAY_LENGTH);
+        maxStrLength = snapshot.get(MAX_STR_LENGTH);
+        maxSize = Math.max(1, snapshot.get(MAX_SIZE));
+        maxDepth = snapshot.get(MAX_DEPTH);
+        size = maxSize;
+    }
+    
+    /** 
+     * Sets the size for the try at tryIndex, counting from 0, of a test run:
+     * sizes grow by one each try from 0 to the maximum, then begin again.
+     */
+    void sizeForTry(long tryIndex) {
+        if (sized) {
+            size = (int) (tryIndex % (maxSize + 1));
+        }
+    }
+    
+    /** 
+     * Set false to make data as before sizes, for recordings made then: at 
+     * the maximum size for every try and at every depth, with no maximum 
+     * depth.
+     */
+    void setSized(boolean sized) {
+        this.sized = sized;
+        if (!sized) {
+            size = maxSize;
+        }
+    }
+    
+    /** 
+     * Enters the making of an object by an arbitrary() method of 
+     * arbitraryT, one level deeper. Each enter must be followed by a 
+     * {@link #leave()}.
+     * 
+     * @throws DepthException if the maximum depth has been reached
+     */
+    void enter(Class<?> arbitraryT) throws DepthException {
+        if (depth >= maxDepth && sized) {
+            throw new DepthException("Making " + arbitraryT.getName() + " would go "
+                    + "deeper than the maximum depth of " + maxDepth + "; its "
+                    + "arbitrary() method should stop recursing at gen.getDepthLeft()");
         }
+        depth++;
+    }
+    
+    void leave() {
+        depth--;
+    }
+    
+    /** 
+     * Thrown when making an object would go deeper than the 
+     * {@link #MAX_DEPTH}. A TestRun fails the try it was making, rather than
+     * stopping.
+     */
+    static class DepthException extends TestException {
+        private static final long serialVersionUID = 1L;
         
-        /* otherwise we want an arbitrary arbitraryT */
-        try {
-            Method maker = arbitraryT.getDeclaredMethod("arbitrary", 
-                    new Class[] { Gen.class });
-            return maker.invoke(null, new Object[] { this });
-        } catch (NoSuchMethodException e) {
-            throw new TestException("Missing arbitrary() definition on: "
-                    + arbitraryT.getName());
-        } catch (InvocationTargetException e) {
-            throw new TestException(arbitraryT.getName() + ".arbitrary() threw " +
-                    e.getCause());
-        } catch (IllegalAccessException e) {
-            throw new TestException(e.toString());
+        DepthException(String s) {
+            super(s);
         }
     }
     
+    <T> Object createArbitraryFor(Class<T> arbitraryT) throws TestException {
+        return GeneratorRegistry.forClass(arbitraryT).generate(this);
+    }
+    
+    /** Answers an arbitrary primitive, boxed, for a primitive or wrapper type. */
     Object createPrimitiveFor(Class<?> primitiveT) {
-        if (primitiveT == Boolean.TYPE) {
+        if (primitiveT == Boolean.TYPE || primitiveT == Boolean.class) {
             return arbBoolean();
-        } else if (primitiveT == Character.TYPE) {
+        } else if (primitiveT == Character.TYPE || primitiveT == Character.class) {
             return arbChar();
-        } else if (primitiveT == Byte.TYPE) {
+        } else if (primitiveT == Byte.TYPE || primitiveT == Byte.class) {
             return arbByte();
-        } else if (primitiveT == Short.TYPE) {
+        } else if (primitiveT == Short.TYPE || primitiveT == Short.class) {
             return arbShort();
-        } else if (primitiveT == Integer.TYPE) {
+        } else if (primitiveT == Integer.TYPE || primitiveT == Integer.class) {
             return arbInt();
-        } else if (primitiveT == Long.TYPE) {
+        } else if (primitiveT == Long.TYPE || primitiveT == Long.class) {
             return arbLong();
-        } else if (primitiveT == Float.TYPE) {
+        } else if (primitiveT == Float.TYPE || primitiveT == Float.class) {
             return arbFloat();
-        } else if (primitiveT == Double.TYPE) {
+        } else if (primitiveT == Double.TYPE || primitiveT == Double.class) {
             return arbDouble();
         } else { /* Void.TYPE */
             return null;
         }
     }
     
+    /**
+     * Derives a well mixed seed for the index'th child of a seed, so that 
+     * neighbouring indices give unrelated random sequences.
+     */
+    static long deriveSeed(long seed, long index) {
+        return RandomSource.mix64(seed + (index + 1) * 0x9E3779B97F4A7C15L);
+    }
+    
+    /** 
+     * Answers the algorithm behind this Gen's random values. 
+     */
+    public RandomSource.Algorithm getAlgorithm() {
+        return random.algorithm();
+    }
+    
     long getSeed() {
         return randomSeed;
     }
@@ -501,4 +1216,25 @@ public class Gen {
         random.setSeed(this.randomSeed = randomSeed);
     }
     
+    RandomSource getRandom() {
+        return random;
+    }
+    
+    void setRandom(RandomSource random) {
+        useRandom(random);
+    }
+    
+    void setSeed(long randomSeed, RandomSource.Algorithm algorithm) {
+        if (algorithm == random.algorithm()) {
+            setSeed(randomSeed);
+        } else {
+            useRandom(algorithm.create(this.randomSeed = randomSeed));
+        }
+    }
+    
+    private void useRandom(RandomSource random) {
+        this.random = random;
+        legacy = random.algorithm() == RandomSource.Algorithm.LEGACY;
+    }
+    
 }
@@ -0,0 +1,228 @@
+package tbc.supercheck;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * A GeneratorRegistry remembers, for each class, how Gen creates arbitrary 
+ * instances of it. The first request for a class decides whether it is an 
+ * enumeration, an array, a primitive, a String or a class with an arbitrary() 
+ * method, and binds the arbitrary() method to a MethodHandle. Later requests 
+ * for the same class reuse that decision, including the decision that a class 
+ * cannot be generated. Objects made by arbitrary() methods are made one level
+ * deeper in their Gen than their maker.
+ * <p>
+ * A parameter of a property bound with {@link From} is generated by the
+ * {@link Arbitrary} it names instead of by the generator of its class.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+final class GeneratorRegistry {
+    
+    /** Creates arbitrary instances of one class. */
+    interface Generator {
+        Object generate(Gen gen) throws TestException;
+    }
+    
+    private static final MethodType ARBITRARY_TYPE = 
+        MethodType.methodType(Object.class, Gen.class);
+    
+    private static final ClassValue<Generator> generators = new ClassValue<Generator>() {
+        @Override
+        protected Generator computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+    
+    private GeneratorRegistry() {
+    }
+    
+    /**
+     * Answers the generator for arbitraryT. Generators that cannot create their 
+     * class throw a TestException each time they are asked to.
+     */
+    static Generator forClass(Class<?> arbitraryT) {
+        return generators.get(arbitraryT);
+    }
+    
+    /**
+     * Answers the generator for parameter pIdx of prop: the Arbitrary it is
+     * bound to with {@link From}, or else the generator for its class. A
+     * parameter bound to something that is not an Arbitrary has a generator
+     * that throws a TestException each time it is asked to generate.
+     */
+    static Generator forParameter(Method prop, int pIdx) {
+        for (Annotation annotation : prop.getParameterAnnotations()[pIdx]) {
+            if (annotation instanceof From) {
+                return bound(prop.getDeclaringClass(), ((From) annotation).value());
+            }
+        }
+        return forClass(prop.getParameterTypes()[pIdx]);
+    }
+    
+    /** Answers the generators for each of prop's parameters, in order. */
+    static Generator[] forParameters(Method prop) {
+        Generator[] generators = new Generator[prop.getParameterTypes().length];
+        for (int pIdx=0; pIdx<generators.length; pIdx++) {
+            generators[pIdx] = forParameter(prop, pIdx);
+        }
+        return generators;
+    }
+    
+    /**
+     * Answers the Arbitrary in the static field or no-argument static method
+     * named name of owner.
+     */
+    private static Generator bound(Class<?> owner, String name) {
+        Object arbitrary;
+        try {
+            try {
+                Field field = owner.getField(name);
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    return failure("@From(\"" + name + "\"): " + field + " is not static");
+                }
+                arbitrary = field.get(null);
+            } catch (NoSuchFieldException e) {
+                Method method = owner.getMethod(name);
+                if (!Modifier.isStatic(method.getModifiers())) {
+                    return failure("@From(\"" + name + "\"): " + method + " is not static");
+                }
+                arbitrary = method.invoke(null);
+            }
+        } catch (NoSuchMethodException e) {
+            return failure("@From(\"" + name + "\"): no public static field or method "
+                    + name + " on " + owner.getName());
+        } catch (ReflectiveOperationException e) {
+            return failure("@From(\"" + name + "\"): " + e);
+        }
+        if (!(arbitrary instanceof Arbitrary)) {
+            return failure("@From(\"" + name + "\"): " + owner.getName() + "." + name
+                    + " is " + arbitrary + ", not an Arbitrary");
+        }
+        return (Arbitrary<?>) arbitrary;
+    }
+    
+    private static Generator resolve(final Class<?> arbitraryT) {
+        if (arbitraryT.isEnum()) {
+            final Object[] enumCs = arbitraryT.getEnumConstants();
+            return new Generator() {
+                public Object generate(Gen gen) {
+                    return enumCs[gen.choose(0, enumCs.length - 1)];
+                }
+            };
+        } else if (arbitraryT.isArray() 
+                && arbitraryT.getComponentType().isPrimitive()) {
+            return primitiveArrayGenerator(arbitraryT.getComponentType());
+        } else if (arbitraryT.isArray() /* && comp not prim */) {
+            final Class<?> componentT = arbitraryT.getComponentType();
+            return new Generator() {
+                public Object generate(Gen gen) {
+                    return gen.arbArray(componentT);
+                }
+            };
+        } else if (arbitraryT.isPrimitive() || isPrimitiveWrapper(arbitraryT)) {
+            return new Generator() {
+                public Object generate(Gen gen) {
+                    return gen.createPrimitiveFor(arbitraryT);
+                }
+            };
+        } else if (arbitraryT == String.class) {
+            return new Generator() {
+                public Object generate(Gen gen) {
+                    return gen.arbString();
+                }
+            };
+        }
+        
+        /* otherwise we want an arbitrary arbitraryT */
+        Method maker;
+        try {
+            maker = arbitraryT.getDeclaredMethod("arbitrary", 
+                    new Class<?>[] { Gen.class });
+        } catch (NoSuchMethodException e) {
+            return failure("Missing arbitrary() definition on: "
+                    + arbitraryT.getName());
+        }
+        if (!Modifier.isStatic(maker.getModifiers())) {
+            return failure("Missing arbitrary() definition on: "
+                    + arbitraryT.getName() + " (arbitrary() is not static)");
+        }
+        
+        final MethodHandle handle;
+        try {
+            handle = MethodHandles.lookup().unreflect(maker).asType(ARBITRARY_TYPE);
+        } catch (IllegalAccessException e) {
+            return failure(e.toString());
+        }
+        return new Generator() {
+            public Object generate(Gen gen) {
+                gen.enter(arbitraryT);
+                try {
+                    return (Object) handle.invokeExact(gen);
+                } catch (TestException e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new TestException(arbitraryT.getName() 
+                            + ".arbitrary() threw " + t, t);
+                } finally {
+                    gen.leave();
+                }
+            }
+        };
+    }
+    
+    private static Generator primitiveArrayGenerator(Class<?> primitiveT) {
+        if (primitiveT == Boolean.TYPE) {
+            return new Generator() {
+                public Object generate(Gen gen) { return gen.arbBooleanArray(); }
+            };
+        } else if (primitiveT == Character.TYPE) {
+            return new Generator() {
+                public Object generate(Gen gen) { return gen.arbCharArray(); }
+            };
+        } else if (primitiveT == Byte.TYPE) {
+            return new Generator() {
+                public Object generate(Gen gen) { return gen.arbByteArray(); }
+            };
+        } else if (primitiveT == Short.TYPE) {
+            return new Generator() {
+                public Object generate(Gen gen) { return gen.arbShortArray(); }
+            };
+        } else if (primitiveT == Integer.TYPE) {
+            return new Generator() {
+                public Object generate(Gen gen) { return gen.arbIntArray(); }
+            };
+        } else if (primitiveT == Long.TYPE) {
+            return new Generator() {
+                public Object generate(Gen gen) { return gen.arbLongArray(); }
+            };
+        } else if (primitiveT == Float.TYPE) {
+            return new Generator() {
+                public Object generate(Gen gen) { return gen.arbFloatArray(); }
+            };
+        } else {
+            return new Generator() {
+                public Object generate(Gen gen) { return gen.arbDoubleArray(); }
+            };
+        }
+    }
+    
+    private static boolean isPrimitiveWrapper(Class<?> t) {
+        return t == Boolean.class || t == Character.class || t == Byte.class 
+            || t == Short.class || t == Integer.class || t == Long.class 
+            || t == Float.class || t == Double.class;
+    }
+    
+    private static Generator failure(final String message) {
+        return new Generator() {
+            public Object generate(Gen gen) {
+                throw new TestException(message);
+            }
+        };
+    }
+}
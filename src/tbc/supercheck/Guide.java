@@ -0,0 +1,251 @@
+package tbc.supercheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Guide steers the generation of a property's data by the coverage it 
+ * reaches. The choices of each try that reaches branch edges no earlier try 
+ * reached, or that takes a branch a small number of times it never took, are
+ * kept in a corpus. Branches taken many times are loops over the data, whose
+ * counts would make most tries look new, so their counts are not. Three 
+ * tries in four then start from a mutated copy of a corpus entry, so the 
+ * search concentrates around data known to get somewhere new; the rest draw 
+ * fresh data. Mutations are drawn from the try's seed, so a guided run is 
+ * repeatable for as long as the code under test is.
+ * <p>
+ * Half the tries of an entry that reached a new edge set each byte of its 
+ * first choices to each value in turn, newest entry first, as a byte compared 
+ * with a constant is the commonest branch to get past. The other tries mutate
+ * entries chosen by how rarely the code they reach is reached: each entry is
+ * weighted by the inverse of the number of tries that hit its rarest edge, 
+ * so a new entry is chosen most until its mutations have made its edge 
+ * common. Half of those mutate a single choice. Mutations only change the 
+ * high 32 bits of choices drawn as ints, the only bits used.
+ * <p>
+ * A Guide belongs to one execution of a property, whose tries run one at a 
+ * time.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+final class Guide {
+    
+    /** The most entries kept; beyond it, new entries replace common ones. */
+    static final int MAX_CORPUS = 4096;
+    
+    /* The weights of entries change with every try, but are only worked out
+     * again this often, or when an entry is added */
+    private static final int REWEIGH_TRIES = 64;
+    
+    /* The choices of an entry whose bytes are swept through every value */
+    private static final int SWEPT_CHOICES = 16;
+    
+    private static final long[] FRESH = new long[0];
+    
+    private final List<Entry> corpus = new ArrayList<Entry>();
+    private final byte[] seen = new byte[Coverage.MAP_SIZE];
+    
+    /* Entries that reached new edges whose sweeps are unfinished, the newest
+     * last */
+    private final List<Entry> sweeping = new ArrayList<Entry>();
+    
+    /* The number of tries that hit each edge */
+    private final int[] edgeTries = new int[Coverage.MAP_SIZE];
+    
+    /* The running sums of the weights of the entries, in corpus order */
+    private double[] weights = new double[0];
+    private int sinceWeighed;
+    
+    private ChoiceSource source;
+    private RandomSource mutator;
+    
+    /** Makes gen draw its data through this guide. */
+    void attach(Gen gen) {
+        source = new ChoiceSource(gen.getRandom());
+        gen.setRandom(source);
+    }
+    
+    /** Prepares the next try, whose mutations are drawn from seed. */
+    void beforeTry(long seed) {
+        mutator = RandomSource.Algorithm.SPLITMIX.create(seed);
+        long[] swept = sweeping.isEmpty() || mutator.nextBoolean() ? null : sweep();
+        if (swept != null) {
+            source.start(swept);
+        } else if (corpus.isEmpty() || mutator.nextInt(4) == 0) {
+            source.start(FRESH);
+        } else {
+            source.start(mutate(choose()));
+        }
+        Coverage.reset();
+    }
+    
+    /**
+     * Keeps the choices of the try just made if it reached new edges, or
+     * took an edge a new number of times, answering true if so.
+     */
+    boolean afterTry() {
+        int found = Coverage.addTo(seen);
+        int rarest = Coverage.countTries(edgeTries);
+        if (found == Coverage.NOTHING_NEW) {
+            return false;
+        }
+        Entry entry = new Entry(source.choices(), source.wideChoices(), rarest);
+        if (corpus.size() < MAX_CORPUS) {
+            corpus.add(entry);
+        } else {
+            corpus.set(commonest(), entry);
+        }
+        if (found == Coverage.NEW_EDGE && entry.choices.length > 0) {
+            sweeping.add(entry);
+        }
+        sinceWeighed = REWEIGH_TRIES;
+        return true;
+    }
+    
+    int getCorpusSize() {
+        return corpus.size();
+    }
+    
+    /** Chooses an entry to mutate, by the weights of the entries. */
+    private Entry choose() {
+        if (sinceWeighed++ >= REWEIGH_TRIES) {
+            reweigh();
+        }
+        double at = mutator.nextDouble() * weights[weights.length - 1];
+        int idx = Arrays.binarySearch(weights, at);
+        idx = idx < 0 ? -idx - 1 : idx;
+        return corpus.get(Math.min(idx, corpus.size() - 1));
+    }
+    
+    private void reweigh() {
+        if (weights.length != corpus.size()) {
+            weights = new double[corpus.size()];
+        }
+        double sum = 0;
+        for (int eIdx=0; eIdx<weights.length; eIdx++) {
+            sum += 1.0d / (1 + edgeTries[corpus.get(eIdx).edge]);
+            weights[eIdx] = sum;
+        }
+        sinceWeighed = 0;
+    }
+    
+    /** Answers the index of the most commonly reached of a few entries. */
+    private int commonest() {
+        int commonest = mutator.nextInt(corpus.size());
+        for (int candidate=0; candidate<7; candidate++) {
+            int eIdx = mutator.nextInt(corpus.size());
+            if (edgeTries[corpus.get(eIdx).edge] > edgeTries[corpus.get(commonest).edge]) {
+                commonest = eIdx;
+            }
+        }
+        return commonest;
+    }
+    
+    /**
+     * Answers the choices of the newest entry still being swept with the next
+     * byte of its first choices set to the next value, or null if every sweep
+     * has finished. Sweeping takes 255 tries a byte, but then finds a byte 
+     * compared with a constant for certain.
+     */
+    private long[] sweep() {
+        while (!sweeping.isEmpty()) {
+            Entry entry = sweeping.get(sweeping.size() - 1);
+            /* steps count through the choices, then their bytes, then values */
+            int step = entry.swept++;
+            int at = step >>> 11;
+            int shift = (step >>> 8 & 7) * 8;
+            long value = step & 0xFF;
+            if (at >= Math.min(entry.choices.length, SWEPT_CHOICES)) {
+                sweeping.remove(sweeping.size() - 1);
+            } else if (shift < 32 && !entry.isWide(at)) {
+                /* only the high 32 bits of a choice drawn by nextInt() are used */
+                entry.swept = at << 11 | 4 << 8;
+            } else if ((entry.choices[at] >>> shift & 0xFF) != value) {
+                long[] child = entry.choices.clone();
+                child[at] = (child[at] & ~(0xFFL << shift)) | value << shift;
+                return child;
+            }
+        }
+        return null;
+    }
+    
+    private long[] mutate(Entry parent) {
+        if (parent.choices.length == 0) {
+            return parent.choices;
+        }
+        /* half the children differ in a single choice, so that the step that
+         * took the parent somewhere new is not undone by another */
+        int mutations = mutator.nextBoolean() ? 1 : 2 + mutator.nextInt(3);
+        int length = parent.choices.length;
+        long[] child = Arrays.copyOf(parent.choices, length + mutations);
+        for (int mIdx=0; mIdx<mutations && length > 0; mIdx++) {
+            int at = mutator.nextInt(length);
+            /* only the high 32 bits of a choice drawn by nextInt() are used;
+             * after an insertion or deletion, this is only likely */
+            int low = at < parent.choices.length && parent.isWide(at) ? 0 : 32;
+            int bytes = (64 - low) / 8;
+            switch (mutator.nextInt(10)) {
+            case 0:
+                child[at] = mutator.nextLong();
+                break;
+            case 1:
+                child[at] ^= 1L << (low + mutator.nextInt(bytes * 8));
+                break;
+            case 2: case 3: case 4: case 5:
+                /* replace one byte, as bulk filled arrays take eight a choice;
+                 * the likeliest mutation, for a byte compared against a
+                 * constant is the commonest branch to get past */
+                int shift = low + mutator.nextInt(bytes) * 8;
+                child[at] = (child[at] & ~(0xFFL << shift))
+                          | ((long) (mutator.nextInt() & 0xFF) << shift);
+                break;
+            case 6:
+                /* nudge a byte up or down, for small integers and bounded
+                 * draws, which are made from the high bits */
+                child[at] += (long) (mutator.nextInt(17) - 8)
+                             << (low + mutator.nextInt(bytes) * 8);
+                break;
+            case 7:
+                /* insert a choice, for a value drawn where none was, as when
+                 * an edge value becomes any value */
+                System.arraycopy(child, at, child, at + 1, length - at);
+                child[at] = mutator.nextLong();
+                length++;
+                break;
+            case 8:
+                /* delete a choice, for the reverse */
+                System.arraycopy(child, at + 1, child, at, length - at - 1);
+                length--;
+                break;
+            default:
+                /* the rest of the try draws fresh values */
+                length = at;
+            }
+        }
+        return Arrays.copyOf(child, length);
+    }
+    
+    /** 
+     * The choices of a try kept, which of them were drawn by nextLong(), and 
+     * the rarest edge it hit then.
+     */
+    private static final class Entry {
+        private final long[] choices;
+        private final long[] wide;
+        private final int edge;
+        
+        /* The steps of the entry's sweep taken */
+        private int swept;
+        
+        private Entry(long[] choices, long[] wide, int edge) {
+            this.choices = choices;
+            this.wide = wide;
+            this.edge = edge;
+        }
+        
+        private boolean isWide(int choice) {
+            return (wide[choice >>> 6] & (1L << choice)) != 0;
+        }
+    }
+}
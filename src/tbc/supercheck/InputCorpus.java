@@ -0,0 +1,541 @@
+package tbc.supercheck;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An InputCorpus keeps, on disk, the data properties have failed for and, for
+ * coverage-guided tries, the data that reached new code. A {@link TestRun}
+ * given a corpus tries each property with the data kept for it before any
+ * random data, so known tricky data is retried at the start of every run. As
+ * the data itself is kept, not the seeds it was generated from, it is retried
+ * whatever becomes of the property's generators. E.g.:
+ *
+ * <pre>new TestRun().setCorpus(new InputCorpus(Paths.get("src/test/corpus")))
+ *               .runOn(SomeInvariants.class, 10000);</pre>
+ *
+ * Each property's data is kept in its own file, named after the property and
+ * its class, as a list of its argument lists, each preceded by its length. 
+ * Primitives, strings and arrays of primitives are written compactly, and 
+ * other arguments by Java serialization, which they must support to be kept. 
+ * Files are read through a memory mapping. Kept data no longer fitting the
+ * property's parameters, or whose classes have changed incompatibly, is
+ * passed over. Data already kept is not kept twice.
+ * <p>
+ * InputCorpus objects are thread safe, but a corpus directory must not be
+ * shared by processes running at the same time.
+ *
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+public final class InputCorpus {
+    
+    /** The most argument lists kept for a property. */
+    public static final int MAX_ENTRIES = 10000;
+    
+    private static final int MAGIC = 0x53434B43;   // "SCKC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    
+    /* no argument list of a property is anywhere near this long */
+    private static final int MAX_ENTRY_SIZE = 1 << 26;
+    
+    /* The tags of encoded arguments */
+    private static final byte NULL = 0, BOOLEAN = 1, BYTE = 2, SHORT = 3, CHAR = 4,
+            INT = 5, LONG = 6, FLOAT = 7, DOUBLE = 8, STRING = 9, BOOLEANS = 10,
+            BYTES = 11, SHORTS = 12, CHARS = 13, INTS = 14, LONGS = 15, FLOATS = 16,
+            DOUBLES = 17, SERIALIZED = 18;
+    
+    private final Path directory;
+    
+    private final Map<Method, Shelf> shelves = new HashMap<Method, Shelf>();
+    
+    /** An InputCorpus kept in directory, creating it if need be. */
+    public InputCorpus(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+    
+    /** Answers the directory the corpus is kept in. */
+    public Path getDirectory() {
+        return directory;
+    }
+    
+    /**
+     * Keeps an argument list for prop, unless it is kept already, the
+     * property has {@link #MAX_ENTRIES} kept, or an argument is not
+     * Serializable. Known tricky data can be added by hand this way.
+     *
+     * @return true if the argument list was added
+     * @throws TestException if the corpus can not be written
+     */
+    public synchronized boolean add(Method prop, Object... params) throws TestException {
+        Shelf shelf = shelfFor(prop);
+        if (shelf.count >= MAX_ENTRIES) {
+            return false;
+        }
+        byte[] entry;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(params.length);
+            for (Object param : params) {
+                encode(param, out);
+            }
+            entry = bytes.toByteArray();
+        } catch (NotSerializableException e) {
+            return false;
+        } catch (IOException e) {
+            throw new TestException("Cannot serialize data of " + prop.getName() + ": " + e, e);
+        }
+        if (!shelf.hashes.add(hash(entry, 0, entry.length))) {
+            return false;
+        }
+        
+        ByteBuffer record = ByteBuffer.allocate(
+                (shelf.end == 0 ? HEADER_SIZE : 0) + 4 + entry.length);
+        if (shelf.end == 0) {
+            record.putInt(MAGIC).putInt(VERSION);
+        }
+        record.putInt(entry.length).put(entry);
+        record.flip();
+        try {
+            FileChannel channel = FileChannel.open(shelf.file,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                /* drop anything after the last whole entry, left by a crash */
+                channel.truncate(shelf.end);
+                channel.position(shelf.end);
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new TestException("Cannot write " + shelf.file + ": " + e, e);
+        }
+        shelf.end += record.limit();
+        shelf.count++;
+        return true;
+    }
+    
+    /** Answers the number of argument lists kept for prop. */
+    public synchronized int size(Method prop) throws TestException {
+        return shelfFor(prop).count;
+    }
+    
+    /**
+     * Answers the argument lists kept for prop that still fit its parameters,
+     * in the order they were kept.
+     *
+     * @throws TestException if the corpus can not be read
+     */
+    synchronized List<Object[]> entriesFor(Method prop) throws TestException {
+        List<Object[]> entries = new ArrayList<Object[]>();
+        read(prop, shelfFor(prop), entries);
+        return entries;
+    }
+    
+    private Shelf shelfFor(Method prop) throws TestException {
+        Shelf shelf = shelves.get(prop);
+        if (shelf == null) {
+            shelf = new Shelf(directory.resolve(
+                    prop.getDeclaringClass().getName() + "." + prop.getName() + ".corpus"));
+            read(prop, shelf, null);
+            shelves.put(prop, shelf);
+        }
+        return shelf;
+    }
+    
+    /**
+     * Reads the whole entries of shelf's file, noting their hashes and where
+     * they end, and, if entries is not null, adds to it those that fit prop.
+     */
+    private static void read(Method prop, Shelf shelf, List<Object[]> entries)
+                                                           throws TestException {
+        if (!Files.exists(shelf.file)) {
+            return;
+        }
+        MappedByteBuffer mapped;
+        try {
+            FileChannel channel = FileChannel.open(shelf.file, StandardOpenOption.READ);
+            try {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new TestException("Cannot read " + shelf.file + ": " + e, e);
+        }
+        if (mapped.remaining() < HEADER_SIZE
+                || mapped.getInt() != MAGIC || mapped.getInt() != VERSION) {
+            throw new TestException(shelf.file + " is not a SuperCheck corpus");
+        }
+        
+        Class<?>[] paramTs = prop.getParameterTypes();
+        shelf.hashes.clear();
+        shelf.count = 0;
+        int end = mapped.position();
+        while (mapped.remaining() >= 4) {
+            int size = mapped.getInt();
+            if (size < 0 || size > MAX_ENTRY_SIZE || size > mapped.remaining()) {
+                break;
+            }
+            int start = mapped.position();
+            shelf.hashes.add(hash(mapped, start, size));
+            shelf.count++;
+            if (entries != null) {
+                ByteBuffer entry = mapped.duplicate();
+                entry.limit(start + size);
+                Object[] params = decode(entry, prop.getDeclaringClass().getClassLoader());
+                if (params != null && fits(params, paramTs)) {
+                    entries.add(params);
+                }
+            }
+            mapped.position(start + size);
+            end = mapped.position();
+        }
+        shelf.end = end;
+    }
+    
+    private static void encode(Object param, DataOutputStream out) throws IOException {
+        if (param == null) {
+            out.writeByte(NULL);
+        } else if (param instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) param);
+        } else if (param instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) param);
+        } else if (param instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) param);
+        } else if (param instanceof Character) {
+            out.writeByte(CHAR);
+            out.writeChar((Character) param);
+        } else if (param instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) param);
+        } else if (param instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) param);
+        } else if (param instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) param);
+        } else if (param instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) param);
+        } else if (param instanceof String) {
+            /* as UTF-16 chars, since UTF-8 would lose unpaired surrogates */
+            String str = (String) param;
+            out.writeByte(STRING);
+            out.writeInt(str.length());
+            out.writeChars(str);
+        } else if (param instanceof boolean[]) {
+            boolean[] ary = (boolean[]) param;
+            out.writeByte(BOOLEANS);
+            out.writeInt(ary.length);
+            for (boolean b : ary) {
+                out.writeBoolean(b);
+            }
+        } else if (param instanceof byte[]) {
+            byte[] ary = (byte[]) param;
+            out.writeByte(BYTES);
+            out.writeInt(ary.length);
+            out.write(ary);
+        } else if (param instanceof short[]) {
+            short[] ary = (short[]) param;
+            out.writeByte(SHORTS);
+            out.writeInt(ary.length);
+            for (short v : ary) {
+                out.writeShort(v);
+            }
+        } else if (param instanceof char[]) {
+            char[] ary = (char[]) param;
+            out.writeByte(CHARS);
+            out.writeInt(ary.length);
+            for (char v : ary) {
+                out.writeChar(v);
+            }
+        } else if (param instanceof int[]) {
+            int[] ary = (int[]) param;
+            out.writeByte(INTS);
+            out.writeInt(ary.length);
+            for (int v : ary) {
+                out.writeInt(v);
+            }
+        } else if (param instanceof long[]) {
+            long[] ary = (long[]) param;
+            out.writeByte(LONGS);
+            out.writeInt(ary.length);
+            for (long v : ary) {
+                out.writeLong(v);
+            }
+        } else if (param instanceof float[]) {
+            float[] ary = (float[]) param;
+            out.writeByte(FLOATS);
+            out.writeInt(ary.length);
+            for (float v : ary) {
+                out.writeFloat(v);
+            }
+        } else if (param instanceof double[]) {
+            double[] ary = (double[]) param;
+            out.writeByte(DOUBLES);
+            out.writeInt(ary.length);
+            for (double v : ary) {
+                out.writeDouble(v);
+            }
+        } else {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            ObjectOutputStream objects = new ObjectOutputStream(bytes);
+            objects.writeObject(param);
+            objects.close();
+            out.writeByte(SERIALIZED);
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+    }
+    
+    /** Answers the argument list in entry, or null if it can not be had. */
+    private static Object[] decode(ByteBuffer entry, ClassLoader loader) {
+        try {
+            Object[] params = new Object[entry.getShort() & 0xFFFF];
+            for (int pIdx=0; pIdx<params.length; pIdx++) {
+                params[pIdx] = decodeOne(entry, loader);
+            }
+            return params;
+        } catch (BufferUnderflowException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        } catch (IOException e) {
+            /* the classes of the data have changed incompatibly */
+            return null;
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+    
+    private static Object decodeOne(ByteBuffer in, final ClassLoader loader) 
+                                    throws IOException, ClassNotFoundException {
+        byte tag = in.get();
+        if (tag == NULL) {
+            return null;
+        } else if (tag == BOOLEAN) {
+            return in.get() != 0;
+        } else if (tag == BYTE) {
+            return in.get();
+        } else if (tag == SHORT) {
+            return in.getShort();
+        } else if (tag == CHAR) {
+            return in.getChar();
+        } else if (tag == INT) {
+            return in.getInt();
+        } else if (tag == LONG) {
+            return in.getLong();
+        } else if (tag == FLOAT) {
+            return in.getFloat();
+        } else if (tag == DOUBLE) {
+            return in.getDouble();
+        }
+        
+        /* arrays, strings and serialized objects are preceded by a length */
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        int start = in.position();
+        switch (tag) {
+        case STRING: {
+            char[] chars = new char[length];
+            in.asCharBuffer().get(chars);
+            in.position(start + length * 2);
+            return new String(chars);
+        }
+        case BOOLEANS: {
+            boolean[] ary = new boolean[length];
+            for (int i=0; i<length; i++) {
+                ary[i] = in.get() != 0;
+            }
+            return ary;
+        }
+        case BYTES: {
+            byte[] ary = new byte[length];
+            in.get(ary);
+            return ary;
+        }
+        case SHORTS: {
+            short[] ary = new short[length];
+            in.asShortBuffer().get(ary);
+            in.position(start + length * 2);
+            return ary;
+        }
+        case CHARS: {
+            char[] ary = new char[length];
+            in.asCharBuffer().get(ary);
+            in.position(start + length * 2);
+            return ary;
+        }
+        case INTS: {
+            int[] ary = new int[length];
+            in.asIntBuffer().get(ary);
+            in.position(start + length * 4);
+            return ary;
+        }
+        case LONGS: {
+            long[] ary = new long[length];
+            in.asLongBuffer().get(ary);
+            in.position(start + length * 8);
+            return ary;
+        }
+        case FLOATS: {
+            float[] ary = new float[length];
+            in.asFloatBuffer().get(ary);
+            in.position(start + length * 4);
+            return ary;
+        }
+        case DOUBLES: {
+            double[] ary = new double[length];
+            in.asDoubleBuffer().get(ary);
+            in.position(start + length * 8);
+            return ary;
+        }
+        case SERIALIZED: {
+            ByteBuffer bytes = in.duplicate();
+            bytes.limit(start + length);
+            in.position(start + length);
+            ObjectInputStream objects = new ObjectInputStream(new BufferInputStream(bytes)) {
+                @Override
+                protected Class<?> resolveClass(ObjectStreamClass desc)
+                                    throws IOException, ClassNotFoundException {
+                    try {
+                        return Class.forName(desc.getName(), false, loader);
+                    } catch (ClassNotFoundException e) {
+                        return super.resolveClass(desc);
+                    }
+                }
+            };
+            return objects.readObject();
+        }
+        default:
+            throw new IOException("Unknown tag " + tag);
+        }
+    }
+    
+    private static boolean fits(Object[] params, Class<?>[] paramTs) {
+        if (params.length != paramTs.length) {
+            return false;
+        }
+        for (int pIdx=0; pIdx<params.length; pIdx++) {
+            Class<?> paramT = paramTs[pIdx];
+            if (params[pIdx] == null) {
+                if (paramT.isPrimitive()) {
+                    return false;
+                }
+            } else if (!boxed(paramT).isInstance(params[pIdx])) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static Class<?> boxed(Class<?> paramT) {
+        if (!paramT.isPrimitive()) {
+            return paramT;
+        } else if (paramT == Boolean.TYPE) {
+            return Boolean.class;
+        } else if (paramT == Character.TYPE) {
+            return Character.class;
+        } else if (paramT == Byte.TYPE) {
+            return Byte.class;
+        } else if (paramT == Short.TYPE) {
+            return Short.class;
+        } else if (paramT == Integer.TYPE) {
+            return Integer.class;
+        } else if (paramT == Long.TYPE) {
+            return Long.class;
+        } else if (paramT == Float.TYPE) {
+            return Float.class;
+        } else {
+            return Double.class;
+        }
+    }
+    
+    private static long hash(byte[] bytes, int from, int length) {
+        return hash(ByteBuffer.wrap(bytes), from, length);
+    }
+    
+    /** A 64 bit FNV-1a hash of length bytes from from. */
+    private static long hash(ByteBuffer bytes, int from, int length) {
+        long h = 0xCBF29CE484222325L;
+        for (int bIdx=from; bIdx<from+length; bIdx++) {
+            h = (h ^ (bytes.get(bIdx) & 0xFF)) * 0x100000001B3L;
+        }
+        return h;
+    }
+    
+    /** The entries of one property's file. */
+    private static final class Shelf {
+        private final Path file;
+        private final Set<Long> hashes = new HashSet<Long>();
+        private int count;
+        
+        /* the offset just past the last whole entry, 0 for no file */
+        private long end;
+        
+        private Shelf(Path file) {
+            this.file = file;
+        }
+    }
+    
+    /** Reads the remaining bytes of a buffer, without copying them first. */
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer bytes;
+        
+        private BufferInputStream(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+        
+        @Override
+        public int read() {
+            return bytes.hasRemaining() ? bytes.get() & 0xFF : -1;
+        }
+        
+        @Override
+        public int read(byte[] into, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!bytes.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, bytes.remaining());
+            bytes.get(into, off, len);
+            return len;
+        }
+        
+        @Override
+        public int available() {
+            return bytes.remaining();
+        }
+    }
+}
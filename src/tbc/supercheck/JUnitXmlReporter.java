@@ -0,0 +1,231 @@
+package tbc.supercheck;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A JUnitXmlReporter writes a JUnit XML report for each class of properties
+ * tested, named TEST-&lt;class name&gt;.xml, as build servers expect. Each
+ * execution of a property is a test case, which fails with the data of its
+ * first failed try, and that data shrunk, or of the first data kept in the
+ * {@link InputCorpus} that it failed for. Reports are rewritten whenever 
+ * the reporter is flushed, so they always cover every execution so far.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+public class JUnitXmlReporter implements TestListener {
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final Path directory;
+    
+    private final Map<Class<?>, List<TestCase>> suites = 
+        new LinkedHashMap<Class<?>, List<TestCase>>();
+    private final Map<PropertyExecution, TestCase> running = 
+        new LinkedHashMap<PropertyExecution, TestCase>();
+    private final Set<Class<?>> changed = new LinkedHashSet<Class<?>>();
+    
+    /** A JUnitXmlReporter writing reports into directory, creating it if need be. */
+    public JUnitXmlReporter(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+    
+    public void propertyStarted(PropertyExecution execution) {
+        running.put(execution, new TestCase(execution));
+    }
+    
+    public void corpusEntryFailed(PropertyExecution execution, int entry, Object[] params) {
+        TestCase testCase = running.get(execution);
+        if (testCase.failure == null) {
+            testCase.failure = "Failed on corpus entry " + entry + " for params:\n" 
+                               + ConsoleReporter.paramList(params, "  ");
+        }
+    }
+    
+    public void corpusReplayed(PropertyExecution execution, int entries, int failed, 
+                               long nanos) {
+        TestCase testCase = running.get(execution);
+        testCase.entries = entries;
+        testCase.entriesFailed = failed;
+    }
+    
+    public void tryPassed(PropertyExecution execution, int tryNumber, Object[] params) {
+    }
+    
+    public void tryFailed(PropertyExecution execution, int tryNumber, Object[] params) {
+        TestCase testCase = running.get(execution);
+        if (testCase.failure == null) {
+            testCase.failure = "Failed on try " + tryNumber + " for params:\n" 
+                               + ConsoleReporter.paramList(params, "  ");
+            testCase.failedTry = tryNumber;
+        }
+    }
+    
+    public void tryTimedOut(PropertyExecution execution, int tryNumber, Object[] params,
+                            long nanos, String threadDump) {
+        TestCase testCase = running.get(execution);
+        if (testCase.failure != null) {
+            return;
+        } else if (threadDump == null) {
+            testCase.failure = "Timed out before try " + tryNumber + "\n";
+            return;
+        }
+        testCase.failure = "Timed out on try " + tryNumber + " after " + (nanos / 1000000)
+                           + "ms" + (params != null 
+                                     ? " for params:\n" + ConsoleReporter.paramList(params, "  ")
+                                     : "\n")
+                           + threadDump;
+    }
+    
+    public void tryTooDeep(PropertyExecution execution, int tryNumber, String reason) {
+        TestCase testCase = running.get(execution);
+        if (testCase.failure == null) {
+            testCase.failure = "Failed on try " + tryNumber + ": " + reason + "\n";
+            testCase.failedTry = tryNumber;
+        }
+    }
+    
+    public void trySlow(PropertyExecution execution, int tryNumber, long nanos, 
+                        long medianNanos) {
+    }
+    
+    public void tryShrunk(PropertyExecution execution, int tryNumber, Object[] shrunk,
+                          int steps, int tries) {
+        TestCase testCase = running.get(execution);
+        /* only the data of the try the failure reports is shrunk data of it */
+        if (testCase.failedTry != tryNumber) {
+            return;
+        }
+        testCase.failure += "Shrunk in " + steps + " steps (" + tries 
+                            + " tries) to params:\n" + ConsoleReporter.paramList(shrunk, "  ");
+    }
+    
+    public void generatorSaturated(PropertyExecution execution, int tries, int skipped) {
+    }
+    
+    public void propertyFinished(PropertyExecution execution, int tries, int skipped,
+                                 int[] failedTries, long nanos) {
+        TestCase testCase = running.remove(execution);
+        testCase.tries = tries;
+        testCase.failures = failedTries.length + testCase.entriesFailed;
+        testCase.nanos = nanos;
+        
+        Class<?> suite = execution.getContainingClass();
+        if (!suites.containsKey(suite)) {
+            suites.put(suite, new ArrayList<TestCase>());
+        }
+        suites.get(suite).add(testCase);
+        changed.add(suite);
+    }
+    
+    /* Singly replayed tries and passed over events are not test cases */
+    public void tryReplayed(PropertyExecution execution, int tryNumber, Object[] params,
+                            boolean held) {
+    }
+    
+    public void eventPassedOver(int event, String reason) {
+    }
+    
+    public void flush() {
+        for (Class<?> suite : changed) {
+            write(suite, suites.get(suite));
+        }
+        changed.clear();
+    }
+    
+    private void write(Class<?> suite, List<TestCase> testCases) {
+        int failures = 0;
+        long nanos = 0;
+        for (TestCase testCase : testCases) {
+            failures += testCase.failures > 0 ? 1 : 0;
+            nanos += testCase.nanos;
+        }
+        
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<testsuite name=\"").append(escape(suite.getName()))
+           .append("\" tests=\"").append(testCases.size())
+           .append("\" failures=\"").append(failures)
+           .append("\" errors=\"0\" skipped=\"0\" time=\"").append(seconds(nanos))
+           .append("\">\n");
+        for (TestCase testCase : testCases) {
+            xml.append("  <testcase name=\"").append(escape(testCase.name))
+               .append("\" classname=\"").append(escape(suite.getName()))
+               .append("\" time=\"").append(seconds(testCase.nanos)).append("\"");
+            if (testCase.failures == 0) {
+                xml.append("/>\n");
+                continue;
+            }
+            xml.append(">\n    <failure message=\"")
+               .append(escape(testCase.failures + " of " + (testCase.tries + testCase.entries) 
+                              + " tries failed"))
+               .append("\" type=\"").append(TestException.class.getName()).append("\">")
+               .append(escape(testCase.failure == null ? "" : testCase.failure))
+               .append("</failure>\n  </testcase>\n");
+        }
+        xml.append("</testsuite>\n");
+        
+        Path file = directory.resolve("TEST-" + suite.getName() + ".xml");
+        try {
+            ChannelWriter out = new ChannelWriter(FileChannel.open(file, 
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, 
+                    StandardOpenOption.WRITE), UTF_8);
+            out.write(xml);
+            out.close();
+        } catch (IOException e) {
+            throw new TestException("Cannot write " + file + ": " + e, e);
+        }
+    }
+    
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e9d);
+    }
+    
+    private static String escape(String s) {
+        StringBuilder escaped = new StringBuilder(s.length());
+        for (int cIdx=0; cIdx<s.length(); cIdx++) {
+            char c = s.charAt(cIdx);
+            switch (c) {
+                case '<': escaped.append("&lt;"); break;
+                case '>': escaped.append("&gt;"); break;
+                case '&': escaped.append("&amp;"); break;
+                case '"': escaped.append("&quot;"); break;
+                case '\n': case '\t': escaped.append(c); break;
+                default:
+                    /* characters XML 1.0 cannot hold at all */
+                    if (c < 0x20 || c == 0xFFFE || c == 0xFFFF) {
+                        escaped.append('?');
+                    } else {
+                        escaped.append(c);
+                    }
+            }
+        }
+        return escaped.toString();
+    }
+    
+    private static final class TestCase {
+        private final String name;
+        private int tries;
+        private int failures;
+        private int entries;
+        private int entriesFailed;
+        private long nanos;
+        private String failure;
+        private int failedTry;
+        
+        private TestCase(PropertyExecution execution) {
+            name = execution.getProperty().getName();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package tbc.supercheck;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A JsonLinesReporter writes each event of a test run to a file as a line of
+ * JSON, for other programs to read. For example:
+ * 
+ * <pre>{"event":"propertyStarted","class":"QuickSortInvariants","property":"prop_idempotent","seed":1299342432123,"times":10000,"budgetNanos":0}
+ * {"event":"tryFailed","class":"QuickSortInvariants","property":"prop_idempotent","try":17,"params":["[3, 1]"]}
+ * {"event":"propertyFinished","class":"QuickSortInvariants","property":"prop_idempotent","tries":10000,"skipped":0,"failedTries":[17],"nanos":81234567}</pre>
+ * 
+ * Arguments are written as the strings the console would print for them.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+public class JsonLinesReporter implements TestListener {
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final ChannelWriter out;
+    
+    /** A JsonLinesReporter writing to file, replacing anything in it. */
+    public JsonLinesReporter(Path file) throws IOException {
+        out = new ChannelWriter(FileChannel.open(file, StandardOpenOption.CREATE, 
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), UTF_8);
+    }
+    
+    public void propertyStarted(PropertyExecution execution) {
+        out.write(start("propertyStarted", execution)
+                  + ",\"seed\":" + execution.getSeed()
+                  + ",\"times\":" + execution.getTimes()
+                  + ",\"budgetNanos\":" + execution.getBudgetNanos() + "}\n");
+    }
+    
+    public void corpusEntryFailed(PropertyExecution execution, int entry, Object[] params) {
+        out.write(start("corpusEntryFailed", execution) + ",\"entry\":" + entry 
+                  + ",\"params\":" + params(params) + "}\n");
+    }
+    
+    public void corpusReplayed(PropertyExecution execution, int entries, int failed, 
+                               long nanos) {
+        out.write(start("corpusReplayed", execution) + ",\"entries\":" + entries
+                  + ",\"failed\":" + failed + ",\"nanos\":" + nanos + "}\n");
+    }
+    
+    public void tryPassed(PropertyExecution execution, int tryNumber, Object[] params) {
+        out.write(start("tryPassed", execution) + ",\"try\":" + tryNumber 
+                  + ",\"params\":" + params(params) + "}\n");
+    }
+    
+    public void tryFailed(PropertyExecution execution, int tryNumber, Object[] params) {
+        out.write(start("tryFailed", execution) + ",\"try\":" + tryNumber 
+                  + ",\"params\":" + params(params) + "}\n");
+    }
+    
+    public void tryTimedOut(PropertyExecution execution, int tryNumber, Object[] params,
+                            long nanos, String threadDump) {
+        out.write(start("tryTimedOut", execution) + ",\"try\":" + tryNumber 
+                  + ",\"nanos\":" + nanos 
+                  + ",\"params\":" + (params != null ? params(params) : "null")
+                  + ",\"threadDump\":" 
+                  + (threadDump != null ? PropertyMetrics.quote(threadDump) : "null") + "}\n");
+    }
+    
+    public void tryTooDeep(PropertyExecution execution, int tryNumber, String reason) {
+        out.write(start("tryTooDeep", execution) + ",\"try\":" + tryNumber 
+                  + ",\"reason\":" + PropertyMetrics.quote(reason) + "}\n");
+    }
+    
+    public void trySlow(PropertyExecution execution, int tryNumber, long nanos, 
+                        long medianNanos) {
+        out.write(start("trySlow", execution) + ",\"try\":" + tryNumber 
+                  + ",\"nanos\":" + nanos + ",\"medianNanos\":" + medianNanos + "}\n");
+    }
+    
+    public void tryShrunk(PropertyExecution execution, int tryNumber, Object[] shrunk,
+                          int steps, int tries) {
+        out.write(start("tryShrunk", execution) + ",\"try\":" + tryNumber 
+                  + ",\"steps\":" + steps + ",\"tries\":" + tries
+                  + ",\"params\":" + params(shrunk) + "}\n");
+    }
+    
+    public void generatorSaturated(PropertyExecution execution, int tries, int skipped) {
+        out.write(start("generatorSaturated", execution) + ",\"tries\":" + tries
+                  + ",\"skipped\":" + skipped + "}\n");
+    }
+    
+    public void propertyFinished(PropertyExecution execution, int tries, int skipped,
+                                 int[] failedTries, long nanos) {
+        StringBuilder failed = new StringBuilder("[");
+        for (int fIdx=0; fIdx<failedTries.length; fIdx++) {
+            failed.append(fIdx == 0 ? "" : ",").append(failedTries[fIdx]);
+        }
+        out.write(start("propertyFinished", execution) + ",\"tries\":" + tries
+                  + ",\"skipped\":" + skipped + ",\"failedTries\":" + failed 
+                  + "],\"nanos\":" + nanos + "}\n");
+    }
+    
+    public void tryReplayed(PropertyExecution execution, int tryNumber, Object[] params,
+                            boolean held) {
+        out.write(start("tryReplayed", execution) + ",\"try\":" + tryNumber 
+                  + ",\"held\":" + held + ",\"params\":" + params(params) + "}\n");
+    }
+    
+    public void eventPassedOver(int event, String reason) {
+        out.write("{\"event\":\"eventPassedOver\",\"index\":" + event 
+                  + ",\"reason\":" + PropertyMetrics.quote(reason) + "}\n");
+    }
+    
+    public void flush() {
+        out.flush();
+    }
+    
+    /** Flushes and closes the file. */
+    public void close() {
+        out.close();
+    }
+    
+    private static String start(String event, PropertyExecution execution) {
+        return "{\"event\":\"" + event + "\",\"class\":" 
+               + PropertyMetrics.quote(execution.getContainingClass().getName())
+               + ",\"property\":" 
+               + PropertyMetrics.quote(execution.getProperty().getName());
+    }
+    
+    private static String params(Object[] params) {
+        StringBuilder json = new StringBuilder("[");
+        for (int pIdx=0; pIdx<params.length; pIdx++) {
+            json.append(pIdx == 0 ? "" : ",")
+                .append(PropertyMetrics.quote(TestRun.describe(params[pIdx])));
+        }
+        return json.append("]").toString();
+    }
+}
@@ -0,0 +1,87 @@
+package tbc.supercheck;
+
+/**
+ * A LatencyHistogram counts durations in nanoseconds into logarithmic buckets,
+ * each split into 16 linear sub-buckets, so that percentiles are accurate to
+ * about 6% whatever the scale. Recording a duration is a few arithmetic 
+ * operations and an array increment. A LatencyHistogram is not thread safe;
+ * each thread records into its own, and they are merged afterwards.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+final class LatencyHistogram {
+    
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    
+    /* Durations below SUB_COUNT have a bucket each; above that, 16 per power
+     * of two */
+    private final long[] counts = new long[(64 - SUB_BITS + 1) * SUB_COUNT];
+    private long total;
+    private long max;
+    
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts[bucket(nanos)]++;
+        total++;
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+    
+    void add(LatencyHistogram other) {
+        for (int bIdx=0; bIdx<counts.length; bIdx++) {
+            counts[bIdx] += other.counts[bIdx];
+        }
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+    
+    long getCount() {
+        return total;
+    }
+    
+    long getMax() {
+        return max;
+    }
+    
+    /**
+     * Answers the duration that fraction of recorded durations are at or 
+     * below, to the upper bound of its bucket. Answers 0 if nothing has been
+     * recorded.
+     */
+    long getPercentile(double fraction) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int bIdx=0; bIdx<counts.length; bIdx++) {
+            seen += counts[bIdx];
+            if (seen >= Math.max(rank, 1)) {
+                return Math.min(upperBound(bIdx), max);
+            }
+        }
+        return max;
+    }
+    
+    private static int bucket(long nanos) {
+        if (nanos < SUB_COUNT) {
+            return (int) nanos;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+        int sub = (int) (nanos >>> shift) & (SUB_COUNT - 1);
+        return (shift + 1) * SUB_COUNT + sub;
+    }
+    
+    private static long upperBound(int bucket) {
+        int shift = bucket / SUB_COUNT - 1;
+        if (shift < 0) {
+            return bucket;
+        }
+        long lead = (bucket % SUB_COUNT) | SUB_COUNT;
+        return ((lead + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,108 @@
+package tbc.supercheck;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A ParamKey names a parameter of the arbitrary data a Gen makes, and gives
+ * the parameter's type and the value it has when it is not set. Keys are
+ * declared once, as constants:
+ *
+ * <pre>public static final ParamKey&lt;Integer&gt; MAX_DEPTH =
+ *     ParamKey.of("Tree.MAX_DEPTH", Integer.class, 5);</pre>
+ *
+ * set in a {@link ParameterBunch}, and read by arbitrary() methods from the
+ * Gen they are given:
+ *
+ * <pre>int maxDepth = gen.getParam(Tree.MAX_DEPTH);</pre>
+ *
+ * A Gen resolves its parameters once, when they are set, so reading one by
+ * its key costs an array access. A parameter set by name, with the setter of
+ * its type, is the same as one set by its key.
+ * <p>
+ * Keys with the same name are the same parameter, and must have the same
+ * type, though each may have its own default.
+ *
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+public final class ParamKey<T> {
+    
+    /* The index and type of each parameter name that has a key */
+    private static final Map<String, Integer> indexes = new HashMap<String, Integer>();
+    private static final List<Class<?>> types = new ArrayList<Class<?>>();
+    
+    private final String name;
+    private final Class<T> type;
+    private final T defaultValue;
+    
+    /* The index of the parameter's value in a resolved set of parameters */
+    final int index;
+    
+    private ParamKey(String name, Class<T> type, T defaultValue, int index) {
+        this.name = name;
+        this.type = type;
+        this.defaultValue = defaultValue;
+        this.index = index;
+    }
+    
+    /**
+     * Answers a key for the parameter named name, of type, which is
+     * defaultValue when not set.
+     *
+     * @throws IllegalArgumentException if type is primitive, rather than its
+     *         wrapper class, or the parameter already has a key of another type
+     */
+    public static synchronized <T> ParamKey<T> of(String name, Class<T> type,
+                                                  T defaultValue) {
+        if (type.isPrimitive()) {
+            throw new IllegalArgumentException("Parameter " + name + " must have the "
+                    + "wrapper class of " + type + " as its type");
+        }
+        Integer index = indexes.get(name);
+        if (index == null) {
+            index = types.size();
+            indexes.put(name, index);
+            types.add(type);
+        } else if (types.get(index) != type) {
+            throw new IllegalArgumentException("Parameter " + name + " is a "
+                    + types.get(index).getName() + ", not a " + type.getName());
+        }
+        return new ParamKey<T>(name, type, defaultValue, index);
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public Class<T> getType() {
+        return type;
+    }
+    
+    /** Answers the value the parameter has when it is not set. */
+    public T getDefault() {
+        return defaultValue;
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+    
+    /** Answers the number of parameter names with keys. */
+    static synchronized int count() {
+        return types.size();
+    }
+    
+    /** Answers the index of the parameter named name, or -1 if it has no key. */
+    static synchronized int indexOf(String name) {
+        Integer index = indexes.get(name);
+        return index != null ? index : -1;
+    }
+    
+    /** Answers the type of the parameter at index. */
+    static synchronized Class<?> typeAt(int index) {
+        return types.get(index);
+    }
+}
@@ -1,12 +1,20 @@
 package tbc.supercheck;
 
 import java.util.Hashtable;
+import java.util.Map;
 
 /**
  * A ParamBunch is a mutable set of paramters - string, value pairs, where the
  * value can be of different types. Parameters must be accessed via the getter
  * of the same type as the setter used to set them. Only one parameter for
  * a given name may exist, regardless of typing.
+ * <p>
+ * Parameters may also be set and got by a typed {@link ParamKey}, which may
+ * be of any type. A parameter set by name is the same as one set by a key of
+ * the same name and type.
+ * <p>
+ * A TestRun or Gen takes an immutable snapshot of a bunch when it is given 
+ * one, so the bunch may be changed afterwards without affecting them.
  * 
  * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
  */
@@ -16,14 +24,16 @@ public class ParameterBunch {
 		"String",
 		"Float",
 		"Int",
-		"Boolean"
+		"Boolean",
+		"Object"
 	};
 	
 	private enum ParamType {
 		STRING,
 		FLOAT,
 		INT,
-		BOOLEAN
+		BOOLEAN,
+		OBJECT
 	}
 
 	private class ParamEntry {
@@ -71,6 +81,25 @@ public class ParameterBunch {
 		parameters.put(name, pe);
 	}
 
+	/** Sets the parameter of key to val. */
+	public <T> void set(ParamKey<T> key, T val) {
+		ParamEntry pe = new ParamEntry();
+		pe.value = key.getType().cast(val);
+		pe.type = typeOf(key.getType());
+		parameters.put(key.getName(), pe);
+	}
+	
+	/** Answers the parameter of key, or its default if it is not set. */
+	public <T> T get(ParamKey<T> key) {
+		ParamEntry pe = parameters.get(key.getName());
+
+		if (pe != null && key.getType().isInstance(pe.value)) {
+			return key.getType().cast(pe.value);
+		} else {
+			return key.getDefault();
+		}
+	}
+
 	public float getFloat(String name, float otherwise) {
 		ParamEntry pe = parameters.get(name);
 
@@ -110,4 +139,71 @@ public class ParameterBunch {
 			return otherwise;
 		}
 	}
+	
+	/** Answers an immutable copy of this bunch, resolved for reading by key. */
+	Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+	
+	private static ParamType typeOf(Class<?> valueT) {
+		if (valueT == String.class) {
+			return ParamType.STRING;
+		} else if (valueT == Float.class) {
+			return ParamType.FLOAT;
+		} else if (valueT == Integer.class) {
+			return ParamType.INT;
+		} else if (valueT == Boolean.class) {
+			return ParamType.BOOLEAN;
+		} else {
+			return ParamType.OBJECT;
+		}
+	}
+	
+	/**
+	 * A Snapshot is an immutable copy of a ParameterBunch, holding the value 
+	 * of every parameter with a {@link ParamKey} in an array indexed by the 
+	 * key, so a parameter is read by its key without a lock or a lookup. 
+	 * Keys made after the snapshot are looked up by name.
+	 */
+	static final class Snapshot {
+		static final Snapshot EMPTY = new Snapshot(new ParameterBunch());
+		
+		/* null if the bunch was empty */
+		private final ParameterBunch copy;
+		private final Object[] values;
+		
+		private Snapshot(ParameterBunch bunch) {
+			values = new Object[ParamKey.count()];
+			ParameterBunch copy = new ParameterBunch();
+			synchronized (bunch.parameters) {
+				copy.parameters.putAll(bunch.parameters);
+			}
+			for (Map.Entry<String, ParamEntry> entry : copy.parameters.entrySet()) {
+				int index = ParamKey.indexOf(entry.getKey());
+				if (index >= 0 && index < values.length
+						&& ParamKey.typeAt(index).isInstance(entry.getValue().value)) {
+					values[index] = entry.getValue().value;
+				}
+			}
+			this.copy = copy.parameters.isEmpty() ? null : copy;
+		}
+		
+		@SuppressWarnings("unchecked")
+		<T> T get(ParamKey<T> key) {
+			if (key.index < values.length) {
+				Object value = values[key.index];
+				return value != null ? (T) value : key.getDefault();
+			}
+			return copy != null ? copy.get(key) : key.getDefault();
+		}
+		
+		/** Answers a copy of the parameters, which may be changed freely. */
+		ParameterBunch toBunch() {
+			ParameterBunch bunch = new ParameterBunch();
+			if (copy != null) {
+				bunch.parameters.putAll(copy.parameters);
+			}
+			return bunch;
+		}
+	}
 }
@@ -0,0 +1,61 @@
+package tbc.supercheck;
+
+import java.lang.reflect.Method;
+
+/**
+ * A PropertyExecution identifies one execution of a property by a 
+ * {@link TestRun}, for the events a {@link TestListener} is told of. A property
+ * run twice has two executions.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+public final class PropertyExecution {
+    
+    private final Method property;
+    private final long seed;
+    private final int times;
+    private final long budgetNanos;
+    
+    PropertyExecution(Method property, long seed, int times, long budgetNanos) {
+        this.property = property;
+        this.seed = seed;
+        this.times = times;
+        this.budgetNanos = budgetNanos;
+    }
+    
+    /** Answers the property being executed. */
+    public Method getProperty() {
+        return property;
+    }
+    
+    /** Answers the class declaring the property. */
+    public Class<?> getContainingClass() {
+        return property.getDeclaringClass();
+    }
+    
+    /** Answers the seed the data of the execution is derived from. */
+    public long getSeed() {
+        return seed;
+    }
+    
+    /** 
+     * Answers the number of times the property is to be tried, or 0 if it is
+     * tried for as long as a budget of time allows.
+     */
+    public int getTimes() {
+        return times;
+    }
+    
+    /**
+     * Answers the time the property may be tried for, in nanoseconds, or 0 if 
+     * it is tried a number of times.
+     */
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+    
+    @Override
+    public String toString() {
+        return getContainingClass().getName() + "." + property.getName();
+    }
+}
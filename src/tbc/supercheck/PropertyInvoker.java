@@ -0,0 +1,344 @@
+package tbc.supercheck;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * A PropertyInvoker performs single tries of a property: it generates the
+ * property's arguments with a Gen and then calls the property with them.
+ * <p>
+ * The compiled invoker binds the parameter generators and the property into a 
+ * single MethodHandle chain of type (Gen)boolean when it is created, so that 
+ * a try with primitive arguments neither boxes them nor allocates an argument 
+ * array. Arguments are only boxed when they must be reported. The reflective 
+ * invoker generates into an Object[] and calls Method.invoke, as SuperCheck 
+ * always has.
+ * <p>
+ * Given a {@link SeenFilter}, an invoker skips the call of the property for
+ * arguments already seen, which costs boxing the arguments to hash them.
+ * <p>
+ * Invokers remember the arguments of their last reported try, and of a try
+ * the property threw for, and timed invokers the time their last arguments 
+ * were generated, so each thread running tries needs its own.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+abstract class PropertyInvoker {
+    
+    private static final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    
+    protected final Method prop;
+    
+    protected final boolean timed;
+    
+    protected final SeenFilter seen;
+    
+    protected Object[] lastParams;
+    
+    protected Object[] thrownParams;
+    
+    protected boolean lastSkipped;
+    
+    private long generatedAt;
+    
+    private PropertyInvoker(Method prop, boolean timed, SeenFilter seen) {
+        this.prop = prop;
+        this.timed = timed;
+        this.seen = seen;
+    }
+    
+    /**
+     * Answers an invoker for prop. If reflective is false, a compiled invoker
+     * is answered where prop allows one. Otherwise, or if prop is not
+     * accessible to a MethodHandle, a reflective invoker is answered.
+     * 
+     * @param reportPasses true if the arguments of passing tries must be kept
+     */
+    static PropertyInvoker forProperty(Method prop, boolean reflective, 
+                                       boolean reportPasses) {
+        return forProperty(prop, reflective, reportPasses, false, null);
+    }
+    
+    /**
+     * Answers an invoker for prop, as {@link #forProperty(Method, boolean, boolean)}.
+     * 
+     * @param timed true if {@link #generatedAt()} must be kept
+     * @param seen the arguments already tried, to be skipped, or null
+     */
+    static PropertyInvoker forProperty(Method prop, boolean reflective, 
+                                       boolean reportPasses, boolean timed,
+                                       SeenFilter seen) {
+        if (!reflective) {
+            try {
+                return new Compiled(prop, reportPasses, timed, seen);
+            } catch (IllegalAccessException e) {
+                /* fall back to Method.invoke, which will report the problem */
+            }
+        }
+        return new Reflective(prop, timed, seen);
+    }
+    
+    /**
+     * Generates arguments with gen and calls the property with them, unless
+     * they have been seen before.
+     * 
+     * @return true if the property held, or was skipped
+     */
+    abstract boolean tryOnce(Gen gen) throws TestException;
+    
+    /**
+     * Answers the arguments of the last failed try, or of the last try if
+     * passes are being reported.
+     */
+    Object[] lastParams() {
+        return lastParams;
+    }
+    
+    /**
+     * Answers the System.nanoTime() at which the arguments of the last try 
+     * were generated and the property was about to be called. Only timed
+     * invokers keep this.
+     */
+    long generatedAt() {
+        return generatedAt;
+    }
+    
+    /** 
+     * Answers the arguments of the try the property last threw for, or null 
+     * if it has not thrown.
+     */
+    Object[] thrownParams() {
+        return thrownParams;
+    }
+    
+    /**
+     * Calls prop with params through Method.invoke, wrapping anything it 
+     * throws in a TestException.
+     */
+    static boolean call(Method prop, Object[] params) throws TestException {
+        try {
+            return (Boolean) prop.invoke(null, params);
+        } catch (InvocationTargetException e) {
+            throw new TestException(prop.getName() + " threw: " + e.getCause(), e.getCause());
+        } catch (IllegalAccessException e) {
+            throw new TestException(e.toString());
+        }
+    }
+    
+    /** Answers true if the last try's arguments had been seen, and were skipped. */
+    boolean skipped() {
+        return lastSkipped;
+    }
+    
+    final void mark() {
+        generatedAt = System.nanoTime();
+    }
+    
+    private static class Reflective extends PropertyInvoker {
+        private final GeneratorRegistry.Generator[] generators;
+        
+        private Reflective(Method prop, boolean timed, SeenFilter seen) {
+            super(prop, timed, seen);
+            generators = GeneratorRegistry.forParameters(prop);
+        }
+        
+        @Override
+        boolean tryOnce(Gen gen) throws TestException {
+            Object[] params = new Object[generators.length];
+            
+            for (int pIdx=0; pIdx<generators.length; pIdx++) {
+                params[pIdx] = generators[pIdx].generate(gen);
+            }
+            lastParams = params;
+            lastSkipped = seen != null && !seen.add(params);
+            if (lastSkipped) {
+                return true;
+            }
+            if (timed) {
+                mark();
+            }
+            
+            try {
+                return call(prop, params);
+            } catch (TestException e) {
+                thrownParams = params;
+                throw e;
+            }
+        }
+    }
+    
+    private static class Compiled extends PropertyInvoker {
+        private final MethodHandle tryHandle;
+        
+        private Compiled(Method prop, boolean reportPasses, boolean timed, 
+                         SeenFilter seen) throws IllegalAccessException {
+            super(prop, timed, seen);
+            
+            if (!Modifier.isStatic(prop.getModifiers())
+                    || (prop.getReturnType() != Boolean.TYPE 
+                        && prop.getReturnType() != Boolean.class)) {
+                throw new IllegalAccessException(prop + " is not a property");
+            }
+            
+            Class<?>[] paramTs = prop.getParameterTypes();
+            MethodHandle propHandle = lookup.unreflect(prop)
+                .asType(MethodType.methodType(Boolean.TYPE, paramTs));
+            
+            /* (P...)boolean, wrapping anything the property throws */
+            MethodHandle wrapped = MethodHandles.catchException(
+                    propHandle, Throwable.class,
+                    MethodHandles.insertArguments(THREW.bindTo(this), 0, prop.getName())
+                        .asCollector(Object[].class, paramTs.length)
+                        .asType(MethodType.methodType(Boolean.TYPE, 
+                                prepend(Throwable.class, paramTs))));
+            
+            /* (P...)boolean, keeping the arguments of tries to be reported */
+            MethodHandle keepFailed = keeper(false, paramTs);
+            MethodHandle onPass = reportPasses 
+                ? keeper(true, paramTs)
+                : MethodHandles.dropArguments(
+                      MethodHandles.constant(Boolean.TYPE, true), 0, paramTs);
+            MethodHandle checked = MethodHandles.guardWithTest(wrapped, onPass, keepFailed);
+            if (timed) {
+                /* mark the time once the arguments exist, before the call */
+                checked = MethodHandles.foldArguments(checked, MARK.bindTo(this));
+            }
+            if (seen != null) {
+                /* call the property only for arguments not seen before */
+                MethodHandle fresh = FRESH.bindTo(this)
+                    .asCollector(Object[].class, paramTs.length)
+                    .asType(MethodType.methodType(Boolean.TYPE, paramTs));
+                MethodHandle skip = MethodHandles.dropArguments(
+                        MethodHandles.constant(Boolean.TYPE, true), 0, paramTs);
+                checked = MethodHandles.guardWithTest(fresh, checked, skip);
+            }
+            
+            /* (Gen...)boolean, then (Gen)boolean */
+            MethodHandle[] generators = new MethodHandle[paramTs.length];
+            for (int pIdx=0; pIdx<paramTs.length; pIdx++) {
+                generators[pIdx] = generatorFor(prop, pIdx);
+            }
+            MethodHandle generating = MethodHandles.filterArguments(checked, 0, generators);
+            tryHandle = MethodHandles.permuteArguments(generating, 
+                    MethodType.methodType(Boolean.TYPE, Gen.class), 
+                    new int[paramTs.length]);
+        }
+        
+        @Override
+        boolean tryOnce(Gen gen) throws TestException {
+            try {
+                return (boolean) tryHandle.invokeExact(gen);
+            } catch (TestException e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new TestException(t.toString(), t);
+            }
+        }
+        
+        private MethodHandle keeper(boolean result, Class<?>[] paramTs) {
+            return MethodHandles.insertArguments(KEEP.bindTo(this), 1, result)
+                .asCollector(Object[].class, paramTs.length)
+                .asType(MethodType.methodType(Boolean.TYPE, paramTs));
+        }
+        
+        /* keep, fresh and threw are not private, as classes compiled for 
+         * Java 8 are not nestmates, and PropertyInvoker's lookup could not 
+         * find them */
+        boolean keep(Object[] params, boolean result) {
+            lastParams = params;
+            return result;
+        }
+        
+        boolean fresh(Object[] params) {
+            lastSkipped = !seen.add(params);
+            return !lastSkipped;
+        }
+        
+        boolean threw(String propName, Throwable t, Object[] params) {
+            thrownParams = params;
+            throw new TestException(propName + " threw: " + t, t);
+        }
+        
+        private static Class<?>[] prepend(Class<?> first, Class<?>[] rest) {
+            Class<?>[] all = new Class<?>[rest.length + 1];
+            all[0] = first;
+            System.arraycopy(rest, 0, all, 1, rest.length);
+            return all;
+        }
+        
+        /* 
+         * An unbound primitive parameter calls its Gen method directly; any
+         * other calls its generator, which for one bound with @From is the
+         * Arbitrary, unboxing its values as needed.
+         */
+        private static MethodHandle generatorFor(Method prop, int pIdx) 
+                                                 throws IllegalAccessException {
+            Class<?> paramT = prop.getParameterTypes()[pIdx];
+            GeneratorRegistry.Generator generator = 
+                GeneratorRegistry.forParameter(prop, pIdx);
+            String primitiveMaker = primitiveMakerName(paramT);
+            try {
+                if (primitiveMaker != null 
+                        && generator == GeneratorRegistry.forClass(paramT)) {
+                    return lookup.findVirtual(Gen.class, primitiveMaker, 
+                                              MethodType.methodType(paramT));
+                }
+                return GENERATE.bindTo(generator)
+                    .asType(MethodType.methodType(paramT, Gen.class));
+            } catch (NoSuchMethodException e) {
+                throw new IllegalAccessException(e.toString());
+            }
+        }
+        
+        private static final MethodHandle KEEP;
+        private static final MethodHandle THREW;
+        private static final MethodHandle GENERATE;
+        private static final MethodHandle MARK;
+        private static final MethodHandle FRESH;
+        
+        static {
+            try {
+                KEEP = lookup.findVirtual(Compiled.class, "keep", 
+                        MethodType.methodType(Boolean.TYPE, Object[].class, Boolean.TYPE));
+                THREW = lookup.findVirtual(Compiled.class, "threw", 
+                        MethodType.methodType(Boolean.TYPE, String.class, Throwable.class,
+                                              Object[].class));
+                GENERATE = lookup.findVirtual(GeneratorRegistry.Generator.class, "generate",
+                        MethodType.methodType(Object.class, Gen.class));
+                MARK = lookup.findVirtual(PropertyInvoker.class, "mark", 
+                        MethodType.methodType(Void.TYPE));
+                FRESH = lookup.findVirtual(Compiled.class, "fresh", 
+                        MethodType.methodType(Boolean.TYPE, Object[].class));
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+    }
+    
+    /** Answers the name of the Gen method for a primitive type, else null. */
+    private static String primitiveMakerName(Class<?> primitiveT) {
+        if (primitiveT == Boolean.TYPE) {
+            return "arbBoolean";
+        } else if (primitiveT == Character.TYPE) {
+            return "arbChar";
+        } else if (primitiveT == Byte.TYPE) {
+            return "arbByte";
+        } else if (primitiveT == Short.TYPE) {
+            return "arbShort";
+        } else if (primitiveT == Integer.TYPE) {
+            return "arbInt";
+        } else if (primitiveT == Long.TYPE) {
+            return "arbLong";
+        } else if (primitiveT == Float.TYPE) {
+            return "arbFloat";
+        } else if (primitiveT == Double.TYPE) {
+            return "arbDouble";
+        } else {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package tbc.supercheck;
+
+import java.util.Random;
+
+/**
+ * A RandomSource is the stream of random bits behind a Gen. Several 
+ * algorithms are available, see {@link Algorithm}. All but the legacy 
+ * algorithm can {@link #split()} off an independent child stream, and 
+ * {@link #jump()} far ahead in their own stream, which is useful when handing
+ * out streams to parallel workers.
+ * <p>
+ * A RandomSource is not thread safe.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+public abstract class RandomSource {
+    
+    /** The algorithms a RandomSource may use. */
+    public enum Algorithm {
+        /** 
+         * java.util.Random. Slow, and of poor quality over long runs, but 
+         * used by all recordings made before RandomSource existed. A Gen 
+         * with this algorithm draws as it did then, so that they replay 
+         * with the same data.
+         */
+        LEGACY,
+        
+        /** SplitMix64, as used by java.util.SplittableRandom. Very fast. */
+        SPLITMIX,
+        
+        /** xoroshiro128++. Fast, and of good statistical quality. */
+        XOROSHIRO;
+        
+        /** Answers a new RandomSource of this algorithm, seeded by seed. */
+        public RandomSource create(long seed) {
+            switch (this) {
+            case LEGACY:
+                return new Legacy(seed);
+            case SPLITMIX:
+                return new SplitMix(seed, GOLDEN_GAMMA);
+            case XOROSHIRO: default:
+                return new Xoroshiro(seed);
+            }
+        }
+    }
+    
+    /** The algorithm used when none is chosen. */
+    public static final Algorithm DEFAULT_ALGORITHM = Algorithm.XOROSHIRO;
+    
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    
+    RandomSource() {
+    }
+    
+    /** Answers the algorithm of this source. */
+    public abstract Algorithm algorithm();
+    
+    /** 
+     * Restarts this source's stream as if it had been created with seed.
+     */
+    abstract void setSeed(long seed);
+    
+    /** Answers 32 uniformly random bits. */
+    public abstract int nextInt();
+    
+    /** Answers 64 uniformly random bits. */
+    public abstract long nextLong();
+    
+    /**
+     * Answers a new source whose stream is statistically independent of this
+     * one. Splitting advances this source.
+     * 
+     * @throws UnsupportedOperationException for the legacy algorithm
+     */
+    public abstract RandomSource split();
+    
+    /**
+     * Advances this source by a great many draws (2^64 for xoroshiro, 2^32 
+     * for splitmix) in constant time. Sources jumped a different number of
+     * times from the same state will not overlap in any practical run.
+     * 
+     * @throws UnsupportedOperationException for the legacy algorithm
+     */
+    public abstract void jump();
+    
+    /** Answers an int in the range [0, bound). */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        /* Lemire's multiply-shift, with rejection of the biased low part */
+        long m = (nextInt() & 0xFFFFFFFFL) * bound;
+        long low = m & 0xFFFFFFFFL;
+        if (low < bound) {
+            long threshold = (0x100000000L - bound) % bound;
+            while (low < threshold) {
+                m = (nextInt() & 0xFFFFFFFFL) * bound;
+                low = m & 0xFFFFFFFFL;
+            }
+        }
+        return (int) (m >>> 32);
+    }
+    
+    /** Answers a random boolean. */
+    public boolean nextBoolean() {
+        return nextInt() < 0;
+    }
+    
+    /** Answers a float in the range [0, 1). */
+    public float nextFloat() {
+        return (nextInt() >>> 8) * 0x1.0p-24f;
+    }
+    
+    /** Answers a double in the range [0, 1). */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+    
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    /** java.util.Random, drawn from exactly as Gen always has. */
+    private static final class Legacy extends RandomSource {
+        private final Random random;
+        
+        private Legacy(long seed) {
+            random = new Random(seed);
+        }
+        
+        public Algorithm algorithm() { return Algorithm.LEGACY; }
+        void setSeed(long seed) { random.setSeed(seed); }
+        public int nextInt() { return random.nextInt(); }
+        public long nextLong() { return random.nextLong(); }
+        public int nextInt(int bound) { return random.nextInt(bound); }
+        public boolean nextBoolean() { return random.nextBoolean(); }
+        public float nextFloat() { return random.nextFloat(); }
+        public double nextDouble() { return random.nextDouble(); }
+        
+        public RandomSource split() {
+            throw new UnsupportedOperationException("java.util.Random cannot split");
+        }
+        
+        public void jump() {
+            throw new UnsupportedOperationException("java.util.Random cannot jump");
+        }
+    }
+    
+    /** SplitMix64, following java.util.SplittableRandom. */
+    private static final class SplitMix extends RandomSource {
+        private long seed;
+        private long gamma;
+        
+        private SplitMix(long seed, long gamma) {
+            this.seed = seed;
+            this.gamma = gamma;
+        }
+        
+        public Algorithm algorithm() { return Algorithm.SPLITMIX; }
+        
+        void setSeed(long seed) {
+            this.seed = seed;
+            this.gamma = GOLDEN_GAMMA;
+        }
+        
+        public long nextLong() {
+            return mix64(seed += gamma);
+        }
+        
+        public int nextInt() {
+            return (int) (nextLong() >>> 32);
+        }
+        
+        public RandomSource split() {
+            long childSeed = nextLong();
+            return new SplitMix(childSeed, mixGamma(seed += gamma));
+        }
+        
+        public void jump() {
+            seed += gamma << 32;
+        }
+        
+        private static long mixGamma(long z) {
+            z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+            z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+            z = (z ^ (z >>> 33)) | 1L;
+            int n = Long.bitCount(z ^ (z >>> 1));
+            return (n < 24) ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
+        }
+    }
+    
+    /** xoroshiro128++ by Blackman and Vigna. */
+    private static final class Xoroshiro extends RandomSource {
+        private static final long[] JUMP = { 0x2BD7A6A6E99C2DDCL, 0x0992CCAF6A6FCA05L };
+        
+        private long s0, s1;
+        
+        private Xoroshiro(long seed) {
+            setSeed(seed);
+        }
+        
+        public Algorithm algorithm() { return Algorithm.XOROSHIRO; }
+        
+        void setSeed(long seed) {
+            /* expand the seed with splitmix, as the authors recommend */
+            s0 = mix64(seed += GOLDEN_GAMMA);
+            s1 = mix64(seed + GOLDEN_GAMMA);
+            if ((s0 | s1) == 0) {
+                s1 = GOLDEN_GAMMA;
+            }
+        }
+        
+        public long nextLong() {
+            final long a = s0;
+            long b = s1;
+            final long result = Long.rotateLeft(a + b, 17) + a;
+            b ^= a;
+            s0 = Long.rotateLeft(a, 49) ^ b ^ (b << 21);
+            s1 = Long.rotateLeft(b, 28);
+            return result;
+        }
+        
+        public int nextInt() {
+            return (int) (nextLong() >>> 32);
+        }
+        
+        public RandomSource split() {
+            return new Xoroshiro(nextLong() ^ Long.rotateLeft(nextLong(), 32));
+        }
+        
+        public void jump() {
+            long j0 = 0, j1 = 0;
+            for (long jump : JUMP) {
+                for (int b=0; b<64; b++) {
+                    if ((jump & (1L << b)) != 0) {
+                        j0 ^= s0;
+                        j1 ^= s1;
+                    }
+                    nextLong();
+                }
+            }
+            s0 = j0;
+            s1 = j1;
+        }
+    }
+}
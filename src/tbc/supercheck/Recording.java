@@ -1,21 +1,47 @@
 package tbc.supercheck;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A recording remembers the history of test events that occur during a test run.
  * It does not record the actual data passed to each property, but instead records:
  * which properties were executed and in what order, the random seed used to
- * generate data for each property and the number of times each property was
- * executed.
+ * generate data for each property, the number of times each property was
+ * executed, the number of workers its tries were split between, the 
+ * random algorithm used, whether the data grew in size over the tries, 
+ * whether generation was guided by coverage, the bound to which argument 
+ * lists were enumerated, if they were, and which tries failed.
+ * <p>
+ * The data of each try is generated from a seed derived from the property's 
+ * seed and the try's number, so a single try can be replayed without 
+ * replaying the tries before it. See {@link TestRun#replayTry(Recording, int, int)}.
  * <p>
  * A recording is valid so long as the properties it records events about do not
  * change their method signatures between recording and play back. If they do, 
  * data generation from the random seed will no longer match what occured during 
- * the recording. Because of this playback will halt if missing properties or
- * altered property signatures are discovered.
+ * the recording. Because of this, events whose properties are missing or have
+ * altered signatures are passed over during playback, and their indexes are
+ * returned by {@link TestRun#runRecording(Recording)}.
+ * <p>
+ * A recording made by {@link #open(Path)} is kept in a file, to which each 
+ * event is written as it is recorded, so that nothing recorded is lost if the
+ * test run is killed. Events are written in a compact binary form and read 
+ * back through a memory mapping as they are needed, so long recordings open
+ * at once and take little memory.
+ * <p>
+ * The events of one class or property, or those with failed tries, can be 
+ * selected from a recording, to play back only those. Selections are made 
+ * from an index of the recording's events, built when first needed.
  * 
  * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
  */
@@ -31,16 +57,59 @@ public class Recording implements Serializable {
         private long randomSeed;
         private int times;
         
+        /* Absent, and so 0, in recordings made before parallel test runs. */
+        private int workers;
+        
+        /* Absent, and so null, in recordings made with java.util.Random. */
+        private String algorithm;
+        
+        /* Absent, and so false, in recordings made before per-try seeds. */
+        private boolean perTrySeeds;
+        
+        /* Absent, and so false, in recordings made before sizes, whose data 
+         * is made at the maximum size for every try. */
+        private boolean sized;
+        
+        /* Absent, and so false, in recordings made before guided tries. */
+        private boolean guided;
+        
+        /* The bound argument lists were enumerated to, or 0 for random tries.
+         * Absent, and so 0, in recordings made before exhaustive tries. */
+        private int exhaustiveBound;
+        
+        /* The numbers, from 1, of at most MAX_FAILED_TRIES failed tries. */
+        private int[] failedTries;
+        
         private TestEvent(String containingClass,
         		          String property,
         		          String[] params,
         		          long randomSeed, 
-        		          int times) {
+        		          int times,
+        		          int workers,
+        		          String algorithm,
+        		          boolean perTrySeeds,
+        		          boolean sized,
+        		          boolean guided,
+        		          int exhaustiveBound,
+        		          int[] failedTries) {
             this.containingClass = containingClass;
             this.property = property;
             this.params = params;
             this.randomSeed = randomSeed;
             this.times = times;
+            this.workers = workers;
+            this.algorithm = algorithm;
+            this.perTrySeeds = perTrySeeds;
+            this.sized = sized;
+            this.guided = guided;
+            this.exhaustiveBound = exhaustiveBound;
+            this.failedTries = failedTries;
+        }
+        
+        private RandomSource.Algorithm getAlgorithm() {
+            return algorithm == null 
+                ? RandomSource.Algorithm.LEGACY
+                : RandomSource.Algorithm.valueOf(algorithm);
         }
         
         private Method getPropertyMethod() throws ClassNotFoundException, 
@@ -48,15 +117,190 @@ public class Recording implements Serializable {
         	Class<?> containingT = Class.forName(containingClass);
 	    	Class<?>[] paramTs = new Class<?>[params.length];
 	    	for (int pIdx = 0; pIdx < paramTs.length; pIdx++) {
-	    		paramTs[pIdx] = Class.forName(params[pIdx]);
+	    		paramTs[pIdx] = classForName(params[pIdx]);
 	    	}
 	    	return containingT.getMethod(property, paramTs);
         }
     }
     
+    /** The most failed tries remembered for any one test event. */
+    static final int MAX_FAILED_TRIES = 1000;
+    
+    /* Events whose argument lists were enumerated are of their own kind, 
+     * which earlier versions refuse to read, as they end with the bound */
+    private static final byte EVENT = 2, EXHAUSTIVE_EVENT = 3;
+    
+    private static final byte PER_TRY_SEEDS = 1, GUIDED = 2, SIZED = 4;
+    
     private ArrayList<TestEvent> testEvents = new ArrayList<TestEvent>();
     
-    void addTestEvent(Method property, long randomSeed, int times) {
+    /* The file of a recording made by open(), which holds its events */
+    private transient RecordingFile file;
+    
+    /* For a selection, the recording selected from and the indexes there of
+     * the events selected, in order */
+    private transient Recording selectedFrom;
+    private transient int[] selection;
+    
+    /* The indexes of the events of each class and property name, and of 
+     * those with failed tries, once something has been selected */
+    private transient Map<String, Indexes> byClass;
+    private transient Map<String, Indexes> byProperty;
+    private transient Indexes failed;
+    
+    /**
+     * Answers a recording kept in file, holding the events already recorded 
+     * in it, to which further events are written as they are recorded. The
+     * file is created if it does not exist. If the file's last event was 
+     * only partly written, when a test run was killed say, it is dropped. 
+     * Give the recording to a TestRun with 
+     * {@link TestRun#setRecording(Recording)}:
+     * 
+     * <pre>Recording recording = Recording.open(Paths.get("soak.screc"));
+     * new TestRun().setRecording(recording).runOn(SomeInvariants.class, 10000);
+     * recording.close();</pre>
+     * 
+     * @throws IOException if the file can not be opened, or is not a recording
+     */
+    public static Recording open(Path file) throws IOException {
+        Recording recording = new Recording();
+        recording.file = new RecordingFile(file);
+        return recording;
+    }
+    
+    /**
+     * Closes the file of a recording made by {@link #open(Path)}. Its events
+     * can no longer be read, nor others recorded. A recording not kept in a 
+     * file is unaffected.
+     */
+    public synchronized void close() throws IOException {
+        if (file != null) {
+            file.close();
+        }
+    }
+    
+    /**
+     * Answers a selection of the events of this recording: those of 
+     * properties of containingClass named property, in the order they were
+     * recorded. Either may be null, to select the events of any class, or any
+     * property of the class. A selection can be played back, or selected 
+     * from, but not recorded to. The events of a recording with failed tries
+     * of a property can be played back, for example, with:
+     * 
+     * <pre>new TestRun().runRecording(
+     *         recording.select(SomeInvariants.class, "prop_idempotent").selectFailed());</pre>
+     */
+    public Recording select(Class<?> containingClass, String property) {
+        Recording from = selectedFrom != null ? selectedFrom : this;
+        int[] matching;
+        synchronized (from) {
+            from.index();
+            Indexes ofClass = containingClass == null 
+                ? null : from.indexes(from.byClass, containingClass.getName());
+            Indexes ofProperty = property == null 
+                ? null : from.indexes(from.byProperty, property);
+            if (ofClass == null && ofProperty == null) {
+                matching = null;
+            } else if (ofProperty == null) {
+                matching = ofClass.toArray();
+            } else if (ofClass == null) {
+                matching = ofProperty.toArray();
+            } else {
+                matching = intersect(ofClass.toArray(), ofProperty.toArray());
+            }
+        }
+        return selectFrom(from, matching);
+    }
+    
+    /** 
+     * Answers a selection of the events of this recording with failed tries,
+     * in the order they were recorded. See {@link #select(Class, String)}.
+     */
+    public Recording selectFailed() {
+        Recording from = selectedFrom != null ? selectedFrom : this;
+        int[] matching;
+        synchronized (from) {
+            from.index();
+            matching = from.failed.toArray();
+        }
+        return selectFrom(from, matching);
+    }
+    
+    /**
+     * Answers a selection from the recording from of the events of this 
+     * recording among matching, or of all its events for null.
+     */
+    private Recording selectFrom(Recording from, int[] matching) {
+        int[] mine;
+        if (selection != null) {
+            mine = selection;
+        } else {
+            mine = new int[getEventCount()];
+            for (int eIdx=0; eIdx<mine.length; eIdx++) {
+                mine[eIdx] = eIdx;
+            }
+        }
+        Recording selected = new Recording();
+        selected.selectedFrom = from;
+        selected.selection = matching == null ? mine : intersect(mine, matching);
+        return selected;
+    }
+    
+    private Indexes indexes(Map<String, Indexes> index, String key) {
+        Indexes indexes = index.get(key);
+        return indexes != null ? indexes : new Indexes();
+    }
+    
+    /** Indexes the events recorded so far, unless they have been. */
+    private void index() {
+        if (byClass != null) {
+            return;
+        }
+        byClass = new HashMap<String, Indexes>();
+        byProperty = new HashMap<String, Indexes>();
+        failed = new Indexes();
+        int count = getEventCount();
+        for (int eIdx=0; eIdx<count; eIdx++) {
+            index(eIdx, event(eIdx));
+        }
+    }
+    
+    private void index(int eIdx, TestEvent te) {
+        if (!byClass.containsKey(te.containingClass)) {
+            byClass.put(te.containingClass, new Indexes());
+        }
+        byClass.get(te.containingClass).add(eIdx);
+        if (!byProperty.containsKey(te.property)) {
+            byProperty.put(te.property, new Indexes());
+        }
+        byProperty.get(te.property).add(eIdx);
+        if (te.failedTries != null && te.failedTries.length > 0) {
+            failed.add(eIdx);
+        }
+    }
+    
+    /** Answers the values in both of two ascending arrays. */
+    private static int[] intersect(int[] a, int[] b) {
+        int[] both = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        for (int aIdx=0, bIdx=0; aIdx<a.length && bIdx<b.length; ) {
+            if (a[aIdx] < b[bIdx]) {
+                aIdx++;
+            } else if (a[aIdx] > b[bIdx]) {
+                bIdx++;
+            } else {
+                both[count++] = a[aIdx];
+                aIdx++;
+                bIdx++;
+            }
+        }
+        return Arrays.copyOf(both, count);
+    }
+    
+    synchronized void addTestEvent(Method property, long randomSeed, int times, 
+                                   int workers, RandomSource.Algorithm algorithm,
+                                   boolean perTrySeeds, boolean sized, boolean guided,
+                                   int exhaustiveBound, int[] failedTries) {
     	String propertyName = property.getName();
     	String containingClass = property.getDeclaringClass().getName();
     	Class<?>[] paramTs = property.getParameterTypes();
@@ -65,32 +309,273 @@ public class Recording implements Serializable {
     		params[pIdx] = paramTs[pIdx].getName();
     	}
     	
-        testEvents.add(new TestEvent(containingClass,
-        		                     propertyName, 
-        		                     params,
-        		                     randomSeed, 
-        		                     times));
+        add(new TestEvent(containingClass, propertyName, params, randomSeed, 
+                          times, workers, algorithm.name(), perTrySeeds, sized,
+                          guided, exhaustiveBound, failedTries));
     }
     
-    void playBack(TestRun testRun) {
-    	for (TestEvent te : testEvents) {
+    synchronized void addAll(Recording other) {
+        int count = other.getEventCount();
+        for (int eIdx=0; eIdx<count; eIdx++) {
+            add(other.event(eIdx));
+        }
+    }
+    
+    /**
+     * Plays back the events recorded so far, as the test run may be recording
+     * to this recording while it plays it back. Events whose property can not
+     * be found are passed over.
+     * 
+     * @return the indexes of the events passed over
+     */
+    int[] playBack(TestRun testRun) throws TestException {
+        int count = getEventCount();
+        List<Replay> replays = new ArrayList<Replay>(count);
+        Indexes unresolved = new Indexes();
+    	for (int eIdx=0; eIdx<count; eIdx++) {
+    	    TestEvent te = event(eIdx);
     		try {
-    			testRun.runOn(te.getPropertyMethod(), te.times, te.randomSeed);
+    			replays.add(new Replay(te.getPropertyMethod(), te.times, te.randomSeed, 
+    			                       Math.max(te.workers, 1), te.getAlgorithm(), 
+    			                       te.perTrySeeds, te.sized, te.guided, 
+    			                       te.exhaustiveBound));
     		} catch (NoSuchMethodException e) {
-    			System.out.println("Cannot run recording for " 
-    					           + te.property
-    					           + ". Either it no longer exists or" 
-    					           + " its signature has changed.");
-    			return;
+    			testRun.passOver(eIdx, "Cannot run recording for " 
+    					                 + te.property
+    					                 + ". Either it no longer exists or" 
+    					                 + " its signature has changed.");
+    			unresolved.add(eIdx);
     		} catch (ClassNotFoundException e) {
-    			System.out.println("Cannot run recording for "
-    					           + te.property
-    					           + ". Its containing class, "
-    					           + te.containingClass
-    					           + ", is missing.");
-    			return;
+    			testRun.passOver(eIdx, "Cannot run recording for "
+    					                 + te.property
+    					                 + ". Its containing class, "
+    					                 + te.containingClass
+    					                 + ", is missing.");
+    			unresolved.add(eIdx);
     		}
     	}
+    	
+    	testRun.playBack(replays);
+    	return unresolved.toArray();
+    }
+    
+    boolean replayTry(TestRun testRun, int event, int tryNumber) throws TestException {
+        TestEvent te = event(event);
+        if (!te.perTrySeeds) {
+            throw new TestException("Cannot replay a single try of " + te.property
+                    + ". It was recorded before tries had their own seeds.");
+        }
+        if (te.guided) {
+            throw new TestException("Cannot replay a single try of " + te.property
+                    + ". Its tries were guided by the coverage of the tries before them.");
+        }
+        if (tryNumber < 1 || tryNumber > te.times) {
+            throw new TestException(te.property + " was tried " + te.times
+                    + " times. There is no try " + tryNumber + ".");
+        }
+        
+        Method property;
+        try {
+            property = te.getPropertyMethod();
+        } catch (NoSuchMethodException e) {
+            throw new TestException("Cannot replay " + te.property 
+                    + ". Either it no longer exists or its signature has changed.");
+        } catch (ClassNotFoundException e) {
+            throw new TestException("Cannot replay " + te.property 
+                    + ". Its containing class, " + te.containingClass 
+                    + ", is missing.");
+        }
+        return testRun.runTry(property, te.randomSeed, te.getAlgorithm(), tryNumber,
+                              te.sized, te.exhaustiveBound);
+    }
+    
+    /**
+     * Answers the number of test events recorded.
+     */
+    public synchronized int getEventCount() {
+        if (selection != null) {
+            return selection.length;
+        }
+        return file != null ? file.count() : testEvents.size();
+    }
+    
+    /**
+     * Answers the numbers, counting from 1, of the tries that failed during
+     * a test event, in order. At most {@value #MAX_FAILED_TRIES} failures of 
+     * an event are remembered; with parallel workers these are the first to 
+     * have been found, which are not always the lowest numbered.
+     * 
+     * @param event the index of the event, in the order events were recorded
+     */
+    public int[] getFailedTries(int event) {
+        int[] failed = event(event).failedTries;
+        return failed == null ? new int[0] : failed.clone();
+    }
+    
+    private synchronized void add(TestEvent te) {
+        if (selection != null) {
+            throw new UnsupportedOperationException(
+                    "A selection from a recording can not be recorded to");
+        }
+        if (file == null) {
+            testEvents.add(te);
+        } else {
+            try {
+                file.append(te.exhaustiveBound > 0 ? EXHAUSTIVE_EVENT : EVENT, encode(te));
+            } catch (IOException e) {
+                throw new TestException("Cannot write the recording: " + e, e);
+            }
+        }
+        if (byClass != null) {
+            index(getEventCount() - 1, te);
+        }
+    }
+    
+    private synchronized TestEvent event(int index) {
+        if (selection != null) {
+            return selectedFrom.event(selection[index]);
+        }
+        if (file == null) {
+            return testEvents.get(index);
+        }
+        try {
+            byte type = file.type(index);
+            if (type != EVENT && type != EXHAUSTIVE_EVENT) {
+                throw new TestException("Event " + index + " of the recording is of an "
+                        + "unknown kind, from a later version of SuperCheck");
+            }
+            return decode(file.payload(index), type == EXHAUSTIVE_EVENT);
+        } catch (IOException e) {
+            throw new TestException("Cannot read the recording: " + e, e);
+        }
+    }
+    
+    /**
+     * Encodes an event as the numbers of its class, property, parameter type
+     * and algorithm names, its seed, and its counts, most as varints. The 
+     * failed tries, being in order, are encoded as the gaps between them, 
+     * and followed by the bound of an exhaustive event.
+     */
+    private byte[] encode(TestEvent te) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        RecordingFile.putVarint(out, file.intern(te.containingClass));
+        RecordingFile.putVarint(out, file.intern(te.property));
+        RecordingFile.putVarint(out, te.params.length);
+        for (String param : te.params) {
+            RecordingFile.putVarint(out, file.intern(param));
+        }
+        for (int shift=56; shift>=0; shift-=8) {
+            out.write((int) (te.randomSeed >>> shift));
+        }
+        RecordingFile.putVarint(out, te.times);
+        RecordingFile.putVarint(out, te.workers);
+        RecordingFile.putVarint(out, te.algorithm == null ? 0 : file.intern(te.algorithm) + 1);
+        out.write((te.perTrySeeds ? PER_TRY_SEEDS : 0) | (te.guided ? GUIDED : 0)
+                  | (te.sized ? SIZED : 0));
+        int[] failed = te.failedTries == null ? new int[0] : te.failedTries;
+        RecordingFile.putVarint(out, failed.length);
+        int previous = 0;
+        for (int tryNumber : failed) {
+            RecordingFile.putVarint(out, tryNumber - previous);
+            previous = tryNumber;
+        }
+        if (te.exhaustiveBound > 0) {
+            RecordingFile.putVarint(out, te.exhaustiveBound);
+        }
+        return out.toByteArray();
+    }
+    
+    private TestEvent decode(ByteBuffer in, boolean exhaustive) {
+        String containingClass = file.string((int) RecordingFile.getVarint(in));
+        String property = file.string((int) RecordingFile.getVarint(in));
+        String[] params = new String[(int) RecordingFile.getVarint(in)];
+        for (int pIdx=0; pIdx<params.length; pIdx++) {
+            params[pIdx] = file.string((int) RecordingFile.getVarint(in));
+        }
+        long randomSeed = in.getLong();
+        int times = (int) RecordingFile.getVarint(in);
+        int workers = (int) RecordingFile.getVarint(in);
+        int algorithm = (int) RecordingFile.getVarint(in);
+        byte flags = in.get();
+        int[] failed = new int[(int) RecordingFile.getVarint(in)];
+        int previous = 0;
+        for (int fIdx=0; fIdx<failed.length; fIdx++) {
+            failed[fIdx] = previous += (int) RecordingFile.getVarint(in);
+        }
+        int exhaustiveBound = exhaustive ? (int) RecordingFile.getVarint(in) : 0;
+        return new TestEvent(containingClass, property, params, randomSeed, times,
+                             workers, algorithm == 0 ? null : file.string(algorithm - 1),
+                             (flags & PER_TRY_SEEDS) != 0, (flags & SIZED) != 0,
+                             (flags & GUIDED) != 0, exhaustiveBound, failed);
+    }
+    
+    /** 
+     * Serializes a recording kept in a file, or a selection, as one holding 
+     * its events in memory, so that it deserializes as it always has.
+     */
+    private Object writeReplace() {
+        if (file == null && selection == null) {
+            return this;
+        }
+        Recording copy = new Recording();
+        copy.addAll(this);
+        return copy;
+    }
+    
+    /** An event to be played back, with its property found. */
+    static final class Replay {
+        final Method property;
+        final int times;
+        final long seed;
+        final int workers;
+        final RandomSource.Algorithm algorithm;
+        final boolean perTrySeeds;
+        final boolean sized;
+        final boolean guided;
+        final int exhaustiveBound;
+        
+        private Replay(Method property, int times, long seed, int workers, 
+                       RandomSource.Algorithm algorithm, boolean perTrySeeds,
+                       boolean sized, boolean guided, int exhaustiveBound) {
+            this.property = property;
+            this.times = times;
+            this.seed = seed;
+            this.workers = workers;
+            this.algorithm = algorithm;
+            this.perTrySeeds = perTrySeeds;
+            this.sized = sized;
+            this.guided = guided;
+            this.exhaustiveBound = exhaustiveBound;
+        }
+    }
+    
+    /** A growing list of event indexes. */
+    private static final class Indexes {
+        private int[] indexes = new int[8];
+        private int count;
+        
+        private void add(int index) {
+            if (count == indexes.length) {
+                indexes = Arrays.copyOf(indexes, count * 2);
+            }
+            indexes[count++] = index;
+        }
+        
+        private int[] toArray() {
+            return Arrays.copyOf(indexes, count);
+        }
+    }
+    
+    private static Class<?> classForName(String name) throws ClassNotFoundException {
+        if (name.equals("boolean")) return Boolean.TYPE;
+        if (name.equals("char"))    return Character.TYPE;
+        if (name.equals("byte"))    return Byte.TYPE;
+        if (name.equals("short"))   return Short.TYPE;
+        if (name.equals("int"))     return Integer.TYPE;
+        if (name.equals("long"))    return Long.TYPE;
+        if (name.equals("float"))   return Float.TYPE;
+        if (name.equals("double"))  return Double.TYPE;
+        return Class.forName(name);
     }
     
     /**
@@ -100,13 +585,22 @@ public class Recording implements Serializable {
      * @return a long string description
      */
     public String toDescription() {
-        String d = new String();
-        d += testEvents.size() + " test events:\n";
-        for (TestEvent e : testEvents) {
-            d += e.property 
-              + " runs=" + e.times 
-              + " seed=" + e.randomSeed + "\n";
-        }
-        return d;
+        int count = getEventCount();
+        StringBuilder d = new StringBuilder();
+        d.append(count).append(" test events:\n");
+        for (int eIdx=0; eIdx<count; eIdx++) {
+            TestEvent e = event(eIdx);
+            d.append(e.property)
+             .append(" runs=").append(e.times)
+             .append(" seed=").append(e.randomSeed)
+             .append(" random=").append(e.getAlgorithm().name().toLowerCase())
+             .append(e.workers > 1 ? " workers=" + e.workers : "")
+             .append(e.guided ? " guided" : "")
+             .append(e.exhaustiveBound > 0 ? " exhaustive=" + e.exhaustiveBound : "")
+             .append(e.failedTries != null && e.failedTries.length > 0 
+                     ? " failed=" + Arrays.toString(e.failedTries) : "")
+             .append("\n");
+        }
+        return d.toString();
     }
 }
@@ -0,0 +1,243 @@
+package tbc.supercheck;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A RecordingFile is the file a {@link Recording} is kept in: a header, then
+ * a log of records, each written whole by a single write as it is added. A
+ * record is its length, a type, the payload, and a CRC32 of the type and
+ * payload, so a record torn by the process being killed while it was written
+ * is recognised and dropped when the file is next opened. Strings are
+ * interned: each is written once, as a record of its own, and referred to by
+ * its number.
+ * <p>
+ * Files are read through a memory mapping. Opening a file only steps from
+ * record to record, remembering where the records that are not strings
+ * start, so even recordings of millions of events open at once. RecordingFiles
+ * are not thread safe. Files are limited to 2GB.
+ *
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+final class RecordingFile {
+    
+    static final byte STRING = 1;
+    
+    private static final int MAGIC = 0x53434B52;   // "SCKR"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    
+    /* the length, type and CRC of a record, around its payload */
+    private static final int OVERHEAD = 4 + 1 + 4;
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    
+    private final Path file;
+    private final FileChannel channel;
+    
+    private final List<String> strings = new ArrayList<String>();
+    private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+    
+    /* where the records other than strings start, and their number */
+    private int[] offsets = new int[1024];
+    private int count;
+    
+    /* the offset just past the last whole record */
+    private long end;
+    
+    private MappedByteBuffer mapped;
+    private final CRC32 crc = new CRC32();
+    
+    /**
+     * Opens file, creating it if need be, to read its records and append
+     * others.
+     *
+     * @throws IOException if file can not be opened, or is not a recording
+     */
+    RecordingFile(Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                channel.truncate(0);
+                write(header, 0);
+                end = HEADER_SIZE;
+            } else {
+                scan();
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /** Answers the number of records other than strings. */
+    int count() {
+        return count;
+    }
+    
+    /** Answers the type of record i, counting records other than strings. */
+    byte type(int i) throws IOException {
+        return map(i).get(offsets[i] + 4);
+    }
+    
+    /** Answers the payload of record i, counting records other than strings. */
+    ByteBuffer payload(int i) throws IOException {
+        ByteBuffer records = map(i).duplicate();
+        int length = records.getInt(offsets[i]);
+        records.limit(offsets[i] + 4 + length).position(offsets[i] + 5);
+        return records.slice();
+    }
+    
+    /** Answers the string numbered id. */
+    String string(int id) {
+        return strings.get(id);
+    }
+    
+    /** Answers the number of s, appending it if it has not been written. */
+    int intern(String s) throws IOException {
+        Integer id = stringIds.get(s);
+        if (id == null) {
+            append(STRING, s.getBytes(UTF_8));
+            id = strings.size();
+            strings.add(s);
+            stringIds.put(s, id);
+        }
+        return id;
+    }
+    
+    /** Appends a record, which is written before this returns. */
+    void append(byte type, byte[] payload) throws IOException {
+        if (end + OVERHEAD + payload.length > Integer.MAX_VALUE) {
+            throw new IOException(file + " is full");
+        }
+        ByteBuffer record = ByteBuffer.allocate(OVERHEAD + payload.length);
+        record.putInt(1 + payload.length).put(type).put(payload);
+        crc.reset();
+        crc.update(record.array(), 4, 1 + payload.length);
+        record.putInt((int) crc.getValue()).flip();
+        write(record, end);
+        
+        if (type != STRING) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = (int) end;
+        }
+        end += record.limit();
+    }
+    
+    void close() throws IOException {
+        channel.close();
+    }
+    
+    /**
+     * Steps through the records of the file, dropping any torn or corrupt
+     * record and those after it.
+     */
+    private void scan() throws IOException {
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                             Math.min(channel.size(), Integer.MAX_VALUE));
+        if (mapped.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a SuperCheck recording");
+        }
+        if (mapped.getInt(4) != VERSION) {
+            throw new IOException(file + " is a recording of version "
+                                  + mapped.getInt(4) + ", not " + VERSION);
+        }
+        
+        int at = HEADER_SIZE;
+        int limit = mapped.limit();
+        while (limit - at >= OVERHEAD) {
+            int length = mapped.getInt(at);
+            if (length < 1 || length > limit - at - OVERHEAD + 1) {
+                break;
+            }
+            ByteBuffer checked = mapped.duplicate();
+            checked.limit(at + 4 + length).position(at + 4);
+            crc.reset();
+            crc.update(checked);
+            if ((int) crc.getValue() != mapped.getInt(at + 4 + length)) {
+                break;
+            }
+            
+            byte type = mapped.get(at + 4);
+            if (type == STRING) {
+                byte[] utf8 = new byte[length - 1];
+                ByteBuffer payload = mapped.duplicate();
+                payload.position(at + 5);
+                payload.get(utf8);
+                String s = new String(utf8, UTF_8);
+                stringIds.put(s, strings.size());
+                strings.add(s);
+            } else {
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                offsets[count++] = at;
+            }
+            at += 4 + length + 4;
+        }
+        end = at;
+        if (end < channel.size()) {
+            mapped = null;
+            channel.truncate(end);
+        }
+    }
+    
+    /** Answers a mapping of the file covering record i. */
+    private MappedByteBuffer map(int i) throws IOException {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("No record " + i + " of " + count);
+        }
+        /* records are whole once counted, so a mapping that reaches the 
+         * start of one covers all of it */
+        if (mapped == null || mapped.limit() <= offsets[i]) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        }
+        return mapped;
+    }
+    
+    private void write(ByteBuffer bytes, long at) throws IOException {
+        while (bytes.hasRemaining()) {
+            at += channel.write(bytes, at);
+        }
+    }
+    
+    /** Writes value in 7 bit groups, lowest first, each but the last flagged. */
+    static void putVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+    
+    /** Reads a value written by {@link #putVarint(ByteArrayOutputStream, long)}. */
+    static long getVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift=0; shift<64; shift+=7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}
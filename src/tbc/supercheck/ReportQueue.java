@@ -0,0 +1,254 @@
+package tbc.supercheck;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A ReportQueue passes the events of a TestRun to its listeners on a 
+ * reporting thread of its own. Events are queued by the threads executing 
+ * tries, which only block if the queue is full, and are delivered to every 
+ * listener in the order they were queued. The reporting thread is started 
+ * when events arrive, and ends once it has been idle for a while.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+final class ReportQueue implements TestListener {
+    
+    private static final int CAPACITY = 8192;
+    private static final long IDLE_MILLIS = 1000;
+    
+    private final BlockingQueue<Event> events = new ArrayBlockingQueue<Event>(CAPACITY);
+    private final List<TestListener> listeners = new CopyOnWriteArrayList<TestListener>();
+    
+    private Thread reporter;
+    
+    void addListener(TestListener listener) {
+        listeners.add(listener);
+    }
+    
+    void setListeners(TestListener... newListeners) {
+        listeners.clear();
+        for (TestListener listener : newListeners) {
+            listeners.add(listener);
+        }
+    }
+    
+    boolean isEmpty() {
+        return listeners.isEmpty();
+    }
+    
+    public void propertyStarted(final PropertyExecution execution) {
+        post(new Event() {
+            void deliver(TestListener listener) {
+                listener.propertyStarted(execution);
+            }
+        });
+    }
+    
+    public void corpusEntryFailed(final PropertyExecution execution, final int entry,
+                                  final Object[] params) {
+        post(new Event() {
+            void deliver(TestListener listener) {
+                listener.corpusEntryFailed(execution, entry, params);
+            }
+        });
+    }
+    
+    public void corpusReplayed(final PropertyExecution execution, final int entries,
+                               final int failed, final long nanos) {
+        post(new Event() {
+            void deliver(TestListener listener) {
+                listener.corpusReplayed(execution, entries, failed, nanos);
+            }
+        });
+    }
+    
+    public void tryPassed(final PropertyExecution execution, final int tryNumber, 
+                          final Object[] params) {
+        post(new Event() {
+            void deliver(TestListener listener) {
+                listener.tryPassed(execution, tryNumber, params);
+            }
+        });
+    }
+    
+    public void tryFailed(final PropertyExecution execution, final int tryNumber, 
+                          final Object[] params) {
+        post(new Event() {
+            void deliver(TestListener listener) {
+                listener.tryFailed(execution, tryNumber, params);
+            }
+        });
+    }
+    
+    public void tryTimedOut(final PropertyExecution execution, final int tryNumber,
+                            final Object[] params, final long nanos, 
+                            final String threadDump) {
+        post(new Event() {
+            void deliver(TestListener listener) {
+                listener.tryTimedOut(execution, tryNumber, params, nanos, threadDump);
+            }
+        });
+    }
+    
+    public void tryTooDeep(final PropertyExecution execution, final int tryNumber, 
+                           final String reason) {
+        post(new Event() {
+            void deliver(TestListener listener) {
+                listener.tryTooDeep(execution, tryNumber, reason);
+            }
+        });
+    }
+    
+    public void trySlow(final PropertyExecution execution, final int tryNumber, 
+                        final long nanos, final long medianNanos) {
+        post(new Event() {
+            void deliver(TestListener listener) {
+                listener.trySlow(execution, tryNumber, nanos, medianNanos);
+            }
+        });
+    }
+    
+    public void tryShrunk(final PropertyExecution execution, final int tryNumber, 
+                          final Object[] shrunk, final int steps, final int tries) {
+        post(new Event() {
+            void deliver(TestListener listener) {
+                listener.tryShrunk(execution, tryNumber, shrunk, steps, tries);
+            }
+        });
+    }
+    
+    public void generatorSaturated(final PropertyExecution execution, final int tries,
+                                   final int skipped) {
+        post(new Event() {
+            void deliver(TestListener listener) {
+                listener.generatorSaturated(execution, tries, skipped);
+            }
+        });
+    }
+    
+    public void propertyFinished(final PropertyExecution execution, final int tries,
+                                 final int skipped, final int[] failedTries, 
+                                 final long nanos) {
+        post(new Event() {
+            void deliver(TestListener listener) {
+                listener.propertyFinished(execution, tries, skipped, failedTries, nanos);
+            }
+        });
+    }
+    
+    public void tryReplayed(final PropertyExecution execution, final int tryNumber,
+                            final Object[] params, final boolean held) {
+        post(new Event() {
+            void deliver(TestListener listener) {
+                listener.tryReplayed(execution, tryNumber, params, held);
+            }
+        });
+    }
+    
+    public void eventPassedOver(final int event, final String reason) {
+        post(new Event() {
+            void deliver(TestListener listener) {
+                listener.eventPassedOver(event, reason);
+            }
+        });
+    }
+    
+    /**
+     * Waits until every event queued so far has been delivered and the 
+     * listeners have been flushed.
+     */
+    public void flush() {
+        final CountDownLatch delivered = new CountDownLatch(1);
+        post(new Event() {
+            void deliver(TestListener listener) {
+                listener.flush();
+            }
+            
+            @Override
+            void delivered() {
+                delivered.countDown();
+            }
+        });
+        boolean interrupted = false;
+        while (true) {
+            try {
+                delivered.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void post(Event event) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                events.put(event);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        startReporter();
+    }
+    
+    private synchronized void startReporter() {
+        if (reporter == null) {
+            reporter = new Thread(new Runnable() {
+                public void run() {
+                    report();
+                }
+            }, "SuperCheck reporter");
+            reporter.setDaemon(true);
+            reporter.start();
+        }
+    }
+    
+    private void report() {
+        while (true) {
+            Event event;
+            try {
+                event = events.poll(IDLE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                event = null;
+            }
+            if (event == null) {
+                synchronized (this) {
+                    if (events.isEmpty()) {
+                        reporter = null;
+                        return;
+                    }
+                }
+                continue;
+            }
+            
+            for (TestListener listener : listeners) {
+                try {
+                    event.deliver(listener);
+                } catch (RuntimeException e) {
+                    System.err.println("SuperCheck listener " + listener + " failed: " + e);
+                }
+            }
+            event.delivered();
+        }
+    }
+    
+    private static abstract class Event {
+        abstract void deliver(TestListener listener);
+        
+        void delivered() {
+        }
+    }
+}
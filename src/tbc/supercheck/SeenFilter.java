@@ -0,0 +1,169 @@
+package tbc.supercheck;
+
+import java.lang.reflect.Array;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A SeenFilter remembers, in a fixed amount of memory, which argument lists a
+ * property has been tried with. It is a Bloom filter: it never forgets an 
+ * argument list, but may wrongly claim to have seen one, more often the fuller
+ * it gets. Its size is rounded down to a power of two bytes, and the number of
+ * hashes per argument list is chosen for the number of tries expected.
+ * SeenFilters are thread safe and lock free, so the workers of a property 
+ * share one.
+ * <p>
+ * Only argument lists of values whose equality is known are remembered:
+ * primitives and their boxes, strings, enums, and arrays of these. An 
+ * argument list holding any other object, whose hashCode() may be that of 
+ * its identity, is always taken to be new.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+final class SeenFilter {
+    
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+    
+    private final AtomicLongArray words;
+    private final long mask;
+    private final int hashes;
+    
+    /**
+     * @param maxBytes the memory the filter may use, at least 8
+     * @param expected the number of argument lists expected
+     */
+    SeenFilter(int maxBytes, long expected) {
+        int wordCount = Integer.highestOneBit(Math.max(maxBytes / 8, 1));
+        words = new AtomicLongArray(wordCount);
+        mask = (long) wordCount * 64 - 1;
+        /* k = (m / n) ln 2 minimises false positives once n are added */
+        long bits = mask + 1;
+        int k = (int) Math.round((double) bits / Math.max(expected, 1) * Math.log(2));
+        hashes = Math.max(1, Math.min(k, 16));
+    }
+    
+    /**
+     * Adds an argument list. Answers true if it had not been seen before, 
+     * or cannot be hashed by value, false if it had, or possibly had.
+     */
+    boolean add(Object[] params) {
+        if (!byValue(params)) {
+            return true;
+        }
+        long h1 = hash(params);
+        long h2 = RandomSource.mix64(h1) | 1L;
+        boolean added = false;
+        for (int k=0; k<hashes; k++) {
+            long bit = (h1 + k * h2) & mask;
+            added |= set((int) (bit >>> 6), 1L << bit);
+        }
+        return added;
+    }
+    
+    private boolean set(int word, long bit) {
+        while (true) {
+            long current = words.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (words.compareAndSet(word, current, current | bit)) {
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Answers true if every argument is a value hash() hashes by all its bits:
+     * null, a primitive box, a string, an enum, or an array of these.
+     */
+    static boolean byValue(Object[] params) {
+        for (Object param : params) {
+            if (!byValue(param)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean byValue(Object value) {
+        if (value == null) {
+            return true;
+        }
+        Class<?> valueT = value.getClass();
+        if (valueT.isArray()) {
+            if (valueT.getComponentType().isPrimitive()) {
+                return true;
+            }
+            return byValue((Object[]) value);
+        }
+        return valueT == String.class || valueT == Integer.class || valueT == Long.class 
+               || valueT == Double.class || valueT == Float.class || valueT == Short.class
+               || valueT == Byte.class || valueT == Character.class 
+               || valueT == Boolean.class || value instanceof Enum;
+    }
+    
+    /**
+     * Answers a 64 bit hash of an argument list of values, by all their bits.
+     * Arguments must be {@link #byValue(Object[]) values}.
+     */
+    static long hash(Object[] params) {
+        long h = params.length;
+        for (Object param : params) {
+            h = RandomSource.mix64(h * GOLDEN + hash(param));
+        }
+        return h;
+    }
+    
+    private static long hash(Object value) {
+        if (value == null) {
+            return GOLDEN;
+        } else if (value instanceof String) {
+            String s = (String) value;
+            long h = s.length();
+            for (int cIdx=0; cIdx<s.length(); cIdx++) {
+                h = h * GOLDEN + s.charAt(cIdx);
+            }
+            return RandomSource.mix64(h);
+        } else if (value instanceof Double) {
+            return Double.doubleToLongBits((Double) value);
+        } else if (value instanceof Float) {
+            return Float.floatToIntBits((Float) value);
+        } else if (value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if (value instanceof Boolean) {
+            return ((Boolean) value) ? 1 : 0;
+        } else if (value instanceof Character) {
+            return (Character) value;
+        } else if (value instanceof Enum) {
+            return ((Enum<?>) value).ordinal();
+        } else if (value instanceof int[]) {
+            int[] ints = (int[]) value;
+            long h = ints.length;
+            for (int i : ints) {
+                h = h * GOLDEN + i;
+            }
+            return RandomSource.mix64(h);
+        } else if (value instanceof long[]) {
+            long[] longs = (long[]) value;
+            long h = ~longs.length;
+            for (long l : longs) {
+                h = RandomSource.mix64(h * GOLDEN + l);
+            }
+            return h;
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            long h = bytes.length ^ GOLDEN;
+            for (byte b : bytes) {
+                h = h * GOLDEN + b;
+            }
+            return RandomSource.mix64(h);
+        } else {
+            /* other arrays box their elements, which is slower but rarer */
+            int length = Array.getLength(value);
+            long h = length ^ value.getClass().getName().hashCode();
+            for (int eIdx=0; eIdx<length; eIdx++) {
+                h = h * GOLDEN + hash(Array.get(value, eIdx));
+            }
+            return RandomSource.mix64(h);
+        }
+    }
+}
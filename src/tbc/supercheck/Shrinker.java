@@ -0,0 +1,219 @@
+package tbc.supercheck;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Shrinker reduces the data a property failed for to a smaller set of data
+ * that the property still fails for. It repeatedly asks the 
+ * {@link ShrinkerRegistry} for smaller versions of each argument, and moves to
+ * the first candidate the property fails for, until no candidate fails or its
+ * budget of tries or time is spent.
+ * <p>
+ * Arguments of parameters bound with {@link From} are not shrunk: the 
+ * smaller versions of their class need not be values their Arbitrary makes, 
+ * and a property may well fail for those where it never could for these.
+ * <p>
+ * Candidates already tried are remembered and not tried again. Given a pool, 
+ * the candidates for an argument are tried concurrently, in batches the size 
+ * of the pool, but the earliest failing candidate of a batch is always the 
+ * one chosen, so shrinking gives the same result however many threads help.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+final class Shrinker {
+    
+    private final Method prop;
+    private final Class<?>[] paramTs;
+    private final boolean[] bound;
+    private final int maxTries;
+    private final long maxNanos;
+    private final ForkJoinPool pool;
+    private final Trial trial;
+    
+    private final Set<ArgumentsKey> tried = new HashSet<ArgumentsKey>();
+    private final AtomicInteger tries = new AtomicInteger();
+    private long deadline;
+    private int steps;
+    
+    /**
+     * @param pool the pool to try candidates on, or null to try them on the 
+     *        calling thread
+     * @param trial how a candidate is tried, or null to call the property 
+     *        directly
+     */
+    Shrinker(Method prop, int maxTries, long maxMillis, ForkJoinPool pool, Trial trial) {
+        this.prop = prop;
+        this.paramTs = prop.getParameterTypes();
+        this.bound = boundParameters(prop);
+        this.maxTries = maxTries;
+        this.maxNanos = maxMillis * 1000000L;
+        this.pool = pool;
+        this.trial = trial;
+    }
+    
+    /**
+     * Answers the smallest arguments found that the property fails for, 
+     * starting from failing arguments.
+     */
+    Object[] shrink(Object[] failing) throws TestException {
+        deadline = System.nanoTime() + maxNanos;
+        Object[] current = failing.clone();
+        tried.add(new ArgumentsKey(current));
+        
+        boolean shrunk = true;
+        while (shrunk && !spent()) {
+            shrunk = false;
+            for (int pIdx=0; pIdx<current.length && !shrunk; pIdx++) {
+                if (current[pIdx] == null || bound[pIdx]) {
+                    continue;
+                }
+                Object[] smaller = firstFailing(current, pIdx, 
+                        ShrinkerRegistry.forClass(paramTs[pIdx]).shrink(current[pIdx]));
+                if (smaller != null) {
+                    current = smaller;
+                    steps++;
+                    shrunk = true;
+                }
+            }
+        }
+        return current;
+    }
+    
+    /** Answers the number of times shrinking moved to a smaller candidate. */
+    int getSteps() {
+        return steps;
+    }
+    
+    /** Answers the number of candidates the property was tried on. */
+    int getTries() {
+        return tries.get();
+    }
+    
+    private Object[] firstFailing(Object[] current, int pIdx, List<Object> candidates) {
+        List<Object[]> untried = new ArrayList<Object[]>();
+        for (Object candidate : candidates) {
+            Object[] params = current.clone();
+            params[pIdx] = candidate;
+            if (tried.add(new ArgumentsKey(params))) {
+                untried.add(params);
+            }
+        }
+        
+        int batch = pool == null ? 1 : pool.getParallelism();
+        for (int from=0; from<untried.size() && !spent(); from+=batch) {
+            List<Object[]> batchParams = 
+                untried.subList(from, Math.min(from + batch, untried.size()));
+            boolean[] fails = tryAll(batchParams);
+            for (int bIdx=0; bIdx<fails.length; bIdx++) {
+                if (fails[bIdx]) {
+                    return batchParams.get(bIdx);
+                }
+            }
+        }
+        return null;
+    }
+    
+    private boolean[] tryAll(List<Object[]> batchParams) {
+        boolean[] fails = new boolean[batchParams.size()];
+        if (pool == null || fails.length == 1) {
+            for (int bIdx=0; bIdx<fails.length; bIdx++) {
+                fails[bIdx] = fails(batchParams.get(bIdx));
+            }
+            return fails;
+        }
+        
+        List<ForkJoinTask<Boolean>> tasks = new ArrayList<ForkJoinTask<Boolean>>();
+        for (final Object[] params : batchParams) {
+            ForkJoinTask<Boolean> task = ForkJoinTask.adapt(new Callable<Boolean>() {
+                public Boolean call() {
+                    return !spent() && fails(params);
+                }
+            });
+            tasks.add(task);
+            pool.execute(task);
+        }
+        for (int bIdx=0; bIdx<fails.length; bIdx++) {
+            fails[bIdx] = tasks.get(bIdx).join();
+        }
+        return fails;
+    }
+    
+    /** 
+     * Answers true if the property returns false for params. Data the property
+     * throws for is not used, as it would change the failure being shrunk.
+     */
+    private boolean fails(Object[] params) {
+        tries.incrementAndGet();
+        if (trial != null) {
+            return trial.fails(params);
+        }
+        try {
+            return !(Boolean) prop.invoke(null, params);
+        } catch (InvocationTargetException e) {
+            return false;
+        } catch (IllegalAccessException e) {
+            throw new TestException(e.toString());
+        }
+    }
+    
+    private boolean spent() {
+        return tries.get() >= maxTries || System.nanoTime() - deadline > 0;
+    }
+    
+    /** Answers which parameters of prop are bound with {@link From}. */
+    private static boolean[] boundParameters(Method prop) {
+        Annotation[][] annotations = prop.getParameterAnnotations();
+        boolean[] bound = new boolean[annotations.length];
+        for (int pIdx=0; pIdx<annotations.length; pIdx++) {
+            for (Annotation annotation : annotations[pIdx]) {
+                if (annotation instanceof From) {
+                    bound[pIdx] = true;
+                }
+            }
+        }
+        return bound;
+    }
+    
+    /** 
+     * How a candidate is tried, when not by calling the property directly: 
+     * under a watch, say. 
+     */
+    interface Trial {
+        
+        /** Answers true if the property returns false for params. */
+        boolean fails(Object[] params) throws TestException;
+    }
+    
+    /** Equal for equal arguments, comparing arrays by their contents. */
+    private static final class ArgumentsKey {
+        private final Object[] params;
+        private final int hash;
+        
+        private ArgumentsKey(Object[] params) {
+            this.params = params;
+            this.hash = Arrays.deepHashCode(params);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ArgumentsKey 
+                && Arrays.deepEquals(params, ((ArgumentsKey) o).params);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package tbc.supercheck;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A ShrinkerRegistry remembers, for each class, how to answer smaller 
+ * versions of a value of that class. Primitives and their wrappers, Strings,
+ * enumerations and arrays have built-in shrinkers. Other classes may declare
+ * a shrink() method next to their arbitrary() method:
+ * 
+ * <pre>public static List&lt;Point2D&gt; shrink(Point2D p) {
+ *     return Arrays.asList(Point2D.ZERO, new Point2D(p.x, 0), new Point2D(0, p.y));
+ * }</pre>
+ * 
+ * A shrink() method must be public and static, must take a single argument of
+ * its enclosing type, and may return any Iterable or array of that type. It 
+ * should answer its candidates simplest first. Classes without a shrink() 
+ * method are never shrunk.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+final class ShrinkerRegistry {
+    
+    /** Answers smaller versions of values of one class, simplest first. */
+    interface ValueShrinker {
+        List<Object> shrink(Object value);
+    }
+    
+    /** The most candidates any built-in shrinker will answer for a value. */
+    static final int MAX_CANDIDATES = 256;
+    
+    /** The most candidates tried for each element of an array. */
+    private static final int MAX_ELEMENT_CANDIDATES = 4;
+    
+    private static final ValueShrinker NONE = new ValueShrinker() {
+        public List<Object> shrink(Object value) {
+            return Collections.emptyList();
+        }
+    };
+    
+    private static final ClassValue<ValueShrinker> shrinkers = new ClassValue<ValueShrinker>() {
+        @Override
+        protected ValueShrinker computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+    
+    private ShrinkerRegistry() {
+    }
+    
+    /**
+     * Answers the shrinker for valueT. Classes that cannot be shrunk answer a 
+     * shrinker with no candidates.
+     */
+    static ValueShrinker forClass(Class<?> valueT) {
+        return shrinkers.get(valueT);
+    }
+    
+    private static ValueShrinker resolve(final Class<?> valueT) {
+        if (valueT == Boolean.TYPE || valueT == Boolean.class) {
+            return new ValueShrinker() {
+                public List<Object> shrink(Object value) {
+                    return (Boolean) value 
+                        ? Collections.<Object>singletonList(Boolean.FALSE)
+                        : Collections.emptyList();
+                }
+            };
+        } else if (valueT == Character.TYPE || valueT == Character.class) {
+            return new ValueShrinker() {
+                public List<Object> shrink(Object value) {
+                    char c = (Character) value;
+                    List<Object> candidates = new ArrayList<Object>();
+                    if (c != 'a') {
+                        candidates.add('a');
+                    }
+                    for (long smaller : shrinkIntegral(c)) {
+                        candidates.add((char) smaller);
+                    }
+                    return candidates;
+                }
+            };
+        } else if (isIntegral(valueT)) {
+            return new ValueShrinker() {
+                public List<Object> shrink(Object value) {
+                    List<Object> candidates = new ArrayList<Object>();
+                    for (long smaller : shrinkIntegral(((Number) value).longValue())) {
+                        candidates.add(narrow(smaller, valueT));
+                    }
+                    return candidates;
+                }
+            };
+        } else if (isFloating(valueT)) {
+            return new ValueShrinker() {
+                public List<Object> shrink(Object value) {
+                    List<Object> candidates = new ArrayList<Object>();
+                    for (double smaller : shrinkFloating(((Number) value).doubleValue())) {
+                        candidates.add(valueT == Float.TYPE || valueT == Float.class 
+                                       ? (Object) (float) smaller : (Object) smaller);
+                    }
+                    return candidates;
+                }
+            };
+        } else if (valueT == String.class) {
+            return new ValueShrinker() {
+                public List<Object> shrink(Object value) {
+                    return shrinkString((String) value);
+                }
+            };
+        } else if (valueT.isEnum()) {
+            final Object[] enumCs = valueT.getEnumConstants();
+            return new ValueShrinker() {
+                public List<Object> shrink(Object value) {
+                    List<Object> candidates = new ArrayList<Object>();
+                    for (int eIdx=0; eIdx<((Enum<?>) value).ordinal(); eIdx++) {
+                        candidates.add(enumCs[eIdx]);
+                    }
+                    return candidates;
+                }
+            };
+        } else if (valueT.isArray()) {
+            final Class<?> componentT = valueT.getComponentType();
+            return new ValueShrinker() {
+                public List<Object> shrink(Object value) {
+                    return shrinkArray(value, componentT);
+                }
+            };
+        }
+        
+        return userShrinker(valueT);
+    }
+    
+    /** Binds a shrink() method declared by valueT, if there is one. */
+    private static ValueShrinker userShrinker(final Class<?> valueT) {
+        Method shrink;
+        try {
+            shrink = valueT.getDeclaredMethod("shrink", new Class<?>[] { valueT });
+        } catch (NoSuchMethodException e) {
+            return NONE;
+        }
+        if (!Modifier.isStatic(shrink.getModifiers())) {
+            return NONE;
+        }
+        
+        final MethodHandle handle;
+        try {
+            handle = MethodHandles.lookup().unreflect(shrink)
+                .asType(MethodType.methodType(Object.class, Object.class));
+        } catch (IllegalAccessException e) {
+            return NONE;
+        }
+        return new ValueShrinker() {
+            public List<Object> shrink(Object value) {
+                Object shrunk;
+                try {
+                    shrunk = (Object) handle.invokeExact(value);
+                } catch (Throwable t) {
+                    throw new TestException(valueT.getName() + ".shrink() threw " + t, t);
+                }
+                
+                List<Object> candidates = new ArrayList<Object>();
+                if (shrunk instanceof Iterable<?>) {
+                    for (Object candidate : (Iterable<?>) shrunk) {
+                        candidates.add(candidate);
+                    }
+                } else if (shrunk != null && shrunk.getClass().isArray()) {
+                    for (int idx=0; idx<Array.getLength(shrunk); idx++) {
+                        candidates.add(Array.get(shrunk, idx));
+                    }
+                }
+                return candidates;
+            }
+        };
+    }
+    
+    /** 0, then values ever closer to x. */
+    private static List<Long> shrinkIntegral(long x) {
+        List<Long> candidates = new ArrayList<Long>();
+        if (x == 0) {
+            return candidates;
+        }
+        candidates.add(0L);
+        if (x < 0 && -x > 0) {
+            candidates.add(-x);
+        }
+        for (long d = x / 2; d != 0; d /= 2) {
+            if (x - d != 0) {
+                candidates.add(x - d);
+            }
+        }
+        return candidates;
+    }
+    
+    private static List<Double> shrinkFloating(double x) {
+        List<Double> candidates = new ArrayList<Double>();
+        if (x == 0.0d) {
+            return candidates;
+        }
+        candidates.add(0.0d);
+        if (Double.isNaN(x) || Double.isInfinite(x)) {
+            return candidates;
+        }
+        if (x < 0) {
+            candidates.add(-x);
+        }
+        double whole = x < 0 ? Math.ceil(x) : Math.floor(x);
+        if (whole != x && whole != 0.0d) {
+            candidates.add(whole);
+        }
+        if (Math.abs(x) > 1.0d) {
+            candidates.add(x / 2);
+        }
+        return candidates;
+    }
+    
+    private static List<Object> shrinkString(String s) {
+        List<Object> candidates = new ArrayList<Object>();
+        int n = s.length();
+        if (n == 0) {
+            return candidates;
+        }
+        candidates.add("");
+        
+        /* remove ever smaller chunks */
+        for (int k = n / 2; k > 0 && candidates.size() < MAX_CANDIDATES; k /= 2) {
+            for (int i = 0; i + k <= n && candidates.size() < MAX_CANDIDATES; i += k) {
+                candidates.add(s.substring(0, i) + s.substring(i + k));
+            }
+        }
+        
+        /* then simplify characters */
+        for (int i = 0; i < n && candidates.size() < MAX_CANDIDATES; i++) {
+            if (s.charAt(i) != 'a') {
+                char[] cs = s.toCharArray();
+                cs[i] = 'a';
+                candidates.add(new String(cs));
+            }
+        }
+        return candidates;
+    }
+    
+    private static List<Object> shrinkArray(Object ary, Class<?> componentT) {
+        List<Object> candidates = new ArrayList<Object>();
+        int n = Array.getLength(ary);
+        if (n == 0) {
+            return candidates;
+        }
+        candidates.add(Array.newInstance(componentT, 0));
+        
+        /* remove ever smaller chunks */
+        for (int k = n / 2; k > 0 && candidates.size() < MAX_CANDIDATES; k /= 2) {
+            for (int i = 0; i + k <= n && candidates.size() < MAX_CANDIDATES; i += k) {
+                Object smaller = Array.newInstance(componentT, n - k);
+                System.arraycopy(ary, 0, smaller, 0, i);
+                System.arraycopy(ary, i + k, smaller, i, n - i - k);
+                candidates.add(smaller);
+            }
+        }
+        
+        /* then shrink elements */
+        ValueShrinker elementShrinker = forClass(componentT);
+        for (int i = 0; i < n && candidates.size() < MAX_CANDIDATES; i++) {
+            Object element = Array.get(ary, i);
+            if (element == null) {
+                continue;
+            }
+            List<Object> smallerElements = elementShrinker.shrink(element);
+            int limit = Math.min(smallerElements.size(), MAX_ELEMENT_CANDIDATES);
+            for (int eIdx = 0; eIdx < limit && candidates.size() < MAX_CANDIDATES; eIdx++) {
+                Object smaller = Array.newInstance(componentT, n);
+                System.arraycopy(ary, 0, smaller, 0, n);
+                Array.set(smaller, i, smallerElements.get(eIdx));
+                candidates.add(smaller);
+            }
+        }
+        return candidates;
+    }
+    
+    private static boolean isIntegral(Class<?> t) {
+        return t == Byte.TYPE || t == Byte.class
+            || t == Short.TYPE || t == Short.class
+            || t == Integer.TYPE || t == Integer.class
+            || t == Long.TYPE || t == Long.class;
+    }
+    
+    private static boolean isFloating(Class<?> t) {
+        return t == Float.TYPE || t == Float.class
+            || t == Double.TYPE || t == Double.class;
+    }
+    
+    private static Object narrow(long x, Class<?> integralT) {
+        if (integralT == Byte.TYPE || integralT == Byte.class) {
+            return (byte) x;
+        } else if (integralT == Short.TYPE || integralT == Short.class) {
+            return (short) x;
+        } else if (integralT == Integer.TYPE || integralT == Integer.class) {
+            return (int) x;
+        } else {
+            return x;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package tbc.supercheck;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+
+/**
+ * A SmallScope numbers every argument list of a property up to a bound, so
+ * that a small domain can be tried exhaustively rather than sampled. Only
+ * parameters whose domain Gen can enumerate have a scope:
+ * <ul>
+ * <li>booleans and enumerations, all of their values,</li>
+ * <li>bytes, shorts, ints and longs, from -bound to bound,</li>
+ * <li>chars, the bound + 1 letters from 'a',</li>
+ * <li>strings of those chars, and arrays of any of the above, of up to bound
+ *     elements.</li>
+ * </ul>
+ * Values are numbered smallest first: 0, 1, -1, 2, -2 and so on, and shorter
+ * arrays before longer ones. Argument lists are numbered as a mixed radix
+ * number whose first parameter is its most significant digit, so the number
+ * of an argument list is all a worker needs to make it.
+ *
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+final class SmallScope {
+    
+    /** The values of one parameter, each with its own number. */
+    private static abstract class Domain {
+        final long size;
+        
+        Domain(long size) {
+            this.size = size;
+        }
+        
+        abstract Object valueAt(long index);
+    }
+    
+    private final int bound;
+    private final Domain[] domains;
+    private final long size;
+    
+    private SmallScope(int bound, Domain[] domains, long size) {
+        this.bound = bound;
+        this.domains = domains;
+        this.size = size;
+    }
+    
+    /**
+     * Answers the scope of prop's argument lists up to bound, or null if any
+     * parameter cannot be enumerated, such as a class with an arbitrary()
+     * method or a parameter bound with {@link From}, or if there are more
+     * than limit argument lists.
+     */
+    static SmallScope forProperty(Method prop, int bound, long limit) {
+        Class<?>[] paramTs = prop.getParameterTypes();
+        Annotation[][] annotations = prop.getParameterAnnotations();
+        Domain[] domains = new Domain[paramTs.length];
+        long size = 1;
+        for (int pIdx=0; pIdx<paramTs.length; pIdx++) {
+            for (Annotation annotation : annotations[pIdx]) {
+                if (annotation instanceof From) {
+                    return null;
+                }
+            }
+            domains[pIdx] = domainOf(paramTs[pIdx], bound);
+            if (domains[pIdx] == null) {
+                return null;
+            }
+            size = times(size, domains[pIdx].size);
+        }
+        return size <= limit ? new SmallScope(bound, domains, size) : null;
+    }
+    
+    /** Answers the bound the scope enumerates to. */
+    int bound() {
+        return bound;
+    }
+    
+    /** Answers the number of argument lists in the scope. */
+    long size() {
+        return size;
+    }
+    
+    /** Answers the argument list numbered index, from 0. */
+    Object[] inputAt(long index) {
+        Object[] params = new Object[domains.length];
+        for (int pIdx=domains.length-1; pIdx>=0; pIdx--) {
+            params[pIdx] = domains[pIdx].valueAt(index % domains[pIdx].size);
+            index /= domains[pIdx].size;
+        }
+        return params;
+    }
+    
+    private static Domain domainOf(final Class<?> type, int bound) {
+        if (type == Boolean.TYPE || type == Boolean.class) {
+            return new Domain(2) {
+                Object valueAt(long index) {
+                    return index == 1;
+                }
+            };
+        } else if (type.isEnum()) {
+            final Object[] constants = type.getEnumConstants();
+            return new Domain(constants.length) {
+                Object valueAt(long index) {
+                    return constants[(int) index];
+                }
+            };
+        } else if (type == Byte.TYPE || type == Byte.class) {
+            return integers(Math.min(bound, Byte.MAX_VALUE), Byte.class);
+        } else if (type == Short.TYPE || type == Short.class) {
+            return integers(Math.min(bound, Short.MAX_VALUE), Short.class);
+        } else if (type == Integer.TYPE || type == Integer.class) {
+            return integers(bound, Integer.class);
+        } else if (type == Long.TYPE || type == Long.class) {
+            return integers(bound, Long.class);
+        } else if (type == Character.TYPE || type == Character.class) {
+            return new Domain(Math.min(bound, Character.MAX_VALUE - 'a') + 1) {
+                Object valueAt(long index) {
+                    return (char) ('a' + index);
+                }
+            };
+        } else if (type == String.class) {
+            final Domain chars = domainOf(Character.TYPE, bound);
+            final Domain arrays = arrays(Character.TYPE, chars, bound);
+            return arrays == null ? null : new Domain(arrays.size) {
+                Object valueAt(long index) {
+                    return new String((char[]) arrays.valueAt(index));
+                }
+            };
+        } else if (type.isArray()) {
+            Domain elements = domainOf(type.getComponentType(), bound);
+            return elements == null ? null : arrays(type.getComponentType(), elements, bound);
+        }
+        return null;
+    }
+    
+    /** The integers from -bound to bound, smallest first, as boxes of type. */
+    private static Domain integers(int bound, final Class<?> type) {
+        return new Domain(2L * bound + 1) {
+            Object valueAt(long index) {
+                long value = (index + 1) / 2;
+                if (index % 2 == 0) {
+                    value = -value;
+                }
+                if (type == Byte.class) {
+                    return (byte) value;
+                } else if (type == Short.class) {
+                    return (short) value;
+                } else if (type == Integer.class) {
+                    return (int) value;
+                }
+                return value;
+            }
+        };
+    }
+    
+    /**
+     * The arrays of elements of up to bound elements, shortest first, or null
+     * if there are too many to number.
+     */
+    private static Domain arrays(final Class<?> componentT, final Domain elements,
+                                 final int bound) {
+        if (elements.size > 1 && bound >= Long.SIZE - 1) {
+            /* there are at least 2^63 arrays, so too many, whatever the bound */
+            return null;
+        } else if (elements.size <= 1) {
+            /* one array of each length, or only the empty one */
+            final long lengths = elements.size == 0 ? 1 : bound + 1L;
+            return new Domain(lengths) {
+                Object valueAt(long index) {
+                    Object ary = Array.newInstance(componentT, (int) index);
+                    for (int idx=0; idx<index; idx++) {
+                        Array.set(ary, idx, elements.valueAt(0));
+                    }
+                    return ary;
+                }
+            };
+        }
+        /* the number of arrays of each length, and of all shorter arrays */
+        final long[] ofLength = new long[bound + 1];
+        final long[] shorter = new long[bound + 2];
+        ofLength[0] = 1;
+        for (int length=0; length<=bound; length++) {
+            if (length > 0) {
+                ofLength[length] = times(ofLength[length - 1], elements.size);
+            }
+            shorter[length + 1] = plus(shorter[length], ofLength[length]);
+        }
+        if (shorter[bound + 1] == Long.MAX_VALUE) {
+            return null;
+        }
+        return new Domain(shorter[bound + 1]) {
+            Object valueAt(long index) {
+                int length = 0;
+                while (index >= shorter[length + 1]) {
+                    length++;
+                }
+                index -= shorter[length];
+                Object ary = Array.newInstance(componentT, length);
+                for (int idx=length-1; idx>=0; idx--) {
+                    Array.set(ary, idx, elements.valueAt(index % elements.size));
+                    index /= elements.size;
+                }
+                return ary;
+            }
+        };
+    }
+    
+    /* Arithmetic that saturates at Long.MAX_VALUE, for sizes too large */
+    
+    private static long times(long a, long b) {
+        return a != 0 && b > Long.MAX_VALUE / a ? Long.MAX_VALUE : a * b;
+    }
+    
+    private static long plus(long a, long b) {
+        return a > Long.MAX_VALUE - b ? Long.MAX_VALUE : a + b;
+    }
+}
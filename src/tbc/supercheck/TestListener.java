@@ -0,0 +1,153 @@
+package tbc.supercheck;
+
+/**
+ * A TestListener is told of the progress of a {@link TestRun}: when each 
+ * execution of a property starts and finishes, and of the tries in between 
+ * that fail, are shrunk, or, if the TestRun is verbose, pass. It is also
+ * told of tries replayed singly, and of recorded events that cannot be played
+ * back. Listeners are added to a TestRun with 
+ * {@link TestRun#addListener(TestListener)}:
+ * 
+ * <pre>new TestRun().addListener(new JsonLinesReporter(Paths.get("run.jsonl")))
+ *               .runOn(SomeInvariants.class, 1000);</pre>
+ * 
+ * Listeners are called asynchronously, in the order events happened, from a 
+ * single reporting thread, so that formatting and writing reports does not 
+ * slow the threads executing tries. Events of properties running concurrently
+ * may be interleaved. Every event reported by a runOn() method has been 
+ * delivered, and {@link #flush()} called, by the time it returns.
+ * <p>
+ * The arguments of a try are passed as they were given to the property, and
+ * must not be changed.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+public interface TestListener {
+    
+    /** Called before the first try of an execution of a property. */
+    void propertyStarted(PropertyExecution execution);
+    
+    /**
+     * Called for each argument list kept in the TestRun's 
+     * {@link InputCorpus} that the property failed for. Kept data is tried 
+     * after propertyStarted, before any random data.
+     * 
+     * @param entry the number of the argument list, counting from 1
+     */
+    void corpusEntryFailed(PropertyExecution execution, int entry, Object[] params);
+    
+    /**
+     * Called once the argument lists kept in the TestRun's 
+     * {@link InputCorpus} for the property have been tried, if any were.
+     * 
+     * @param entries the number of argument lists tried
+     * @param failed the number of those the property failed for
+     * @param nanos the wall clock time they took
+     */
+    void corpusReplayed(PropertyExecution execution, int entries, int failed, long nanos);
+    
+    /** 
+     * Called for each try the property held for, only if the TestRun is 
+     * {@link TestRun#setVerbose(boolean) verbose}.
+     * 
+     * @param tryNumber the number of the try, counting from 1
+     */
+    void tryPassed(PropertyExecution execution, int tryNumber, Object[] params);
+    
+    /**
+     * Called for each try the property failed for.
+     * 
+     * @param tryNumber the number of the try, counting from 1
+     */
+    void tryFailed(PropertyExecution execution, int tryNumber, Object[] params);
+    
+    /**
+     * Called for each try that ran longer than the TestRun's 
+     * {@link TestRun#setTimeouts(long, long) timeouts} allow, and so failed.
+     * 
+     * @param params the try's data, or null if it cannot be known
+     * @param nanos how long the try had run when it was given up on, or 
+     *        when it returned after being interrupted
+     * @param threadDump the stack of the try's thread when it timed out, and
+     *        of any thread holding a lock it waited for, or null if the try
+     *        was not begun because the property's time was up
+     */
+    void tryTimedOut(PropertyExecution execution, int tryNumber, Object[] params,
+                     long nanos, String threadDump);
+    
+    /**
+     * Called for each try whose data could not be made, because an 
+     * arbitrary() method recursed deeper than the {@link Gen#MAX_DEPTH}. The
+     * try counts as failed, but has no data to shrink.
+     * 
+     * @param reason which class was being made, and how deep
+     */
+    void tryTooDeep(PropertyExecution execution, int tryNumber, String reason);
+    
+    /**
+     * Called for a try that finished in time, but took many times as long as
+     * the typical try of the property, only if the TestRun has 
+     * {@link TestRun#setTimeouts(long, long) timeouts}.
+     * 
+     * @param nanos the time the try took
+     * @param medianNanos the median time of the tries before it
+     */
+    void trySlow(PropertyExecution execution, int tryNumber, long nanos, long medianNanos);
+    
+    /**
+     * Called after the data of a failed try has been shrunk to smaller data
+     * the property still fails for.
+     * 
+     * @param steps the number of times smaller failing data was found
+     * @param tries the number of candidates the property was tried with
+     */
+    void tryShrunk(PropertyExecution execution, int tryNumber, Object[] shrunk,
+                   int steps, int tries);
+    
+    /**
+     * Called when tries of a property are stopped early because too few of 
+     * them generate arguments not tried before. This only happens when the 
+     * TestRun {@link TestRun#setDedup(int, double) skips duplicates}.
+     * 
+     * @param tries the number of tries made
+     * @param skipped the number of those tries skipped as duplicates
+     */
+    void generatorSaturated(PropertyExecution execution, int tries, int skipped);
+    
+    /**
+     * Called after the last try of an execution of a property.
+     * 
+     * @param tries the number of tries made
+     * @param skipped the number of those tries skipped as duplicates
+     * @param failedTries the numbers of the tries that failed, in order
+     * @param nanos the wall clock time the tries took
+     */
+    void propertyFinished(PropertyExecution execution, int tries, int skipped,
+                          int[] failedTries, long nanos);
+    
+    /**
+     * Called for a try re-run on its own by 
+     * {@link TestRun#replayTry(Recording, int, int)}, whether or not the
+     * property held for it. The execution is of that try alone.
+     * 
+     * @param held true if the property held for the try's data
+     */
+    void tryReplayed(PropertyExecution execution, int tryNumber, Object[] params,
+                     boolean held);
+    
+    /**
+     * Called for each event of a recording being played back that cannot be,
+     * as its property or the class containing it can no longer be found. 
+     * Events are passed over before any is played back.
+     * 
+     * @param event the index of the event in the recording
+     * @param reason why the event cannot be played back
+     */
+    void eventPassedOver(int event, String reason);
+    
+    /**
+     * Called when every event so far has been delivered, before a runOn() 
+     * method returns. Listeners that buffer their reports should write them.
+     */
+    void flush();
+}
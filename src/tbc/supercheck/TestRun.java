@@ -1,8 +1,25 @@
 package tbc.supercheck;
 
-import java.io.PrintStream;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A TestRun object represents the ability to perform tests on one or a set of
@@ -15,6 +32,18 @@ import java.lang.reflect.Method;
  */
 public class TestRun {
     
+    /* The number of tries over which the rate of new data is measured, and 
+     * the number a worker makes before adding them to the measure */
+    private static final int SATURATION_WINDOW = 1000;
+    private static final int SATURATION_BATCH  = 100;
+    
+    /* The tries in each window of tries run on virtual threads, for each 
+     * thread allowed */
+    private static final int VIRTUAL_WINDOW_PER_THREAD = 16;
+    
+    /* The slow tries reported for each execution of a property, at most */
+    private static final int MAX_SLOW_REPORTED = 10;
+    
     // TODO This is not compatible with recording playback.
     private boolean continuePropAfterFail = false;
     
@@ -22,7 +51,50 @@ public class TestRun {
     
     private Recording recording           = new Recording();
     
-    private ParameterBunch nextParams     = new ParameterBunch();
+    private ParameterBunch.Snapshot nextParams = ParameterBunch.Snapshot.EMPTY;
+    
+    private int parallelism               = 1;
+    
+    private boolean reflectiveInvoke      = false;
+    
+    private RandomSource.Algorithm algorithm = RandomSource.DEFAULT_ALGORITHM;
+    
+    private int shrinkTries               = 1000;
+    
+    private long shrinkMillis             = 5000;
+    
+    private int minTries                  = 100;
+    
+    private boolean collectMetrics        = false;
+    
+    private int dedupBytes                = 0;
+    
+    private double minNewRate             = 0.01d;
+    
+    private boolean guided                = false;
+    
+    private InputCorpus corpus            = null;
+    
+    private int virtualThreads            = 0;
+    
+    private long propertyTimeoutNanos     = 0;
+    
+    private int exhaustiveBound           = 0;
+    
+    /* null unless tries have timeouts */
+    private Watchdog watchdog             = null;
+    
+    private final List<PropertyMetrics> metrics = new ArrayList<PropertyMetrics>();
+    
+    private final ReportQueue reports     = new ReportQueue();
+    
+    private ForkJoinPool pool;
+    
+    private ExecutorService tryExecutor;
+    
+    public TestRun() {
+        reports.addListener(new ConsoleReporter());
+    }
     
     /**
      * Set to true to make TestRun print out details of successful property 
@@ -46,6 +118,280 @@ public class TestRun {
         return this;
     }
     
+    /**
+     * Set the number of worker threads used to execute tries. With a 
+     * parallelism greater than one, the tries of each property are split 
+     * between that many workers, and the properties of a class are run 
+     * concurrently. Each worker generates its data with its own Gen, whose 
+     * seed is derived from the property seed, so runs remain reproducible by
+     * {@link #runRecording(Recording)}. E.g.:
+     * 
+     * <pre>new TestRun().setParallelism(8).runOn(SomeInvariants.class, 1000000);</pre>
+     * 
+     * Properties run in parallel must be safe to call from many threads at 
+     * once, as must the arbitrary() methods of their parameter types.
+     */
+    public TestRun setParallelism(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        if (n != parallelism && pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        parallelism = n;
+        return this;
+    }
+    
+    /**
+     * Set the number of tries of a property that may run at once, each on a
+     * virtual thread of its own, for properties that spend most of a try 
+     * blocked, on a socket or a database, say. Each try generates its data 
+     * from its own seed, and the tries' results are reported, shrunk and 
+     * recorded in try order, so the run is reported and replays just as if 
+     * its tries had run one at a time. Virtual threads need Java 21; before 
+     * it, each try running holds a thread of a pool. Guided tries still run
+     * one at a time. Set 0, the default, to run tries on the workers set by
+     * {@link #setParallelism(int)}. E.g.:
+     * 
+     * <pre>new TestRun().setVirtualThreads(256).runOn(SomeServerInvariants.class, 100000);</pre>
+     * 
+     * Properties run this way must be safe to call from many threads at once,
+     * as must the arbitrary() methods of their parameter types.
+     */
+    public TestRun setVirtualThreads(int maxConcurrent) {
+        if (maxConcurrent < 0) {
+            throw new IllegalArgumentException("Virtual threads must be at least 0.");
+        }
+        virtualThreads = maxConcurrent;
+        return this;
+    }
+    
+    /**
+     * Set how long each try of a property, and each execution of a property
+     * as a whole, may take, so that a property or arbitrary() method that 
+     * hangs fails rather than blocking the run. A try still running after 
+     * tryMillis, or when its property has run for propertyMillis, is 
+     * interrupted, and fails: it is reported with its data, where that can 
+     * be known, and the stack of its thread. A try that does not return a 
+     * second after being interrupted is abandoned to run on, and the other 
+     * tries of its worker are not made. No tries are begun once a property's
+     * time is up. Timed out data is neither shrunk nor kept in the corpus. 
+     * Set 0 for no limit, the default for both. E.g.:
+     * 
+     * <pre>new TestRun().setTimeouts(1000, 60000).runOn(SomeInvariants.class, 10000);</pre>
+     * 
+     * With timeouts, tries are made on threads of their own, rather than the
+     * calling thread, as are the calls made to shrink data, to replay the
+     * corpus and to replay single tries, which are timed out alike. Tries 
+     * are timed, and tries that take ten times as long as their property's 
+     * typical try, and a millisecond at least, are reported as slow.
+     */
+    public TestRun setTimeouts(long tryMillis, long propertyMillis) {
+        if (tryMillis < 0 || propertyMillis < 0) {
+            throw new IllegalArgumentException("Timeouts must be at least 0.");
+        }
+        propertyTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(propertyMillis);
+        watchdog = tryMillis > 0 || propertyMillis > 0 
+            ? new Watchdog(TimeUnit.MILLISECONDS.toNanos(tryMillis), propertyTimeoutNanos)
+            : null;
+        return this;
+    }
+    
+    /**
+     * Set to try every argument list up to bound, rather than random ones, of
+     * properties whose parameters are all booleans, enumerations, integers 
+     * from -bound to bound, chars from 'a', or strings or arrays of these of
+     * up to bound elements, when there are no more argument lists than the 
+     * tries asked for. Such a property is tried once with each argument list,
+     * smallest first, split between its workers, and then stops, so its small
+     * domain is covered completely in no more tries than it has. Other 
+     * properties, and parameters bound with {@link From}, are tried with 
+     * random data as usual. Tries made exhaustively are timed out under 
+     * {@link #setTimeouts(long, long)} as random ones are. Set 0,
+     * the default, to try only random data. E.g.:
+     * 
+     * <pre>new TestRun().setExhaustive(4).runOn(StateMachineInvariants.class, 100000);</pre>
+     * 
+     * A recording of an exhaustive property replays exhaustively.
+     */
+    public TestRun setExhaustive(int bound) {
+        if (bound < 0) {
+            throw new IllegalArgumentException("The bound must be at least 0.");
+        }
+        exhaustiveBound = bound;
+        return this;
+    }
+    
+    /**
+     * Set to true to call properties through Method.invoke, generating their
+     * arguments into an Object[] for every try. By default each property is 
+     * compiled once into a MethodHandle chain that generates its arguments 
+     * and calls it without boxing primitives. The reflective path exists to 
+     * compare against. E.g.:
+     * 
+     * <pre>new TestRun().setReflective(true).runOn(SomeInvariants.class, 1000);</pre>
+     */
+    public TestRun setReflective(boolean b) {
+        reflectiveInvoke = b;
+        return this;
+    }
+    
+    /**
+     * Set the budget for shrinking the data of a failed try. When a property 
+     * first fails, its data is shrunk to smaller data that it still fails 
+     * for, which is printed after the original data. Shrinking stops after
+     * maxTries tries of the property or maxMillis milliseconds, whichever is
+     * first. With a parallelism greater than one, candidates are tried
+     * concurrently. Set maxTries to 0 to turn shrinking off. E.g.:
+     * 
+     * <pre>new TestRun().setShrinking(10000, 60000).runOn(SomeInvariants.class, 1000);</pre>
+     */
+    public TestRun setShrinking(int maxTries, long maxMillis) {
+        shrinkTries = maxTries;
+        shrinkMillis = maxMillis;
+        return this;
+    }
+    
+    /**
+     * Set the algorithm behind the random data of the next tests. The 
+     * algorithm is remembered by the recording, so that recordings replay
+     * with the algorithm they were made with. E.g.:
+     * 
+     * <pre>new TestRun().setRandom(RandomSource.Algorithm.SPLITMIX).runOn(SomeInvariants.class, 1000);</pre>
+     */
+    public TestRun setRandom(RandomSource.Algorithm algorithm) {
+        this.algorithm = algorithm;
+        return this;
+    }
+    
+    /**
+     * Set to skip tries whose data the property has already been tried with.
+     * Data tried is remembered in a Bloom filter of at most maxBytes bytes,
+     * which may occasionally mistake new data for old, but never tries old 
+     * data twice. Once fewer than minNewRate of a run of 1000 tries have new
+     * data, the generator is taken to be saturated, and the property is 
+     * stopped early. Properties of enumerations or booleans, say, have few 
+     * distinct arguments, and are tried no more than they need. Only data of
+     * primitives, strings, enums and arrays of these is remembered, as other
+     * objects may not hash by value; tries with any other argument are never
+     * skipped. Skipped tries are counted in the report. Set maxBytes to 0,
+     * the default, to try all data. E.g.:
+     * 
+     * <pre>new TestRun().setDedup(1 << 20, 0.01).runOn(SomeInvariants.class, 1000000);</pre>
+     */
+    public TestRun setDedup(int maxBytes, double minNewRate) {
+        this.dedupBytes = maxBytes;
+        this.minNewRate = minNewRate;
+        return this;
+    }
+    
+    /**
+     * Set to true to guide the generation of data by the coverage it reaches.
+     * The code under test must be instrumented by the {@link CoverageAgent},
+     * for example by running with:
+     * 
+     * <pre>java -javaagent:supercheck.jar=com.acme.protocol ...</pre>
+     * 
+     * Tries whose data reaches branch edges of the instrumented code that no 
+     * earlier try reached are kept in a corpus, and most later tries mutate 
+     * the data of a corpus entry rather than draw fresh data, so that deep, 
+     * branchy code is explored in far fewer tries. Guided tries run one at a
+     * time, whatever the parallelism. A guided recording replays with 
+     * guidance, but its tries can not be replayed singly, as each depends on 
+     * the tries before it. E.g.:
+     * 
+     * <pre>new TestRun().setGuided(true).runOn(DecoderInvariants.class, 100000);</pre>
+     * 
+     * @throws TestException if the agent is not installed
+     */
+    public TestRun setGuided(boolean b) throws TestException {
+        if (b && !Coverage.isInstalled()) {
+            throw new TestException("Coverage-guided tries need the SuperCheck agent, "
+                    + "e.g. -javaagent:supercheck.jar=com.acme.protocol");
+        }
+        guided = b;
+        return this;
+    }
+    
+    /**
+     * Set the corpus to keep tricky data in. Each property is first tried with
+     * the data kept for it, before any random data, and the data of its
+     * first failed try, shrunk if it could be, and of a try it threw for is 
+     * kept. Guided tries also keep the data of tries that reached new code.
+     * A property that fails for kept data is not tried with random data, 
+     * unless it is {@link #setContProp(boolean) continued after failing}. 
+     * Set null, the default, to keep no data. E.g.:
+     * 
+     * <pre>new TestRun().setCorpus(new InputCorpus(Paths.get("src/test/corpus")))
+     *               .runOn(SomeInvariants.class, 10000);</pre>
+     */
+    public TestRun setCorpus(InputCorpus corpus) {
+        this.corpus = corpus;
+        return this;
+    }
+    
+    /**
+     * Add a listener to be told of the progress of the next tests, as well as
+     * the listeners already added. Listeners are called on a reporting thread
+     * of their own, so that reporting does not slow the tries. E.g.:
+     * 
+     * <pre>new TestRun().addListener(new JUnitXmlReporter(Paths.get("reports")))
+     *               .runOn(SomeInvariants.class, 1000);</pre>
+     */
+    public TestRun addListener(TestListener listener) {
+        reports.addListener(listener);
+        return this;
+    }
+    
+    /**
+     * Set the listeners to be told of the progress of the next tests, in place
+     * of those already added, including the {@link ConsoleReporter} every 
+     * TestRun starts with. With no listeners, nothing is reported. E.g.:
+     * 
+     * <pre>new TestRun().setListeners(new JsonLinesReporter(Paths.get("run.jsonl")))
+     *               .runOn(SomeInvariants.class, 1000);</pre>
+     */
+    public TestRun setListeners(TestListener... listeners) {
+        reports.setListeners(listeners);
+        return this;
+    }
+    
+    /**
+     * Set to true to measure the next tests. For each execution of a property,
+     * the tries made per second, the time spent generating arguments and in 
+     * the property, percentiles of the time of single calls of the property, 
+     * and the bytes allocated per try are gathered, and can be had from 
+     * {@link #getMetrics()}. Measuring costs a couple of calls of 
+     * System.nanoTime() per try, so is off by default. E.g.:
+     * 
+     * <pre>TestRun testRun = new TestRun().setMetrics(true);
+     * testRun.runOn(SomeInvariants.class, 100000);
+     * System.out.println(testRun.getMetricsAsJson());</pre>
+     */
+    public TestRun setMetrics(boolean b) {
+        collectMetrics = b;
+        return this;
+    }
+    
+    /**
+     * Answers the metrics of the properties executed while metrics were on,
+     * in the order their executions are recorded.
+     */
+    public List<PropertyMetrics> getMetrics() {
+        synchronized (metrics) {
+            return Collections.unmodifiableList(new ArrayList<PropertyMetrics>(metrics));
+        }
+    }
+    
+    /**
+     * Answers {@link #getMetrics()} as a JSON array of objects, one for each
+     * execution of a property.
+     */
+    public String getMetricsAsJson() {
+        return PropertyMetrics.toJson(getMetrics());
+    }
+    
     /**
      * Answers a recording of the tests executed by this test run. The order of
      * properties tested is remembered, along with a random seed value for each.
@@ -80,18 +426,137 @@ public class TestRun {
         return recording;
     }
     
+    /**
+     * Set the recording the next tests are recorded to, in place of the one
+     * every TestRun starts with. A recording made by 
+     * {@link Recording#open(Path)} writes each test event to a file as it is
+     * recorded, so that a long test run that is killed still leaves a 
+     * recording of what it did. E.g.:
+     * 
+     * <pre>new TestRun().setRecording(Recording.open(Paths.get("soak.screc")))
+     *               .runOn(SomeInvariants.class, Duration.ofHours(8));</pre>
+     */
+    public TestRun setRecording(Recording recording) {
+        this.recording = recording;
+        return this;
+    }
+    
     /**
      * Re-runs the tests remembered by a Recording, in the same order and with
      * the same data. However, if the signatures of any properties in the recording
-     * have changed since the recording was made, play back will fail. This is
-     * because only the random seeds used to generate data are remembered in the
-     * recording - if the arguments to a property have changed, the wrong data
-     * will be reproduced.
+     * have changed since the recording was made, their events cannot be played
+     * back, and are passed over. This is because only the random seeds used to
+     * generate data are remembered in the recording - if the arguments to a 
+     * property have changed, the wrong data would be reproduced.
+     * <p>
+     * With a parallelism greater than one, events are played back 
+     * concurrently, as the properties of a class are run, and are recorded 
+     * in their order in the recording played. Guided events are played back 
+     * one at a time, after the others, as coverage is counted for the whole 
+     * JVM. To play back only some events, play back a 
+     * {@link Recording#select(Class, String) selection} of them.
+     * 
+     * @return the indexes of the events that could not be played back
      */
-    public void runRecording(Recording recording) {
-        recording.playBack(this);
+    public int[] runRecording(Recording recording) throws TestException {
+        try {
+            return recording.playBack(this);
+        } finally {
+            reports.flush();
+        }
     }
 	
+    /**
+     * Re-runs a single try remembered by a Recording, without re-running the
+     * tries before it. The try's data is reported to the listeners, as
+     * {@link TestListener#tryReplayed}, whether or not the property holds for
+     * it, as {@link TestListener#tryTimedOut} if it times out under 
+     * {@link #setTimeouts(long, long)}, or as {@link TestListener#tryTooDeep}
+     * if its data cannot be made. For example, to re-run the first 
+     * failure of the first property tested:
+     * 
+     * <pre>int[] failed = recording.getFailedTries(0);
+     * new TestRun().replayTry(recording, 0, failed[0]);</pre>
+     * 
+     * As with {@link #runRecording(Recording)}, the property's signature must
+     * not have changed since the recording was made. Tries recorded before 
+     * each try had its own seed cannot be replayed singly.
+     * 
+     * @param event the index of the event, in the order events were recorded
+     * @param tryNumber the number of the try, counting from 1, as printed when
+     *        it failed
+     * @return true if the property held for the try's data
+     */
+    public boolean replayTry(Recording recording, int event, int tryNumber) 
+                                                         throws TestException {
+        return recording.replayTry(this, event, tryNumber);
+    }
+    
+    boolean runTry(final Method prop, long seed, RandomSource.Algorithm algorithm, 
+                   int tryNumber, boolean sized, int exhaustiveBound) throws TestException {
+        /* the execution is of the one try */
+        PropertyExecution execution = new PropertyExecution(prop, seed, 1, 0);
+        final Object[] inputs;
+        final PropertyInvoker invoker;
+        WatchedCall call;
+        if (exhaustiveBound > 0) {
+            SmallScope scope = SmallScope.forProperty(prop, exhaustiveBound, Long.MAX_VALUE);
+            if (scope == null) {
+                throw new TestException("Cannot replay try " + tryNumber + " of " 
+                        + prop.getName() + ". Its argument lists can no longer be "
+                        + "enumerated to " + exhaustiveBound + ".");
+            }
+            inputs = scope.inputAt(tryNumber - 1);
+            invoker = null;
+            nextParams = ParameterBunch.Snapshot.EMPTY;
+            call = new WatchedCall() {
+                boolean call() {
+                    return PropertyInvoker.call(prop, inputs);
+                }
+            };
+        } else {
+            final Gen gen = new Gen();
+            gen.setParams(nextParams);
+            gen.setSeed(Gen.deriveSeed(seed, tryNumber - 1), algorithm);
+            gen.setSized(sized && algorithm != RandomSource.Algorithm.LEGACY);
+            gen.sizeForTry(tryNumber - 1);
+            nextParams = ParameterBunch.Snapshot.EMPTY;
+            
+            inputs = null;
+            invoker = PropertyInvoker.forProperty(prop, reflectiveInvoke, true);
+            call = new WatchedCall() {
+                boolean call() {
+                    return invoker.tryOnce(gen);
+                }
+            };
+        }
+        long deadline = propertyTimeoutNanos > 0 
+            ? System.nanoTime() + propertyTimeoutNanos : Long.MAX_VALUE;
+        boolean inTime;
+        try {
+            inTime = call.make(deadline, tryNumber);
+        } catch (Gen.DepthException e) {
+            reports.tryTooDeep(execution, tryNumber, e.getMessage());
+            reports.flush();
+            return false;
+        }
+        Object[] params = inputs != null ? inputs
+                        : invoker.thrownParams() != null ? invoker.thrownParams()
+                        : invoker.lastParams();
+        if (inTime) {
+            reports.tryReplayed(execution, tryNumber, params, call.held);
+        } else {
+            reports.tryTimedOut(execution, tryNumber, params, call.nanos, call.threadDump);
+        }
+        reports.flush();
+        return inTime && call.held;
+    }
+    
+    /** Tells the listeners a recorded event cannot be played back. */
+    void passOver(int event, String reason) {
+        reports.eventPassedOver(event, reason);
+    }
+    
     /**
      * Run arbitrary data through all the properties defined in a single class.
      * Any method in the class "invariants" whose simple name begins with the
@@ -99,6 +564,14 @@ public class TestRun {
      * with arbitrary data, "timesForEach" times.
      */
     public void runOn(Class<?> invariants, int timesForEach) throws TestException {
+        if (parallelism > 1 && !guided) {
+            try {
+                runAllConcurrently(invariants, timesForEach);
+            } finally {
+                reports.flush();
+            }
+            return;
+        }
         for (Method m : invariants.getMethods()) {
             if (m.getName().startsWith("prop_")) {
                 runOn(m, timesForEach);
@@ -106,6 +579,98 @@ public class TestRun {
         }
     }
     
+    /**
+     * Run arbitrary data through all the properties defined in a single class,
+     * for about as long as budget. Each property is given an equal share of 
+     * the time. It is first tried {@link #setMinTries(int) a minimum number} 
+     * of times, whatever the budget, and is then tried in growing batches whose
+     * sizes are estimated from its measured time per try, until its share is 
+     * spent. Time left over by one property is shared among those after it.
+     * Properties that are cheap to try are therefore tried more often. E.g.:
+     * 
+     * <pre>new TestRun().runOn(SomeInvariants.class, Duration.ofMinutes(5));</pre>
+     * 
+     * The recording remembers how many times each property was actually 
+     * tried, so it replays exactly.
+     */
+    public void runOn(Class<?> invariants, Duration budget) throws TestException {
+        List<Method> props = new ArrayList<Method>();
+        for (Method m : invariants.getMethods()) {
+            if (m.getName().startsWith("prop_")) {
+                props.add(m);
+            }
+        }
+        
+        long deadline = System.nanoTime() + budget.toNanos();
+        try {
+            for (int pIdx=0; pIdx<props.size(); pIdx++) {
+                long share = (deadline - System.nanoTime()) / (props.size() - pIdx);
+                PropertyRun run = new PropertyRun(props.get(pIdx), 0, share,
+                        System.currentTimeMillis(), guided ? 1 : parallelism, 
+                        algorithm, true, true, guided, scopeFor(props.get(pIdx), 0), 
+                        nextParams, collectMetrics, dedupBytes);
+                nextParams = ParameterBunch.Snapshot.EMPTY;
+                
+                runFor(run, share, recording);
+                addMetrics(run);
+            }
+        } finally {
+            reports.flush();
+        }
+    }
+    
+    /**
+     * Set the number of times each property is tried by 
+     * {@link #runOn(Class, Duration)}, however small the budget. 
+     */
+    public TestRun setMinTries(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Minimum tries must be at least 0.");
+        }
+        minTries = n;
+        return this;
+    }
+    
+    private void runFor(PropertyRun run, long nanos, Recording into) throws TestException {
+        reports.propertyStarted(run.execution);
+        
+        long start = System.nanoTime();
+        run.setDeadline(start, propertyTimeoutNanos);
+        AtomicBoolean halt = new AtomicBoolean(!replayCorpus(run) && !continuePropAfterFail);
+        /* an exhaustive run stops once it has tried every argument list */
+        int maxTries = run.scope != null ? (int) run.scope.size() : Integer.MAX_VALUE;
+        int tried = 0;
+        if (!halt.get()) {
+            tried = Math.min(minTries, maxTries);
+            runTries(run, 0, tried, halt);
+        }
+        
+        long elapsed = System.nanoTime() - start;
+        while (!halt.get() && elapsed < nanos && tried < maxTries) {
+            double nanosPerTry = Math.max(elapsed, 1L) / (double) tried;
+            /* grow at most geometrically, so a poor estimate is soon corrected */
+            long batch = (long) ((nanos - elapsed) / nanosPerTry);
+            batch = Math.max(1L, Math.min(batch, Math.max(tried, 1)));
+            batch = Math.min(batch, (long) maxTries - tried);
+            
+            runTries(run, tried, tried + (int) batch, halt);
+            tried += (int) batch;
+            elapsed = System.nanoTime() - start;
+        }
+        
+        /* Record the tries actually made */
+        int[] failedTries = run.getFailedTries();
+        into.addTestEvent(run.prop, run.seed, tried, run.workers, run.algorithm,
+                          run.perTrySeeds, run.sized, run.guide != null, run.bound(), 
+                          failedTries);
+        long wallNanos = System.nanoTime() - start;
+        if (run.metrics != null) {
+            run.metrics.setWallNanos(wallNanos);
+        }
+        
+        finish(run, failedTries, wallNanos);
+    }
+    
     /**
      * Run arbitrary data through a particular property. The property name
      * specified should be the full simple name of the method that represents 
@@ -131,70 +696,1166 @@ public class TestRun {
     }
     
     void runOn(Method prop, int times, long seed) throws TestException {
-        System.out.print("Running " + prop.getName() + " " + times + " times... ");
-
+        SmallScope scope = scopeFor(prop, times);
+        if (scope != null) {
+            times = (int) scope.size();
+        }
+        runOn(prop, times, seed, 
+              guided ? 1 : Math.min(parallelism, Math.max(times, 1)), 
+              algorithm, true, true, guided, scope);
+    }
+    
+    void runOn(Method prop, int times, long seed, int workers, 
+               RandomSource.Algorithm algorithm, boolean perTrySeeds,
+               boolean sized, boolean guided, SmallScope scope) throws TestException {
+        if (guided && !Coverage.isInstalled()) {
+            throw new TestException("Cannot run " + prop.getName() + " guided by "
+                    + "coverage without the SuperCheck agent");
+        }
+        PropertyRun run = new PropertyRun(prop, times, 0, seed, workers, algorithm, 
+                                          perTrySeeds, sized, guided, scope, nextParams, 
+                                          collectMetrics, dedupBytes);
+        nextParams = ParameterBunch.Snapshot.EMPTY;
+        
+        try {
+            runOn(run, recording);
+            addMetrics(run);
+        } finally {
+            reports.flush();
+        }
+    }
+    
+    /** Plays back events, concurrently if the parallelism is greater than one. */
+    void playBack(List<Recording.Replay> replays) throws TestException {
+        if (parallelism <= 1 || replays.size() < 2) {
+            for (Recording.Replay replay : replays) {
+                runOn(replay.property, replay.times, replay.seed, replay.workers, 
+                      replay.algorithm, replay.perTrySeeds, replay.sized, 
+                      replay.guided, scopeFor(replay));
+            }
+            return;
+        }
+        
+        List<ForkJoinTask<Recording>> tasks = new ArrayList<ForkJoinTask<Recording>>();
+        PropertyRun[] runs = new PropertyRun[replays.size()];
+        Recording[] events = new Recording[replays.size()];
+        for (int rIdx=0; rIdx<runs.length; rIdx++) {
+            Recording.Replay replay = replays.get(rIdx);
+            if (replay.guided && !Coverage.isInstalled()) {
+                throw new TestException("Cannot run " + replay.property.getName() 
+                        + " guided by coverage without the SuperCheck agent");
+            }
+            runs[rIdx] = new PropertyRun(replay.property, replay.times, 0, replay.seed,
+                    replay.workers, replay.algorithm, replay.perTrySeeds, replay.sized,
+                    replay.guided, scopeFor(replay), nextParams, collectMetrics, 
+                    dedupBytes);
+            nextParams = ParameterBunch.Snapshot.EMPTY;
+            events[rIdx] = new Recording();
+            if (!replay.guided) {
+                final PropertyRun run = runs[rIdx];
+                final Recording into = events[rIdx];
+                tasks.add(ForkJoinTask.adapt(new Callable<Recording>() {
+                    public Recording call() {
+                        runOn(run, into);
+                        return into;
+                    }
+                }));
+            }
+        }
+        
+        try {
+            joinAll(tasks);
+            for (int rIdx=0; rIdx<runs.length; rIdx++) {
+                if (replays.get(rIdx).guided) {
+                    runOn(runs[rIdx], events[rIdx]);
+                }
+            }
+            for (int rIdx=0; rIdx<runs.length; rIdx++) {
+                recording.addAll(events[rIdx]);
+                addMetrics(runs[rIdx]);
+            }
+        } finally {
+            reports.flush();
+        }
+    }
+    
+    private void runOn(PropertyRun run, Recording into) throws TestException {
+        reports.propertyStarted(run.execution);
+        
+        long start = System.nanoTime();
+        run.setDeadline(start, propertyTimeoutNanos);
+        int times = run.times;
+        if (replayCorpus(run) || continuePropAfterFail) {
+            runTries(run, 0, times, new AtomicBoolean());
+        } else {
+            times = 0;
+        }
+        
+        /* Record the partial or successful completion */
+        int[] failedTries = run.getFailedTries();
+        into.addTestEvent(run.prop, run.seed, times, run.workers, run.algorithm,
+                          run.perTrySeeds, run.sized, run.guide != null, run.bound(), 
+                          failedTries);
+        long wallNanos = System.nanoTime() - start;
+        if (run.metrics != null) {
+            run.metrics.setWallNanos(wallNanos);
+        }
+        
+        finish(run, failedTries, wallNanos);
+    }
+    
+    /**
+     * Answers the scope of prop's argument lists up to the exhaustive bound, 
+     * if it has one of no more than times lists, or of any number if times 
+     * is 0; otherwise null, for random tries.
+     */
+    private SmallScope scopeFor(Method prop, int times) {
+        if (exhaustiveBound == 0 || guided) {
+            return null;
+        }
+        return SmallScope.forProperty(prop, exhaustiveBound, 
+                                      times > 0 ? times : Integer.MAX_VALUE);
+    }
+    
+    /** Answers the scope a replayed event's tries were enumerated from, or null. */
+    private static SmallScope scopeFor(Recording.Replay replay) {
+        return replay.exhaustiveBound > 0 
+            ? SmallScope.forProperty(replay.property, replay.exhaustiveBound, Integer.MAX_VALUE)
+            : null;
+    }
+    
+    /**
+     * Tries the property with the data kept for it in the corpus, if there is
+     * one, each under a watch as a try is. Answers false if it failed, or 
+     * timed out, for any.
+     */
+    private boolean replayCorpus(final PropertyRun run) throws TestException {
+        if (corpus == null) {
+            return true;
+        }
+        long start = System.nanoTime();
+        List<Object[]> entries = corpus.entriesFor(run.prop);
+        int failed = 0;
+        for (int eIdx=0; eIdx<entries.size(); eIdx++) {
+            final Object[] params = entries.get(eIdx);
+            WatchedCall call = new WatchedCall() {
+                boolean call() {
+                    return PropertyInvoker.call(run.prop, params);
+                }
+            };
+            /* an entry timed out fails, as a try would */
+            if (!call.make(run.deadline, eIdx+1) || !call.held) {
+                reports.corpusEntryFailed(run.execution, eIdx+1, entries.get(eIdx));
+                failed++;
+                if (!continuePropAfterFail) {
+                    break;
+                }
+            }
+        }
+        if (!entries.isEmpty()) {
+            reports.corpusReplayed(run.execution, entries.size(), failed, 
+                                   System.nanoTime() - start);
+        }
+        return failed == 0;
+    }
+    
+    private void finish(PropertyRun run, int[] failedTries, long wallNanos) {
+        if (run.saturated.get()) {
+            reports.generatorSaturated(run.execution, run.tries.get(), run.skipped.get());
+        }
+        reports.propertyFinished(run.execution, run.tries.get(), run.skipped.get(),
+                                 failedTries, wallNanos);
+    }
+    
+    /**
+     * Runs tries [from, to) of a property on the calling thread, or split 
+     * between the run's workers, or on watched threads.
+     */
+    private boolean runTries(PropertyRun run, int from, int to, 
+                             AtomicBoolean halt) throws TestException {
+        if (run.scope != null) {
+            to = (int) Math.min(to, run.scope.size());
+            return watchdog != null ? runTriesWatched(run, from, to, halt)
+                                    : runTriesExhaustively(run, from, to, halt);
+        } else if (virtualThreads > 0 && run.perTrySeeds && run.guide == null) {
+            return runTriesVirtually(run, from, to, halt);
+        } else if (watchdog != null) {
+            return runTriesWatched(run, from, to, halt);
+        } else if (run.workers <= 1) {
+            return runTries(run, from, to, run.seed, halt, null);
+        } else {
+            return runTriesConcurrently(run, from, to, halt);
+        }
+    }
+    
+    /**
+     * Runs tries [from, to) of a property. With per-try seeds, try i is 
+     * generated with a Gen seeded by {@link Gen#deriveSeed(long, long)} of the 
+     * property seed and i. Otherwise the tries share one stream seeded by seed.
+     * Either way, try i is made at the size {@link Gen#sizeForTry(long)} gives,
+     * unless the run is unsized.
+     * Answers false if any try failed. Stops early, without failing, if halt 
+     * is set by another worker, or sets halt if the run's generator is 
+     * saturated. Given a watch, each try is made under it.
+     */
+    private boolean runTries(PropertyRun run, int from, int to, long seed, 
+                             AtomicBoolean halt, Watchdog.Watch watch) 
+                                                         throws TestException {
         Gen gen = new Gen();
-        gen.setParams(nextParams);
-        gen.setSeed(seed);
+        gen.setParams(run.bunch);
+        gen.setSeed(seed, run.algorithm);
+        gen.setSized(run.sized);
         
-        nextParams = new ParameterBunch();
+        /* guided tries keep the data that reaches new code */
+        boolean keepCovering = run.guide != null && corpus != null;
+        PropertyInvoker invoker = PropertyInvoker.forProperty(run.prop, reflectiveInvoke, 
+                printSuccessRuns || keepCovering, run.metrics != null, run.seen);
+        PropertyMetrics.Recorder recorder = 
+            run.metrics != null ? new PropertyMetrics.Recorder() : null;
+        if (run.guide != null) {
+            run.guide.attach(gen);
+        }
+        boolean passed = true;
+        int tried = 0;
+        int skipped = 0;
+        int batchFresh = 0;
         
-        for (int i=0; i<times; i++) {
-            int paramCount = prop.getParameterTypes().length;
-            Object[] params = new Object[paramCount];
-
-            for (int pIdx=0; pIdx<paramCount; pIdx++) {
-                Class<?> paramT = prop.getParameterTypes()[pIdx];
-                params[pIdx] = gen.createArbitraryFor(paramT);
+        for (int i=from; i<to && !halt.get(); i++) {
+            if (run.perTrySeeds) {
+                gen.setSeed(Gen.deriveSeed(run.seed, i));
             }
-
-            if (!runOn(prop, params)) {
-                System.out.println("\n! Failed on try " + (i+1) + " for params: ");
-                printParamList(params, System.out, "\t");
+            gen.sizeForTry(i);
+            if (run.guide != null) {
+                run.guide.beforeTry(Gen.deriveSeed(~run.seed, i));
+            }
+            
+            if (watch != null && !watch.begin(i+1)) {
+                /* the property's time is up */
+                timedOut(run, i+1, null, 0, null);
+                passed = false;
+                halt.set(true);
+                break;
+            }
+            
+            long started = recorder != null ? System.nanoTime() : 0;
+            boolean held = false;
+            TestException threw = null;
+            try {
+                held = invoker.tryOnce(gen);
+            } catch (TestException e) {
+                threw = e;
+            }
+            if (watch != null) {
+                int ended = watch.end();
+                if (ended == Watchdog.ABANDONED) {
+                    /* reported by the thread that gave up waiting */
+                    return false;
+                } else if (ended == Watchdog.TIMED_OUT) {
+                    tried++;
+                    timedOut(run, i+1, threw != null ? invoker.thrownParams() 
+                                       : !held ? invoker.lastParams() 
+                                       : paramsFor(run, i+1),
+                             watch.lastNanos(), watch.dump());
+                    passed = false;
+                    if (!continuePropAfterFail) {
+                        halt.set(true);
+                        break;
+                    }
+                    continue;
+                } else if (watch.wasSlow()) {
+                    slow(run, i+1, watch.lastNanos(), watch.medianNanos());
+                }
+            }
+            if (threw instanceof Gen.DepthException) {
+                tried++;
+                tooDeep(run, i+1, threw);
+                passed = false;
+                if (!continuePropAfterFail) {
+                    halt.set(true);
+                    break;
+                }
+                continue;
+            } else if (threw != null) {
+                if (corpus != null && invoker.thrownParams() != null) {
+                    corpus.add(run.prop, invoker.thrownParams());
+                }
+                throw threw;
+            }
+            tried++;
+            if (run.guide != null && run.guide.afterTry() && keepCovering && held) {
+                corpus.add(run.prop, invoker.lastParams());
+            }
+            
+            if (run.seen != null) {
+                if (invoker.skipped()) {
+                    skipped++;
+                } else {
+                    batchFresh++;
+                }
+                if (tried % SATURATION_BATCH == 0) {
+                    if (run.addToWindow(SATURATION_BATCH, batchFresh, minNewRate)) {
+                        halt.set(true);
+                        break;
+                    }
+                    batchFresh = 0;
+                }
+                if (invoker.skipped()) {
+                    continue;
+                }
+            }
+            
+            if (recorder != null) {
+                long generated = invoker.generatedAt();
+                recorder.record(generated - started, System.nanoTime() - generated);
+            }
+            
+            if (!held) {
+                failed(run, i+1, invoker.lastParams());
+                passed = false;
                 
                 if (!continuePropAfterFail) {
-                    /* Record the partial completion */
-                    recording.addTestEvent(prop, gen.getSeed(), times);
-                    return;
+                    halt.set(true);
+                    break;
                 }
                 
             } else if (printSuccessRuns) {
-                System.out.println("\n* Passed for params: ");
-                printParamList(params, System.out, "\t");
+                reports.tryPassed(run.execution, i+1, invoker.lastParams());
             }
         }
         
-        /* Record the successful completion */
-        recording.addTestEvent(prop, gen.getSeed(), times);
-
-        System.out.println("success.");
+        if (run.seen != null && !halt.get()) {
+            run.addToWindow(tried % SATURATION_BATCH, batchFresh, minNewRate);
+        }
+        run.tries.addAndGet(tried);
+        run.skipped.addAndGet(skipped);
+        if (recorder != null) {
+            run.metrics.add(recorder.finish());
+        }
+        return passed;
     }
-
-    private boolean runOn(Method prop, Object[] params) throws TestException {
+    
+    /**
+     * Runs tries [from, to) of a property with the argument lists numbered 
+     * from to to - 1 in its scope, split into one contiguous share per worker.
+     */
+    private boolean runTriesExhaustively(final PropertyRun run, int from, int to,
+                                         final AtomicBoolean halt) throws TestException {
+        if (run.workers <= 1) {
+            return tryInputs(run, from, to, halt, null);
+        }
+        List<ForkJoinTask<Boolean>> tasks = new ArrayList<ForkJoinTask<Boolean>>();
+        for (int w=0; w<run.workers; w++) {
+            final int shareFrom = from + shareStart(to - from, run.workers, w);
+            final int shareTo = from + shareStart(to - from, run.workers, w + 1);
+            tasks.add(ForkJoinTask.adapt(new Callable<Boolean>() {
+                public Boolean call() {
+                    return tryInputs(run, shareFrom, shareTo, halt, null);
+                }
+            }));
+        }
+        
+        boolean passed = true;
+        for (Boolean workerPassed : joinAll(tasks)) {
+            passed &= workerPassed;
+        }
+        return passed;
+    }
+    
+    /**
+     * Tries a property with the argument lists numbered from to to - 1 in its
+     * scope, answering false if any failed. Given a watch, each try is made 
+     * under it, as {@link #runTries(PropertyRun, int, int, long, AtomicBoolean, 
+     * Watchdog.Watch)} makes them.
+     */
+    private boolean tryInputs(PropertyRun run, int from, int to, 
+                              AtomicBoolean halt, Watchdog.Watch watch) 
+                                                         throws TestException {
+        boolean passed = true;
+        int tried = 0;
+        for (int i=from; i<to && !halt.get(); i++) {
+            Object[] params = run.scope.inputAt(i);
+            if (watch != null && !watch.begin(i+1)) {
+                /* the property's time is up */
+                timedOut(run, i+1, params, 0, null);
+                passed = false;
+                halt.set(true);
+                break;
+            }
+            
+            boolean held = false;
+            TestException threw = null;
+            try {
+                held = PropertyInvoker.call(run.prop, params);
+            } catch (TestException e) {
+                threw = e;
+            }
+            if (watch != null) {
+                int ended = watch.end();
+                if (ended == Watchdog.ABANDONED) {
+                    /* reported by the thread that gave up waiting */
+                    return false;
+                } else if (ended == Watchdog.TIMED_OUT) {
+                    tried++;
+                    timedOut(run, i+1, params, watch.lastNanos(), watch.dump());
+                    passed = false;
+                    if (!continuePropAfterFail) {
+                        halt.set(true);
+                        break;
+                    }
+                    continue;
+                } else if (watch.wasSlow()) {
+                    slow(run, i+1, watch.lastNanos(), watch.medianNanos());
+                }
+            }
+            if (threw != null) {
+                if (corpus != null) {
+                    corpus.add(run.prop, params);
+                }
+                throw threw;
+            }
+            tried++;
+            
+            if (!held) {
+                failed(run, i+1, params);
+                passed = false;
+                if (!continuePropAfterFail) {
+                    halt.set(true);
+                    break;
+                }
+            } else if (printSuccessRuns) {
+                reports.tryPassed(run.execution, i+1, params);
+            }
+        }
+        run.tries.addAndGet(tried);
+        return passed;
+    }
+    
+    /**
+     * Reports a failed try, and shrinks and keeps its data if it is the first
+     * failure of its run.
+     */
+    private void failed(PropertyRun run, int tryNumber, Object[] failed) 
+                                                    throws TestException {
+        reports.tryFailed(run.execution, tryNumber, failed);
+        if (run.shrinking.compareAndSet(false, true)) {
+            if (shrinkTries > 0) {
+                failed = shrink(run, tryNumber, failed);
+            }
+            if (corpus != null) {
+                corpus.add(run.prop, failed);
+            }
+        }
+        run.addFailedTry(tryNumber);
+    }
+    
+    /** Reports a try that timed out, which neither shrinks nor is kept. */
+    private void timedOut(PropertyRun run, int tryNumber, Object[] params, 
+                          long nanos, String threadDump) {
+        reports.tryTimedOut(run.execution, tryNumber, params, nanos, threadDump);
+        run.addFailedTry(tryNumber);
+    }
+    
+    /** 
+     * Reports a try whose data went deeper than the Gen.MAX_DEPTH, which has
+     * no data to shrink or keep.
+     */
+    private void tooDeep(PropertyRun run, int tryNumber, TestException e) {
+        reports.tryTooDeep(run.execution, tryNumber, e.getMessage());
+        run.addFailedTry(tryNumber);
+    }
+    
+    private void slow(PropertyRun run, int tryNumber, long nanos, long medianNanos) {
+        if (run.slowReported.getAndIncrement() < MAX_SLOW_REPORTED) {
+            reports.trySlow(run.execution, tryNumber, nanos, medianNanos);
+        }
+    }
+    
+    /**
+     * Answers the data of a try, from its number in the run's scope if it is
+     * exhaustive, or generated again from its own seed, or null if it cannot 
+     * be: if the run's tries share a stream of random values or are guided, 
+     * or if generating the data takes longer than an interrupted try is given
+     * to return.
+     */
+    private Object[] paramsFor(final PropertyRun run, final int tryNumber) {
+        if (run.scope != null) {
+            return run.scope.inputAt(tryNumber - 1);
+        } else if (!run.perTrySeeds || run.guide != null) {
+            return null;
+        }
+        Future<Object[]> generating = getTryExecutor().submit(new Callable<Object[]>() {
+            public Object[] call() {
+                Gen gen = new Gen();
+                gen.setParams(run.bunch);
+                gen.setSeed(Gen.deriveSeed(run.seed, tryNumber - 1), run.algorithm);
+                gen.setSized(run.sized);
+                gen.sizeForTry(tryNumber - 1);
+                GeneratorRegistry.Generator[] generators = 
+                    GeneratorRegistry.forParameters(run.prop);
+                Object[] params = new Object[generators.length];
+                for (int pIdx=0; pIdx<generators.length; pIdx++) {
+                    params[pIdx] = generators[pIdx].generate(gen);
+                }
+                return params;
+            }
+        });
+        try {
+            return generating.get(Watchdog.ABANDON_NANOS, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            generating.cancel(true);
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+    
+    /**
+     * Runs tries [from, to) of a property as {@link #runTriesConcurrently}
+     * does, or as {@link #runTriesExhaustively} does if it has a scope, with
+     * one worker or more, but on threads of the try executor, each
+     * under a watch, so that the calling thread can stop waiting for a worker
+     * whose try is abandoned. The try is reported here, since its worker 
+     * never will.
+     */
+    private boolean runTriesWatched(final PropertyRun run, int from, int to, 
+                                    final AtomicBoolean halt) throws TestException {
+        final int workers = Math.max(run.workers, 1);
+        List<Future<Boolean>> threads = new ArrayList<Future<Boolean>>();
+        List<Watchdog.Watch> watches = new ArrayList<Watchdog.Watch>();
+        
+        boolean passed = true;
+        try {
+            for (int w=0; w<workers; w++) {
+                final int shareFrom = from + shareStart(to - from, workers, w);
+                final int shareTo = from + shareStart(to - from, workers, w + 1);
+                final long workerSeed = workers == 1 ? run.seed : Gen.deriveSeed(run.seed, w);
+                final Watchdog.Watch watch = watchdog.watch(run.deadline);
+                watches.add(watch);
+                Future<Boolean> thread = getTryExecutor().submit(new Callable<Boolean>() {
+                    public Boolean call() {
+                        return run.scope != null 
+                            ? tryInputs(run, shareFrom, shareTo, halt, watch)
+                            : runTries(run, shareFrom, shareTo, workerSeed, halt, watch);
+                    }
+                });
+                watch.setFuture(thread);
+                threads.add(thread);
+            }
+            
+            for (int tIdx=0; tIdx<threads.size(); tIdx++) {
+                try {
+                    passed &= joinThread(threads.get(tIdx));
+                } catch (CancellationException e) {
+                    Watchdog.Watch watch = watches.get(tIdx);
+                    run.tries.addAndGet(watch.ended() + 1);
+                    timedOut(run, watch.timedOutTry(), paramsFor(run, watch.timedOutTry()),
+                             watch.lastNanos(), watch.dump());
+                    passed = false;
+                    if (!continuePropAfterFail) {
+                        halt.set(true);
+                    }
+                }
+            }
+        } finally {
+            for (Watchdog.Watch watch : watches) {
+                watchdog.unwatch(watch);
+            }
+        }
+        return passed;
+    }
+    
+    /**
+     * Runs tries [from, to) of a property on virtual threads, at most 
+     * virtualThreads at once. Tries are run a window at a time, each with a 
+     * Gen seeded for its number, and the results of a window are then gone
+     * through in try order on the calling thread. The tries failing, and 
+     * those reported, are therefore those of a run one try at a time, though
+     * tries after a failure in its window are made and passed over.
+     */
+    private boolean runTriesVirtually(final PropertyRun run, int from, int to, 
+                                      AtomicBoolean halt) throws TestException {
+        final VirtualSlot[] slots = new VirtualSlot[virtualThreads];
+        int window = virtualThreads * VIRTUAL_WINDOW_PER_THREAD;
+        boolean passed = true;
+        int tried = 0;
+        int skipped = 0;
+        
+        try {
+            for (int start=from; start<to && !halt.get(); ) {
+                final int windowFrom = start;
+                final int windowTo = (int) Math.min((long) start + window, to);
+                final int size = windowTo - windowFrom;
+                final boolean[] held = new boolean[size];
+                final boolean[] wasSkipped = new boolean[size];
+                final Object[][] params = new Object[size][];
+                final TestException[] thrown = new TestException[size];
+                final AtomicInteger next = new AtomicInteger(windowFrom);
+                
+                /* for watched tries: those timed out, the times of those timed 
+                 * out or slow, and the median times slow ones are against */
+                final boolean[] timedOut = new boolean[size];
+                final boolean[] abandoned = new boolean[size];
+                final String[] dumps = new String[size];
+                final long[] took = new long[size];
+                final long[] medians = new long[size];
+                
+                List<Future<PropertyMetrics.Recorder>> threads = 
+                    new ArrayList<Future<PropertyMetrics.Recorder>>();
+                for (int sIdx=0; sIdx<Math.min(slots.length, size); sIdx++) {
+                    if (slots[sIdx] == null) {
+                        slots[sIdx] = new VirtualSlot(run);
+                    }
+                    final VirtualSlot slot = slots[sIdx];
+                    Future<PropertyMetrics.Recorder> thread = getTryExecutor().submit(
+                            new Callable<PropertyMetrics.Recorder>() {
+                        public PropertyMetrics.Recorder call() {
+                            PropertyMetrics.Recorder recorder = 
+                                run.metrics != null ? new PropertyMetrics.Recorder() : null;
+                            for (int i=next.getAndIncrement(); i<windowTo; 
+                                     i=next.getAndIncrement()) {
+                                int r = i - windowFrom;
+                                slot.gen.setSeed(Gen.deriveSeed(run.seed, i));
+                                slot.gen.sizeForTry(i);
+                                if (slot.watch != null && !slot.watch.begin(i+1)) {
+                                    /* the property's time is up */
+                                    timedOut[r] = true;
+                                    break;
+                                }
+                                long started = recorder != null ? System.nanoTime() : 0;
+                                try {
+                                    held[r] = slot.invoker.tryOnce(slot.gen);
+                                } catch (TestException e) {
+                                    thrown[r] = e;
+                                    params[r] = slot.invoker.thrownParams();
+                                }
+                                if (slot.watch != null) {
+                                    int ended = slot.watch.end();
+                                    if (ended == Watchdog.ABANDONED) {
+                                        return null;
+                                    } else if (ended == Watchdog.TIMED_OUT) {
+                                        timedOut[r] = true;
+                                        dumps[r] = slot.watch.dump();
+                                        took[r] = slot.watch.lastNanos();
+                                        if (thrown[r] == null && !held[r]) {
+                                            params[r] = slot.invoker.lastParams();
+                                        }
+                                        continue;
+                                    } else if (slot.watch.wasSlow()) {
+                                        took[r] = slot.watch.lastNanos();
+                                        medians[r] = slot.watch.medianNanos();
+                                    }
+                                }
+                                if (thrown[r] != null) {
+                                    continue;
+                                }
+                                wasSkipped[r] = slot.invoker.skipped();
+                                if (!held[r] || printSuccessRuns) {
+                                    params[r] = slot.invoker.lastParams();
+                                }
+                                if (recorder != null && !wasSkipped[r]) {
+                                    long generated = slot.invoker.generatedAt();
+                                    recorder.record(generated - started, 
+                                                    System.nanoTime() - generated);
+                                }
+                            }
+                            return recorder != null ? recorder.finish() : null;
+                        }
+                    });
+                    if (slot.watch != null) {
+                        slot.watch.setFuture(thread);
+                    }
+                    threads.add(thread);
+                }
+                for (int tIdx=0; tIdx<threads.size(); tIdx++) {
+                    PropertyMetrics.Recorder recorder;
+                    try {
+                        recorder = joinThread(threads.get(tIdx));
+                    } catch (CancellationException e) {
+                        /* its thread is left to the abandoned try */
+                        Watchdog.Watch watch = slots[tIdx].watch;
+                        int r = watch.timedOutTry() - 1 - windowFrom;
+                        timedOut[r] = true;
+                        abandoned[r] = true;
+                        dumps[r] = watch.dump();
+                        took[r] = watch.lastNanos();
+                        slots[tIdx] = null;
+                        continue;
+                    }
+                    if (recorder != null) {
+                        run.metrics.add(recorder);
+                    }
+                }
+                
+                /* an abandoned try leaves tries of its window unmade */
+                int made = Math.min(next.get(), windowTo) - windowFrom;
+                int windowTried = 0;
+                int windowFresh = 0;
+                for (int r=0; r<made; r++) {
+                    int tryNumber = windowFrom + r + 1;
+                    if (timedOut[r] && dumps[r] == null) {
+                        timedOut(run, tryNumber, null, 0, null);
+                        passed = false;
+                        halt.set(true);
+                        break;
+                    }
+                    windowTried++;
+                    if (timedOut[r]) {
+                        timedOut(run, tryNumber, 
+                                 abandoned[r] || params[r] == null 
+                                     ? paramsFor(run, tryNumber) : params[r], 
+                                 took[r], dumps[r]);
+                        passed = false;
+                        if (!continuePropAfterFail) {
+                            halt.set(true);
+                            break;
+                        }
+                        continue;
+                    }
+                    if (thrown[r] instanceof Gen.DepthException) {
+                        tooDeep(run, tryNumber, thrown[r]);
+                        passed = false;
+                        if (!continuePropAfterFail) {
+                            halt.set(true);
+                            break;
+                        }
+                        continue;
+                    } else if (thrown[r] != null) {
+                        if (corpus != null && params[r] != null) {
+                            corpus.add(run.prop, params[r]);
+                        }
+                        throw thrown[r];
+                    }
+                    if (wasSkipped[r]) {
+                        skipped++;
+                        continue;
+                    }
+                    windowFresh++;
+                    if (medians[r] > 0) {
+                        slow(run, tryNumber, took[r], medians[r]);
+                    }
+                    if (!held[r]) {
+                        failed(run, tryNumber, params[r]);
+                        passed = false;
+                        if (!continuePropAfterFail) {
+                            halt.set(true);
+                            break;
+                        }
+                    } else if (printSuccessRuns) {
+                        reports.tryPassed(run.execution, tryNumber, params[r]);
+                    }
+                }
+                tried += windowTried;
+                if (run.seen != null && run.addToWindow(windowTried, windowFresh, minNewRate)) {
+                    halt.set(true);
+                }
+                start = windowFrom + made;
+            }
+        } finally {
+            for (VirtualSlot slot : slots) {
+                if (slot != null && slot.watch != null) {
+                    watchdog.unwatch(slot.watch);
+                }
+            }
+        }
+        
+        run.tries.addAndGet(tried);
+        run.skipped.addAndGet(skipped);
+        return passed;
+    }
+    
+    private static <T> T joinThread(Future<T> thread) throws TestException {
         try {
-            return (Boolean) prop.invoke(null, params);
-        } catch (InvocationTargetException e) {
-            throw new TestException(prop.getName() + " threw: " + e.getCause());
-        } catch (IllegalAccessException e) {
-            throw new TestException(e.toString());
+            return thread.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new TestException(e.getCause().toString(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TestException("Interrupted waiting for tries", e);
+        }
+    }
+    
+    /**
+     * Answers the executor running tries on virtual threads, or, before Java
+     * 21, a pool of daemon threads. Watched tries run on it too, so that a 
+     * thread whose try is abandoned is never one TestRun needs again.
+     */
+    private synchronized ExecutorService getTryExecutor() {
+        if (tryExecutor == null) {
+            try {
+                tryExecutor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                tryExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+                    
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "SuperCheck try " + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+        }
+        return tryExecutor;
+    }
+    
+    /**
+     * Splits the tries of a property into one contiguous share per worker. 
+     * Without per-try seeds, worker w runs its share with a Gen seeded by 
+     * {@link Gen#deriveSeed(long, long)} of the property seed and w.
+     */
+    private boolean runTriesConcurrently(final PropertyRun run, int from, int to,
+                                         final AtomicBoolean halt) throws TestException {
+        List<ForkJoinTask<Boolean>> tasks = new ArrayList<ForkJoinTask<Boolean>>();
+        
+        for (int w=0; w<run.workers; w++) {
+            final int shareFrom = from + shareStart(to - from, run.workers, w);
+            final int shareTo = from + shareStart(to - from, run.workers, w + 1);
+            final long workerSeed = Gen.deriveSeed(run.seed, w);
+            tasks.add(ForkJoinTask.adapt(new Callable<Boolean>() {
+                public Boolean call() {
+                    return runTries(run, shareFrom, shareTo, workerSeed, halt, null);
+                }
+            }));
+        }
+        
+        boolean passed = true;
+        for (Boolean workerPassed : joinAll(tasks)) {
+            passed &= workerPassed;
+        }
+        return passed;
+    }
+    
+    /**
+     * Runs every property of a class as its own task. The test event of each
+     * property is recorded in declaration order once all properties have 
+     * finished.
+     */
+    private void runAllConcurrently(Class<?> invariants, final int timesForEach) 
+                                                         throws TestException {
+        List<ForkJoinTask<Recording>> tasks = new ArrayList<ForkJoinTask<Recording>>();
+        List<PropertyRun> runs = new ArrayList<PropertyRun>();
+        
+        for (Method m : invariants.getMethods()) {
+            if (!m.getName().startsWith("prop_")) {
+                continue;
+            }
+            SmallScope scope = scopeFor(m, timesForEach);
+            int times = scope != null ? (int) scope.size() : timesForEach;
+            final PropertyRun run = new PropertyRun(m, times, 0,
+                    System.currentTimeMillis(), 
+                    Math.min(parallelism, Math.max(times, 1)), 
+                    algorithm, true, true, false, scope, nextParams, collectMetrics, 
+                    dedupBytes);
+            nextParams = ParameterBunch.Snapshot.EMPTY;
+            
+            runs.add(run);
+            tasks.add(ForkJoinTask.adapt(new Callable<Recording>() {
+                public Recording call() {
+                    Recording events = new Recording();
+                    runOn(run, events);
+                    return events;
+                }
+            }));
+        }
+        
+        List<Recording> results = joinAll(tasks);
+        for (int tIdx=0; tIdx<results.size(); tIdx++) {
+            recording.addAll(results.get(tIdx));
+            addMetrics(runs.get(tIdx));
+        }
+    }
+    
+    private void addMetrics(PropertyRun run) {
+        if (run.metrics != null) {
+            synchronized (metrics) {
+                metrics.add(run.metrics);
+            }
         }
     }
     
+    /** 
+     * Shrinks the data of a failed try, answering the smallest data found. 
+     * Each candidate is tried under a watch, as the try was.
+     */
+    private Object[] shrink(final PropertyRun run, final int tryNumber, Object[] failed) 
+                                                         throws TestException {
+        Shrinker.Trial trial = new Shrinker.Trial() {
+            public boolean fails(final Object[] params) {
+                WatchedCall call = new WatchedCall() {
+                    boolean call() {
+                        return PropertyInvoker.call(run.prop, params);
+                    }
+                };
+                /* candidates thrown for or timed out are not used, as they
+                 * would change the failure being shrunk */
+                try {
+                    return call.make(run.deadline, tryNumber) && !call.held;
+                } catch (TestException e) {
+                    return false;
+                }
+            }
+        };
+        Shrinker shrinker = new Shrinker(run.prop, shrinkTries, shrinkMillis, 
+                                         parallelism > 1 ? getPool() : null, trial);
+        Object[] shrunk = shrinker.shrink(failed);
+        if (shrinker.getSteps() > 0) {
+            reports.tryShrunk(run.execution, tryNumber, shrunk, 
+                              shrinker.getSteps(), shrinker.getTries());
+        }
+        return shrunk;
+    }
+    
+    private <T> List<T> joinAll(List<ForkJoinTask<T>> tasks) throws TestException {
+        ForkJoinPool pool = getPool();
+        for (ForkJoinTask<T> task : tasks) {
+            pool.execute(task);
+        }
+        
+        List<T> results = new ArrayList<T>(tasks.size());
+        for (ForkJoinTask<T> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+    
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+    
+    private static int shareStart(int times, int workers, int w) {
+        return (int) ((long) times * w / workers);
+    }
+
     /** 
      * Run the next tests with the set of parameters passed in here. The next 
      * call, and only the next call, to a runOn() method will use these 
-     * parameters. For example:
+     * parameters, as they are when with() is called. For example:
      * 
      * <pre>new TestRun().with(params).runOn(Invariants.class, 10000);</pre>
      */
     public TestRun with(ParameterBunch pb) {
-    	nextParams = pb;
+    	nextParams = pb.snapshot();
     	return this;
     }
 
-    private void printParamList(Object[] ary, PrintStream out, String prefix) {
-        for (int i=0; i<ary.length; i++) {
-            out.println(prefix + (i+1) + ". " + ary[i]);
+    /** Answers toString() of a parameter, or the contents of an array. */
+    static String describe(Object param) {
+        if (param != null && param.getClass().isArray()) {
+            /* deepToString of a one element array copes with primitive arrays */
+            String d = Arrays.deepToString(new Object[] { param });
+            return d.substring(1, d.length() - 1);
+        }
+        return String.valueOf(param);
+    }
+    
+    /**
+     * A call of a property made as a watched try is: on a thread of the try 
+     * executor, under a watch of its own, so that a call that hangs is 
+     * interrupted and, if need be, abandoned. Without timeouts the call is 
+     * made on the calling thread. Calls made to shrink data, to replay the 
+     * corpus and to replay single tries are watched this way.
+     */
+    private abstract class WatchedCall {
+        private boolean held;
+        private long nanos;
+        private String threadDump;
+        
+        /** Calls the property, answering true if it held. */
+        abstract boolean call() throws TestException;
+        
+        /**
+         * Makes the call, as try tryNumber of an execution with deadline, 
+         * answering false if it timed out or the deadline had passed. A call 
+         * in time held if held is then set; the property throwing, other 
+         * than when interrupted for timing out, is thrown.
+         */
+        boolean make(long deadline, final int tryNumber) throws TestException {
+            if (watchdog == null) {
+                held = call();
+                return true;
+            }
+            final Watchdog.Watch watch = watchdog.watch(deadline);
+            int ended;
+            try {
+                Future<Integer> thread = getTryExecutor().submit(new Callable<Integer>() {
+                    public Integer call() {
+                        if (!watch.begin(tryNumber)) {
+                            return Watchdog.TIMED_OUT;
+                        }
+                        boolean result = false;
+                        TestException threw = null;
+                        try {
+                            result = WatchedCall.this.call();
+                        } catch (TestException e) {
+                            threw = e;
+                        }
+                        int ended = watch.end();
+                        if (ended == Watchdog.IN_TIME && threw != null) {
+                            throw threw;
+                        }
+                        held = result;
+                        return ended;
+                    }
+                });
+                watch.setFuture(thread);
+                try {
+                    ended = joinThread(thread);
+                } catch (CancellationException e) {
+                    ended = Watchdog.ABANDONED;
+                }
+                nanos = watch.lastNanos();
+                threadDump = watch.dump();
+            } finally {
+                watchdog.unwatch(watch);
+            }
+            return ended == Watchdog.IN_TIME;
+        }
+    }
+    
+    /** 
+     * The Gen and invoker one virtual thread at a time makes tries with, and
+     * the watch it makes them under, if tries have timeouts.
+     */
+    private final class VirtualSlot {
+        private final Gen gen = new Gen();
+        private final PropertyInvoker invoker;
+        private final Watchdog.Watch watch;
+        
+        private VirtualSlot(PropertyRun run) {
+            gen.setParams(run.bunch);
+            gen.setSeed(run.seed, run.algorithm);
+            gen.setSized(run.sized);
+            invoker = PropertyInvoker.forProperty(run.prop, reflectiveInvoke, 
+                    printSuccessRuns, run.metrics != null, run.seen);
+            watch = watchdog != null ? watchdog.watch(run.deadline) : null;
+        }
+    }
+    
+    /** The settings of one execution of a property. */
+    private static final class PropertyRun {
+        private final Method prop;
+        private final int times;
+        private final long seed;
+        private final int workers;
+        private final RandomSource.Algorithm algorithm;
+        private final boolean perTrySeeds;
+        
+        /* false for the legacy algorithm, and for recordings made before sizes,
+         * whose data is made as it was then */
+        private final boolean sized;
+        
+        private final ParameterBunch.Snapshot bunch;
+        private final PropertyExecution execution;
+        
+        /* null unless metrics are being collected */
+        private final PropertyMetrics metrics;
+        
+        /* null unless duplicate data is skipped */
+        private final SeenFilter seen;
+        
+        /* null unless tries are guided by coverage */
+        private final Guide guide;
+        
+        /* null unless every argument list is tried, in order */
+        private final SmallScope scope;
+        
+        private final AtomicInteger tries = new AtomicInteger();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicBoolean saturated = new AtomicBoolean();
+        private int windowTries;
+        private int windowFresh;
+        
+        private final List<Integer> failedTries = new ArrayList<Integer>();
+        
+        /* Set once the first failure claims the shrinking of this run. */
+        private final AtomicBoolean shrinking = new AtomicBoolean();
+        
+        private final AtomicInteger slowReported = new AtomicInteger();
+        
+        /* The System.nanoTime() the execution must finish by, if it has a 
+         * timeout */
+        private volatile long deadline = Long.MAX_VALUE;
+        
+        private PropertyRun(Method prop, int times, long budgetNanos, long seed, 
+                            int workers, RandomSource.Algorithm algorithm, 
+                            boolean perTrySeeds, boolean sized, boolean guided, 
+                            SmallScope scope,
+                            ParameterBunch.Snapshot bunch, boolean measured, 
+                            int dedupBytes) {
+            this.prop = prop;
+            this.times = times;
+            this.seed = seed;
+            this.workers = workers;
+            this.algorithm = algorithm;
+            this.perTrySeeds = perTrySeeds;
+            this.sized = sized && algorithm != RandomSource.Algorithm.LEGACY;
+            this.bunch = bunch;
+            this.execution = new PropertyExecution(prop, seed, times, budgetNanos);
+            this.metrics = measured 
+                ? new PropertyMetrics(prop.getDeclaringClass().getName(), prop.getName())
+                : null;
+            this.seen = dedupBytes > 0 && scope == null
+                ? new SeenFilter(dedupBytes, times > 0 ? times : 1 << 20) 
+                : null;
+            this.guide = guided ? new Guide() : null;
+            this.scope = scope;
+        }
+        
+        /** Answers the bound the run's tries are enumerated to, or 0. */
+        private int bound() {
+            return scope != null ? scope.bound() : 0;
+        }
+        
+        private void setDeadline(long start, long timeoutNanos) {
+            deadline = timeoutNanos > 0 ? start + timeoutNanos : Long.MAX_VALUE;
+        }
+        
+        private synchronized void addFailedTry(int tryNumber) {
+            if (failedTries.size() < Recording.MAX_FAILED_TRIES) {
+                failedTries.add(tryNumber);
+            }
+        }
+        
+        /**
+         * Adds tries to the window over which the rate of new data is 
+         * measured. Answers true, and marks the run saturated, if the window
+         * is full and too few of its tries had new data.
+         */
+        private synchronized boolean addToWindow(int tries, int fresh, double minNewRate) {
+            windowTries += tries;
+            windowFresh += fresh;
+            if (windowTries < SATURATION_WINDOW) {
+                return false;
+            }
+            boolean saturate = windowFresh < minNewRate * windowTries;
+            windowTries = 0;
+            windowFresh = 0;
+            if (saturate) {
+                saturated.set(true);
+            }
+            return saturate;
+        }
+        
+        /** Answers the failed tries remembered, in order. */
+        private synchronized int[] getFailedTries() {
+            Collections.sort(failedTries);
+            int[] failed = new int[failedTries.size()];
+            for (int fIdx=0; fIdx<failed.length; fIdx++) {
+                failed[fIdx] = failedTries.get(fIdx);
+            }
+            return failed;
         }
     }
     
@@ -0,0 +1,315 @@
+package tbc.supercheck;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+
+/**
+ * A Watchdog watches the threads making tries of a {@link TestRun} for tries
+ * that run too long: longer than each try is allowed, or past the deadline of
+ * the execution of their property. A try found running too long has its
+ * thread's stack taken, with that of any thread holding a lock it waits for,
+ * and is interrupted. If it has not returned a second later it is abandoned:
+ * its thread is left to run on, and the TestRun stops waiting for it.
+ * <p>
+ * Each thread making tries does so under a {@link Watch} of its own, which
+ * also times its tries and marks those far slower than the thread's typical
+ * try. Watches are checked by a daemon thread, which runs while there are
+ * any to check.
+ *
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+final class Watchdog {
+    
+    /* The states a try's Watch ends it in */
+    static final int IN_TIME   = 0;
+    static final int TIMED_OUT = 1;
+    static final int ABANDONED = 2;
+    
+    /* The time an interrupted try has to return before it is abandoned */
+    static final long ABANDON_NANOS = 1000000000L;
+    
+    /* Tries taking SLOW_FACTOR times the median try of their thread, and at
+     * least SLOW_MIN_NANOS, are slow. The median is measured every
+     * MEDIAN_TRIES tries. */
+    private static final int SLOW_FACTOR = 10;
+    private static final long SLOW_MIN_NANOS = 1000000L;
+    private static final int MEDIAN_TRIES = 100;
+    
+    private static final long IDLE_MILLIS = 1000;
+    
+    private final long tryNanos;
+    private final long periodMillis;
+    
+    private final List<Watch> watches = new CopyOnWriteArrayList<Watch>();
+    
+    private Thread watcher;
+    
+    /**
+     * A Watchdog allowing each try tryNanos, or any time if 0, and checking
+     * often enough for the shorter of that and propertyNanos.
+     */
+    Watchdog(long tryNanos, long propertyNanos) {
+        this.tryNanos = tryNanos > 0 ? tryNanos : Long.MAX_VALUE;
+        long shortest = Math.min(this.tryNanos,
+                                 propertyNanos > 0 ? propertyNanos : Long.MAX_VALUE);
+        periodMillis = Math.max(1, Math.min(100, shortest / 10000000));
+    }
+    
+    /**
+     * Answers a new Watch, for a thread to make tries under until it is
+     * {@link #unwatch(Watch) unwatched}.
+     *
+     * @param deadline the System.nanoTime() by which the property's execution
+     *        must finish, or Long.MAX_VALUE for none
+     */
+    Watch watch(long deadline) {
+        Watch watch = new Watch(deadline);
+        watches.add(watch);
+        startWatcher();
+        return watch;
+    }
+    
+    void unwatch(Watch watch) {
+        watches.remove(watch);
+    }
+    
+    private synchronized void startWatcher() {
+        if (watcher == null) {
+            watcher = new Thread(new Runnable() {
+                public void run() {
+                    patrol();
+                }
+            }, "SuperCheck watchdog");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+    
+    private void patrol() {
+        long idleSince = System.nanoTime();
+        while (true) {
+            long now = System.nanoTime();
+            for (Watch watch : watches) {
+                watch.check(now);
+            }
+            if (!watches.isEmpty()) {
+                idleSince = now;
+            } else if (now - idleSince > IDLE_MILLIS * 1000000) {
+                synchronized (this) {
+                    if (watches.isEmpty()) {
+                        watcher = null;
+                        return;
+                    }
+                }
+            }
+            try {
+                Thread.sleep(periodMillis);
+            } catch (InterruptedException e) {
+                /* check again */
+            }
+        }
+    }
+    
+    /**
+     * Answers the stack of thread, and of the thread holding any lock it is
+     * waiting for, in the form of a thread dump.
+     */
+    static String dump(Thread thread) {
+        StringBuilder dump = new StringBuilder();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        ThreadInfo info = null;
+        try {
+            info = threads.getThreadInfo(new long[] { thread.getId() }, true, true)[0];
+        } catch (UnsupportedOperationException e) {
+            /* fall back to the bare stack */
+        }
+        
+        /* virtual threads have no ThreadInfo */
+        if (info == null) {
+            dump.append('"').append(thread.getName()).append("\" ")
+                .append(thread.getState()).append('\n');
+            for (StackTraceElement frame : thread.getStackTrace()) {
+                dump.append("\tat ").append(frame).append('\n');
+            }
+            return dump.toString();
+        }
+        
+        append(dump, info);
+        if (info.getLockOwnerId() != -1) {
+            ThreadInfo owner =
+                threads.getThreadInfo(new long[] { info.getLockOwnerId() }, true, true)[0];
+            if (owner != null) {
+                dump.append('\n');
+                append(dump, owner);
+            }
+        }
+        return dump.toString();
+    }
+    
+    private static void append(StringBuilder dump, ThreadInfo info) {
+        dump.append('"').append(info.getThreadName()).append("\" ")
+            .append(info.getThreadState());
+        if (info.getLockName() != null) {
+            dump.append(" on ").append(info.getLockName());
+        }
+        if (info.getLockOwnerName() != null) {
+            dump.append(" owned by \"").append(info.getLockOwnerName()).append('"');
+        }
+        dump.append('\n');
+        
+        StackTraceElement[] frames = info.getStackTrace();
+        for (int fIdx=0; fIdx<frames.length; fIdx++) {
+            dump.append("\tat ").append(frames[fIdx]).append('\n');
+            for (MonitorInfo monitor : info.getLockedMonitors()) {
+                if (monitor.getLockedStackDepth() == fIdx) {
+                    dump.append("\t- locked ").append(monitor).append('\n');
+                }
+            }
+        }
+    }
+    
+    /**
+     * A Watch is how one thread's tries are watched: each try is begun and
+     * ended with it. A Watch is used by one thread at a time.
+     */
+    final class Watch {
+        private final long deadline;
+        
+        private Thread thread;
+        private int tryNumber;
+        private long started;
+        private int state;
+        
+        private int timedOutTry;
+        private long timedOutAt;
+        private String dump;
+        private Future<?> future;
+        
+        /* the time tries took, for their median */
+        private final LatencyHistogram times = new LatencyHistogram();
+        private long median;
+        private long lastNanos;
+        private boolean slow;
+        private int ended;
+        
+        private Watch(long deadline) {
+            this.deadline = deadline;
+        }
+        
+        /**
+         * Sets the future of the task making the tries, so that it can be
+         * cancelled when a try is abandoned.
+         */
+        synchronized void setFuture(Future<?> future) {
+            this.future = future;
+            if (state == ABANDONED) {
+                future.cancel(false);
+            }
+        }
+        
+        /**
+         * Begins a try on the calling thread. Answers false, and does not
+         * begin it, if the execution's deadline has passed.
+         */
+        synchronized boolean begin(int tryNumber) {
+            long now = System.nanoTime();
+            if (state == ABANDONED
+                    || (deadline != Long.MAX_VALUE && now - deadline >= 0)) {
+                return false;
+            }
+            thread = Thread.currentThread();
+            this.tryNumber = tryNumber;
+            started = now;
+            state = IN_TIME;
+            return true;
+        }
+        
+        /**
+         * Ends the try begun, answering IN_TIME, TIMED_OUT if it was
+         * interrupted, or ABANDONED if it was given up on. A timed out try's
+         * interrupt is cleared.
+         */
+        synchronized int end() {
+            tryNumber = 0;
+            if (state == ABANDONED) {
+                Thread.interrupted();
+                return state;
+            }
+            lastNanos = System.nanoTime() - started;
+            if (state == TIMED_OUT) {
+                Thread.interrupted();
+                return state;
+            }
+            slow = median > 0 && lastNanos >= SLOW_MIN_NANOS
+                   && lastNanos / SLOW_FACTOR > median;
+            times.record(lastNanos);
+            if (times.getCount() % MEDIAN_TRIES == 0) {
+                median = Math.max(1, times.getPercentile(0.5d));
+            }
+            ended++;
+            return IN_TIME;
+        }
+        
+        /** Answers true if the try last ended in time was slow. */
+        synchronized boolean wasSlow() {
+            return slow;
+        }
+        
+        /** Answers the median time of the tries ended, as last measured. */
+        synchronized long medianNanos() {
+            return median;
+        }
+        
+        /**
+         * Answers the time the try last ended took, or, for the try timed out,
+         * the time it had taken when it was given up on or ended.
+         */
+        synchronized long lastNanos() {
+            return lastNanos;
+        }
+        
+        /** Answers the number of the try timed out. */
+        synchronized int timedOutTry() {
+            return timedOutTry;
+        }
+        
+        /** Answers the stacks dumped when the try timed out. */
+        synchronized String dump() {
+            return dump;
+        }
+        
+        /** Answers the number of tries ended in time. */
+        synchronized int ended() {
+            return ended;
+        }
+        
+        private synchronized void check(long now) {
+            if (tryNumber == 0) {
+                return;
+            }
+            if (state == IN_TIME && (now - started > tryNanos
+                    || (deadline != Long.MAX_VALUE && now - deadline >= 0))) {
+                state = TIMED_OUT;
+                timedOutTry = tryNumber;
+                timedOutAt = now;
+                dump = Watchdog.dump(thread);
+                lastNanos = now - started;
+                thread.interrupt();
+            } else if (state == TIMED_OUT) {
+                lastNanos = now - started;
+                if (now - timedOutAt > ABANDON_NANOS) {
+                    state = ABANDONED;
+                    watches.remove(this);
+                    if (future != null) {
+                        future.cancel(false);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package tbc.supercheck;
+
+/**
+ * A WeightedChoice is a precompiled set of probabilities, for use with 
+ * {@link Gen#select(WeightedChoice)} and 
+ * {@link Gen#oneOf(WeightedChoice, Object...)}. Building a WeightedChoice 
+ * once, and keeping it in a static field, is cheaper than passing the same 
+ * probabilities to {@link Gen#select(float...)} on every call:
+ * 
+ * <pre>private static final WeightedChoice MOSTLY_RANDOM = new WeightedChoice(0.05f, 0.95f);
+ * 
+ * public static MyObject arbitrary(Gen gen) {
+ *     switch (gen.select(MOSTLY_RANDOM)) {
+ *     case 0:
+ *         return MyObject.SPECIAL_VALUE_NOT_OFTEN_ENCOUNTERED;
+ *     case 1: default:
+ *         return new MyObject(...bunch of random data...);
+ *     }
+ * }</pre>
+ * 
+ * Selection uses Walker's alias method, so it takes the same time however many
+ * probabilities there are, and allocates nothing. A Gen whose algorithm is 
+ * {@link RandomSource.Algorithm#LEGACY} selects as select(float...) always
+ * has, so that old recordings still reproduce their data. A WeightedChoice 
+ * is immutable.
+ * 
+ * @author Karl Jonathan Ward <karl.j.ward@googlemail.com>
+ */
+public final class WeightedChoice {
+    
+    private static final double TWO_POW_32 = 4294967296.0;
+    
+    /* 
+     * Column i is chosen with probability 1/n. Within column i, index i is 
+     * answered if the low 32 bits of the draw are below threshold[i], and 
+     * alias[i] otherwise.
+     */
+    private final long[] threshold;
+    private final int[] alias;
+    
+    /* The probabilities normalised, for the draws of legacy streams */
+    private final float[] normalised;
+    
+    /**
+     * Precompiles a set of probabilities. Probabilities will be normalised if 
+     * they do not sum to 1.0f.
+     * 
+     * @throws IllegalArgumentException if there are no probabilities, any is 
+     *         negative, or they sum to zero
+     */
+    public WeightedChoice(float... probabilities) {
+        int n = probabilities.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("No probabilities to choose from.");
+        }
+        
+        double sum = 0.0d;
+        for (float f : probabilities) {
+            if (f < 0.0f || Float.isNaN(f)) {
+                throw new IllegalArgumentException("Bad probability: " + f);
+            }
+            sum += f;
+        }
+        if (sum <= 0.0d || Double.isInfinite(sum)) {
+            throw new IllegalArgumentException("Probabilities sum to " + sum);
+        }
+        normalised = normalise(probabilities);
+        
+        /* Vose's construction over probabilities scaled so their mean is 1 */
+        double[] scaled = new double[n];
+        int[] small = new int[n], large = new int[n];
+        int smallCount = 0, largeCount = 0;
+        for (int idx=0; idx<n; idx++) {
+            scaled[idx] = probabilities[idx] * n / sum;
+            if (scaled[idx] < 1.0d) {
+                small[smallCount++] = idx;
+            } else {
+                large[largeCount++] = idx;
+            }
+        }
+        
+        threshold = new long[n];
+        alias = new int[n];
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount], more = large[--largeCount];
+            threshold[less] = (long) (scaled[less] * TWO_POW_32);
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0d;
+            if (scaled[more] < 1.0d) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        /* whatever remains has probability 1 within its column, give or take 
+         * rounding */
+        while (largeCount > 0) {
+            int idx = large[--largeCount];
+            threshold[idx] = 1L << 32;
+            alias[idx] = idx;
+        }
+        while (smallCount > 0) {
+            int idx = small[--smallCount];
+            threshold[idx] = 1L << 32;
+            alias[idx] = idx;
+        }
+    }
+    
+    /**
+     * Answers the number of probabilities, and so one more than the largest 
+     * index that can be selected.
+     */
+    public int size() {
+        return threshold.length;
+    }
+    
+    /**
+     * Answers an index selected by 32 uniformly random bits. The high part of
+     * bits times size() picks a column, and the low part picks between the 
+     * column's own index and its alias.
+     */
+    int select(int bits) {
+        long scaled = (bits & 0xFFFFFFFFL) * threshold.length;
+        int column = (int) (scaled >>> 32);
+        return (scaled & 0xFFFFFFFFL) < threshold[column] ? column : alias[column];
+    }
+    
+    /**
+     * Answers an index selected by a uniformly random float in [0, 1), as 
+     * Gen selected before WeightedChoice existed.
+     */
+    int selectLegacy(float ran) {
+        return walk(normalised, ran);
+    }
+    
+    /** 
+     * Answers a copy of probabilities normalised, if they do not sum to 1.0f,
+     * with the rounding Gen.select(float...) has always had.
+     */
+    static float[] normalise(float[] probabilities) {
+        probabilities = probabilities.clone();
+        
+        float sum = 0.0f;
+        for (float f : probabilities) {
+            sum += f;
+        }
+        
+        if (sum != 1.0f) {
+            for (int idx = 0; idx < probabilities.length; idx++) {
+                probabilities[idx] = probabilities[idx] / sum;
+            }
+        }
+        return probabilities;
+    }
+    
+    /**
+     * Answers the index at which the running total of normalised 
+     * probabilities reaches ran.
+     */
+    static int walk(float[] normalised, float ran) {
+        float totalThusFar = 0.0f;
+        for (int idx=0; idx<normalised.length; idx++) {
+            totalThusFar += normalised[idx];
+            if (ran <= totalThusFar) {
+                return idx;
+            }
+        }
+        return normalised.length - 1; // because our normalisation
+                                      // may suffer rounding errors
+    }
+}
@@ -0,0 +1,157 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class AlphabetTest {
+
+    private static final int LENGTH = 100000;
+
+    private Gen gen;
+
+    @Before
+    public void seed() {
+        gen = new Gen();
+        gen.setSeed(23);
+    }
+
+    @Test
+    public void theTablesHaveTheirSizes() {
+        assertEquals(0x80, Alphabet.ASCII.size());
+        assertEquals(0x100, Alphabet.LATIN_1.size());
+        assertEquals(0x10000 - 0x800, Alphabet.BMP.size());
+        assertEquals(0x110000 - 0x800, Alphabet.UNICODE.size());
+        assertEquals(3, Alphabet.of("abcabca").size());
+    }
+
+    @Test
+    public void asciiAndLatin1DrawEveryCharacterEvenly() {
+        assertEvenlySpread(gen.arbString(Alphabet.ASCII, LENGTH, LENGTH), 0x80);
+        assertEvenlySpread(gen.arbString(Alphabet.LATIN_1, LENGTH, LENGTH), 0x100);
+    }
+
+    @Test
+    public void madeAlphabetsDrawEachCodePointEvenly() {
+        /* not a power of two, so drawn two to a word */
+        String s = gen.arbString(Alphabet.of("xyzzy"), LENGTH, LENGTH);
+        int[] counts = new int[3];
+        for (int cIdx=0; cIdx<s.length(); cIdx++) {
+            counts["xyz".indexOf(s.charAt(cIdx))]++;
+        }
+        for (int count : counts) {
+            assertNear(1.0d / 3, count);
+        }
+    }
+
+    @Test
+    public void theBmpHasNoSurrogates() {
+        String s = gen.arbString(Alphabet.BMP, LENGTH, LENGTH);
+
+        assertEquals(LENGTH, s.length());
+        int above = 0;
+        for (int cIdx=0; cIdx<s.length(); cIdx++) {
+            char c = s.charAt(cIdx);
+            assertTrue(Integer.toHexString(c), !Character.isSurrogate(c));
+            if (c >= 0xE000) {
+                above++;
+            }
+        }
+        /* the characters after the surrogates are drawn too */
+        assertNear((0x10000 - 0xE000) / (double) Alphabet.BMP.size(), above);
+    }
+
+    @Test
+    public void unicodeAnswersSupplementaryCharactersAsSurrogatePairs() {
+        String s = gen.arbString(Alphabet.UNICODE, LENGTH, LENGTH);
+
+        assertEquals(LENGTH, s.codePointCount(0, s.length()));
+        int supplementary = 0;
+        for (int cIdx=0; cIdx<s.length(); cIdx++) {
+            char c = s.charAt(cIdx);
+            if (Character.isHighSurrogate(c)) {
+                assertTrue(Character.isLowSurrogate(s.charAt(++cIdx)));
+                supplementary++;
+            } else {
+                assertTrue(!Character.isLowSurrogate(c));
+            }
+        }
+        assertNear((0x110000 - 0x10000) / (double) Alphabet.UNICODE.size(), supplementary);
+    }
+
+    @Test
+    public void madeAlphabetsMayHaveSupplementaryCharacters() {
+        String clef = new String(Character.toChars(0x1D11E));
+        Alphabet music = Alphabet.of("ab" + clef);
+
+        String s = gen.arbString(music, 1000, 1000);
+
+        assertEquals(1000, s.codePointCount(0, s.length()));
+        assertTrue(s.contains(clef));
+        assertEquals("", s.replace(clef, "").replace("a", "").replace("b", ""));
+    }
+
+    @Test
+    public void lengthsAreInCodePoints() {
+        for (int draw=0; draw<200; draw++) {
+            String s = gen.arbString(Alphabet.UNICODE, 2, 5);
+            int length = s.codePointCount(0, s.length());
+            assertTrue(String.valueOf(length), length >= 2 && length <= 5);
+        }
+        assertEquals("", gen.arbString(Alphabet.ASCII, 0, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void anEmptyAlphabetIsRefused() {
+        Alphabet.of("");
+    }
+
+    @Test
+    public void theScratchBufferIsReusedAndOnlyGrows() throws Exception {
+        gen.arbString(Alphabet.ASCII, 1000, 1000);
+        char[] scratch = scratch(gen);
+
+        String shorter = gen.arbString(Alphabet.ASCII, 10, 10);
+        assertSame(scratch, scratch(gen));
+        assertEquals(10, shorter.length());
+
+        String surrogates = gen.arbString(Alphabet.UNICODE, 600, 600);
+        assertNotSame(scratch, scratch(gen));
+        assertTrue(scratch(gen).length >= 1200);
+        assertEquals(600, surrogates.codePointCount(0, surrogates.length()));
+
+        /* strings answered earlier are not changed by later ones */
+        String copy = new String(shorter.toCharArray());
+        gen.arbString(Alphabet.LATIN_1, 10, 10);
+        assertEquals(copy, shorter);
+    }
+
+    private static char[] scratch(Gen gen) throws Exception {
+        Field scratch = Gen.class.getDeclaredField("scratch");
+        scratch.setAccessible(true);
+        return (char[]) scratch.get(gen);
+    }
+
+    /** Asserts that each char of s below size appears about as often. */
+    private static void assertEvenlySpread(String s, int size) {
+        int[] counts = new int[size];
+        for (int cIdx=0; cIdx<s.length(); cIdx++) {
+            assertTrue(Integer.toHexString(s.charAt(cIdx)), s.charAt(cIdx) < size);
+            counts[s.charAt(cIdx)]++;
+        }
+        for (int count : counts) {
+            assertNear(1.0d / size, count);
+        }
+    }
+
+    private static void assertNear(double expected, int count) {
+        double rate = count / (double) LENGTH;
+        assertTrue(expected + " expected: " + rate, Math.abs(rate - expected) < 0.01d);
+    }
+}
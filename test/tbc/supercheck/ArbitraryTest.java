@@ -0,0 +1,172 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+public class ArbitraryTest {
+
+    private static final Function<Integer, Integer> DOUBLED = new Function<Integer, Integer>() {
+        public Integer apply(Integer i) {
+            return 2 * i;
+        }
+    };
+
+    public static class Bound {
+        public static final Arbitrary<Integer> EVENS = Gen.intsBetween(50, 500).map(DOUBLED);
+
+        public static Arbitrary<String> words() {
+            return Gen.intsBetween(1, 3).map(new Function<Integer, String>() {
+                public String apply(Integer n) {
+                    return "ab".substring(0, Math.min(n, 2));
+                }
+            });
+        }
+
+        public static final Object NOT_ARBITRARY = "not an Arbitrary";
+
+        public static boolean prop_fromField(@From("EVENS") int i) {
+            return i % 2 == 0 && i >= 100 && i <= 1000;
+        }
+
+        public static boolean prop_fromMethod(@From("words") String s) {
+            return s.equals("a") || s.equals("ab");
+        }
+
+        public static boolean prop_fromNothing(@From("NOT_ARBITRARY") int i) {
+            return true;
+        }
+
+        /* fails unless free is 0, so that its data always has something to
+         * shrink, whatever the size of the first try */
+        public static boolean prop_fails(@From("EVENS") int bound, int free) {
+            return free == 0;
+        }
+    }
+
+    @Test
+    public void combinatorsMakeTheirValues() {
+        Gen gen = seeded(1);
+        Arbitrary<Integer> odds = Gen.intsBetween(0, 100).filter(new Predicate<Integer>() {
+            public boolean test(Integer i) {
+                return i % 2 != 0;
+            }
+        });
+        Arbitrary<String> pairs = Gen.intsBetween(0, 9).zip(Arbitrary.constant("x"), 
+                new BiFunction<Integer, String, String>() {
+                    public String apply(Integer i, String s) {
+                        return i + s;
+                    }
+                });
+        Arbitrary<List<Integer>> lists = Arbitrary.constant(7).listOf(2, 4);
+        Arbitrary<Integer> either = Arbitrary.oneOf(Arbitrary.constant(1), Arbitrary.constant(2));
+        Arbitrary<Integer> never3 = Arbitrary.frequency(new float[] { 1f, 0f }, 
+                Arbitrary.constant(1), Arbitrary.constant(3));
+
+        boolean[] eitherSeen = new boolean[3];
+        for (int draw=0; draw<1000; draw++) {
+            assertTrue(odds.generate(gen) % 2 != 0);
+            assertTrue(pairs.generate(gen).matches("[0-9]x"));
+            List<Integer> list = lists.generate(gen);
+            assertTrue(list.size() >= 2 && list.size() <= 4);
+            eitherSeen[either.generate(gen)] = true;
+            assertEquals(1, (int) never3.generate(gen));
+            assertEquals(0, Bound.EVENS.generate(gen) % 2);
+        }
+        assertTrue(eitherSeen[1] && eitherSeen[2]);
+    }
+
+    @Test(expected = TestException.class)
+    public void aFilterRejectingEverythingGivesUp() {
+        Gen.INTS.filter(new Predicate<Integer>() {
+            public boolean test(Integer i) {
+                return false;
+            }
+        }).generate(seeded(1));
+    }
+
+    @Test
+    public void recursiveValuesAreOfBoundedDepth() {
+        Arbitrary<Integer> depths = Arbitrary.recursive(Arbitrary.constant(0), 
+                new Function<Arbitrary<Integer>, Arbitrary<Integer>>() {
+                    public Arbitrary<Integer> apply(Arbitrary<Integer> deeper) {
+                        return deeper.map(new Function<Integer, Integer>() {
+                            public Integer apply(Integer depth) {
+                                return depth + 1;
+                            }
+                        });
+                    }
+                }, 6);
+
+        assertEquals(6, (int) depths.generate(seeded(1)));
+    }
+
+    @Test
+    public void composedValuesAreRepeatable() {
+        Arbitrary<List<Integer>> lists = Bound.EVENS.listOf();
+
+        assertEquals(draw(lists, 5), draw(lists, 5));
+    }
+
+    @Test
+    public void anArbitraryOfAClassMakesWhatGenDoes() {
+        Arbitrary<int[]> arrays = Arbitrary.of(int[].class);
+        Gen gen = seeded(3);
+        Gen same = seeded(3);
+        for (int draw=0; draw<100; draw++) {
+            assertEquals(Arrays.toString(same.arbIntArray()), 
+                         Arrays.toString(arrays.generate(gen)));
+        }
+    }
+
+    @Test
+    public void parametersAreBoundToFieldsAndMethods() {
+        EventLog log = new EventLog();
+        new TestRun().setListeners(log).runOn(Bound.class, "prop_fromField", 500);
+        new TestRun().setListeners(log).runOn(Bound.class, "prop_fromMethod", 500);
+
+        assertEquals(new ArrayList<String>(), log.starting("tryFailed"));
+        assertEquals(2, log.starting("propertyFinished").size());
+    }
+
+    @Test(expected = TestException.class)
+    public void aParameterBoundToSomethingElseFails() {
+        new TestRun().setListeners().runOn(Bound.class, "prop_fromNothing", 10);
+    }
+
+    @Test
+    public void boundParametersAreNotShrunk() {
+        EventLog log = new EventLog();
+        new TestRun().setListeners(log).runOn(Bound.class, "prop_fails", 10);
+
+        List<String> shrunk = log.starting("tryShrunk");
+        assertEquals(1, shrunk.size());
+        String[] args = shrunk.get(0).replaceAll(".*\\[|\\]", "").split(", ");
+        int bound = Integer.parseInt(args[0]);
+        assertTrue(shrunk.get(0), bound % 2 == 0 && bound >= 100);
+        assertEquals(1, Math.abs(Integer.parseInt(args[1])));
+    }
+
+    private static List<Object> draw(Arbitrary<?> arbitrary, long seed) {
+        Gen gen = seeded(seed);
+        List<Object> drawn = new ArrayList<Object>();
+        for (int draw=0; draw<50; draw++) {
+            drawn.add(arbitrary.generate(gen));
+        }
+        return drawn;
+    }
+
+    private static Gen seeded(long seed) {
+        Gen gen = new Gen();
+        gen.setSeed(seed, RandomSource.Algorithm.SPLITMIX);
+        return gen;
+    }
+}
@@ -0,0 +1,149 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkArrayTest {
+
+    private static final int LENGTH = 100000;
+
+    private Gen gen;
+
+    @Before
+    public void seed() {
+        gen = new Gen();
+        gen.setSeed(17);
+    }
+
+    @Test
+    public void lengthsAreChosenFromTheRangeGiven() {
+        Set<Integer> lengths = new HashSet<Integer>();
+        for (int draw=0; draw<400; draw++) {
+            int length = gen.arbIntArray(3, 6).length;
+            assertInRange(3, 6, length);
+            lengths.add(length);
+            assertInRange(3, 6, gen.arbLongArray(3, 6).length);
+            assertInRange(3, 6, gen.arbShortArray(3, 6).length);
+            assertInRange(3, 6, gen.arbByteArray(3, 6).length);
+            assertInRange(3, 6, gen.arbBooleanArray(3, 6).length);
+            assertInRange(3, 6, gen.arbCharArray(3, 6).length);
+            assertInRange(3, 6, gen.arbFloatArray(3, 6).length);
+            assertInRange(3, 6, gen.arbDoubleArray(3, 6).length);
+        }
+        assertEquals(4, lengths.size());
+    }
+
+    @Test
+    public void equalBoundsGiveAFixedLength() {
+        assertEquals(0, gen.arbIntArray(0, 0).length);
+        assertEquals(4096, gen.arbByteArray(4096, 4096).length);
+        assertEquals(65, gen.arbBooleanArray(65, 65).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void anEmptyRangeIsRefused() {
+        gen.arbLongArray(5, 4);
+    }
+
+    @Test
+    public void defaultLengthsStayWithinTheMaximum() {
+        int empty = 0;
+        for (int draw=0; draw<1000; draw++) {
+            int length = gen.arbDoubleArray().length;
+            assertInRange(0, Gen.MAX_ARRAY_LENGTH_DEFAULT, length);
+            if (length == 0) {
+                empty++;
+            }
+        }
+        assertTrue(String.valueOf(empty), empty > 0 && empty < 1000);
+    }
+
+    @Test
+    public void intArraysHaveEdgesAsOftenAsArbInt() {
+        int[] ints = gen.arbIntArray(LENGTH, LENGTH);
+        int[] counts = new int[5];
+        int[] edges = { 0, Integer.MAX_VALUE, Integer.MIN_VALUE, -1, 1 };
+        for (int i : ints) {
+            for (int eIdx=0; eIdx<edges.length; eIdx++) {
+                if (i == edges[eIdx]) {
+                    counts[eIdx]++;
+                }
+            }
+        }
+        int total = 0;
+        for (int count : counts) {
+            /* each edge a fifth of a quarter of the elements */
+            assertNear(0.05d, count);
+            total += count;
+        }
+        assertNear(0.25d, total);
+    }
+
+    @Test
+    public void longArraysHaveEdgesAsOftenAsArbLong() {
+        int edges = 0;
+        for (long l : gen.arbLongArray(LENGTH, LENGTH)) {
+            if (l == 0 || l == Long.MAX_VALUE || l == Long.MIN_VALUE || l == -1 || l == 1) {
+                edges++;
+            }
+        }
+        assertNear(0.25d, edges);
+    }
+
+    @Test
+    public void byteArraysHaveEdgesAsOftenAsArbByte() {
+        int edges = 0;
+        for (byte b : gen.arbByteArray(LENGTH, LENGTH)) {
+            if (b == 0 || b == Byte.MAX_VALUE || b == Byte.MIN_VALUE || b == -1 || b == 1) {
+                edges++;
+            }
+        }
+        /* a quarter are edges, and some of the rest are by chance */
+        assertNear(0.25d + 0.75d * 5 / 256, edges);
+    }
+
+    @Test
+    public void floatArraysHaveEdgesAsOftenAsArbFloat() {
+        int edges = 0;
+        for (float f : gen.arbFloatArray(LENGTH, LENGTH)) {
+            if (f == Float.MAX_VALUE || f == Float.MIN_VALUE || f == 0.0f) {
+                edges++;
+            }
+        }
+        assertNear(0.15d, edges);
+    }
+
+    @Test
+    public void booleanAndCharArraysAreEvenlySpread() {
+        int trues = 0;
+        for (boolean b : gen.arbBooleanArray(LENGTH, LENGTH)) {
+            if (b) {
+                trues++;
+            }
+        }
+        assertNear(0.5d, trues);
+
+        int[] counts = new int[256];
+        for (char c : gen.arbCharArray(LENGTH, LENGTH)) {
+            counts[c]++;
+        }
+        for (int count : counts) {
+            assertTrue(String.valueOf(count), count > LENGTH / 256 / 2);
+        }
+    }
+
+    private static void assertInRange(int min, int max, int length) {
+        assertTrue(min + " to " + max + ": " + length, length >= min && length <= max);
+    }
+
+    private static void assertNear(double expected, int count) {
+        double rate = count / (double) LENGTH;
+        assertTrue(expected + " expected: " + rate, Math.abs(rate - expected) < 0.01d);
+    }
+}
@@ -0,0 +1,126 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import com.thoughtworks.qdox.JavaProjectBuilder;
+
+/**
+ * Instruments every class of some libraries and checks that the verifier 
+ * still accepts them, as it did under -Xverify:all when the instrumenter was
+ * written. Classes of a loader other than the boot loader are verified when
+ * they are linked, which getDeclaredMethods() forces.
+ */
+public class CoverageInstrumenterTest {
+
+    @Test
+    public void commonsLangVerifiesInstrumented() throws Exception {
+        assertVerifies(StringUtils.class);
+    }
+
+    @Test
+    public void commonsIoVerifiesInstrumented() throws Exception {
+        assertVerifies(IOUtils.class);
+    }
+
+    @Test
+    public void qdoxVerifiesInstrumented() throws Exception {
+        assertVerifies(JavaProjectBuilder.class);
+    }
+
+    @Test
+    public void instrumentedCodeHitsEdgesAndWorksAsBefore() throws Exception {
+        InstrumentingLoader loader = new InstrumentingLoader();
+        addJar(loader, StringUtils.class);
+        /* initialized first, so that its static initializer's edges are not
+         * those of the first call */
+        Class<?> stringUtils = Class.forName(StringUtils.class.getName(), true, loader);
+        Method reverse = stringUtils.getMethod("reverse", String.class);
+        Method isBlank = stringUtils.getMethod("isBlank", CharSequence.class);
+        byte[] seen = new byte[Coverage.MAP_SIZE];
+
+        Coverage.reset();
+        assertEquals("cba", reverse.invoke(null, "abc"));
+        assertEquals(Coverage.NEW_EDGE, Coverage.addTo(seen));
+
+        Coverage.reset();
+        assertEquals("cba", reverse.invoke(null, "abc"));
+        assertEquals(Coverage.NOTHING_NEW, Coverage.addTo(seen));
+
+        /* the other side of a branch is another edge */
+        Coverage.reset();
+        assertEquals(true, isBlank.invoke(null, "  "));
+        Coverage.addTo(seen);
+        Coverage.reset();
+        assertEquals(false, isBlank.invoke(null, " x"));
+        assertEquals(Coverage.NEW_EDGE, Coverage.addTo(seen));
+    }
+
+    /** Asserts every class of the jar of c links once instrumented. */
+    private static void assertVerifies(Class<?> c) throws Exception {
+        InstrumentingLoader loader = new InstrumentingLoader();
+        List<String> classNames = addJar(loader, c);
+        List<String> failed = new ArrayList<String>();
+        for (String className : classNames) {
+            try {
+                Class.forName(className, false, loader).getDeclaredMethods();
+            } catch (VerifyError e) {
+                failed.add(className + ": " + e.getMessage());
+            } catch (ClassFormatError e) {
+                failed.add(className + ": " + e.getMessage());
+            } catch (NoClassDefFoundError e) {
+                /* an optional dependency, missing with or without probes */
+            }
+        }
+        assertTrue(failed.size() + " of " + classNames.size() + " classes failed: " + failed,
+                   failed.isEmpty());
+    }
+
+    /** 
+     * Adds every class of the jar of c to loader, asserting nearly all got
+     * probes, and answers their names.
+     */
+    private static List<String> addJar(InstrumentingLoader loader, Class<?> c) 
+                                                                 throws Exception {
+        File file = new File(c.getProtectionDomain().getCodeSource().getLocation().toURI());
+        JarFile jar = new JarFile(file);
+        List<String> classNames = new ArrayList<String>();
+        int changed = 0;
+        try {
+            for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.endsWith(".class") || name.startsWith("META-INF/") 
+                        || name.endsWith("module-info.class")) {
+                    continue;
+                }
+                InputStream in = jar.getInputStream(entry);
+                try {
+                    String className = name.substring(0, name.length() - 6).replace('/', '.');
+                    changed += loader.add(className, InstrumentingLoader.readAll(in)) ? 1 : 0;
+                    classNames.add(className);
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            jar.close();
+        }
+        assertTrue(changed + " of " + classNames.size() + " classes of " + file.getName()
+                   + " got probes", changed > classNames.size() * 9 / 10);
+        return classNames;
+    }
+}
@@ -0,0 +1,98 @@
+package tbc.supercheck;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A TestListener noting each event it is told of as a line, such as
+ * "tryFailed prop_x 3", for tests to check.
+ */
+public class EventLog implements TestListener {
+
+    public final List<String> events = new ArrayList<String>();
+
+    /** Answers the events noted whose lines start with prefix. */
+    public synchronized List<String> starting(String prefix) {
+        List<String> starting = new ArrayList<String>();
+        for (String event : events) {
+            if (event.startsWith(prefix)) {
+                starting.add(event);
+            }
+        }
+        return starting;
+    }
+
+    public void propertyStarted(PropertyExecution execution) {
+        note("propertyStarted", execution);
+    }
+
+    public void corpusEntryFailed(PropertyExecution execution, int entry, Object[] params) {
+        note("corpusEntryFailed", execution, entry);
+    }
+
+    public void corpusReplayed(PropertyExecution execution, int entries, int failed,
+                               long nanos) {
+        note("corpusReplayed", execution, entries, failed);
+    }
+
+    public void tryPassed(PropertyExecution execution, int tryNumber, Object[] params) {
+        note("tryPassed", execution, tryNumber);
+    }
+
+    public void tryFailed(PropertyExecution execution, int tryNumber, Object[] params) {
+        note("tryFailed", execution, tryNumber);
+    }
+
+    public void tryTimedOut(PropertyExecution execution, int tryNumber, Object[] params,
+                            long nanos, String threadDump) {
+        note("tryTimedOut", execution, tryNumber, threadDump != null);
+    }
+
+    public void tryTooDeep(PropertyExecution execution, int tryNumber, String reason) {
+        note("tryTooDeep", execution, tryNumber);
+    }
+
+    public void trySlow(PropertyExecution execution, int tryNumber, long nanos,
+                        long medianNanos) {
+        note("trySlow", execution, tryNumber);
+    }
+
+    public void tryShrunk(PropertyExecution execution, int tryNumber, Object[] shrunk,
+                          int steps, int tries) {
+        note("tryShrunk", execution, tryNumber, TestRun.describe(shrunk));
+    }
+
+    public void generatorSaturated(PropertyExecution execution, int tries, int skipped) {
+        note("generatorSaturated", execution);
+    }
+
+    public void propertyFinished(PropertyExecution execution, int tries, int skipped,
+                                 int[] failedTries, long nanos) {
+        note("propertyFinished", execution, tries, failedTries.length);
+    }
+
+    public void tryReplayed(PropertyExecution execution, int tryNumber, Object[] params,
+                            boolean held) {
+        note("tryReplayed", execution, tryNumber, held);
+    }
+
+    public void eventPassedOver(int event, String reason) {
+        note("eventPassedOver " + event);
+    }
+
+    public void flush() {
+    }
+
+    private void note(String event, PropertyExecution execution, Object... details) {
+        StringBuilder line = new StringBuilder(event).append(' ')
+                .append(execution.getProperty().getName());
+        for (Object detail : details) {
+            line.append(' ').append(detail);
+        }
+        note(line.toString());
+    }
+
+    private synchronized void note(String line) {
+        events.add(line);
+    }
+}
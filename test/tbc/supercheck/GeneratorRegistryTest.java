@@ -0,0 +1,173 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class GeneratorRegistryTest {
+
+    public enum Suit { CLUBS, DIAMONDS, HEARTS, SPADES }
+
+    public static class Card {
+        public final Suit suit;
+        public final int depth;
+
+        private Card(Suit suit, int depth) {
+            this.suit = suit;
+            this.depth = depth;
+        }
+
+        public static Card arbitrary(Gen gen) {
+            return new Card(gen.arbObject(Suit.class), gen.getDepth());
+        }
+    }
+
+    public static class Unmakeable {
+    }
+
+    public static class NotStatic {
+        public NotStatic arbitrary(Gen gen) {
+            return new NotStatic();
+        }
+    }
+
+    public static class Throwing {
+        public static Throwing arbitrary(Gen gen) {
+            throw new IllegalStateException("no");
+        }
+    }
+
+    public static class Props {
+        public static final Arbitrary<Integer> TENS = Gen.intsBetween(10, 19);
+
+        public static boolean prop_bound(@From("TENS") int tens, int free) {
+            return true;
+        }
+    }
+
+    private Gen gen;
+
+    @Before
+    public void seed() {
+        gen = new Gen();
+        gen.setSeed(11);
+    }
+
+    @Test
+    public void generatorsAreResolvedOncePerClass() {
+        assertSame(GeneratorRegistry.forClass(Card.class), GeneratorRegistry.forClass(Card.class));
+        assertSame(GeneratorRegistry.forClass(int.class), GeneratorRegistry.forClass(int.class));
+        assertSame(GeneratorRegistry.forClass(Integer[].class),
+                   GeneratorRegistry.forClass(Integer[].class));
+    }
+
+    @Test
+    public void classesThatCannotBeMadeAreRememberedAsSuch() {
+        GeneratorRegistry.Generator unmakeable = GeneratorRegistry.forClass(Unmakeable.class);
+        assertSame(unmakeable, GeneratorRegistry.forClass(Unmakeable.class));
+
+        /* each request fails, not just the first */
+        for (int attempt=0; attempt<2; attempt++) {
+            assertFails("Missing arbitrary() definition on: " + Unmakeable.class.getName(),
+                        GeneratorRegistry.forClass(Unmakeable.class));
+        }
+        assertFails("Missing arbitrary() definition on: " + NotStatic.class.getName()
+                    + " (arbitrary() is not static)",
+                    GeneratorRegistry.forClass(NotStatic.class));
+    }
+
+    @Test
+    public void whatArbitraryThrowsIsWrapped() {
+        try {
+            GeneratorRegistry.forClass(Throwing.class).generate(gen);
+            fail("generated a Throwing");
+        } catch (TestException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(
+                    Throwing.class.getName() + ".arbitrary() threw"));
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        /* the failed maker left its level */
+        assertEquals(0, gen.getDepth());
+    }
+
+    @Test
+    public void arbitraryMethodsMakeOneLevelDeeper() {
+        Card card = (Card) GeneratorRegistry.forClass(Card.class).generate(gen);
+
+        assertNotNull(card.suit);
+        assertEquals(1, card.depth);
+        assertEquals(0, gen.getDepth());
+    }
+
+    @Test
+    public void enumerationsAnswerEachConstant() {
+        Set<Object> suits = new HashSet<Object>();
+        for (int draw=0; draw<200; draw++) {
+            suits.add(GeneratorRegistry.forClass(Suit.class).generate(gen));
+        }
+        assertEquals(4, suits.size());
+    }
+
+    @Test
+    public void wrapperAndObjectArraysAreGenerated() {
+        int elements = 0;
+        for (int draw=0; draw<50; draw++) {
+            Integer[] ints = (Integer[]) GeneratorRegistry.forClass(Integer[].class).generate(gen);
+            for (Integer i : ints) {
+                assertNotNull(i);
+            }
+            elements += ints.length;
+
+            Card[] cards = gen.arbObject(Card[].class);
+            for (Card card : cards) {
+                /* an array is not a level of its own */
+                assertEquals(1, card.depth);
+            }
+            assertNotNull(gen.arbObject(String[].class));
+            assertNotNull(gen.arbObject(Boolean[].class));
+        }
+        assertTrue(elements > 0);
+    }
+
+    @Test
+    public void primitivesAndTheirArraysAreGenerated() {
+        assertTrue(GeneratorRegistry.forClass(int.class).generate(gen) instanceof Integer);
+        assertTrue(GeneratorRegistry.forClass(Double.class).generate(gen) instanceof Double);
+        assertTrue(GeneratorRegistry.forClass(String.class).generate(gen) instanceof String);
+        assertTrue(GeneratorRegistry.forClass(int[].class).generate(gen) instanceof int[]);
+        assertTrue(GeneratorRegistry.forClass(char[].class).generate(gen) instanceof char[]);
+        assertTrue(GeneratorRegistry.forClass(double[].class).generate(gen) instanceof double[]);
+    }
+
+    @Test
+    public void boundParametersUseTheirArbitrary() throws Exception {
+        Method prop = Props.class.getMethod("prop_bound", int.class, int.class);
+
+        GeneratorRegistry.Generator[] generators = GeneratorRegistry.forParameters(prop);
+
+        assertSame(Props.TENS, generators[0]);
+        assertSame(GeneratorRegistry.forClass(int.class), generators[1]);
+        for (int draw=0; draw<100; draw++) {
+            int tens = (Integer) generators[0].generate(gen);
+            assertTrue(String.valueOf(tens), tens >= 10 && tens <= 19);
+        }
+    }
+
+    private void assertFails(String message, GeneratorRegistry.Generator generator) {
+        try {
+            generator.generate(gen);
+            fail("generated: " + message);
+        } catch (TestException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
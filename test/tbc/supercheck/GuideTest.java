@@ -0,0 +1,124 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class GuideTest {
+
+    /** Code under test, instrumented, with a magic number to get past. */
+    public static class Magic {
+        public static boolean three(byte[] d) {
+            int small = 0;
+            for (int i=0; i<d.length; i++) {
+                if (d[i] >= 0 && d[i] < 16) {
+                    small++;
+                }
+            }
+            return d.length >= 3 && d[0] == (byte) 0xCA && d[1] == (byte) 0xFE 
+                   && d[2] == (byte) 0xBA && small >= 0;
+        }
+
+        public static boolean ints(int a, byte b, char c) {
+            return b == (byte) 0x5A && c == 'Q' && (a & 0xFF) == 0x42;
+        }
+    }
+
+    private static final int TRIES = 200000;
+
+    private static Method three;
+    private static Method ints;
+
+    @BeforeClass
+    public static void instrument() throws Exception {
+        InstrumentingLoader loader = new InstrumentingLoader();
+        assertTrue(loader.add(Magic.class));
+        Class<?> magic = loader.loadClass(Magic.class.getName());
+        three = magic.getMethod("three", byte[].class);
+        ints = magic.getMethod("ints", int.class, byte.class, char.class);
+    }
+
+    @Test
+    public void findsAMagicNumberInAnArrayForMostSeeds() throws Exception {
+        /* where an edge value overwrote a byte of the magic number, the entry
+         * needs two changes at once, so some seeds take far longer */
+        int found = 0;
+        for (long seed=1; seed<=6; seed++) {
+            int tries = triesToFind(seed, true, new Search() {
+                public boolean found(Gen gen) throws Exception {
+                    return (Boolean) three.invoke(null, gen.arbByteArray());
+                }
+            });
+            if (tries < TRIES) {
+                found++;
+            }
+        }
+        assertTrue("found for " + found + " seeds in 6", found >= 4);
+    }
+
+    @Test
+    public void findsMagicNumbersInSingleDraws() throws Exception {
+        for (long seed=1; seed<=3; seed++) {
+            int tries = triesToFind(seed, true, new Search() {
+                public boolean found(Gen gen) throws Exception {
+                    return (Boolean) ints.invoke(null, gen.arbInt(), gen.arbByte(), 
+                                                 gen.arbChar());
+                }
+            });
+            assertTrue("seed " + seed + " took " + tries + " tries", tries < TRIES);
+        }
+    }
+
+    @Test
+    public void blindTriesDoNotFindThem() throws Exception {
+        int tries = triesToFind(1, false, new Search() {
+            public boolean found(Gen gen) throws Exception {
+                return (Boolean) three.invoke(null, gen.arbByteArray());
+            }
+        });
+        assertEquals(TRIES, tries);
+    }
+
+    @Test
+    public void aGuidedSearchIsRepeatable() throws Exception {
+        Search search = new Search() {
+            public boolean found(Gen gen) throws Exception {
+                return (Boolean) three.invoke(null, gen.arbByteArray());
+            }
+        };
+        assertEquals(triesToFind(7, true, search), triesToFind(7, true, search));
+    }
+
+    private interface Search {
+        boolean found(Gen gen) throws Exception;
+    }
+
+    /** Answers the number of tries before search found, or TRIES if it did not. */
+    private static int triesToFind(long seed, boolean guided, Search search) 
+                                                              throws Exception {
+        Gen gen = new Gen();
+        gen.setSeed(seed, RandomSource.Algorithm.XOROSHIRO);
+        Guide guide = guided ? new Guide() : null;
+        if (guide != null) {
+            guide.attach(gen);
+        }
+        for (int i=0; i<TRIES; i++) {
+            gen.sizeForTry(i);
+            if (guide != null) {
+                guide.beforeTry(Gen.deriveSeed(~seed, i));
+            }
+            boolean found = search.found(gen);
+            if (guide != null) {
+                guide.afterTry();
+            }
+            if (found) {
+                return i;
+            }
+        }
+        return TRIES;
+    }
+}
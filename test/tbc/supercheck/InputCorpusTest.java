@@ -0,0 +1,168 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.math.BigInteger;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class InputCorpusTest {
+
+    public static class Props {
+        public static boolean prop_all(String s, int i, double d, byte[] b, char[] c, 
+                                       BigInteger big) {
+            return true;
+        }
+
+        public static boolean prop_int(int i) {
+            return true;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void entriesReadBackAsTheyWereKept() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        Method prop = method("prop_all");
+        Object[] first = { "h\u00E9llo", -7, Double.NaN, new byte[] { 1, -2 }, 
+                           new char[] { 'x' }, BigInteger.TEN.pow(30) };
+        Object[] second = { null, Integer.MIN_VALUE, -0.0d, new byte[0], null, 
+                            BigInteger.ONE };
+        InputCorpus corpus = new InputCorpus(dir);
+        assertTrue(corpus.add(prop, first));
+        assertTrue(corpus.add(prop, second));
+
+        List<Object[]> entries = new InputCorpus(dir).entriesFor(prop);
+
+        assertEquals(2, entries.size());
+        assertArrayEquals(first, entries.get(0));
+        assertArrayEquals(second, entries.get(1));
+    }
+
+    @Test
+    public void stringsWithUnpairedSurrogatesReadBackIntact() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        Method prop = method("prop_all");
+        String[] strings = { "\uD800", "a\uDC00b", "\uDBFF\uD800", "\uD83D\uDE00", "" };
+        InputCorpus corpus = new InputCorpus(dir);
+        for (String s : strings) {
+            corpus.add(prop, s, 0, 0.0d, null, null, null);
+        }
+
+        List<Object[]> entries = new InputCorpus(dir).entriesFor(prop);
+
+        assertEquals(strings.length, entries.size());
+        for (int sIdx=0; sIdx<strings.length; sIdx++) {
+            assertEquals(strings[sIdx], entries.get(sIdx)[0]);
+        }
+    }
+
+    @Test
+    public void dataIsKeptOnce() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        Method prop = method("prop_int");
+        InputCorpus corpus = new InputCorpus(dir);
+        assertTrue(corpus.add(prop, 5));
+        assertFalse(corpus.add(prop, 5));
+
+        InputCorpus reopened = new InputCorpus(dir);
+        assertFalse(reopened.add(prop, 5));
+        assertEquals(1, reopened.size(prop));
+    }
+
+    @Test
+    public void dataNotFittingThePropertyIsPassedOver() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        Method prop = method("prop_int");
+        InputCorpus corpus = new InputCorpus(dir);
+        corpus.add(prop, "not an int");
+        corpus.add(prop, 3);
+
+        List<Object[]> entries = new InputCorpus(dir).entriesFor(prop);
+
+        assertEquals(1, entries.size());
+        assertArrayEquals(new Object[] { 3 }, entries.get(0));
+    }
+
+    @Test
+    public void aTornEntryIsDroppedAndOverwritten() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        Method prop = method("prop_int");
+        InputCorpus corpus = new InputCorpus(dir);
+        corpus.add(prop, 1);
+        corpus.add(prop, 2);
+        Path file = onlyFile(dir);
+        byte[] whole = Files.readAllBytes(file);
+        /* a crash part way through writing the second entry */
+        Files.write(file, Arrays.copyOf(whole, whole.length - 3));
+
+        InputCorpus reopened = new InputCorpus(dir);
+        assertEquals(1, reopened.entriesFor(prop).size());
+        assertTrue(reopened.add(prop, 3));
+
+        List<Object[]> entries = new InputCorpus(dir).entriesFor(prop);
+        assertEquals(2, entries.size());
+        assertArrayEquals(new Object[] { 1 }, entries.get(0));
+        assertArrayEquals(new Object[] { 3 }, entries.get(1));
+    }
+
+    @Test
+    public void garbageAfterTheLastEntryIsIgnored() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        Method prop = method("prop_int");
+        new InputCorpus(dir).add(prop, 1);
+        Files.write(onlyFile(dir), new byte[] { 0x7F, 0, 0, 0, 9 }, StandardOpenOption.APPEND);
+
+        InputCorpus reopened = new InputCorpus(dir);
+
+        assertEquals(1, reopened.size(prop));
+        assertEquals(1, reopened.entriesFor(prop).size());
+    }
+
+    @Test(expected = TestException.class)
+    public void aFileThatIsNotACorpusIsRefused() throws Exception {
+        Path dir = folder.getRoot().toPath();
+        Method prop = method("prop_int");
+        Files.write(dir.resolve(Props.class.getName() + ".prop_int.corpus"), 
+                    "not a corpus".getBytes("UTF-8"));
+
+        new InputCorpus(dir).size(prop);
+    }
+
+    private static Path onlyFile(Path dir) throws IOException {
+        DirectoryStream<Path> files = Files.newDirectoryStream(dir);
+        try {
+            Iterator<Path> each = files.iterator();
+            Path file = each.next();
+            assertFalse(each.hasNext());
+            return file;
+        } finally {
+            files.close();
+        }
+    }
+
+    private static Method method(String name) {
+        for (Method method : Props.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new AssertionError(name);
+    }
+}
@@ -0,0 +1,65 @@
+package tbc.supercheck;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A ClassLoader defining instrumented copies of the classes given to it,
+ * before its parent can load them uninstrumented, as the CoverageAgent
+ * would have them.
+ */
+public class InstrumentingLoader extends ClassLoader {
+
+    private final Map<String, byte[]> classFiles = new HashMap<String, byte[]>();
+
+    public InstrumentingLoader() {
+        super(InstrumentingLoader.class.getClassLoader());
+    }
+
+    /** Instruments a class file, answering true if any method was changed. */
+    public boolean add(String className, byte[] classFile) throws IOException {
+        byte[] instrumented = CoverageInstrumenter.instrument(classFile);
+        classFiles.put(className, instrumented);
+        return instrumented.length > classFile.length;
+    }
+
+    /** Instruments a class the parent loader can load. */
+    public boolean add(Class<?> c) throws IOException {
+        String resource = c.getName().replace('.', '/') + ".class";
+        InputStream in = getParent().getResourceAsStream(resource);
+        try {
+            return add(c.getName(), readAll(in));
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    protected synchronized Class<?> loadClass(String name, boolean resolve)
+                                                   throws ClassNotFoundException {
+        if (!classFiles.containsKey(name)) {
+            return super.loadClass(name, resolve);
+        }
+        Class<?> c = findLoadedClass(name);
+        if (c == null) {
+            byte[] classFile = classFiles.get(name);
+            c = defineClass(name, classFile, 0, classFile.length);
+        }
+        if (resolve) {
+            resolveClass(c);
+        }
+        return c;
+    }
+
+    static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+            bytes.write(buffer, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+}
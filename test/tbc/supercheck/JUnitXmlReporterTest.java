@@ -0,0 +1,94 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JUnitXmlReporterTest {
+
+    public static class Props {
+        public static boolean prop_x(int i) {
+            return true;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shrunkDataFollowsTheFailedTry() throws Exception {
+        JUnitXmlReporter reporter = new JUnitXmlReporter(folder.getRoot().toPath());
+        PropertyExecution execution = execution();
+        reporter.propertyStarted(execution);
+        reporter.tryFailed(execution, 3, new Object[] { 1000 });
+        reporter.tryFailed(execution, 5, new Object[] { 2000 });
+        reporter.tryShrunk(execution, 3, new Object[] { 1 }, 4, 20);
+        reporter.propertyFinished(execution, 10, 0, new int[] { 3, 5 }, 1000000);
+
+        String xml = report(reporter);
+
+        assertTrue(xml, xml.contains("Failed on try 3"));
+        assertTrue(xml, xml.contains("Shrunk in 4 steps (20 tries)"));
+    }
+
+    @Test
+    public void shrunkDataOfAnotherTryIsNotReported() throws Exception {
+        JUnitXmlReporter reporter = new JUnitXmlReporter(folder.getRoot().toPath());
+        PropertyExecution execution = execution();
+        reporter.propertyStarted(execution);
+        reporter.tryFailed(execution, 5, new Object[] { 2000 });
+        reporter.tryShrunk(execution, 3, new Object[] { 1 }, 4, 20);
+        reporter.propertyFinished(execution, 10, 0, new int[] { 3, 5 }, 1000000);
+
+        String xml = report(reporter);
+
+        assertTrue(xml, xml.contains("Failed on try 5"));
+        assertFalse(xml, xml.contains("Shrunk"));
+    }
+
+    @Test
+    public void shrunkDataIsNotReportedAfterACorpusEntryFailed() throws Exception {
+        JUnitXmlReporter reporter = new JUnitXmlReporter(folder.getRoot().toPath());
+        PropertyExecution execution = execution();
+        reporter.propertyStarted(execution);
+        reporter.corpusEntryFailed(execution, 1, new Object[] { 7 });
+        reporter.tryFailed(execution, 3, new Object[] { 1000 });
+        reporter.tryShrunk(execution, 3, new Object[] { 1 }, 4, 20);
+        reporter.propertyFinished(execution, 10, 0, new int[] { 3 }, 1000000);
+
+        String xml = report(reporter);
+
+        assertTrue(xml, xml.contains("Failed on corpus entry 1"));
+        assertFalse(xml, xml.contains("Shrunk"));
+    }
+
+    @Test
+    public void shrinkingWithNoFailureRecordedIsNotReported() throws Exception {
+        JUnitXmlReporter reporter = new JUnitXmlReporter(folder.getRoot().toPath());
+        PropertyExecution execution = execution();
+        reporter.propertyStarted(execution);
+        reporter.tryShrunk(execution, 3, new Object[] { 1 }, 4, 20);
+        reporter.propertyFinished(execution, 10, 0, new int[] { 3 }, 1000000);
+
+        String xml = report(reporter);
+
+        assertFalse(xml, xml.contains("null"));
+        assertFalse(xml, xml.contains("Shrunk"));
+    }
+
+    private static PropertyExecution execution() throws Exception {
+        return new PropertyExecution(Props.class.getMethod("prop_x", int.class), 1, 10, 0);
+    }
+
+    private String report(JUnitXmlReporter reporter) throws Exception {
+        reporter.flush();
+        Path file = folder.getRoot().toPath().resolve("TEST-" + Props.class.getName() + ".xml");
+        return new String(Files.readAllBytes(file), "UTF-8");
+    }
+}
@@ -0,0 +1,76 @@
+package tbc.supercheck;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Properties that note the data they are tried with, using only what Gen had
+ * before RandomSource, for LegacyRecordingTest. legacy-recording.ser is a
+ * recording of them made then, and legacy-tries.txt the data they noted.
+ */
+public class LegacyProperties {
+
+    public static final List<String> TRIED = new ArrayList<String>();
+
+    public enum Suit { CLUBS, DIAMONDS, HEARTS, SPADES }
+
+    public static class Shape {
+        private final String description;
+
+        private Shape(String description) {
+            this.description = description;
+        }
+
+        public static Shape arbitrary(Gen gen) {
+            return new Shape(gen.oneOf("circle", "square", "line")
+                    + " " + gen.select(0.2f, 0.3f, 0.5f)
+                    + " " + gen.oneOf(new float[] { 1f, 3f }, "a", "b")
+                    + " " + gen.choose(-5, 5)
+                    + " " + gen.within(1, 3)
+                    + " " + gen.arbFloat(10)
+                    + " " + gen.arbNastyFloat()
+                    + " " + gen.arbNastyDouble());
+        }
+
+        public String toString() {
+            return description;
+        }
+    }
+
+    public static boolean prop_primitives(boolean b, char c, byte y, short s,
+                                          int i, long l, float f, double d) {
+        tried("primitives", b, (int) c, y, s, i, l, f, d);
+        return true;
+    }
+
+    public static boolean prop_strings(String s, String[] ss) {
+        StringBuilder strings = new StringBuilder();
+        for (String each : ss) {
+            strings.append(describe(each)).append(',');
+        }
+        tried("strings", describe(s), strings);
+        return true;
+    }
+
+    public static boolean prop_objects(Suit suit, Shape shape, Shape[] shapes) {
+        StringBuilder all = new StringBuilder();
+        for (Shape each : shapes) {
+            all.append('[').append(each).append(']');
+        }
+        tried("objects", suit, shape, all);
+        return true;
+    }
+
+    /* strings are long, so are noted by their lengths and hashes */
+    private static String describe(String s) {
+        return s.length() + "#" + s.hashCode();
+    }
+
+    private static void tried(String property, Object... params) {
+        StringBuilder line = new StringBuilder(property);
+        for (Object param : params) {
+            line.append(' ').append(param);
+        }
+        TRIED.add(line.toString());
+    }
+}
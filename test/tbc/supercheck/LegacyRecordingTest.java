@@ -0,0 +1,99 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Replays legacy-recording.ser, a recording of LegacyProperties serialized
+ * by the TestRun of SuperCheck before RandomSource, and checks that its tries
+ * have the data they had then, in legacy-tries.txt.
+ */
+public class LegacyRecordingTest {
+
+    @Before
+    public void forget() {
+        LegacyProperties.TRIED.clear();
+    }
+
+    @Test
+    public void replaysWithTheDataItWasMadeWith() throws Exception {
+        Recording recording = readRecording();
+        assertTrue(recording.toDescription(),
+                   recording.toDescription().contains("random=legacy"));
+
+        int[] passedOver = new TestRun().setListeners().runRecording(recording);
+
+        assertArrayEquals(new int[0], passedOver);
+        assertEquals(readTries(), LegacyProperties.TRIED);
+    }
+
+    @Test
+    public void replaysInParallelWithTheSameData() throws Exception {
+        new TestRun().setListeners().setParallelism(4).runRecording(readRecording());
+
+        List<String> expected = readTries();
+        List<String> tried = LegacyProperties.TRIED;
+        assertEquals(expected.size(), tried.size());
+        /* events replay concurrently, so only each one's own order holds */
+        for (String property : new String[] { "primitives", "strings", "objects" }) {
+            assertEquals(ofProperty(expected, property), ofProperty(tried, property));
+        }
+    }
+
+    @Test
+    public void legacySelectionsDrawOneFloat() {
+        Gen gen = new Gen();
+        gen.setSeed(99, RandomSource.Algorithm.LEGACY);
+        Random random = new Random(99);
+        for (int draw=0; draw<1000; draw++) {
+            float ran = random.nextFloat();
+            assertEquals(ran <= 0.25f ? 0 : ran <= 0.5f ? 1 : 2,
+                         gen.select(1f, 1f, 2f));
+        }
+    }
+
+    private static List<String> ofProperty(List<String> tries, String property) {
+        List<String> of = new ArrayList<String>();
+        for (String tried : tries) {
+            if (tried.startsWith(property + " ")) {
+                of.add(tried);
+            }
+        }
+        return of;
+    }
+
+    private static Recording readRecording() throws Exception {
+        ObjectInputStream in = new ObjectInputStream(
+                LegacyRecordingTest.class.getResourceAsStream("legacy-recording.ser"));
+        try {
+            return (Recording) in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static List<String> readTries() throws Exception {
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                LegacyRecordingTest.class.getResourceAsStream("legacy-tries.txt"), "UTF-8"));
+        try {
+            List<String> tries = new ArrayList<String>();
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                tries.add(line);
+            }
+            return tries;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MetricsTest {
+
+    public static class Timed {
+        public static boolean prop_quick(int i) {
+            return true;
+        }
+
+        public static boolean prop_slow(int i) throws InterruptedException {
+            Thread.sleep(1);
+            return true;
+        }
+    }
+
+    @Test
+    public void smallDurationsHaveABucketEach() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos=0; nanos<16; nanos++) {
+            histogram.record(nanos);
+        }
+
+        assertEquals(16, histogram.getCount());
+        assertEquals(15, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(0.0d));
+        assertEquals(7, histogram.getPercentile(0.5d));
+        assertEquals(15, histogram.getPercentile(1.0d));
+    }
+
+    @Test
+    public void percentilesAreTheUpperBoundsOfTheirBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.record(1000000);
+
+        long p50 = histogram.getPercentile(0.5d);
+        assertTrue(String.valueOf(p50), p50 >= 1000 && p50 <= 1000 * 17 / 16);
+        /* the top bucket is bounded by the longest duration */
+        assertEquals(1000000, histogram.getPercentile(1.0d));
+    }
+
+    @Test
+    public void percentilesAreWithinABucketWidthAtAnyScale() {
+        for (long scale : new long[] { 1, 1000, 1000000, 1000000000L }) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            for (long n=1; n<=10000; n++) {
+                histogram.record(n * scale);
+            }
+            for (double fraction : new double[] { 0.1d, 0.5d, 0.9d, 0.99d }) {
+                double exact = fraction * 10000 * scale;
+                long percentile = histogram.getPercentile(fraction);
+                assertTrue(scale + " " + fraction + ": " + percentile,
+                           percentile >= exact && percentile <= exact * 1.0625d + scale);
+            }
+        }
+    }
+
+    @Test
+    public void emptyNegativeAndHugeDurationsAreCounted() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(0.99d));
+
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0.5d));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(1.0d));
+    }
+
+    @Test
+    public void histogramsMerge() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        for (int n=0; n<10; n++) {
+            first.record(3);
+            second.record(12);
+        }
+        second.record(500);
+
+        first.add(second);
+
+        assertEquals(21, first.getCount());
+        assertEquals(500, first.getMax());
+        assertEquals(3, first.getPercentile(0.4d));
+        assertEquals(12, first.getPercentile(0.9d));
+    }
+
+    @Test
+    public void recordersAddUp() {
+        PropertyMetrics metrics = new PropertyMetrics("a.B", "prop_c");
+        for (int worker=0; worker<3; worker++) {
+            PropertyMetrics.Recorder recorder = new PropertyMetrics.Recorder();
+            recorder.record(10, 100);
+            recorder.record(20, 200);
+            metrics.add(recorder.finish());
+        }
+        metrics.setWallNanos(2000000000L);
+
+        assertEquals(6, metrics.getTries());
+        assertEquals(90, metrics.getGenerationNanos());
+        assertEquals(900, metrics.getPredicateNanos());
+        assertEquals(3.0d, metrics.getTriesPerSecond(), 1e-9d);
+        assertEquals(200, metrics.getMaxPredicateNanos());
+        long p50 = metrics.getPredicatePercentile(0.5d);
+        assertTrue(String.valueOf(p50), p50 >= 100 && p50 < 200);
+        double allocated = metrics.getAllocatedBytesPerTry();
+        assertTrue(String.valueOf(allocated), allocated == -1.0d || allocated >= 0.0d);
+    }
+
+    @Test
+    public void metricsAreWrittenAsJson() {
+        PropertyMetrics metrics = new PropertyMetrics("a.\"B\"", "prop_\\c\n");
+        PropertyMetrics.Recorder recorder = new PropertyMetrics.Recorder();
+        recorder.record(5, 7);
+        metrics.add(recorder.finish());
+
+        String json = metrics.toJson();
+
+        assertTrue(json, json.startsWith("{\"class\":\"a.\\\"B\\\"\",\"property\":\"prop_\\\\c\\u000a\","));
+        assertTrue(json, json.contains(",\"tries\":1,"));
+        assertTrue(json, json.contains(",\"generationNanos\":5,\"predicateNanos\":7,"));
+        assertTrue(json, json.contains(",\"predicateMaxNanos\":7,"));
+        assertEquals("[]", PropertyMetrics.toJson(Collections.<PropertyMetrics>emptyList()));
+        assertEquals("[" + json + "," + json + "]",
+                     PropertyMetrics.toJson(Arrays.asList(metrics, metrics)));
+    }
+
+    @Test
+    public void aRunAnswersTheMetricsOfEachExecution() {
+        TestRun run = new TestRun().setListeners().setMetrics(true).setParallelism(1);
+        run.runOn(Timed.class, 50);
+
+        List<PropertyMetrics> metrics = run.getMetrics();
+        assertEquals(2, metrics.size());
+        for (PropertyMetrics m : metrics) {
+            assertEquals(Timed.class.getName(), m.getContainingClass());
+            assertEquals(50, m.getTries());
+            assertTrue(m.getWallNanos() >= m.getPredicateNanos());
+        }
+        PropertyMetrics slow = metrics.get(0).getProperty().equals("prop_slow")
+            ? metrics.get(0) : metrics.get(1);
+        assertTrue(String.valueOf(slow.getPredicatePercentile(0.5d)),
+                   slow.getPredicatePercentile(0.5d) >= 1000000);
+
+        String json = run.getMetricsAsJson();
+        assertTrue(json, json.startsWith("[{\"class\":\"" + Timed.class.getName() + "\""));
+        assertTrue(json, json.contains("\"property\":\"prop_slow\""));
+        assertTrue(json, json.contains("\"property\":\"prop_quick\""));
+        assertEquals(2, json.split("\"tries\":50,").length - 1);
+    }
+
+    @Test
+    public void aRunWithoutMetricsAnswersNone() {
+        TestRun run = new TestRun().setListeners();
+        run.runOn(Timed.class, "prop_quick", 10);
+
+        assertEquals(0, run.getMetrics().size());
+        assertEquals("[]", run.getMetricsAsJson());
+    }
+}
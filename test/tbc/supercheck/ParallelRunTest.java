@@ -0,0 +1,81 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ParallelRunTest {
+
+    public static class Sums {
+        public static final Set<String> FAILED =
+            Collections.synchronizedSet(new HashSet<String>());
+
+        public static boolean prop_smallSum(int a, long b, String s) {
+            if ((a ^ b ^ s.length()) % 7 == 0) {
+                FAILED.add(a + " " + b + " " + s.hashCode());
+                return false;
+            }
+            return true;
+        }
+    }
+
+    @Before
+    public void forget() {
+        Sums.FAILED.clear();
+    }
+
+    @Test
+    public void workersFailTheTriesARunOnOneThreadFails() throws Exception {
+        Method prop = Sums.class.getMethod("prop_smallSum", int.class, long.class,
+                                           String.class);
+        TestRun sequential = run(1);
+        sequential.runOn(prop, 500, 42);
+        int[] sequentialFailed = sorted(sequential.getRecording().getFailedTries(0));
+        Set<String> sequentialData = new HashSet<String>(Sums.FAILED);
+        Sums.FAILED.clear();
+
+        TestRun parallel = run(4);
+        parallel.runOn(prop, 500, 42);
+        int[] parallelFailed = sorted(parallel.getRecording().getFailedTries(0));
+
+        assertTrue(sequentialFailed.length > 10);
+        assertArrayEquals(sequentialFailed, parallelFailed);
+        assertEquals(sequentialData, Sums.FAILED);
+    }
+
+    @Test
+    public void aParallelRunReplaysAsItRan() throws Exception {
+        TestRun parallel = run(4);
+        parallel.runOn(Sums.class, 500);
+        Set<String> ran = new HashSet<String>(Sums.FAILED);
+        Sums.FAILED.clear();
+
+        TestRun replay = run(1);
+        replay.runRecording(parallel.getRecording());
+
+        assertEquals(ran, Sums.FAILED);
+        assertArrayEquals(sorted(parallel.getRecording().getFailedTries(0)),
+                          sorted(replay.getRecording().getFailedTries(0)));
+    }
+
+    /** Answers a TestRun that finds every failure, and does not shrink them. */
+    private static TestRun run(int parallelism) {
+        return new TestRun().setListeners().setShrinking(0, 0).setContProp(true)
+                            .setParallelism(parallelism);
+    }
+
+    private static int[] sorted(int[] tries) {
+        int[] copy = tries.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
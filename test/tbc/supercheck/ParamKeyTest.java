@@ -0,0 +1,125 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ParamKeyTest {
+
+    private static final ParamKey<Integer> DEPTH = 
+        ParamKey.of("ParamKeyTest.DEPTH", Integer.class, 5);
+    private static final ParamKey<String> NAME = 
+        ParamKey.of("ParamKeyTest.NAME", String.class, "none");
+
+    @Test
+    public void anUnsetParameterIsItsDefault() {
+        Gen gen = new Gen();
+
+        assertEquals(5, (int) gen.getParam(DEPTH));
+        assertEquals("none", gen.getParam(NAME));
+    }
+
+    @Test
+    public void aParameterSetByKeyIsReadByKey() {
+        ParameterBunch bunch = new ParameterBunch();
+        bunch.set(DEPTH, 9);
+        bunch.set(NAME, "tree");
+        Gen gen = new Gen();
+        gen.setParams(bunch);
+
+        assertEquals(9, (int) gen.getParam(DEPTH));
+        assertEquals("tree", gen.getParam(NAME));
+        assertEquals(9, (int) bunch.get(DEPTH));
+    }
+
+    @Test
+    public void aParameterSetByNameIsReadByKey() {
+        ParameterBunch bunch = new ParameterBunch();
+        bunch.setInt("ParamKeyTest.DEPTH", 3);
+        bunch.setStr("ParamKeyTest.NAME", "list");
+        Gen gen = new Gen();
+        gen.setParams(bunch);
+
+        assertEquals(3, (int) gen.getParam(DEPTH));
+        assertEquals("list", gen.getParam(NAME));
+    }
+
+    @Test
+    public void aParameterSetByKeyIsReadByName() {
+        ParameterBunch bunch = new ParameterBunch();
+        bunch.set(DEPTH, 4);
+
+        assertEquals(4, bunch.getInt("ParamKeyTest.DEPTH", 0));
+    }
+
+    @Test
+    public void aParameterOfAnotherTypeIsTheDefault() {
+        ParameterBunch bunch = new ParameterBunch();
+        bunch.setFloat("ParamKeyTest.DEPTH", 2.5f);
+        Gen gen = new Gen();
+        gen.setParams(bunch);
+
+        assertEquals(5, (int) gen.getParam(DEPTH));
+        assertEquals(5, (int) bunch.get(DEPTH));
+    }
+
+    @Test
+    public void keysOfTheSameNameAreTheSameParameter() {
+        ParamKey<Integer> again = ParamKey.of("ParamKeyTest.DEPTH", Integer.class, 7);
+        ParameterBunch bunch = new ParameterBunch();
+        bunch.set(DEPTH, 11);
+        Gen gen = new Gen();
+        gen.setParams(bunch);
+
+        assertEquals(DEPTH.index, again.index);
+        assertEquals(11, (int) gen.getParam(again));
+        assertEquals(7, (int) new Gen().getParam(again));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void keysOfTheSameNameMustHaveTheSameType() {
+        ParamKey.of("ParamKeyTest.DEPTH", Long.class, 5L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aKeyMayNotBePrimitive() {
+        ParamKey.of("ParamKeyTest.PRIMITIVE", int.class, 5);
+    }
+
+    @Test
+    public void aKeyMadeAfterTheParametersWereSetIsLookedUpByName() {
+        ParameterBunch bunch = new ParameterBunch();
+        bunch.setInt("ParamKeyTest.LATE", 12);
+        Gen gen = new Gen();
+        gen.setParams(bunch);
+
+        ParamKey<Integer> late = ParamKey.of("ParamKeyTest.LATE", Integer.class, 0);
+
+        assertEquals(12, (int) gen.getParam(late));
+    }
+
+    @Test
+    public void changesToTheBunchAfterwardsHaveNoEffect() {
+        ParameterBunch bunch = new ParameterBunch();
+        bunch.set(DEPTH, 1);
+        Gen gen = new Gen();
+        gen.setParams(bunch);
+        bunch.set(DEPTH, 2);
+        gen.getParams().set(DEPTH, 3);
+
+        assertEquals(1, (int) gen.getParam(DEPTH));
+    }
+
+    @Test
+    public void genParametersAreResolved() {
+        ParameterBunch bunch = new ParameterBunch();
+        bunch.setInt(Gen.PARAM_MAX_ARRAY_LENGTH, 2);
+        Gen gen = new Gen();
+        gen.setParams(bunch);
+
+        for (int draw=0; draw<100; draw++) {
+            assertTrue(gen.arbIntArray().length <= 2);
+        }
+    }
+}
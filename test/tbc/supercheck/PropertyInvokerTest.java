@@ -0,0 +1,104 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PropertyInvokerTest {
+
+    public static class Mixed {
+        public static final List<String> CALLS =
+            Collections.synchronizedList(new ArrayList<String>());
+
+        public static final Arbitrary<Integer> SMALL = Gen.intsBetween(-3, 3);
+
+        public static boolean prop_mixed(int i, long l, double d, boolean b, char c,
+                                         byte by, short sh, float f, String s,
+                                         Integer boxed, int[] ints, Long[] longs,
+                                         @From("SMALL") int small) {
+            CALLS.add(Arrays.deepToString(new Object[] {
+                i, l, d, b, c, by, sh, f, s, boxed, ints, longs, small }));
+            return (i ^ s.length()) % 5 != 0;
+        }
+    }
+
+    private Method prop;
+
+    @Before
+    public void forget() throws Exception {
+        Mixed.CALLS.clear();
+        prop = Mixed.class.getMethod("prop_mixed", int.class, long.class, double.class,
+                                     boolean.class, char.class, byte.class, short.class,
+                                     float.class, String.class, Integer.class,
+                                     int[].class, Long[].class, int.class);
+    }
+
+    @Test
+    public void compiledAndReflectiveInvokersGenerateTheSameArguments() throws Exception {
+        List<String> compiled = tries(false);
+        List<String> reflective = tries(true);
+
+        assertEquals(200, compiled.size());
+        assertEquals(compiled, reflective);
+        /* the tries are not all alike */
+        assertTrue(new HashSet<String>(compiled).size() > 150);
+    }
+
+    @Test
+    public void compiledAndReflectiveInvokersKeepTheSameArguments() throws Exception {
+        PropertyInvoker compiled = PropertyInvoker.forProperty(prop, false, true);
+        PropertyInvoker reflective = PropertyInvoker.forProperty(prop, true, true);
+        assertNotEquals(compiled.getClass(), reflective.getClass());
+        Gen compiledGen = seeded(99);
+        Gen reflectiveGen = seeded(99);
+
+        for (int tryIdx=0; tryIdx<200; tryIdx++) {
+            boolean compiledHeld = compiled.tryOnce(compiledGen);
+            boolean reflectiveHeld = reflective.tryOnce(reflectiveGen);
+
+            assertEquals(compiledHeld, reflectiveHeld);
+            assertEquals(Arrays.deepToString(compiled.lastParams()),
+                         Arrays.deepToString(reflective.lastParams()));
+        }
+    }
+
+    @Test
+    public void compiledAndReflectiveRunsFailTheSameTries() throws Exception {
+        TestRun compiled = new TestRun().setListeners().setShrinking(0, 0)
+                                        .setContProp(true).setParallelism(1);
+        compiled.runOn(prop, 200, 42);
+        TestRun reflective = new TestRun().setListeners().setShrinking(0, 0)
+                                          .setContProp(true).setParallelism(1)
+                                          .setReflective(true);
+        reflective.runOn(prop, 200, 42);
+
+        int[] failedTries = compiled.getRecording().getFailedTries(0);
+        assertTrue(failedTries.length > 10);
+        assertEquals(Arrays.toString(failedTries),
+                     Arrays.toString(reflective.getRecording().getFailedTries(0)));
+    }
+
+    /** Answers the arguments of 200 tries of prop_mixed, from seed 42. */
+    private List<String> tries(boolean reflective) throws Exception {
+        Mixed.CALLS.clear();
+        new TestRun().setListeners().setShrinking(0, 0).setContProp(true)
+                     .setParallelism(1).setReflective(reflective).runOn(prop, 200, 42);
+        return new ArrayList<String>(Mixed.CALLS);
+    }
+
+    private static Gen seeded(long seed) {
+        Gen gen = new Gen();
+        gen.setSeed(seed);
+        return gen;
+    }
+}
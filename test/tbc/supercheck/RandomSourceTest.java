@@ -0,0 +1,131 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+
+public class RandomSourceTest {
+
+    private static final RandomSource.Algorithm[] SPLITTABLE = {
+        RandomSource.Algorithm.SPLITMIX, RandomSource.Algorithm.XOROSHIRO
+    };
+
+    @Test
+    public void legacyDrawsAsJavaUtilRandom() {
+        RandomSource source = RandomSource.Algorithm.LEGACY.create(42);
+        Random random = new Random(42);
+        for (int draw=0; draw<100; draw++) {
+            assertEquals(random.nextInt(), source.nextInt());
+            assertEquals(random.nextLong(), source.nextLong());
+            assertEquals(random.nextInt(17), source.nextInt(17));
+            assertEquals(random.nextDouble(), source.nextDouble(), 0d);
+        }
+    }
+
+    @Test
+    public void splitMixDrawsAsSplittableRandom() {
+        RandomSource source = RandomSource.Algorithm.SPLITMIX.create(42);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int draw=0; draw<100; draw++) {
+            assertEquals(random.nextLong(), source.nextLong());
+        }
+    }
+
+    @Test
+    public void equalSeedsDrawEqualStreams() {
+        for (RandomSource.Algorithm algorithm : RandomSource.Algorithm.values()) {
+            assertArrayEquals(algorithm.name(), draw(algorithm.create(7), 100),
+                              draw(algorithm.create(7), 100));
+            assertFalse(algorithm.name(), Arrays.equals(draw(algorithm.create(7), 100),
+                                                        draw(algorithm.create(8), 100)));
+        }
+    }
+
+    @Test
+    public void reseedingRestartsTheStream() {
+        for (RandomSource.Algorithm algorithm : RandomSource.Algorithm.values()) {
+            RandomSource source = algorithm.create(7);
+            long[] first = draw(source, 100);
+            source.setSeed(7);
+            assertArrayEquals(algorithm.name(), first, draw(source, 100));
+        }
+    }
+
+    @Test
+    public void splitsAreReproducibleAndIndependent() {
+        for (RandomSource.Algorithm algorithm : SPLITTABLE) {
+            RandomSource parent = algorithm.create(7);
+            RandomSource child = parent.split();
+            RandomSource again = algorithm.create(7).split();
+
+            long[] drawn = draw(child, 100);
+            assertArrayEquals(algorithm.name(), drawn, draw(again, 100));
+            assertFalse(algorithm.name(), Arrays.equals(drawn, draw(parent, 100)));
+            assertFalse(algorithm.name(), Arrays.equals(drawn, draw(algorithm.create(7), 100)));
+        }
+    }
+
+    @Test
+    public void jumpsAreReproducibleAndGoElsewhere() {
+        for (RandomSource.Algorithm algorithm : SPLITTABLE) {
+            RandomSource jumped = algorithm.create(7);
+            jumped.jump();
+            RandomSource again = algorithm.create(7);
+            again.jump();
+
+            long[] drawn = draw(jumped, 100);
+            assertArrayEquals(algorithm.name(), drawn, draw(again, 100));
+            assertFalse(algorithm.name(), Arrays.equals(drawn, draw(algorithm.create(7), 100)));
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void legacyCannotSplit() {
+        RandomSource.Algorithm.LEGACY.create(7).split();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void legacyCannotJump() {
+        RandomSource.Algorithm.LEGACY.create(7).jump();
+    }
+
+    @Test
+    public void drawsAreInRange() {
+        for (RandomSource.Algorithm algorithm : RandomSource.Algorithm.values()) {
+            RandomSource source = algorithm.create(7);
+            boolean[] hit = new boolean[7];
+            for (int draw=0; draw<10000; draw++) {
+                int i = source.nextInt(7);
+                assertTrue(algorithm.name(), i >= 0 && i < 7);
+                hit[i] = true;
+                double d = source.nextDouble();
+                assertTrue(algorithm.name(), d >= 0 && d < 1);
+                float f = source.nextFloat();
+                assertTrue(algorithm.name(), f >= 0 && f < 1);
+            }
+            for (boolean each : hit) {
+                assertTrue(algorithm.name(), each);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aBoundMustBePositive() {
+        RandomSource.Algorithm.XOROSHIRO.create(7).nextInt(0);
+    }
+
+    private static long[] draw(RandomSource source, int count) {
+        long[] drawn = new long[count];
+        for (int draw=0; draw<count; draw++) {
+            drawn[draw] = source.nextLong();
+        }
+        return drawn;
+    }
+}
@@ -0,0 +1,181 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RecordingFileTest {
+
+    public static class Odds {
+        public static boolean prop_odd(int i) {
+            return i % 2 != 0;
+        }
+
+        public static boolean prop_any(String s) {
+            return true;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsReadBackAfterReopening() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("r.screc");
+        RecordingFile file = new RecordingFile(path);
+        int id = file.intern("prop_odd");
+        file.append((byte) 2, new byte[] { 1, 2, 3 });
+        file.append((byte) 3, new byte[0]);
+        assertEquals(id, file.intern("prop_odd"));
+        file.close();
+
+        RecordingFile reopened = new RecordingFile(path);
+
+        assertEquals(2, reopened.count());
+        assertEquals(2, reopened.type(0));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, bytes(reopened.payload(0)));
+        assertEquals(3, reopened.type(1));
+        assertArrayEquals(new byte[0], bytes(reopened.payload(1)));
+        assertEquals("prop_odd", reopened.string(id));
+        assertEquals(id, reopened.intern("prop_odd"));
+        reopened.close();
+    }
+
+    @Test
+    public void aTornRecordIsDroppedAndOverwritten() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("r.screc");
+        RecordingFile file = new RecordingFile(path);
+        file.append((byte) 2, new byte[] { 1 });
+        file.append((byte) 2, new byte[] { 2, 2, 2, 2 });
+        file.close();
+        /* killed part way through writing the second record */
+        truncate(path, Files.size(path) - 2);
+
+        RecordingFile reopened = new RecordingFile(path);
+        assertEquals(1, reopened.count());
+        reopened.append((byte) 2, new byte[] { 3 });
+        reopened.close();
+
+        RecordingFile again = new RecordingFile(path);
+        assertEquals(2, again.count());
+        assertArrayEquals(new byte[] { 1 }, bytes(again.payload(0)));
+        assertArrayEquals(new byte[] { 3 }, bytes(again.payload(1)));
+        again.close();
+    }
+
+    @Test
+    public void aCorruptRecordIsDroppedWithThoseAfterIt() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("r.screc");
+        RecordingFile file = new RecordingFile(path);
+        file.append((byte) 2, new byte[] { 1 });
+        long second = Files.size(path);
+        file.append((byte) 2, new byte[] { 2 });
+        file.append((byte) 2, new byte[] { 3 });
+        file.close();
+        RandomAccessFile raw = new RandomAccessFile(path.toFile(), "rw");
+        try {
+            /* the second record's payload */
+            raw.seek(second + 5);
+            raw.write(99);
+        } finally {
+            raw.close();
+        }
+
+        RecordingFile reopened = new RecordingFile(path);
+
+        assertEquals(1, reopened.count());
+        assertEquals(second, Files.size(path));
+        reopened.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void aFileThatIsNotARecordingIsRefused() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("r.screc");
+        Files.write(path, "not a recording".getBytes("UTF-8"));
+
+        new RecordingFile(path);
+    }
+
+    @Test
+    public void varintsRoundTrip() {
+        long[] values = { 0, 1, 127, 128, 300, Integer.MAX_VALUE, -1, Long.MIN_VALUE };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long value : values) {
+            RecordingFile.putVarint(out, value);
+        }
+        ByteBuffer in = ByteBuffer.wrap(out.toByteArray());
+        for (long value : values) {
+            assertEquals(value, RecordingFile.getVarint(in));
+        }
+        assertEquals(0, in.remaining());
+    }
+
+    @Test
+    public void aRecordingReadsBackItsEvents() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("r.screc");
+        Recording recording = Recording.open(path);
+        new TestRun().setListeners().setRecording(recording).runOn(Odds.class, 40);
+        String description = recording.toDescription();
+        int[][] failed = failedTries(recording);
+        recording.close();
+
+        Recording reopened = Recording.open(path);
+
+        assertEquals(description, reopened.toDescription());
+        assertEquals(Arrays.deepToString(failed), Arrays.deepToString(failedTries(reopened)));
+        reopened.close();
+    }
+
+    @Test
+    public void aRecordingKilledWhileWritingKeepsItsWholeEvents() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("r.screc");
+        Recording recording = Recording.open(path);
+        new TestRun().setListeners().setRecording(recording).runOn(Odds.class, 40);
+        int events = recording.getEventCount();
+        recording.close();
+        truncate(path, Files.size(path) - 1);
+
+        Recording reopened = Recording.open(path);
+        assertEquals(events - 1, reopened.getEventCount());
+        new TestRun().setListeners().setRecording(reopened).runOn(Odds.class, 40);
+        reopened.close();
+
+        Recording again = Recording.open(path);
+        assertEquals(2 * events - 1, again.getEventCount());
+        again.close();
+    }
+
+    private static int[][] failedTries(Recording recording) {
+        int[][] failed = new int[recording.getEventCount()][];
+        for (int eIdx=0; eIdx<failed.length; eIdx++) {
+            failed[eIdx] = recording.getFailedTries(eIdx);
+        }
+        return failed;
+    }
+
+    private static void truncate(Path path, long size) throws IOException {
+        RandomAccessFile raw = new RandomAccessFile(path.toFile(), "rw");
+        try {
+            raw.setLength(size);
+        } finally {
+            raw.close();
+        }
+    }
+
+    private static byte[] bytes(ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return bytes;
+    }
+}
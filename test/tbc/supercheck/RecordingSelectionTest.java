@@ -0,0 +1,194 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RecordingSelectionTest {
+
+    public static class Shapes {
+        public static final List<String> CALLS =
+            Collections.synchronizedList(new ArrayList<String>());
+
+        public static boolean prop_square(int i) {
+            CALLS.add("square");
+            return true;
+        }
+
+        public static boolean prop_circle(int i) {
+            CALLS.add("circle");
+            return i % 3 != 0;
+        }
+
+        public static boolean prop_doomed(int i) {
+            CALLS.add("doomed");
+            return true;
+        }
+    }
+
+    public static class Colours {
+        public static boolean prop_circle(int i) {
+            Shapes.CALLS.add("colour circle");
+            return i % 2 != 0;
+        }
+    }
+
+    @Before
+    public void forget() {
+        Shapes.CALLS.clear();
+    }
+
+    @Test
+    public void selectsByClassAndProperty() throws Exception {
+        Recording recording = recording();
+
+        assertEquals(4, recording.select(Shapes.class, null).getEventCount());
+        assertEquals(3, recording.select(null, "prop_circle").getEventCount());
+        assertEquals(2, recording.select(Shapes.class, "prop_circle").getEventCount());
+        assertEquals(1, recording.select(Colours.class, null).getEventCount());
+        assertEquals(0, recording.select(Colours.class, "prop_square").getEventCount());
+        assertEquals(5, recording.select(null, null).getEventCount());
+    }
+
+    @Test
+    public void selectsFailedEventsInRecordedOrder() throws Exception {
+        Recording recording = recording();
+
+        Recording failed = recording.selectFailed();
+
+        assertEquals(2, failed.getEventCount());
+        assertArrayEquals(new int[] { 3 }, failed.getFailedTries(0));
+        assertArrayEquals(new int[] { 3, 6 }, failed.getFailedTries(1));
+    }
+
+    @Test
+    public void selectionsNarrowSelections() throws Exception {
+        Recording recording = recording();
+
+        Recording circles = recording.select(null, "prop_circle");
+
+        assertEquals(2, circles.selectFailed().getEventCount());
+        assertEquals(1, circles.select(Colours.class, null).getEventCount());
+        assertEquals(0, circles.select(null, "prop_square").getEventCount());
+        assertEquals(1, circles.selectFailed().select(null, null)
+                                .selectFailed().getFailedTries(0).length);
+    }
+
+    @Test
+    public void eventsRecordedAfterIndexingAreIndexed() throws Exception {
+        Recording recording = recording();
+        assertEquals(2, recording.selectFailed().getEventCount());
+
+        recording.addTestEvent(method(Colours.class, "prop_circle"), 9, 5, 1,
+                               RandomSource.Algorithm.SPLITMIX, true, true,
+                               false, 0, new int[] { 2 });
+
+        assertEquals(3, recording.selectFailed().getEventCount());
+        assertEquals(2, recording.select(Colours.class, null).getEventCount());
+    }
+
+    @Test
+    public void aSelectionCannotBeRecordedTo() throws Exception {
+        Recording selection = recording().select(Shapes.class, null);
+        try {
+            selection.addTestEvent(method(Shapes.class, "prop_square"), 1, 1, 1,
+                                   RandomSource.Algorithm.SPLITMIX, true, true,
+                                   false, 0, new int[0]);
+            fail("recorded to a selection");
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+
+    @Test
+    public void playsBackOnlyTheSelectedEvents() throws Exception {
+        Recording recording = recording();
+
+        new TestRun().setListeners().runRecording(recording.select(null, "prop_square"));
+
+        assertEquals(Collections.nCopies(10, "square"), Shapes.CALLS);
+    }
+
+    @Test
+    public void parallelPlaybackRecordsEventsInTheirPlayedOrder() throws Exception {
+        Recording recording = recording();
+        TestRun sequential = new TestRun().setListeners().setParallelism(1);
+        sequential.runRecording(recording);
+        TestRun parallel = new TestRun().setListeners().setParallelism(4);
+        parallel.runRecording(recording);
+
+        Recording replayed = parallel.getRecording();
+        assertEquals(5, replayed.getEventCount());
+        for (int eIdx=0; eIdx<5; eIdx++) {
+            assertArrayEquals(sequential.getRecording().getFailedTries(eIdx),
+                              replayed.getFailedTries(eIdx));
+        }
+    }
+
+    @Test
+    public void eventsOfMissingPropertiesArePassedOverAndListed() throws Exception {
+        /* prop_doomed is renamed in the serialized form, as if it had gone */
+        Recording recording = rename(recording(), "prop_doomed", "prop_gone__");
+        EventLog log = new EventLog();
+
+        int[] passedOver = new TestRun().setListeners(log).runRecording(recording);
+
+        assertArrayEquals(new int[] { 2 }, passedOver);
+        assertEquals(Arrays.asList("eventPassedOver 2"), log.starting("eventPassedOver"));
+        /* the events either side of it are still played back */
+        assertEquals(4, log.starting("propertyFinished").size());
+        assertEquals(0, Collections.frequency(Shapes.CALLS, "doomed"));
+        assertEquals(10, Collections.frequency(Shapes.CALLS, "square"));
+    }
+
+    /**
+     * Answers a recording of square, circle, doomed, circle of Colours and
+     * circle again, with circle failing on tries 3 and 6, and the first
+     * circle remembering only try 3.
+     */
+    private static Recording recording() throws Exception {
+        Recording recording = new Recording();
+        add(recording, Shapes.class, "prop_square", new int[0]);
+        add(recording, Shapes.class, "prop_circle", new int[] { 3 });
+        add(recording, Shapes.class, "prop_doomed", new int[0]);
+        add(recording, Colours.class, "prop_circle", new int[0]);
+        add(recording, Shapes.class, "prop_circle", new int[] { 3, 6 });
+        return recording;
+    }
+
+    private static void add(Recording recording, Class<?> containingClass, String property,
+                            int[] failedTries) throws Exception {
+        recording.addTestEvent(method(containingClass, property), 7, 10, 1,
+                               RandomSource.Algorithm.SPLITMIX, true, true,
+                               false, 0, failedTries);
+    }
+
+    private static Method method(Class<?> containingClass, String property)
+                                                         throws Exception {
+        return containingClass.getMethod(property, int.class);
+    }
+
+    private static Recording rename(Recording recording, String from, String to)
+                                                         throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(recording);
+        out.close();
+        /* names of the same length keep the stream's lengths right */
+        String serialized = new String(bytes.toByteArray(), "ISO-8859-1");
+        byte[] renamed = serialized.replace(from, to).getBytes("ISO-8859-1");
+        return (Recording) new ObjectInputStream(new ByteArrayInputStream(renamed)).readObject();
+    }
+}
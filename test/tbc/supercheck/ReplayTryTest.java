@@ -0,0 +1,57 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ReplayTryTest {
+
+    public static class Evens {
+        public static boolean prop_even(int i) {
+            return i % 2 == 0;
+        }
+    }
+
+    public static class Floats {
+        public static boolean prop_positive(float f) {
+            return f >= 0;
+        }
+    }
+
+    @Test
+    public void reportsTheReplayedTryToListeners() {
+        TestRun run = new TestRun().setListeners();
+        run.runOn(Evens.class, 50);
+        Recording recording = run.getRecording();
+        int[] failed = recording.getFailedTries(0);
+        assertTrue(failed.length > 0);
+
+        EventLog log = new EventLog();
+        boolean held = new TestRun().setListeners(log).replayTry(recording, 0, failed[0]);
+
+        assertFalse(held);
+        assertEquals(Arrays.asList("tryReplayed prop_even " + failed[0] + " false"),
+                     log.events);
+    }
+
+    @Test
+    public void aTryWhoseArgumentsCanNoLongerBeEnumeratedIsNotReplayed() throws Exception {
+        /* as if prop_positive took an int when it was tried exhaustively */
+        Recording recording = new Recording();
+        recording.addTestEvent(Floats.class.getMethod("prop_positive", float.class),
+                               7, 5, 1, RandomSource.Algorithm.SPLITMIX, true, true,
+                               false, 2, new int[] { 3 });
+
+        try {
+            new TestRun().setListeners().replayTry(recording, 0, 3);
+            fail("replayed a try that cannot be enumerated");
+        } catch (TestException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("prop_positive"));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class SeenFilterTest {
+
+    private static final int BYTES = 1 << 16;
+    private static final int EXPECTED = 50000;
+
+    @Test
+    public void neverForgetsAnArgumentList() {
+        SeenFilter seen = new SeenFilter(BYTES, EXPECTED);
+        for (int i=0; i<EXPECTED; i++) {
+            seen.add(params(i));
+        }
+        for (int i=0; i<EXPECTED; i++) {
+            assertFalse(seen.add(params(i)));
+        }
+    }
+
+    @Test
+    public void mistakesNewListsForOldAsRarelyAsABloomFilterShould() {
+        SeenFilter seen = new SeenFilter(BYTES, EXPECTED);
+        for (int i=0; i<EXPECTED; i++) {
+            seen.add(params(i));
+        }
+        int mistaken = 0;
+        double expected = 0;
+        double bits = BYTES * 8d;
+        for (int i=EXPECTED; i<2*EXPECTED; i++) {
+            mistaken += seen.add(params(i)) ? 0 : 1;
+            /* (1 - e^(-kn/m))^k, with the k the filter chooses, 7; each new
+             * list is added, so n grows as it goes */
+            expected += Math.pow(1 - Math.exp(-7 * i / bits), 7);
+        }
+        assertTrue(mistaken + " new lists mistaken for old, expected " + expected,
+                   mistaken < expected * 1.2);
+    }
+
+    @Test
+    public void remembersValuesByValue() {
+        SeenFilter seen = new SeenFilter(BYTES, 100);
+        assertTrue(seen.add(new Object[] { new String("abc"), new int[] { 1, 2 },
+                                           new String[] { "x", null }, 
+                                           Thread.State.NEW, 2.5d }));
+        assertFalse(seen.add(new Object[] { new String("abc"), new int[] { 1, 2 },
+                                            new String[] { "x", null },
+                                            Thread.State.NEW, 2.5d }));
+        assertTrue(seen.add(new Object[] { "abc", new int[] { 2, 1 },
+                                           new String[] { "x", null },
+                                           Thread.State.NEW, 2.5d }));
+    }
+
+    @Test
+    public void takesOtherObjectsToBeNew() {
+        SeenFilter seen = new SeenFilter(BYTES, 100);
+        Object[] params = { 1, new Object() };
+        assertTrue(seen.add(params));
+        assertTrue(seen.add(params));
+        Object[] inArray = { new Object[] { "a", new StringBuilder("b") } };
+        assertTrue(seen.add(inArray));
+        assertTrue(seen.add(inArray));
+    }
+
+    private static Object[] params(int i) {
+        return new Object[] { i, "s" + (i % 7) };
+    }
+}
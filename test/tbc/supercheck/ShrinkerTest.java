@@ -0,0 +1,256 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class ShrinkerTest {
+
+    public enum Size { NONE, SMALL, MEDIUM, LARGE, HUGE }
+
+    public static class Point {
+        public final int x;
+        public final int y;
+
+        public Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        public static List<Point> shrink(Point p) {
+            return Arrays.asList(new Point(0, 0), new Point(p.x / 2, p.y),
+                                 new Point(p.x, p.y / 2));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Point && ((Point) o).x == x && ((Point) o).y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+    }
+
+    /** Its shrink() answers an array. */
+    public static class Word {
+        public final String text;
+
+        public Word(String text) {
+            this.text = text;
+        }
+
+        public static Word[] shrink(Word w) {
+            return new Word[] { new Word(w.text.substring(1)) };
+        }
+    }
+
+    /** Its shrink() is not static, so it is not used. */
+    public static class Opaque {
+        public List<Opaque> shrink(Opaque o) {
+            return Arrays.asList(new Opaque());
+        }
+    }
+
+    public static class Props {
+        public static final Arbitrary<Integer> ANY = Gen.INTS;
+
+        public static boolean prop_int(int i) {
+            return i < 100;
+        }
+
+        public static boolean prop_negativeLong(long l) {
+            return l >= -50;
+        }
+
+        public static boolean prop_byte(byte b) {
+            return b < 3;
+        }
+
+        public static boolean prop_double(double d) {
+            return d <= 10.5d;
+        }
+
+        public static boolean prop_boolean(boolean b, int i) {
+            return i < 7;
+        }
+
+        public static boolean prop_char(char c) {
+            return c < 'a';
+        }
+
+        public static boolean prop_string(String s) {
+            return s.indexOf('x') < 0;
+        }
+
+        public static boolean prop_enum(Size size) {
+            return size.ordinal() < Size.MEDIUM.ordinal();
+        }
+
+        public static boolean prop_array(int[] ints) {
+            return ints.length < 3;
+        }
+
+        public static boolean prop_boxedArray(Integer[] ints) {
+            for (Integer i : ints) {
+                if (i > 20) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public static boolean prop_point(Point p) {
+            return p.x < 5;
+        }
+
+        public static boolean prop_word(Word w) {
+            return w.text.length() < 2;
+        }
+
+        public static boolean prop_bound(@From("ANY") int bound, int free) {
+            return free < 4;
+        }
+    }
+
+    @Test
+    public void integralsShrinkToTheBoundary() throws Exception {
+        assertArrayEquals(new Object[] { 100 }, shrink("prop_int", 987654));
+        assertArrayEquals(new Object[] { -51L }, shrink("prop_negativeLong", -1L << 40));
+        assertArrayEquals(new Object[] { (byte) 3 }, shrink("prop_byte", Byte.MAX_VALUE));
+    }
+
+    @Test
+    public void floatingsShrinkTowardsWholeNumbers() throws Exception {
+        Object[] shrunk = shrink("prop_double", 12345.678d);
+
+        double d = (Double) shrunk[0];
+        assertTrue(String.valueOf(d), d > 10.5d && d < 21.0d && d == Math.floor(d));
+    }
+
+    @Test
+    public void booleansShrinkToFalseAndCharsToA() throws Exception {
+        assertArrayEquals(new Object[] { false, 7 }, shrink("prop_boolean", true, 1000));
+        assertArrayEquals(new Object[] { 'a' }, shrink("prop_char", 'z'));
+    }
+
+    @Test
+    public void stringsShrinkToTheFailingCharacter() throws Exception {
+        assertArrayEquals(new Object[] { "x" }, shrink("prop_string", "hello, xylophone"));
+    }
+
+    @Test
+    public void enumerationsShrinkToEarlierConstants() throws Exception {
+        assertArrayEquals(new Object[] { Size.MEDIUM }, shrink("prop_enum", Size.HUGE));
+        assertEquals(0, ShrinkerRegistry.forClass(Size.class).shrink(Size.NONE).size());
+        assertEquals(Arrays.<Object>asList(Size.NONE, Size.SMALL),
+                     ShrinkerRegistry.forClass(Size.class).shrink(Size.MEDIUM));
+    }
+
+    @Test
+    public void arraysShrinkTheirLengthThenTheirElements() throws Exception {
+        Object[] shrunk = shrink("prop_array", (Object) new int[] { 9, -4, 17, 5, 88, 1 });
+        assertArrayEquals(new int[] { 0, 0, 0 }, (int[]) shrunk[0]);
+
+        shrunk = shrink("prop_boxedArray", (Object) new Integer[] { 3, 1000, 7, 40 });
+        assertArrayEquals(new Integer[] { 21 }, (Integer[]) shrunk[0]);
+    }
+
+    @Test
+    public void candidatesAreNeverTriedTwice() throws Exception {
+        final Method prop = method("prop_string");
+        final Set<String> tried = new HashSet<String>();
+        final int[] repeats = new int[1];
+        Shrinker shrinker = new Shrinker(prop, 100000, 60000, null, new Shrinker.Trial() {
+            public boolean fails(Object[] params) {
+                if (!tried.add(Arrays.deepToString(params))) {
+                    repeats[0]++;
+                }
+                return !Props.prop_string((String) params[0]);
+            }
+        });
+
+        shrinker.shrink(new Object[] { "abcabcabcxabcabc" });
+
+        assertEquals(0, repeats[0]);
+        assertEquals(tried.size(), shrinker.getTries());
+        assertTrue(shrinker.getSteps() > 0);
+    }
+
+    @Test
+    public void shrinkingStopsWhenItsTriesAreSpent() throws Exception {
+        Shrinker shrinker = new Shrinker(method("prop_int"), 3, 60000, null, null);
+
+        shrinker.shrink(new Object[] { 987654 });
+
+        assertEquals(3, shrinker.getTries());
+    }
+
+    @Test
+    public void aPoolShrinksAsOneThreadDoes() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Method prop = method("prop_string");
+            Object[] failing = { "the quick brown fox jumps over the lazy dog" };
+            Object[] alone = new Shrinker(prop, 10000, 60000, null, null).shrink(failing);
+            Object[] pooled = new Shrinker(prop, 10000, 60000, pool, null).shrink(failing);
+
+            assertArrayEquals(alone, pooled);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void classesDeclaringShrinkAreShrunkWithIt() throws Exception {
+        assertArrayEquals(new Object[] { new Point(5, 0) },
+                          shrink("prop_point", new Point(40, 13)));
+
+        Object[] shrunk = shrink("prop_word", new Word("abcdef"));
+        assertEquals("ef", ((Word) shrunk[0]).text);
+    }
+
+    @Test
+    public void classesWithoutAStaticShrinkAreNotShrunk() {
+        assertEquals(0, ShrinkerRegistry.forClass(Opaque.class).shrink(new Opaque()).size());
+        assertEquals(0, ShrinkerRegistry.forClass(Object.class).shrink(new Object()).size());
+    }
+
+    @Test
+    public void boundParametersAreNotShrunk() throws Exception {
+        assertArrayEquals(new Object[] { 12345, 4 }, shrink("prop_bound", 12345, 999));
+    }
+
+    @Test
+    public void shrinkersAreResolvedOncePerClass() {
+        assertSame(ShrinkerRegistry.forClass(Point.class),
+                   ShrinkerRegistry.forClass(Point.class));
+        assertSame(ShrinkerRegistry.forClass(int[].class),
+                   ShrinkerRegistry.forClass(int[].class));
+    }
+
+    /** Answers the arguments the named property of Props shrinks failing to. */
+    private static Object[] shrink(String property, Object... failing) throws Exception {
+        return new Shrinker(method(property), 100000, 60000, null, null).shrink(failing);
+    }
+
+    private static Method method(String property) {
+        for (Method prop : Props.class.getMethods()) {
+            if (prop.getName().equals(property)) {
+                return prop;
+            }
+        }
+        throw new IllegalArgumentException(property);
+    }
+}
@@ -0,0 +1,204 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SizeTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    public static class Sized {
+        public static final List<Integer> SIZES =
+            Collections.synchronizedList(new ArrayList<Integer>());
+
+        public static class Measure {
+            private final int size;
+
+            private Measure(int size) {
+                this.size = size;
+            }
+
+            public static Measure arbitrary(Gen gen) {
+                return new Measure(gen.getSize());
+            }
+        }
+
+        public static boolean prop_measured(Measure measure) {
+            SIZES.add(measure.size);
+            return true;
+        }
+    }
+
+    public static class Bottomless {
+        public static class Chain {
+            public static Chain arbitrary(Gen gen) {
+                gen.arbObject(Chain.class);
+                return new Chain();
+            }
+        }
+
+        public static boolean prop_neverMade(Chain chain) {
+            return true;
+        }
+
+        public static boolean prop_made(int n) {
+            return true;
+        }
+    }
+
+    static class Node {
+    }
+
+    @Before
+    public void forget() {
+        Sized.SIZES.clear();
+    }
+
+    @Test
+    public void sizesGrowOverTheTriesThenBeginAgain() {
+        Gen gen = new Gen();
+        for (int tryIndex=0; tryIndex<250; tryIndex++) {
+            gen.sizeForTry(tryIndex);
+            assertEquals(tryIndex % (Gen.MAX_SIZE_DEFAULT + 1), gen.getSize());
+        }
+    }
+
+    @Test
+    public void unsizedDataIsMadeAtTheMaximumSize() {
+        Gen gen = new Gen();
+        gen.setSized(false);
+        gen.sizeForTry(3);
+        assertEquals(Gen.MAX_SIZE_DEFAULT, gen.getSize());
+    }
+
+    @Test
+    public void sizesHalveWithDepth() throws TestException {
+        Gen gen = new Gen();
+        gen.sizeForTry(80);
+        gen.enter(Node.class);
+        assertEquals(80, gen.getSize());
+        gen.enter(Node.class);
+        assertEquals(40, gen.getSize());
+        gen.enter(Node.class);
+        assertEquals(20, gen.getSize());
+    }
+
+    @Test
+    public void splitKeepsTheSizeAndDepth() throws TestException {
+        Gen gen = new Gen();
+        gen.sizeForTry(80);
+        gen.enter(Node.class);
+        gen.enter(Node.class);
+
+        Gen child = gen.split();
+
+        assertEquals(2, child.getDepth());
+        assertEquals(gen.getDepthLeft(), child.getDepthLeft());
+        assertEquals(40, child.getSize());
+    }
+
+    @Test
+    public void aSplitChildStopsAtTheMaximumDepth() throws TestException {
+        Gen gen = new Gen();
+        for (int level=0; level<Gen.MAX_DEPTH_DEFAULT; level++) {
+            gen.enter(Node.class);
+        }
+        Gen child = gen.split();
+        assertEquals(0, child.getDepthLeft());
+        try {
+            child.enter(Node.class);
+            fail("entered below the maximum depth");
+        } catch (TestException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("maximum depth"));
+        }
+    }
+
+    @Test
+    public void aTryGoingTooDeepFailsWithoutStoppingTheRun() {
+        EventLog log = new EventLog();
+        TestRun run = new TestRun().setListeners(log).setParallelism(1);
+        run.runOn(Bottomless.class, 10);
+
+        assertEquals(Arrays.asList("tryTooDeep prop_neverMade 1"), log.starting("tryTooDeep"));
+        assertTrue(log.events.contains("propertyFinished prop_neverMade 1 1"));
+        assertTrue(log.events.contains("propertyFinished prop_made 10 0"));
+    }
+
+    @Test
+    public void aTryGoingTooDeepReplaysAsFailed() {
+        EventLog log = new EventLog();
+        TestRun run = new TestRun().setListeners(log).setContProp(true);
+        run.runOn(Bottomless.class, "prop_neverMade", 3);
+        int[] failed = run.getRecording().getFailedTries(0);
+        assertArrayEquals(new int[] {1, 2, 3}, failed);
+
+        assertFalse(run.replayTry(run.getRecording(), 0, 2));
+        assertEquals(4, log.starting("tryTooDeep prop_neverMade").size());
+    }
+
+    @Test
+    public void replaysWithTheSizesItWasMadeWith() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("sized.screc");
+        Recording recording = Recording.open(path);
+        new TestRun().setListeners().setParallelism(1).setRecording(recording)
+                     .runOn(Sized.class, 120);
+        recording.close();
+        List<Integer> made = new ArrayList<Integer>(Sized.SIZES);
+        Sized.SIZES.clear();
+
+        Recording reopened = Recording.open(path);
+        new TestRun().setListeners().runRecording(reopened);
+        reopened.close();
+
+        assertEquals(120, made.size());
+        assertEquals(0, (int) made.get(0));
+        assertEquals(Gen.MAX_SIZE_DEFAULT, (int) made.get(Gen.MAX_SIZE_DEFAULT));
+        assertEquals(made, Sized.SIZES);
+    }
+
+    @Test
+    public void eventsRecordedBeforeSizesReplayAtTheMaximumSize() throws Exception {
+        Recording recording = new Recording();
+        recording.addTestEvent(Sized.class.getMethod("prop_measured", Sized.Measure.class),
+                               7, 20, 1, RandomSource.Algorithm.SPLITMIX, true, false,
+                               false, 0, new int[0]);
+
+        new TestRun().setListeners().runRecording(recording);
+        new TestRun().setListeners().replayTry(recording, 0, 3);
+
+        assertEquals(21, Sized.SIZES.size());
+        for (int size : Sized.SIZES) {
+            assertEquals(Gen.MAX_SIZE_DEFAULT, size);
+        }
+    }
+
+    @Test
+    public void legacyEventsReplayAtTheMaximumSize() throws Exception {
+        Recording recording = new Recording();
+        recording.addTestEvent(Sized.class.getMethod("prop_measured", Sized.Measure.class),
+                               7, 20, 1, RandomSource.Algorithm.LEGACY, true, true,
+                               false, 0, new int[0]);
+
+        new TestRun().setListeners().runRecording(recording);
+
+        assertEquals(20, Sized.SIZES.size());
+        for (int size : Sized.SIZES) {
+            assertEquals(Gen.MAX_SIZE_DEFAULT, size);
+        }
+    }
+}
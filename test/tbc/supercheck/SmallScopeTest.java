@@ -0,0 +1,160 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SmallScopeTest {
+
+    public enum Only { ONE }
+
+    public enum Colour { RED, GREEN }
+
+    public static class Point {
+        public static Point arbitrary(Gen gen) {
+            return new Point();
+        }
+    }
+
+    public static class Props {
+        public static final int[] SMALL = { 1, 2 };
+
+        public static boolean prop_int(int i) { return true; }
+        public static boolean prop_byte(byte b) { return true; }
+        public static boolean prop_char(char c) { return true; }
+        public static boolean prop_string(String s) { return true; }
+        public static boolean prop_booleans(boolean[] bs) { return true; }
+        public static boolean prop_ints(int[] is) { return true; }
+        public static boolean prop_onlys(Only[] os) { return true; }
+        public static boolean prop_colourAndInt(Colour c, int i) { return true; }
+        public static boolean prop_point(Point p) { return true; }
+        public static boolean prop_float(float f) { return true; }
+        public static boolean prop_from(@From("SMALL") int i) { return true; }
+    }
+
+    @Test
+    public void integersAreNumberedSmallestFirst() {
+        assertEquals(Arrays.<Object>asList(0, 1, -1, 2, -2), all("prop_int", 2));
+    }
+
+    @Test
+    public void bytesAreBoundedByTheirRange() {
+        SmallScope scope = scope("prop_byte", 1000);
+        assertEquals(255, scope.size());
+        assertEquals((byte) -127, scope.inputAt(254)[0]);
+    }
+
+    @Test
+    public void charsAreLettersFromA() {
+        assertEquals(Arrays.<Object>asList('a', 'b', 'c'), all("prop_char", 2));
+    }
+
+    @Test
+    public void stringsAreNumberedShortestFirst() {
+        assertEquals(Arrays.<Object>asList("", "a", "b"), all("prop_string", 1));
+        SmallScope scope = scope("prop_string", 2);
+        assertEquals(1 + 3 + 9, scope.size());
+        assertEquals("aa", scope.inputAt(4)[0]);
+        assertEquals("cc", scope.inputAt(12)[0]);
+    }
+
+    @Test
+    public void arraysAreNumberedShortestFirst() {
+        SmallScope scope = scope("prop_booleans", 2);
+        assertEquals(7, scope.size());
+        boolean[][] expected = {
+            {}, { false }, { true },
+            { false, false }, { false, true }, { true, false }, { true, true }
+        };
+        for (int idx=0; idx<expected.length; idx++) {
+            assertArrayEquals(expected[idx], (boolean[]) scope.inputAt(idx)[0]);
+        }
+    }
+
+    @Test
+    public void argumentListsAreNumberedFirstParameterMostSignificant() {
+        SmallScope scope = scope("prop_colourAndInt", 1);
+        assertEquals(6, scope.size());
+        assertArrayEquals(new Object[] { Colour.RED, 0 }, scope.inputAt(0));
+        assertArrayEquals(new Object[] { Colour.RED, 1 }, scope.inputAt(1));
+        assertArrayEquals(new Object[] { Colour.RED, -1 }, scope.inputAt(2));
+        assertArrayEquals(new Object[] { Colour.GREEN, 0 }, scope.inputAt(3));
+        assertArrayEquals(new Object[] { Colour.GREEN, -1 }, scope.inputAt(5));
+    }
+
+    @Test
+    public void parametersThatCannotBeEnumeratedHaveNoScope() {
+        assertNull(scope("prop_point", 2));
+        assertNull(scope("prop_float", 2));
+        assertNull(scope("prop_from", 2));
+    }
+
+    @Test
+    public void scopesLargerThanTheLimitAreNotMade() {
+        assertNotNull(SmallScope.forProperty(method("prop_int"), 2, 5));
+        assertNull(SmallScope.forProperty(method("prop_int"), 2, 4));
+    }
+
+    @Test
+    public void theLargestBoundsMakeNoScopeOfArrays() {
+        assertNull(scope("prop_ints", Integer.MAX_VALUE));
+        assertNull(scope("prop_string", Integer.MAX_VALUE));
+        assertNull(scope("prop_booleans", 63));
+        assertNotNull(scope("prop_booleans", 61));
+    }
+
+    @Test
+    public void theLargestBoundsNumberIntegers() {
+        SmallScope scope = scope("prop_int", Integer.MAX_VALUE);
+        assertEquals(2L * Integer.MAX_VALUE + 1, scope.size());
+        assertEquals(-Integer.MAX_VALUE, scope.inputAt(scope.size() - 1)[0]);
+    }
+
+    @Test
+    public void arraysOfOneValueHaveOneOfEachLength() {
+        SmallScope scope = scope("prop_onlys", Integer.MAX_VALUE);
+        assertEquals(Integer.MAX_VALUE + 1L, scope.size());
+        assertArrayEquals(new Only[0], (Only[]) scope.inputAt(0)[0]);
+        assertArrayEquals(new Only[] { Only.ONE, Only.ONE, Only.ONE },
+                          (Only[]) scope.inputAt(3)[0]);
+    }
+
+    @Test
+    public void aRunAtTheLargestBoundTriesRandomly() {
+        EventLog log = new EventLog();
+        new TestRun().setListeners(log).setExhaustive(Integer.MAX_VALUE)
+                     .runOn(Props.class, "prop_ints", 10);
+        assertEquals(Arrays.asList("propertyFinished prop_ints 10 0"),
+                     log.starting("propertyFinished"));
+    }
+
+    private static List<Object> all(String property, int bound) {
+        SmallScope scope = scope(property, bound);
+        List<Object> values = new ArrayList<Object>();
+        for (long idx=0; idx<scope.size(); idx++) {
+            values.add(scope.inputAt(idx)[0]);
+        }
+        return values;
+    }
+
+    private static SmallScope scope(String property, int bound) {
+        return SmallScope.forProperty(method(property), bound, Long.MAX_VALUE);
+    }
+
+    private static Method method(String property) {
+        for (Method m : Props.class.getMethods()) {
+            if (m.getName().equals(property)) {
+                return m;
+            }
+        }
+        throw new AssertionError(property);
+    }
+}
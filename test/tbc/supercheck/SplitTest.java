@@ -0,0 +1,162 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class SplitTest {
+
+    @Test
+    public void eachThreadHasItsOwnGen() throws Exception {
+        final Gen mine = Gen.g();
+        assertSame(mine, Gen.g());
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Gen>> gens = new ArrayList<Future<Gen>>();
+            for (int tIdx=0; tIdx<4; tIdx++) {
+                gens.add(pool.submit(new Callable<Gen>() {
+                    public Gen call() {
+                        Gen gen = Gen.g();
+                        assertSame(gen, Gen.g());
+                        return gen;
+                    }
+                }));
+            }
+            Set<Gen> distinct = Collections.newSetFromMap(new IdentityHashMap<Gen, Boolean>());
+            distinct.add(mine);
+            for (Future<Gen> gen : gens) {
+                distinct.add(gen.get());
+            }
+            /* a pool of 4 may run the tasks on fewer threads, but never on this one */
+            assertTrue(distinct.size() >= 2);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void threadsGenerateApart() throws Exception {
+        final long[][] draws = new long[2][];
+        Thread[] threads = new Thread[2];
+        for (int tIdx=0; tIdx<2; tIdx++) {
+            final int index = tIdx;
+            threads[tIdx] = new Thread() {
+                @Override
+                public void run() {
+                    draws[index] = longs(Gen.g(), 8);
+                }
+            };
+            threads[tIdx].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(Arrays.equals(draws[0], draws[1]));
+    }
+
+    @Test
+    public void splitsAreReproducible() {
+        for (RandomSource.Algorithm algorithm : new RandomSource.Algorithm[] {
+                RandomSource.Algorithm.SPLITMIX, RandomSource.Algorithm.XOROSHIRO }) {
+            Gen first = seeded(31, algorithm);
+            Gen second = seeded(31, algorithm);
+
+            assertArrayEquals(longs(first.split(), 100), longs(second.split(), 100));
+            /* the parents stay in step after splitting */
+            assertArrayEquals(longs(first, 100), longs(second, 100));
+        }
+    }
+
+    @Test
+    public void splitsAreIndependentOfTheirParentAndEachOther() {
+        Gen parent = seeded(31, RandomSource.Algorithm.SPLITMIX);
+        Gen child = parent.split();
+        Gen sibling = parent.split();
+        assertNotSame(child, sibling);
+
+        Set<Long> seen = new HashSet<Long>();
+        for (Gen gen : new Gen[] { parent, child, sibling }) {
+            for (long l : longs(gen, 1000)) {
+                seen.add(l);
+            }
+        }
+        /* no stream repeats another's values */
+        assertEquals(3000, seen.size());
+    }
+
+    @Test
+    public void splittingAdvancesTheParentByOneDraw() {
+        Gen split = seeded(5, RandomSource.Algorithm.SPLITMIX);
+        Gen unsplit = seeded(5, RandomSource.Algorithm.SPLITMIX);
+
+        split.split();
+
+        long[] after = longs(split, 10);
+        assertFalse(Arrays.equals(longs(unsplit, 10), after));
+        Gen skipped = seeded(5, RandomSource.Algorithm.SPLITMIX);
+        skipped.getRandom().nextLong();
+        assertArrayEquals(longs(skipped, 10), after);
+    }
+
+    @Test
+    public void childrenShareTheirParentsParameters() {
+        Gen parent = seeded(5, RandomSource.Algorithm.SPLITMIX);
+        ParameterBunch params = new ParameterBunch();
+        params.set(Gen.MAX_STR_LENGTH, 3);
+        params.set(Gen.MAX_DEPTH, 4);
+        parent.setParams(params);
+
+        Gen child = parent.split();
+
+        assertEquals(parent.getSize(), child.getSize());
+        assertEquals(parent.getDepthLeft(), child.getDepthLeft());
+        assertEquals(Integer.valueOf(3), child.getParam(Gen.MAX_STR_LENGTH));
+        for (int draw=0; draw<200; draw++) {
+            assertTrue(child.arbString().length() <= 3);
+        }
+    }
+
+    @Test
+    public void childrenKeepTheirParentsAlgorithm() {
+        for (RandomSource.Algorithm algorithm : RandomSource.Algorithm.values()) {
+            Gen child = seeded(5, algorithm).split();
+
+            assertEquals(algorithm, child.getRandom().algorithm());
+            assertArrayEquals(longs(seeded(5, algorithm).split(), 10), longs(child, 10));
+        }
+    }
+
+    private static Gen seeded(long seed, RandomSource.Algorithm algorithm) {
+        Gen gen = new Gen();
+        gen.setSeed(seed, algorithm);
+        return gen;
+    }
+
+    /** Answers the next count raw draws of gen's random source. */
+    private static long[] longs(Gen gen, int count) {
+        long[] longs = new long[count];
+        for (int lIdx=0; lIdx<count; lIdx++) {
+            longs[lIdx] = gen.getRandom().nextLong();
+        }
+        return longs;
+    }
+}
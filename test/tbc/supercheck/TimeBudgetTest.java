@@ -0,0 +1,88 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimeBudgetTest {
+
+    public static class Counted {
+        public static final AtomicInteger CALLS = new AtomicInteger();
+
+        public static boolean prop_counted(int i) {
+            CALLS.incrementAndGet();
+            return true;
+        }
+    }
+
+    public static class Pair {
+        public static final List<String> CALLS =
+            Collections.synchronizedList(new ArrayList<String>());
+
+        public static boolean prop_first(long l) {
+            CALLS.add("first");
+            return true;
+        }
+
+        public static boolean prop_second(long l) {
+            CALLS.add("second");
+            return true;
+        }
+    }
+
+    @Before
+    public void forget() {
+        Counted.CALLS.set(0);
+        Pair.CALLS.clear();
+    }
+
+    @Test
+    public void eachPropertyIsTriedUntilItsShareOfTheBudgetIsSpent() {
+        EventLog log = new EventLog();
+        long start = System.nanoTime();
+        new TestRun().setListeners(log).setMinTries(10).runOn(Pair.class, Duration.ofMillis(200));
+        long took = System.nanoTime() - start;
+
+        assertTrue(Collections.frequency(Pair.CALLS, "first") > 10);
+        assertTrue(Collections.frequency(Pair.CALLS, "second") > 10);
+        assertTrue(String.valueOf(took), took < 2000000000L);
+        assertEquals(2, log.starting("propertyFinished").size());
+    }
+
+    @Test
+    public void theMinimumTriesAreMadeHoweverSmallTheBudget() {
+        new TestRun().setListeners().setMinTries(250).runOn(Counted.class, Duration.ZERO);
+
+        assertEquals(250, Counted.CALLS.get());
+    }
+
+    @Test
+    public void theRecordingReplaysTheTriesActuallyMade() {
+        EventLog log = new EventLog();
+        TestRun run = new TestRun().setListeners(log).setMinTries(1);
+        run.runOn(Counted.class, Duration.ofMillis(50));
+        int made = Counted.CALLS.get();
+        Counted.CALLS.set(0);
+
+        EventLog replayed = new EventLog();
+        new TestRun().setListeners(replayed).runRecording(run.getRecording());
+
+        assertEquals(made, Counted.CALLS.get());
+        assertEquals(log.starting("propertyFinished"), replayed.starting("propertyFinished"));
+        assertEquals("propertyFinished prop_counted " + made + " 0",
+                     log.starting("propertyFinished").get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeMinimumTriesAreRefused() {
+        new TestRun().setMinTries(-1);
+    }
+}
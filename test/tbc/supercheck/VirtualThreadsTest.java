@@ -0,0 +1,59 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+public class VirtualThreadsTest {
+
+    public static class Blocking {
+        public static boolean prop_waits(int wait, int i) throws InterruptedException {
+            /* tries finish out of order */
+            Thread.sleep(Math.abs(wait % 3));
+            return i % 5 != 0;
+        }
+    }
+
+    @Test
+    public void resultsAreCollectedInTryOrder() throws Exception {
+        Method prop = Blocking.class.getMethod("prop_waits", int.class, int.class);
+        EventLog sequentialLog = new EventLog();
+        TestRun sequential = run(sequentialLog);
+        sequential.runOn(prop, 200, 42);
+
+        EventLog virtualLog = new EventLog();
+        TestRun virtual = run(virtualLog).setVirtualThreads(16);
+        virtual.runOn(prop, 200, 42);
+
+        assertTrue(sequentialLog.starting("tryFailed").size() > 10);
+        assertEquals(sequentialLog.events, virtualLog.events);
+        assertArrayEquals(sequential.getRecording().getFailedTries(0),
+                          virtual.getRecording().getFailedTries(0));
+    }
+
+    @Test
+    public void theFirstFailureStopsTheRunAsOnOneThread() throws Exception {
+        Method prop = Blocking.class.getMethod("prop_waits", int.class, int.class);
+        TestRun sequential = new TestRun().setListeners().setParallelism(1);
+        sequential.runOn(prop, 200, 7);
+        TestRun virtual = new TestRun().setListeners().setVirtualThreads(16);
+        virtual.runOn(prop, 200, 7);
+
+        assertEquals(1, virtual.getRecording().getFailedTries(0).length);
+        assertArrayEquals(sequential.getRecording().getFailedTries(0),
+                          virtual.getRecording().getFailedTries(0));
+    }
+
+    /**
+     * Answers a TestRun reporting every try to log, which finds every
+     * failure and does not shrink them.
+     */
+    private static TestRun run(EventLog log) {
+        return new TestRun().setListeners(log).setVerbose(true).setShrinking(0, 0)
+                            .setContProp(true).setParallelism(1);
+    }
+}
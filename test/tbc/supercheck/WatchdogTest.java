@@ -0,0 +1,206 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WatchdogTest {
+
+    /* far longer than any test should take, were the calls not timed out */
+    private static final long HANG_MILLIS = 20000;
+
+    /* long enough to tell an abandoned try from one waited for */
+    private static final long SPIN_MILLIS = 5000;
+
+    public static class Hangs {
+        public static boolean prop_hangsOnEvens(int i) throws InterruptedException {
+            if (i % 2 == 0) {
+                Thread.sleep(HANG_MILLIS);
+            }
+            return true;
+        }
+
+        /* fails for large values, and hangs for the smaller ones shrinking
+         * tries */
+        public static boolean prop_hangsShrinking(int i) throws InterruptedException {
+            if (Math.abs(i) >= 1000) {
+                return false;
+            } else if (i != 0) {
+                Thread.sleep(HANG_MILLIS);
+            }
+            return true;
+        }
+
+        /* ignores interrupts, so must be abandoned */
+        public static boolean prop_spins(int i) {
+            long until = System.nanoTime() + SPIN_MILLIS * 1000000L;
+            while (System.nanoTime() - until < 0) {
+                Thread.interrupted();
+            }
+            return true;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void aTryTakingTooLongIsInterrupted() throws Exception {
+        Watchdog watchdog = new Watchdog(50000000L, 0);
+        Watchdog.Watch watch = watchdog.watch(Long.MAX_VALUE);
+        try {
+            assertTrue(watch.begin(1));
+            boolean interrupted = false;
+            try {
+                Thread.sleep(HANG_MILLIS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+
+            assertTrue(interrupted);
+            assertEquals(Watchdog.TIMED_OUT, watch.end());
+            assertEquals(1, watch.timedOutTry());
+            assertTrue(watch.lastNanos() >= 50000000L);
+            assertTrue(watch.dump(), watch.dump().contains("aTryTakingTooLongIsInterrupted"));
+            assertFalse(Thread.currentThread().isInterrupted());
+        } finally {
+            watchdog.unwatch(watch);
+        }
+    }
+
+    @Test
+    public void triesInTimeEndInTime() {
+        Watchdog watchdog = new Watchdog(HANG_MILLIS * 1000000L, 0);
+        Watchdog.Watch watch = watchdog.watch(Long.MAX_VALUE);
+        try {
+            for (int tryNumber=1; tryNumber<=10; tryNumber++) {
+                assertTrue(watch.begin(tryNumber));
+                assertEquals(Watchdog.IN_TIME, watch.end());
+            }
+            assertEquals(10, watch.ended());
+        } finally {
+            watchdog.unwatch(watch);
+        }
+    }
+
+    @Test
+    public void noTryBeginsAfterTheDeadline() {
+        Watchdog watchdog = new Watchdog(0, 1000000L);
+        Watchdog.Watch watch = watchdog.watch(System.nanoTime() - 1);
+        try {
+            assertFalse(watch.begin(1));
+        } finally {
+            watchdog.unwatch(watch);
+        }
+    }
+
+    @Test
+    public void triesAreTimedOut() {
+        EventLog log = new EventLog();
+        new TestRun().setListeners(log).setTimeouts(100, 0).runOn(Hangs.class, "prop_hangsOnEvens", 20);
+
+        assertEquals(1, log.starting("tryTimedOut prop_hangsOnEvens").size());
+        assertTrue(log.events.toString(), 
+                   log.events.contains("propertyFinished prop_hangsOnEvens " 
+                                       + triesUpTo(log) + " 1"));
+    }
+
+    @Test
+    public void exhaustiveTriesAreTimedOut() {
+        EventLog log = new EventLog();
+        long start = System.nanoTime();
+        /* 0, the first argument list of 0, 1, -1, 2, -2, hangs */
+        new TestRun().setListeners(log).setTimeouts(100, 0).setExhaustive(2)
+                     .runOn(Hangs.class, "prop_hangsOnEvens", 20);
+
+        assertTrue(System.nanoTime() - start < HANG_MILLIS * 1000000L / 2);
+        assertEquals(Arrays.asList("tryTimedOut prop_hangsOnEvens 1 true"), 
+                     log.starting("tryTimedOut"));
+    }
+
+    @Test
+    public void exhaustiveTriesSplitBetweenWorkersAreTimedOut() {
+        EventLog log = new EventLog();
+        long start = System.nanoTime();
+        /* the workers' shares begin with 0 and 2, which both hang */
+        new TestRun().setListeners(log).setTimeouts(100, 0).setExhaustive(2)
+                     .setParallelism(2).runOn(Hangs.class, "prop_hangsOnEvens", 20);
+
+        assertTrue(System.nanoTime() - start < HANG_MILLIS * 1000000L / 2);
+        assertEquals(new HashSet<String>(Arrays.asList("tryTimedOut prop_hangsOnEvens 1 true",
+                                                       "tryTimedOut prop_hangsOnEvens 4 true")),
+                     new HashSet<String>(log.starting("tryTimedOut")));
+    }
+
+    @Test
+    public void aTryIgnoringInterruptsIsAbandoned() {
+        EventLog log = new EventLog();
+        long start = System.nanoTime();
+        new TestRun().setListeners(log).setTimeouts(100, 0).runOn(Hangs.class, "prop_spins", 5);
+
+        assertTrue(System.nanoTime() - start < SPIN_MILLIS * 1000000L / 2);
+        assertEquals(Arrays.asList("tryTimedOut prop_spins 1 true"), 
+                     log.starting("tryTimedOut"));
+    }
+
+    @Test
+    public void shrinkingIsTimedOut() throws Exception {
+        EventLog log = new EventLog();
+        long start = System.nanoTime();
+        /* seeded so that the first try fails, rather than hangs */
+        new TestRun().setListeners(log).setTimeouts(50, 0).setShrinking(1000, 60000)
+                     .runOn(Hangs.class.getMethod("prop_hangsShrinking", int.class), 1000, 1);
+
+        assertTrue(System.nanoTime() - start < HANG_MILLIS * 1000000L / 2);
+        assertEquals(1, log.starting("tryFailed prop_hangsShrinking").size());
+        List<String> shrunk = log.starting("tryShrunk prop_hangsShrinking");
+        assertTrue(shrunk.toString(), shrunk.get(0).endsWith(" [1000]"));
+    }
+
+    @Test
+    public void theCorpusIsTimedOut() throws Exception {
+        InputCorpus corpus = new InputCorpus(folder.getRoot().toPath());
+        corpus.add(Hangs.class.getMethod("prop_hangsOnEvens", int.class), 2);
+        EventLog log = new EventLog();
+        long start = System.nanoTime();
+        new TestRun().setListeners(log).setCorpus(corpus).setTimeouts(100, 0)
+                     .runOn(Hangs.class, "prop_hangsOnEvens", 1);
+
+        assertTrue(System.nanoTime() - start < HANG_MILLIS * 1000000L / 2);
+        assertEquals(Arrays.asList("corpusEntryFailed prop_hangsOnEvens 1"), 
+                     log.starting("corpusEntryFailed"));
+    }
+
+    @Test
+    public void aReplayedTryIsTimedOut() {
+        Recording recording = new Recording();
+        new TestRun().setListeners().setRecording(recording).setTimeouts(100, 0)
+                     .runOn(Hangs.class, "prop_hangsOnEvens", 20);
+        int[] failed = recording.getFailedTries(0);
+        assertEquals(1, failed.length);
+
+        EventLog log = new EventLog();
+        long start = System.nanoTime();
+        boolean held = new TestRun().setListeners(log).setTimeouts(100, 0)
+                                    .replayTry(recording, 0, failed[0]);
+
+        assertFalse(held);
+        assertTrue(System.nanoTime() - start < HANG_MILLIS * 1000000L / 2);
+        assertEquals(Arrays.asList("tryTimedOut prop_hangsOnEvens " + failed[0] + " true"), 
+                     log.events);
+    }
+
+    /* the tries made, up to and including the one timed out */
+    private static int triesUpTo(EventLog log) {
+        String timedOut = log.starting("tryTimedOut").get(0);
+        return Integer.parseInt(timedOut.split(" ")[2]);
+    }
+}
@@ -0,0 +1,111 @@
+package tbc.supercheck;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class WeightedChoiceTest {
+
+    private static final float[] WEIGHTS = { 0.05f, 0.05f, 0.05f, 0.05f, 0.05f, 0.75f };
+
+    private static final int DRAWS = 200000;
+
+    @Test
+    public void selectsWithTheWeightsOfEachAlgorithm() {
+        for (RandomSource.Algorithm algorithm : RandomSource.Algorithm.values()) {
+            assertFrequencies(algorithm, WEIGHTS);
+            assertFrequencies(algorithm, new float[] { 1f, 2f, 3f, 4f });
+            assertFrequencies(algorithm, new float[] { 0.3f, 0f, 0.7f });
+        }
+    }
+
+    @Test
+    public void neverSelectsAZeroWeight() {
+        WeightedChoice choice = new WeightedChoice(0f, 1f, 0f);
+        Gen gen = gen(RandomSource.Algorithm.XOROSHIRO, 7);
+        for (int draw=0; draw<10000; draw++) {
+            assertEquals(1, gen.select(choice));
+        }
+    }
+
+    @Test
+    public void legacySelectionDrawsAsFloatsAlwaysHave() {
+        WeightedChoice choice = new WeightedChoice(WEIGHTS);
+        Gen gen = gen(RandomSource.Algorithm.LEGACY, 42);
+        Random random = new Random(42);
+        for (int draw=0; draw<10000; draw++) {
+            assertEquals(walk(WEIGHTS, random.nextFloat()), gen.select(choice));
+        }
+        /* one float per selection, so the draws after it are unchanged */
+        assertEquals(random.nextInt(1000), gen.choose(0, 999));
+    }
+
+    @Test
+    public void oneOfAnswersThePossibleSelected() {
+        WeightedChoice choice = new WeightedChoice(0.5f, 0.5f);
+        Gen a = gen(RandomSource.Algorithm.SPLITMIX, 3);
+        Gen b = gen(RandomSource.Algorithm.SPLITMIX, 3);
+        for (int draw=0; draw<1000; draw++) {
+            assertEquals(new String[] { "x", "y" }[a.select(choice)],
+                         b.oneOf(choice, "x", "y"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNoProbabilities() {
+        new WeightedChoice();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsANegativeProbability() {
+        new WeightedChoice(0.5f, -0.1f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsProbabilitiesSummingToZero() {
+        new WeightedChoice(0f, 0f);
+    }
+
+    /** Asserts each index is selected within 5 standard deviations of its weight. */
+    private static void assertFrequencies(RandomSource.Algorithm algorithm, float[] weights) {
+        WeightedChoice choice = new WeightedChoice(weights);
+        Gen gen = gen(algorithm, 1234);
+        int[] counts = new int[weights.length];
+        for (int draw=0; draw<DRAWS; draw++) {
+            counts[gen.select(choice)]++;
+        }
+
+        float sum = 0f;
+        for (float weight : weights) {
+            sum += weight;
+        }
+        for (int idx=0; idx<weights.length; idx++) {
+            double p = weights[idx] / sum;
+            double sd = Math.sqrt(DRAWS * p * (1 - p));
+            assertTrue(algorithm + " selected " + idx + " " + counts[idx] + " times of "
+                       + DRAWS + ", for a weight of " + p,
+                       Math.abs(counts[idx] - DRAWS * p) <= 5 * sd + 1);
+        }
+    }
+
+    /** The selection of Gen.select(float...) before WeightedChoice. */
+    private static int walk(float[] probabilities, float ran) {
+        float totalThusFar = 0.0f;
+        for (int idx=0; idx<probabilities.length; idx++) {
+            totalThusFar += probabilities[idx];
+            if (ran <= totalThusFar) {
+                return idx;
+            }
+        }
+        return probabilities.length - 1;
+    }
+
+    private static Gen gen(RandomSource.Algorithm algorithm, long seed) {
+        Gen gen = new Gen();
+        gen.setSeed(seed, algorithm);
+        return gen;
+    }
+}